@@ -14,6 +14,7 @@
  */
 
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar
+import groovy.json.JsonSlurper
 
 plugins {
   java
@@ -36,10 +37,6 @@ dependencies {
   implementation("io.opentelemetry.contrib:opentelemetry-aws-xray")
   // AWS Resource Detectors
   implementation("io.opentelemetry.contrib:opentelemetry-aws-resources")
-  // Json file reader
-  implementation("com.fasterxml.jackson.core:jackson-databind:2.16.1")
-  // Import AWS SDK v1 core for ARN parsing utilities
-  implementation("com.amazonaws:aws-java-sdk-core:1.12.773")
   // Export configuration
   compileOnly("io.opentelemetry:opentelemetry-exporter-otlp")
   // For Udp emitter
@@ -50,14 +47,68 @@ dependencies {
   testImplementation("io.opentelemetry:opentelemetry-extension-aws")
   testImplementation("io.opentelemetry:opentelemetry-extension-trace-propagators")
   testImplementation("com.google.guava:guava")
-  testRuntimeOnly("io.opentelemetry:opentelemetry-exporter-otlp-common")
+  // Reference ARN parser for ArnParser parity tests
+  testImplementation("com.amazonaws:aws-java-sdk-core:1.12.773")
+  testImplementation("io.opentelemetry:opentelemetry-exporter-otlp")
 
   compileOnly("com.google.code.findbugs:jsr305:3.0.2")
   testImplementation("org.mockito:mockito-core:5.14.2")
   testImplementation("org.mockito:mockito-junit-jupiter:5.14.2")
 }
 
+// Compiles the SQL keyword list into a Java constant, so that it does not need to be parsed from
+// JSON when the agent starts
+val sqlDialectKeywordsJson = file("src/main/resources/configuration/sql_dialect_keywords.json")
+val generateSqlDialectKeywords by tasks.registering {
+  val outputDir = layout.buildDirectory.dir("generated/sources/sqlDialectKeywords/java/main")
+  inputs.file(sqlDialectKeywordsJson)
+  outputs.dir(outputDir)
+  doLast {
+    val json = JsonSlurper().parse(sqlDialectKeywordsJson) as Map<*, *>
+    val keywords = (json["keywords"] as List<*>).map { it as String }
+    val packageDir = outputDir.get().dir("software/amazon/opentelemetry/javaagent/providers")
+    val source = packageDir.file("SqlDialectKeywords.java").asFile
+    source.parentFile.mkdirs()
+    source.writeText(
+      buildString {
+        appendLine(rootProject.file("config/license/header.java").readText().trimEnd())
+        appendLine()
+        appendLine("package software.amazon.opentelemetry.javaagent.providers;")
+        appendLine()
+        appendLine("import java.util.Arrays;")
+        appendLine("import java.util.Collections;")
+        appendLine("import java.util.List;")
+        appendLine()
+        appendLine("/** Generated from sql_dialect_keywords.json by generateSqlDialectKeywords, do not edit. */")
+        appendLine("final class SqlDialectKeywords {")
+        appendLine()
+        appendLine("  static final List<String> KEYWORDS =")
+        appendLine("      Collections.unmodifiableList(")
+        appendLine("          Arrays.asList(")
+        keywords.forEachIndexed { i, keyword ->
+          val literal = keyword.replace("\\", "\\\\").replace("\"", "\\\"")
+          appendLine("              \"$literal\"" + if (i < keywords.size - 1) "," else "));")
+        }
+        appendLine()
+        appendLine("  private SqlDialectKeywords() {}")
+        appendLine("}")
+      },
+    )
+  }
+}
+
+sourceSets {
+  main {
+    java.srcDir(generateSqlDialectKeywords)
+  }
+}
+
 tasks {
+  processResources {
+    // Compiled into SqlDialectKeywords instead
+    exclude("configuration/sql_dialect_keywords.json")
+  }
+
   val shadowJar by existing(ShadowJar::class) {
     archiveClassifier.set("")
   }
@@ -0,0 +1,144 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * ApplicationSignalsSpanProcessor runs the Application Signals span processors as stages of a
+ * single {@link SpanProcessor}: {@link AttributePropagatingSpanProcessor} on start, then {@link
+ * AwsUnsampledOnlySpanProcessor} and {@link AwsSpanMetricsProcessor} on end, in the order the
+ * customizer registers them individually. Registered separately, the SDK dispatches every span to
+ * each of them through its multi-processor list, and each of them resolves what it needs on its
+ * own. Here the parent span and local root flag are resolved once on start, and on end the span is
+ * converted to {@link SpanData} once. The sampled flag is read from it for the unsampled stage, and
+ * it is passed to the metrics stage, from which the metric attribute generator derives the span
+ * kind and local root flag. With asynchronous span metrics, the span is converted on the metrics
+ * workers instead, as before.
+ *
+ * <p>Stages behave exactly as the individual processors do, which remain the default.
+ */
+@Immutable
+final class ApplicationSignalsSpanProcessor implements SpanProcessor {
+
+  private final AttributePropagatingSpanProcessor attributePropagation;
+  @Nullable private final AwsSpanMetricsProcessor spanMetrics;
+  @Nullable private final AwsUnsampledOnlySpanProcessor unsampledOnly;
+
+  static ApplicationSignalsSpanProcessor create(
+      AttributePropagatingSpanProcessor attributePropagation,
+      @Nullable AwsSpanMetricsProcessor spanMetrics,
+      @Nullable AwsUnsampledOnlySpanProcessor unsampledOnly) {
+    return new ApplicationSignalsSpanProcessor(attributePropagation, spanMetrics, unsampledOnly);
+  }
+
+  private ApplicationSignalsSpanProcessor(
+      AttributePropagatingSpanProcessor attributePropagation,
+      @Nullable AwsSpanMetricsProcessor spanMetrics,
+      @Nullable AwsUnsampledOnlySpanProcessor unsampledOnly) {
+    this.attributePropagation = attributePropagation;
+    this.spanMetrics = spanMetrics;
+    this.unsampledOnly = unsampledOnly;
+  }
+
+  @Override
+  public void onStart(Context parentContext, ReadWriteSpan span) {
+    attributePropagation.onStart(
+        span,
+        AttributePropagatingSpanProcessor.getParentReadableSpan(parentContext),
+        AwsSpanProcessingUtil.isLocalRoot(span));
+    if (unsampledOnly != null) {
+      unsampledOnly.onStart(parentContext, span, span.getSpanContext().isSampled());
+    }
+  }
+
+  @Override
+  public boolean isStartRequired() {
+    return true;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    if (spanMetrics == null || spanMetrics.isAsynchronous()) {
+      if (unsampledOnly != null) {
+        unsampledOnly.onEnd(span, span.getSpanContext().isSampled());
+      }
+      if (spanMetrics != null) {
+        spanMetrics.onEnd(span);
+      }
+      return;
+    }
+    SpanData spanData = span.toSpanData();
+    if (unsampledOnly != null) {
+      unsampledOnly.onEnd(span, spanData.getSpanContext().isSampled());
+    }
+    spanMetrics.onEnd(span, spanData);
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return spanMetrics != null || unsampledOnly != null;
+  }
+
+  @Override
+  public CompletableResultCode forceFlush() {
+    List<CompletableResultCode> results = new ArrayList<>(2);
+    if (spanMetrics != null) {
+      results.add(spanMetrics.forceFlush());
+    }
+    if (unsampledOnly != null) {
+      results.add(unsampledOnly.forceFlush());
+    }
+    return CompletableResultCode.ofAll(results);
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    List<CompletableResultCode> results = new ArrayList<>(3);
+    results.add(attributePropagation.shutdown());
+    if (spanMetrics != null) {
+      results.add(spanMetrics.shutdown());
+    }
+    if (unsampledOnly != null) {
+      results.add(unsampledOnly.shutdown());
+    }
+    return CompletableResultCode.ofAll(results);
+  }
+
+  // Visible for testing
+  AttributePropagatingSpanProcessor getAttributePropagation() {
+    return attributePropagation;
+  }
+
+  @Nullable
+  AwsSpanMetricsProcessor getSpanMetrics() {
+    return spanMetrics;
+  }
+
+  @Nullable
+  AwsUnsampledOnlySpanProcessor getUnsampledOnly() {
+    return unsampledOnly;
+  }
+}
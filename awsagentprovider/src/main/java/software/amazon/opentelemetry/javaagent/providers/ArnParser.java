@@ -0,0 +1,134 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import javax.annotation.Nullable;
+
+/**
+ * ArnParser extracts the resource part of an ARN, {@code
+ * arn:partition:service:region:account-id:resource}, where the resource is one of {@code
+ * resource-id}, {@code resource-type:resource-id} or {@code resource-type/resource-id}, optionally
+ * followed by {@code :qualifier}. Results are the same as those of the AWS SDK for Java's {@code
+ * Arn.fromString(arn).getResource().toString()}, except that malformed ARNs give null rather than
+ * an exception.
+ */
+final class ArnParser {
+
+  private static final String ARN_PREFIX = "arn:";
+
+  /**
+   * Returns the resource of an ARN, with a {@code /} following the resource type replaced by {@code
+   * :}. E.g. {@code stateMachine:name} for {@code
+   * arn:aws:states:us-east-1:123456789012:stateMachine:name}.
+   */
+  @Nullable
+  static String getResource(String arn) {
+    int resourceStart = resourceStart(arn);
+    if (resourceStart < 0) {
+      return null;
+    }
+    int typeEnd = resourceTypeEnd(arn, resourceStart);
+    if (typeEnd < 0) {
+      return arn.substring(resourceStart);
+    }
+    if (!hasResourceId(arn, typeEnd)) {
+      return null;
+    }
+    if (arn.charAt(typeEnd) == ':') {
+      return arn.substring(resourceStart);
+    }
+    return arn.substring(resourceStart, typeEnd) + ":" + arn.substring(typeEnd + 1);
+  }
+
+  /**
+   * Returns the resource name of an ARN whose resource has a type, i.e. the part of the resource
+   * following the type, up to any qualifier. E.g. {@code name} for {@code
+   * arn:aws:states:us-east-1:123456789012:stateMachine:name:version}. Returns null if the resource
+   * has no type.
+   */
+  @Nullable
+  static String getResourceName(String arn) {
+    int resourceStart = resourceStart(arn);
+    if (resourceStart < 0) {
+      return null;
+    }
+    int typeEnd = resourceTypeEnd(arn, resourceStart);
+    if (typeEnd < 0 || !hasResourceId(arn, typeEnd)) {
+      return null;
+    }
+    // As the second element of resource.split(":"), which drops trailing empty strings, there is
+    // no name if only colons follow the type
+    int nameEnd = arn.indexOf(':', typeEnd + 1);
+    if (nameEnd == typeEnd + 1 && isOnlyColons(arn, nameEnd)) {
+      return null;
+    }
+    return arn.substring(typeEnd + 1, nameEnd < 0 ? arn.length() : nameEnd);
+  }
+
+  // Returns the index of the resource, or -1 if the partition, service or resource is empty or
+  // any of the first five parts is missing
+  private static int resourceStart(String arn) {
+    if (!arn.startsWith(ARN_PREFIX)) {
+      return -1;
+    }
+    int partitionEnd = arn.indexOf(':', ARN_PREFIX.length());
+    if (partitionEnd <= ARN_PREFIX.length()) {
+      return -1;
+    }
+    int serviceEnd = arn.indexOf(':', partitionEnd + 1);
+    if (serviceEnd <= partitionEnd + 1) {
+      return -1;
+    }
+    int regionEnd = arn.indexOf(':', serviceEnd + 1);
+    if (regionEnd < 0) {
+      return -1;
+    }
+    int accountEnd = arn.indexOf(':', regionEnd + 1);
+    if (accountEnd < 0 || accountEnd == arn.length() - 1) {
+      return -1;
+    }
+    return accountEnd + 1;
+  }
+
+  // Returns the index of the first ':' or '/' in the resource, or -1 if it has no type
+  private static int resourceTypeEnd(String arn, int resourceStart) {
+    for (int i = resourceStart; i < arn.length(); i++) {
+      char c = arn.charAt(i);
+      if (c == ':' || c == '/') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // The resource id is what follows the type, up to a qualifier, and must not be empty
+  private static boolean hasResourceId(String arn, int typeEnd) {
+    int qualifierStart = arn.lastIndexOf(':');
+    int idEnd = qualifierStart > typeEnd ? qualifierStart : arn.length();
+    return idEnd > typeEnd + 1;
+  }
+
+  private static boolean isOnlyColons(String arn, int start) {
+    for (int i = start; i < arn.length(); i++) {
+      if (arn.charAt(i) != ':') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private ArnParser() {}
+}
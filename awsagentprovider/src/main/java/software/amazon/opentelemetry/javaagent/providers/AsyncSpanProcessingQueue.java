@@ -0,0 +1,230 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.internal.DaemonThreadFactory;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * AsyncSpanProcessingQueue hands ended spans off from the application threads that end them to one
+ * or more background workers, which run the given handler on them. Ended spans are effectively
+ * immutable, so the span reference is the only input that needs to be captured on the application
+ * thread.
+ *
+ * <p>Each worker owns a preallocated multi-producer, single-consumer ring buffer, and producers
+ * pick a worker by thread. When a worker's buffer is full, the {@link OverflowPolicy} decides
+ * whether the span is dropped, and counted, or handled on the calling thread. {@link #flush} waits
+ * until every span submitted before the call has been handled, and {@link #shutdown} does the same
+ * before stopping the workers. Spans submitted after shutdown are handled inline. A worker closes
+ * its buffer once it is empty before it stops, so that a producer that raced with shutdown either
+ * gets its span into the buffer before it is closed, or fails to offer it and handles it inline.
+ */
+final class AsyncSpanProcessingQueue {
+
+  private static final Logger logger = Logger.getLogger(AsyncSpanProcessingQueue.class.getName());
+
+  // How long an idle worker parks before checking its buffer again without being woken up
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long FLUSH_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  // Producer sequence of a worker that has stopped, at which no slot can be claimed
+  private static final long CLOSED = Long.MAX_VALUE;
+
+  /** What to do with a span when the buffer of the worker it is assigned to is full. */
+  enum OverflowPolicy {
+    /** Drop the span, without recording metrics for it, and count it. */
+    DROP,
+    /** Handle the span on the calling thread. */
+    INLINE
+  }
+
+  private final Consumer<ReadableSpan> handler;
+  private final OverflowPolicy overflowPolicy;
+  private final Worker[] workers;
+  private final AtomicBoolean isShutdown = new AtomicBoolean();
+  private final LongAdder droppedSpans = new LongAdder();
+  private final AtomicBoolean loggedDrop = new AtomicBoolean();
+
+  static AsyncSpanProcessingQueue create(
+      Consumer<ReadableSpan> handler,
+      int workerCount,
+      int capacityPerWorker,
+      OverflowPolicy overflowPolicy) {
+    if (workerCount <= 0) {
+      throw new IllegalArgumentException("workerCount must be positive");
+    }
+    if (capacityPerWorker <= 0) {
+      throw new IllegalArgumentException("capacityPerWorker must be positive");
+    }
+    return new AsyncSpanProcessingQueue(handler, workerCount, capacityPerWorker, overflowPolicy);
+  }
+
+  private AsyncSpanProcessingQueue(
+      Consumer<ReadableSpan> handler,
+      int workerCount,
+      int capacityPerWorker,
+      OverflowPolicy overflowPolicy) {
+    this.handler = handler;
+    this.overflowPolicy = overflowPolicy;
+    // Round up to a power of two, so that slots can be found by masking the sequence
+    int capacity = Integer.highestOneBit(Math.max(1, capacityPerWorker - 1)) << 1;
+    ThreadFactory threadFactory = new DaemonThreadFactory("AwsSpanMetricsProcessor");
+    this.workers = new Worker[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      workers[i] = new Worker(capacity);
+      Thread thread = threadFactory.newThread(workers[i]);
+      workers[i].thread = thread;
+      thread.start();
+    }
+  }
+
+  void submit(ReadableSpan span) {
+    if (isShutdown.get()) {
+      handler.accept(span);
+      return;
+    }
+    Worker worker = workers[(int) (Thread.currentThread().getId() % workers.length)];
+    if (worker.offer(span)) {
+      return;
+    }
+    // After shutdown, the buffer may have been closed rather than full
+    if (overflowPolicy == OverflowPolicy.INLINE || isShutdown.get()) {
+      handler.accept(span);
+    } else {
+      droppedSpans.increment();
+      if (loggedDrop.compareAndSet(false, true)) {
+        logger.log(
+            Level.WARNING,
+            "Span metrics queue is full, dropping spans. Consider increasing the queue size or the"
+                + " number of workers.");
+      }
+    }
+  }
+
+  /** Waits for every span submitted before this call to be handled. */
+  CompletableResultCode flush(long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (Worker worker : workers) {
+      long target = worker.producerSequence.get();
+      // A closed worker has handled all of its spans
+      while (target != CLOSED && worker.consumedSequence.get() < target) {
+        if (System.nanoTime() - deadline > 0) {
+          return CompletableResultCode.ofFailure();
+        }
+        LockSupport.unpark(worker.thread);
+        LockSupport.parkNanos(FLUSH_PARK_NANOS);
+      }
+    }
+    return CompletableResultCode.ofSuccess();
+  }
+
+  /** Drains all submitted spans, then stops the workers. */
+  CompletableResultCode shutdown(long timeout, TimeUnit unit) {
+    if (!isShutdown.compareAndSet(false, true)) {
+      return CompletableResultCode.ofSuccess();
+    }
+    CompletableResultCode result = flush(timeout, unit);
+    for (Worker worker : workers) {
+      worker.running = false;
+      LockSupport.unpark(worker.thread);
+    }
+    long dropped = droppedSpans.sum();
+    if (dropped > 0) {
+      logger.log(Level.WARNING, "Span metrics queue dropped {0} spans in total", dropped);
+    }
+    return result;
+  }
+
+  long getDroppedSpanCount() {
+    return droppedSpans.sum();
+  }
+
+  private final class Worker implements Runnable {
+    private final AtomicReferenceArray<ReadableSpan> buffer;
+    private final int mask;
+    // Next sequence to be claimed by a producer
+    private final AtomicLong producerSequence = new AtomicLong();
+    // Sequence up to which spans have been handled, only written by the worker
+    private final AtomicLong consumedSequence = new AtomicLong();
+    private volatile boolean idle;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    private Worker(int capacity) {
+      this.buffer = new AtomicReferenceArray<>(capacity);
+      this.mask = capacity - 1;
+    }
+
+    private boolean offer(ReadableSpan span) {
+      long sequence;
+      do {
+        sequence = producerSequence.get();
+        if (sequence == CLOSED || sequence - consumedSequence.get() >= buffer.length()) {
+          return false;
+        }
+      } while (!producerSequence.compareAndSet(sequence, sequence + 1));
+      buffer.lazySet((int) sequence & mask, span);
+      if (idle) {
+        LockSupport.unpark(thread);
+      }
+      return true;
+    }
+
+    @Override
+    public void run() {
+      long sequence = 0;
+      while (true) {
+        int slot = (int) sequence & mask;
+        ReadableSpan span = buffer.get(slot);
+        if (span == null) {
+          if (sequence < producerSequence.get()) {
+            // Claimed by a producer, but not yet published
+            Thread.yield();
+          } else if (!running) {
+            // Stops unless a producer claimed a slot in the meantime
+            if (producerSequence.compareAndSet(sequence, CLOSED)) {
+              return;
+            }
+          } else {
+            idle = true;
+            if (sequence == producerSequence.get() && running) {
+              LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            idle = false;
+          }
+          continue;
+        }
+        buffer.lazySet(slot, null);
+        try {
+          handler.accept(span);
+        } catch (RuntimeException e) {
+          logger.log(Level.FINE, "Failed to record span metrics", e);
+        }
+        consumedSequence.lazySet(++sequence);
+      }
+    }
+  }
+}
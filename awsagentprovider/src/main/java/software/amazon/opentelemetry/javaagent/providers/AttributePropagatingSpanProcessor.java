@@ -22,9 +22,9 @@ import io.opentelemetry.context.Context;
 import io.opentelemetry.sdk.trace.ReadWriteSpan;
 import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SpanProcessor;
-import io.opentelemetry.sdk.trace.data.SpanData;
 import java.util.List;
 import java.util.function.Function;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 /**
@@ -40,12 +40,12 @@ import javax.annotation.concurrent.Immutable;
 @Immutable
 public final class AttributePropagatingSpanProcessor implements SpanProcessor {
 
-  private final Function<SpanData, String> propagationDataExtractor;
+  private final Function<ReadableSpan, String> propagationDataExtractor;
   private final AttributeKey<String> propagationDataKey;
   private final List<AttributeKey<String>> attributesKeysToPropagate;
 
   public static AttributePropagatingSpanProcessor create(
-      Function<SpanData, String> propagationDataExtractor,
+      Function<ReadableSpan, String> propagationDataExtractor,
       AttributeKey<String> propagationDataKey,
       List<AttributeKey<String>> attributesKeysToPropagate) {
     return new AttributePropagatingSpanProcessor(
@@ -53,7 +53,7 @@ public final class AttributePropagatingSpanProcessor implements SpanProcessor {
   }
 
   private AttributePropagatingSpanProcessor(
-      Function<SpanData, String> propagationDataExtractor,
+      Function<ReadableSpan, String> propagationDataExtractor,
       AttributeKey<String> propagationDataKey,
       List<AttributeKey<String>> attributesKeysToPropagate) {
     this.propagationDataExtractor = propagationDataExtractor;
@@ -63,18 +63,29 @@ public final class AttributePropagatingSpanProcessor implements SpanProcessor {
 
   @Override
   public void onStart(Context parentContext, ReadWriteSpan span) {
+    onStart(span, getParentReadableSpan(parentContext), AwsSpanProcessingUtil.isLocalRoot(span));
+  }
+
+  @Nullable
+  static ReadableSpan getParentReadableSpan(Context parentContext) {
     Span parentSpan = Span.fromContextOrNull(parentContext);
+    return parentSpan instanceof ReadableSpan ? (ReadableSpan) parentSpan : null;
+  }
 
-    ReadableSpan parentReadableSpan = null;
-    if ((parentSpan instanceof ReadableSpan)) {
-      parentReadableSpan = (ReadableSpan) parentSpan;
+  /**
+   * Variant of {@link #onStart(Context, ReadWriteSpan)} for {@link
+   * ApplicationSignalsSpanProcessor}, which resolves the parent span and whether the span is a
+   * local root once for all its stages.
+   */
+  void onStart(ReadWriteSpan span, @Nullable ReadableSpan parentReadableSpan, boolean localRoot) {
+    if (parentReadableSpan != null) {
 
       // Add the AWS_SDK_DESCENDANT attribute to the immediate child spans of AWS SDK span.
       // This attribute helps the backend differentiate between SDK spans and their immediate
       // children.
       // It's assumed that the HTTP spans are immediate children of the AWS SDK span
       // TODO: we should have a contract test to check the immediate children are HTTP span
-      if (AwsSpanProcessingUtil.isAwsSDKSpan(parentReadableSpan.toSpanData())) {
+      if (AwsSpanProcessingUtil.isAwsSDKSpan(parentReadableSpan)) {
         span.setAttribute(AwsAttributeKeys.AWS_SDK_DESCENDANT, "true");
       }
 
@@ -97,14 +108,15 @@ public final class AttributePropagatingSpanProcessor implements SpanProcessor {
       }
     }
 
+    // Everything above and below reads through ReadableSpan accessors; onStart runs for every
+    // span, so it must not pay for a SpanData snapshot.
     String propagationData = null;
-    SpanData spanData = span.toSpanData();
-    if (AwsSpanProcessingUtil.isLocalRoot(spanData)) {
-      if (!isServerKind(spanData)) {
-        propagationData = propagationDataExtractor.apply(spanData);
+    if (localRoot) {
+      if (!isServerKind(span)) {
+        propagationData = propagationDataExtractor.apply(span);
       }
-    } else if (parentReadableSpan != null && isServerKind(parentReadableSpan.toSpanData())) {
-      propagationData = propagationDataExtractor.apply(parentReadableSpan.toSpanData());
+    } else if (parentReadableSpan != null && isServerKind(parentReadableSpan)) {
+      propagationData = propagationDataExtractor.apply(parentReadableSpan);
     } else if (parentReadableSpan != null) {
       propagationData = parentReadableSpan.getAttribute(propagationDataKey);
     }
@@ -118,7 +130,7 @@ public final class AttributePropagatingSpanProcessor implements SpanProcessor {
     return SpanKind.CONSUMER.equals(span.getKind());
   }
 
-  private static boolean isServerKind(SpanData span) {
+  private static boolean isServerKind(ReadableSpan span) {
     return SpanKind.SERVER.equals(span.getKind());
   }
 
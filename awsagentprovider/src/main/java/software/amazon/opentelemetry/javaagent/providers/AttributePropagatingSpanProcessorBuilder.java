@@ -19,7 +19,7 @@ import static java.util.Objects.requireNonNull;
 
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import io.opentelemetry.api.common.AttributeKey;
-import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.ReadableSpan;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -33,7 +33,7 @@ import java.util.function.Function;
  */
 public class AttributePropagatingSpanProcessorBuilder {
 
-  private Function<SpanData, String> propagationDataExtractor =
+  private Function<ReadableSpan, String> propagationDataExtractor =
       AwsSpanProcessingUtil::getIngressOperation;
   private AttributeKey<String> propagationDataKey = AwsAttributeKeys.AWS_LOCAL_OPERATION;
   private List<AttributeKey<String>> attributesKeysToPropagate =
@@ -47,7 +47,7 @@ public class AttributePropagatingSpanProcessorBuilder {
 
   @CanIgnoreReturnValue
   public AttributePropagatingSpanProcessorBuilder setPropagationDataExtractor(
-      Function<SpanData, String> propagationDataExtractor) {
+      Function<ReadableSpan, String> propagationDataExtractor) {
     requireNonNull(propagationDataExtractor, "propagationDataExtractor");
     this.propagationDataExtractor = propagationDataExtractor;
     return this;
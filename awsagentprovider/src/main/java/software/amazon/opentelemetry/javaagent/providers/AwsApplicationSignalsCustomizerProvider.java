@@ -37,7 +37,6 @@ import io.opentelemetry.sdk.metrics.export.MetricReader;
 import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProviderBuilder;
-import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
 import io.opentelemetry.sdk.trace.samplers.Sampler;
 import java.time.Duration;
@@ -46,11 +45,14 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import software.amazon.opentelemetry.javaagent.providers.AsyncSpanProcessingQueue.OverflowPolicy;
 
 /**
  * This customizer performs the following customizations:
@@ -91,6 +93,36 @@ public class AwsApplicationSignalsCustomizerProvider
       "otel.aws.app.signals.exporter.endpoint";
   private static final String APPLICATION_SIGNALS_EXPORTER_ENDPOINT_CONFIG =
       "otel.aws.application.signals.exporter.endpoint";
+  private static final String APPLICATION_SIGNALS_FUSED_PROCESSOR_ENABLED_CONFIG =
+      "otel.aws.application.signals.fused.processor.enabled";
+  private static final String APPLICATION_SIGNALS_FUSED_AGGREGATION_ENABLED_CONFIG =
+      "otel.aws.application.signals.fused.aggregation.enabled";
+  private static final String APPLICATION_SIGNALS_PER_THREAD_AGGREGATION_ENABLED_CONFIG =
+      "otel.aws.application.signals.per.thread.aggregation.enabled";
+  private static final String APPLICATION_SIGNALS_CARDINALITY_LIMIT_ENABLED_CONFIG =
+      "otel.aws.application.signals.cardinality.limit.enabled";
+  private static final String APPLICATION_SIGNALS_CARDINALITY_LIMIT_LOCAL_OPERATIONS_CONFIG =
+      "otel.aws.application.signals.cardinality.limit.local.operations";
+  private static final String APPLICATION_SIGNALS_CARDINALITY_LIMIT_VALUES_PER_OPERATION_CONFIG =
+      "otel.aws.application.signals.cardinality.limit.values.per.operation";
+  private static final String APPLICATION_SIGNALS_PATH_TEMPLATES_ENABLED_CONFIG =
+      "otel.aws.application.signals.path.templates.enabled";
+  private static final String APPLICATION_SIGNALS_PATH_TEMPLATES_MAX_VALUES_CONFIG =
+      "otel.aws.application.signals.path.templates.max.values";
+  private static final String APPLICATION_SIGNALS_INGRESS_ROUTE_ENABLED_CONFIG =
+      "otel.aws.application.signals.ingress.route.enabled";
+  private static final String APPLICATION_SIGNALS_ASYNC_ENABLED_CONFIG =
+      "otel.aws.application.signals.async.enabled";
+  private static final String APPLICATION_SIGNALS_ASYNC_WORKERS_CONFIG =
+      "otel.aws.application.signals.async.workers";
+  private static final String APPLICATION_SIGNALS_ASYNC_QUEUE_SIZE_CONFIG =
+      "otel.aws.application.signals.async.queue.size";
+  private static final String APPLICATION_SIGNALS_ASYNC_OVERFLOW_POLICY_CONFIG =
+      "otel.aws.application.signals.async.overflow.policy";
+  private static final String APPLICATION_SIGNALS_EXPORT_MAX_CHUNK_BYTES_CONFIG =
+      "otel.aws.application.signals.export.max.chunk.bytes";
+  private static final String APPLICATION_SIGNALS_EXPORT_MAX_PARALLEL_CHUNKS_CONFIG =
+      "otel.aws.application.signals.export.max.parallel.chunks";
 
   private static final String OTEL_JMX_TARGET_SYSTEM_CONFIG = "otel.jmx.target.system";
   private static final String OTEL_EXPORTER_OTLP_TRACES_ENDPOINT_CONFIG =
@@ -107,6 +139,18 @@ public class AwsApplicationSignalsCustomizerProvider
   // 64KB batch since spans can vary in size.
   private static final int LAMBDA_SPAN_EXPORT_BATCH_SIZE = 10;
 
+  // Shared by the span metrics processor and the span exporter, see getMetricAttributeGenerator
+  private MetricAttributeGenerator metricAttributeGenerator;
+
+  // Shared by the span metrics processor and the span exporter, see getMetricAttributesHandoff
+  private MetricAttributesHandoff metricAttributesHandoff;
+
+  // Shared by remote and ingress operations, see getPathTemplateLearner
+  private Optional<PathTemplateLearner> pathTemplateLearner;
+
+  // Shared by attribute propagation and the generator, see getIngressOperationResolver
+  private Optional<IngressOperationResolver> ingressOperationResolver;
+
   public void customize(AutoConfigurationCustomizer autoConfiguration) {
     autoConfiguration.addPropertiesCustomizer(this::customizeProperties);
     autoConfiguration.addPropertiesCustomizer(this::customizeLambdaEnvProperties);
@@ -208,13 +252,24 @@ public class AwsApplicationSignalsCustomizerProvider
           SDKMeterProviderBuilder.getMetricExportInterval(
               configProps, DEFAULT_METRIC_EXPORT_INTERVAL, logger);
       // Construct and set local and remote attributes span processor
-      tracerProviderBuilder.addSpanProcessor(
-          AttributePropagatingSpanProcessorBuilder.create().build());
+      AttributePropagatingSpanProcessorBuilder attributePropagatingSpanProcessorBuilder =
+          AttributePropagatingSpanProcessorBuilder.create();
+      IngressOperationResolver ingressOperations = getIngressOperationResolver(configProps);
+      if (ingressOperations != null) {
+        attributePropagatingSpanProcessorBuilder.setPropagationDataExtractor(
+            ingressOperations::getIngressOperation);
+      }
+      AttributePropagatingSpanProcessor attributePropagatingSpanProcessor =
+          attributePropagatingSpanProcessorBuilder.build();
 
       // If running on Lambda, we just need to export 100% spans and skip generating any Application
       // Signals metrics.
       if (isLambdaEnvironment()) {
-        tracerProviderBuilder.addSpanProcessor(
+        addSpanProcessors(
+            tracerProviderBuilder,
+            configProps,
+            attributePropagatingSpanProcessor,
+            null,
             AwsUnsampledOnlySpanProcessorBuilder.create()
                 .setMaxExportBatchSize(LAMBDA_SPAN_EXPORT_BATCH_SIZE)
                 .build());
@@ -228,25 +283,220 @@ public class AwsApplicationSignalsCustomizerProvider
       MetricReader metricReader =
           PeriodicMetricReader.builder(metricsExporter).setInterval(exportInterval).build();
 
-      SdkMeterProvider meterProvider =
+      SdkMeterProviderBuilder meterProviderBuilder =
           SdkMeterProvider.builder()
               .setResource(ResourceHolder.getResource())
-              .registerMetricReader(metricReader)
-              .build();
+              .registerMetricReader(metricReader);
+
+      // Optionally aggregate RED metrics in the processor rather than through metric instruments,
+      // and optionally buffer them per thread until collection. The latter implies the former.
+      RedMetricsAggregator aggregator = null;
+      boolean perThreadAggregation =
+          configProps.getBoolean(APPLICATION_SIGNALS_PER_THREAD_AGGREGATION_ENABLED_CONFIG, false);
+      if (perThreadAggregation
+          || configProps.getBoolean(APPLICATION_SIGNALS_FUSED_AGGREGATION_ENABLED_CONFIG, false)) {
+        aggregator =
+            RedMetricsAggregator.create(
+                AwsSpanMetricsProcessorBuilder.DEFAULT_SCOPE_NAME, perThreadAggregation);
+        meterProviderBuilder.registerMetricProducer(aggregator);
+        logger.info(
+            "AWS Application Signals fused metric aggregation enabled"
+                + (perThreadAggregation ? " with per-thread buffers" : ""));
+      }
+      SdkMeterProvider meterProvider = meterProviderBuilder.build();
+
+      MetricAttributeGenerator generator = getMetricAttributeGenerator(configProps);
+      if (generator instanceof CardinalityLimitingMetricAttributeGenerator) {
+        ((CardinalityLimitingMetricAttributeGenerator) generator)
+            .registerOverflowMetric(
+                meterProvider.get(AwsSpanMetricsProcessorBuilder.DEFAULT_SCOPE_NAME));
+      }
 
       // Construct and set application signals metrics processor
-      SpanProcessor spanMetricsProcessor =
+      AwsSpanMetricsProcessorBuilder spanMetricsProcessorBuilder =
           AwsSpanMetricsProcessorBuilder.create(
                   meterProvider, ResourceHolder.getResource(), meterProvider::forceFlush)
-              .build();
-      tracerProviderBuilder.addSpanProcessor(spanMetricsProcessor);
+              .setGenerator(generator)
+              .setAttributesHandoff(getMetricAttributesHandoff());
+      if (aggregator != null) {
+        spanMetricsProcessorBuilder.setAggregator(aggregator);
+      }
+      if (configProps.getBoolean(APPLICATION_SIGNALS_ASYNC_ENABLED_CONFIG, false)) {
+        configureAsyncSpanMetrics(spanMetricsProcessorBuilder, configProps);
+      }
+      addSpanProcessors(
+          tracerProviderBuilder,
+          configProps,
+          attributePropagatingSpanProcessor,
+          spanMetricsProcessorBuilder.build(),
+          null);
     }
     return tracerProviderBuilder;
   }
 
+  /**
+   * Registers the Application Signals span processors individually, or, if enabled, as the stages
+   * of a single {@link ApplicationSignalsSpanProcessor}.
+   */
+  private static void addSpanProcessors(
+      SdkTracerProviderBuilder tracerProviderBuilder,
+      ConfigProperties configProps,
+      AttributePropagatingSpanProcessor attributePropagatingSpanProcessor,
+      @Nullable AwsSpanMetricsProcessor spanMetricsProcessor,
+      @Nullable AwsUnsampledOnlySpanProcessor unsampledOnlySpanProcessor) {
+    if (configProps.getBoolean(APPLICATION_SIGNALS_FUSED_PROCESSOR_ENABLED_CONFIG, false)) {
+      tracerProviderBuilder.addSpanProcessor(
+          ApplicationSignalsSpanProcessor.create(
+              attributePropagatingSpanProcessor, spanMetricsProcessor, unsampledOnlySpanProcessor));
+      return;
+    }
+    tracerProviderBuilder.addSpanProcessor(attributePropagatingSpanProcessor);
+    if (unsampledOnlySpanProcessor != null) {
+      tracerProviderBuilder.addSpanProcessor(unsampledOnlySpanProcessor);
+    }
+    if (spanMetricsProcessor != null) {
+      tracerProviderBuilder.addSpanProcessor(spanMetricsProcessor);
+    }
+  }
+
+  /**
+   * Returns the generator shared by {@link AwsSpanMetricsProcessor} and {@link
+   * AwsMetricAttributesSpanExporter}, so that the attributes added to spans are consistent with the
+   * metrics they produce, including any values folded by the cardinality limit.
+   */
+  private synchronized MetricAttributeGenerator getMetricAttributeGenerator(
+      ConfigProperties configProps) {
+    if (metricAttributeGenerator == null) {
+      MetricAttributeGenerator generator =
+          new AwsMetricAttributeGenerator(
+              AwsMetricAttributeGenerator.DEFAULT_METRIC_ATTRIBUTES_CACHE_SIZE,
+              getPathTemplateLearner(configProps),
+              getIngressOperationResolver(configProps));
+      if (configProps.getBoolean(APPLICATION_SIGNALS_CARDINALITY_LIMIT_ENABLED_CONFIG, false)) {
+        int maxLocalOperations =
+            configProps.getInt(
+                APPLICATION_SIGNALS_CARDINALITY_LIMIT_LOCAL_OPERATIONS_CONFIG,
+                CardinalityLimitingMetricAttributeGenerator.DEFAULT_MAX_LOCAL_OPERATIONS);
+        int maxValuesPerOperation =
+            configProps.getInt(
+                APPLICATION_SIGNALS_CARDINALITY_LIMIT_VALUES_PER_OPERATION_CONFIG,
+                CardinalityLimitingMetricAttributeGenerator.DEFAULT_MAX_VALUES_PER_OPERATION);
+        if (maxLocalOperations <= 0 || maxValuesPerOperation <= 0) {
+          throw new ConfigurationException(
+              "Invalid AWS Application Signals cardinality limit, limits must be positive");
+        }
+        generator =
+            CardinalityLimitingMetricAttributeGenerator.create(
+                generator, maxLocalOperations, maxValuesPerOperation);
+        logger.info("AWS Application Signals metric attribute cardinality limit enabled");
+      }
+      metricAttributeGenerator = generator;
+    }
+    return metricAttributeGenerator;
+  }
+
+  @Nullable
+  private synchronized PathTemplateLearner getPathTemplateLearner(ConfigProperties configProps) {
+    if (pathTemplateLearner == null) {
+      pathTemplateLearner = Optional.ofNullable(createPathTemplateLearner(configProps));
+    }
+    return pathTemplateLearner.orElse(null);
+  }
+
+  @Nullable
+  private static PathTemplateLearner createPathTemplateLearner(ConfigProperties configProps) {
+    if (!configProps.getBoolean(APPLICATION_SIGNALS_PATH_TEMPLATES_ENABLED_CONFIG, false)) {
+      return null;
+    }
+    int maxValues =
+        configProps.getInt(
+            APPLICATION_SIGNALS_PATH_TEMPLATES_MAX_VALUES_CONFIG,
+            PathTemplateLearner.DEFAULT_MAX_VALUES);
+    if (maxValues <= 0 || maxValues > PathTemplateLearner.MAX_MAX_VALUES) {
+      throw new ConfigurationException(
+          "Invalid AWS Application Signals path templates configuration, max values must be"
+              + " between 1 and "
+              + PathTemplateLearner.MAX_MAX_VALUES);
+    }
+    PathTemplateLearner learner = PathTemplateLearner.create(maxValues);
+    learner.startCompaction(PathTemplateLearner.DEFAULT_COMPACTION_INTERVAL);
+    logger.info("AWS Application Signals URL path templates enabled");
+    return learner;
+  }
+
+  /**
+   * Returns the resolver shared by {@link AttributePropagatingSpanProcessor} and the generator, so
+   * that propagated local operations match those of service metrics, or null if ingress operations
+   * are not resolved from {@code http.route}.
+   */
+  @Nullable
+  private synchronized IngressOperationResolver getIngressOperationResolver(
+      ConfigProperties configProps) {
+    if (ingressOperationResolver == null) {
+      IngressOperationResolver resolver = null;
+      if (configProps.getBoolean(APPLICATION_SIGNALS_INGRESS_ROUTE_ENABLED_CONFIG, false)) {
+        resolver =
+            IngressOperationResolver.create(
+                IngressOperationResolver.DEFAULT_MEMO_SIZE, getPathTemplateLearner(configProps));
+        logger.info("AWS Application Signals ingress operations from http.route enabled");
+      }
+      ingressOperationResolver = Optional.ofNullable(resolver);
+    }
+    return ingressOperationResolver.orElse(null);
+  }
+
+  /**
+   * Returns the handoff shared by {@link AwsSpanMetricsProcessor} and {@link
+   * AwsMetricAttributesSpanExporter}, through which the exporter reuses the attributes the
+   * processor generated rather than generating them a second time for each sampled span.
+   */
+  private synchronized MetricAttributesHandoff getMetricAttributesHandoff() {
+    if (metricAttributesHandoff == null) {
+      metricAttributesHandoff = MetricAttributesHandoff.create();
+    }
+    return metricAttributesHandoff;
+  }
+
+  private static void configureAsyncSpanMetrics(
+      AwsSpanMetricsProcessorBuilder spanMetricsProcessorBuilder, ConfigProperties configProps) {
+    int workers = configProps.getInt(APPLICATION_SIGNALS_ASYNC_WORKERS_CONFIG, 1);
+    int queueSize =
+        configProps.getInt(
+            APPLICATION_SIGNALS_ASYNC_QUEUE_SIZE_CONFIG,
+            AwsSpanMetricsProcessorBuilder.DEFAULT_ASYNC_QUEUE_CAPACITY);
+    String overflowPolicy =
+        configProps.getString(APPLICATION_SIGNALS_ASYNC_OVERFLOW_POLICY_CONFIG, "inline");
+    if (workers <= 0 || queueSize <= 0) {
+      throw new ConfigurationException(
+          "Invalid AWS Application Signals async configuration, workers and queue size must be"
+              + " positive");
+    }
+    OverflowPolicy policy;
+    switch (overflowPolicy.toLowerCase(Locale.ROOT)) {
+      case "inline":
+        policy = OverflowPolicy.INLINE;
+        break;
+      case "drop":
+        policy = OverflowPolicy.DROP;
+        break;
+      default:
+        throw new ConfigurationException(
+            "Unsupported AWS Application Signals async overflow policy: " + overflowPolicy);
+    }
+    spanMetricsProcessorBuilder
+        .setAsyncWorkerCount(workers)
+        .setAsyncQueueCapacity(queueSize)
+        .setAsyncOverflowPolicy(policy);
+    logger.log(
+        Level.INFO,
+        "AWS Application Signals async span metrics enabled with {0} worker(s)",
+        workers);
+  }
+
   private SdkMeterProviderBuilder customizeMeterProvider(
       SdkMeterProviderBuilder sdkMeterProviderBuilder, ConfigProperties configProps) {
-
+    // Readers shared by the runtime and JMX metrics exporters, if enabled
+    List<RoutingMetricReader> sharedReaders = new ArrayList<>();
     if (isApplicationSignalsRuntimeEnabled(configProps)) {
       Set<String> registeredScopeNames = new HashSet<>(1);
       String jmxRuntimeScopeName = "io.opentelemetry.jmx";
@@ -257,16 +507,21 @@ public class AwsApplicationSignalsCustomizerProvider
 
       MetricExporter metricsExporter =
           ApplicationSignalsExporterProvider.INSTANCE.createExporter(configProps);
-      MetricReader metricReader =
-          ScopeBasedPeriodicMetricReader.create(metricsExporter, registeredScopeNames)
-              .setInterval(
-                  SDKMeterProviderBuilder.getMetricExportInterval(
-                      configProps, DEFAULT_METRIC_EXPORT_INTERVAL, logger))
-              .build();
-      sdkMeterProviderBuilder.registerMetricReader(metricReader);
+      SDKMeterProviderBuilder.registerScopeBasedMetricReader(
+          configProps,
+          sdkMeterProviderBuilder,
+          metricsExporter,
+          registeredScopeNames,
+          SDKMeterProviderBuilder.getMetricExportInterval(
+              configProps, DEFAULT_METRIC_EXPORT_INTERVAL, logger),
+          sharedReaders);
 
       logger.info("AWS Application Signals runtime metric collection enabled");
     }
+    if (SDKMeterProviderBuilder.isSharedMetricReaderEnabled(configProps)) {
+      AwsJMXMetricsCustomizerProvider.registerMetricReader(
+          sdkMeterProviderBuilder, configProps, sharedReaders);
+    }
     return sdkMeterProviderBuilder;
   }
 
@@ -285,11 +540,18 @@ public class AwsApplicationSignalsCustomizerProvider
                 .setEndpoint(tracesEndpoint)
                 .build();
       }
+    } else if (spanExporter instanceof OtlpHttpSpanExporter
+        && SDKMeterProviderBuilder.isSharedHttpTransportEnabled(configProps)) {
+      // Replaces the autoconfigured exporter, configured from the same properties
+      spanExporter.shutdown();
+      spanExporter = AwsOtlpHttpSpanExporter.builder().configure(configProps).build();
     }
 
     if (isApplicationSignalsEnabled(configProps)) {
       return AwsMetricAttributesSpanExporterBuilder.create(
               spanExporter, ResourceHolder.getResource())
+          .setGenerator(getMetricAttributeGenerator(configProps))
+          .setAttributesHandoff(getMetricAttributesHandoff())
           .build();
     }
 
@@ -305,6 +567,31 @@ public class AwsApplicationSignalsCustomizerProvider
     INSTANCE;
 
     public MetricExporter createExporter(ConfigProperties configProps) {
+      MetricExporter exporter = createOtlpExporter(configProps);
+      long maxChunkBytes =
+          configProps.getLong(APPLICATION_SIGNALS_EXPORT_MAX_CHUNK_BYTES_CONFIG, 0);
+      if (maxChunkBytes <= 0) {
+        return exporter;
+      }
+      int maxParallelChunks =
+          configProps.getInt(
+              APPLICATION_SIGNALS_EXPORT_MAX_PARALLEL_CHUNKS_CONFIG,
+              ChunkingMetricExporter.DEFAULT_MAX_PARALLEL_CHUNKS);
+      if (maxParallelChunks <= 0) {
+        throw new ConfigurationException(
+            "Invalid value for "
+                + APPLICATION_SIGNALS_EXPORT_MAX_PARALLEL_CHUNKS_CONFIG
+                + ": "
+                + maxParallelChunks);
+      }
+      logger.log(
+          Level.FINE,
+          "AWS Application Signals export chunked to {0} bytes, {1} chunk(s) in parallel",
+          new Object[] {maxChunkBytes, maxParallelChunks});
+      return ChunkingMetricExporter.create(exporter, maxChunkBytes, maxParallelChunks);
+    }
+
+    private MetricExporter createOtlpExporter(ConfigProperties configProps) {
       String protocol =
           OtlpConfigUtil.getOtlpProtocol(OtlpConfigUtil.DATA_TYPE_METRICS, configProps);
       logger.log(
@@ -324,9 +611,19 @@ public class AwsApplicationSignalsCustomizerProvider
             Level.FINE,
             String.format(
                 "AWS Application Signals export endpoint: %s", applicationSignalsEndpoint));
+        if (SDKMeterProviderBuilder.isSharedHttpTransportEnabled(configProps)) {
+          return AwsOtlpHttpMetricExporter.builder()
+              .configure(configProps)
+              .setEndpoint(applicationSignalsEndpoint)
+              .setDefaultAggregationSelector(this::getAggregation)
+              .setMemoryMode(SDKMeterProviderBuilder.getExporterMemoryMode(configProps))
+              .setAggregationTemporalitySelector(CloudWatchTemporalitySelector.alwaysDelta())
+              .build();
+        }
         return OtlpHttpMetricExporter.builder()
             .setEndpoint(applicationSignalsEndpoint)
             .setDefaultAggregationSelector(this::getAggregation)
+            .setMemoryMode(SDKMeterProviderBuilder.getExporterMemoryMode(configProps))
             .setAggregationTemporalitySelector(CloudWatchTemporalitySelector.alwaysDelta())
             .build();
       } else if (protocol.equals(OtlpConfigUtil.PROTOCOL_GRPC)) {
@@ -344,6 +641,7 @@ public class AwsApplicationSignalsCustomizerProvider
         return OtlpGrpcMetricExporter.builder()
             .setEndpoint(applicationSignalsEndpoint)
             .setDefaultAggregationSelector(this::getAggregation)
+            .setMemoryMode(SDKMeterProviderBuilder.getExporterMemoryMode(configProps))
             .setAggregationTemporalitySelector(CloudWatchTemporalitySelector.alwaysDelta())
             .build();
       }
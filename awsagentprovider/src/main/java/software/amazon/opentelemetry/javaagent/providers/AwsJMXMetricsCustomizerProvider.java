@@ -24,10 +24,12 @@ import io.opentelemetry.sdk.autoconfigure.spi.ConfigurationException;
 import io.opentelemetry.sdk.metrics.Aggregation;
 import io.opentelemetry.sdk.metrics.InstrumentType;
 import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
+import io.opentelemetry.sdk.metrics.export.AggregationTemporalitySelector;
 import io.opentelemetry.sdk.metrics.export.MetricExporter;
-import io.opentelemetry.sdk.metrics.export.MetricReader;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -51,14 +53,32 @@ public class AwsJMXMetricsCustomizerProvider implements AutoConfigurationCustomi
     autoConfiguration.addMeterProviderCustomizer(this::customizeMeterProvider);
   }
 
-  private boolean isOtelJMXEnabled(ConfigProperties configProps) {
+  private static boolean isOtelJMXEnabled(ConfigProperties configProps) {
     return configProps.getBoolean(OTEL_JMX_ENABLED_CONFIG, true)
         && configProps.getString(AWS_JMX_EXPORTER_ENDPOINT_CONFIG, "") != "";
   }
 
   private SdkMeterProviderBuilder customizeMeterProvider(
       SdkMeterProviderBuilder sdkMeterProviderBuilder, ConfigProperties configProps) {
+    // A shared reader is registered together with the Application Signals runtime metrics, see
+    // AwsApplicationSignalsCustomizerProvider
+    if (!SDKMeterProviderBuilder.isSharedMetricReaderEnabled(configProps)) {
+      registerMetricReader(sdkMeterProviderBuilder, configProps, new ArrayList<>());
+    }
+    return sdkMeterProviderBuilder;
+  }
 
+  /**
+   * Registers the reader of the JMX metrics if enabled, sharing one of {@code sharedReaders} if
+   * possible, see {@link SDKMeterProviderBuilder#registerScopeBasedMetricReader}. The JMX metrics
+   * are exported with cumulative temporality, unless they share a reader: the shared readers are
+   * those of the Application Signals runtime metrics, which are always delta, so the JMX metrics
+   * are then exported as delta too.
+   */
+  static void registerMetricReader(
+      SdkMeterProviderBuilder sdkMeterProviderBuilder,
+      ConfigProperties configProps,
+      List<RoutingMetricReader> sharedReaders) {
     if (isOtelJMXEnabled(configProps)) {
       Set<String> registeredScopeNames = new HashSet<>(1);
       String jmxRuntimeScopeName = "io.opentelemetry.jmx";
@@ -67,24 +87,31 @@ public class AwsJMXMetricsCustomizerProvider implements AutoConfigurationCustomi
       SDKMeterProviderBuilder.configureMetricFilter(
           configProps, sdkMeterProviderBuilder, registeredScopeNames, logger);
 
-      MetricExporter metricsExporter = JMXExporterProvider.INSTANCE.createExporter(configProps);
-      MetricReader metricReader =
-          ScopeBasedPeriodicMetricReader.create(metricsExporter, registeredScopeNames)
-              .setInterval(
-                  SDKMeterProviderBuilder.getMetricExportInterval(
-                      configProps, DEFAULT_METRIC_EXPORT_INTERVAL, logger))
-              .build();
-      sdkMeterProviderBuilder.registerMetricReader(metricReader);
+      AggregationTemporalitySelector temporalitySelector =
+          SDKMeterProviderBuilder.isSharedMetricReaderEnabled(configProps)
+                  && !sharedReaders.isEmpty()
+              ? CloudWatchTemporalitySelector.alwaysDelta()
+              : AggregationTemporalitySelector.alwaysCumulative();
+      MetricExporter metricsExporter =
+          JMXExporterProvider.INSTANCE.createExporter(configProps, temporalitySelector);
+      SDKMeterProviderBuilder.registerScopeBasedMetricReader(
+          configProps,
+          sdkMeterProviderBuilder,
+          metricsExporter,
+          registeredScopeNames,
+          SDKMeterProviderBuilder.getMetricExportInterval(
+              configProps, DEFAULT_METRIC_EXPORT_INTERVAL, logger),
+          sharedReaders);
 
       logger.info("AWS JMX metric collection enabled");
     }
-    return sdkMeterProviderBuilder;
   }
 
   private enum JMXExporterProvider {
     INSTANCE;
 
-    public MetricExporter createExporter(ConfigProperties configProps) {
+    public MetricExporter createExporter(
+        ConfigProperties configProps, AggregationTemporalitySelector temporalitySelector) {
       String protocol =
           OtlpConfigUtil.getOtlpProtocol(OtlpConfigUtil.DATA_TYPE_METRICS, configProps);
       logger.log(Level.FINE, String.format("AWS JMX metrics export protocol: %s", protocol));
@@ -94,9 +121,20 @@ public class AwsJMXMetricsCustomizerProvider implements AutoConfigurationCustomi
         otelJMXEndpoint = configProps.getString(AWS_JMX_EXPORTER_ENDPOINT_CONFIG);
         logger.log(
             Level.FINE, String.format("AWS JMX metrics export endpoint: %s", otelJMXEndpoint));
+        if (SDKMeterProviderBuilder.isSharedHttpTransportEnabled(configProps)) {
+          return AwsOtlpHttpMetricExporter.builder()
+              .configure(configProps)
+              .setEndpoint(otelJMXEndpoint)
+              .setDefaultAggregationSelector(this::getAggregation)
+              .setMemoryMode(SDKMeterProviderBuilder.getExporterMemoryMode(configProps))
+              .setAggregationTemporalitySelector(temporalitySelector)
+              .build();
+        }
         return OtlpHttpMetricExporter.builder()
             .setEndpoint(otelJMXEndpoint)
             .setDefaultAggregationSelector(this::getAggregation)
+            .setMemoryMode(SDKMeterProviderBuilder.getExporterMemoryMode(configProps))
+            .setAggregationTemporalitySelector(temporalitySelector)
             .build();
       }
       throw new ConfigurationException("Unsupported AWS JMX metrics export protocol: " + protocol);
@@ -70,16 +70,13 @@ import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys
 import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_STREAM_NAME;
 import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_TABLE_NAME;
 import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.GEN_AI_REQUEST_MODEL;
-import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.MAX_KEYWORD_LENGTH;
-import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.SQL_DIALECT_PATTERN;
+import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.SQL_DIALECT_KEYWORDS;
 import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.UNKNOWN_OPERATION;
 import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.UNKNOWN_REMOTE_OPERATION;
 import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.UNKNOWN_REMOTE_SERVICE;
 import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.isAwsSDKSpan;
 import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.isDBSpan;
-import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.isKeyPresent;
 
-import com.amazonaws.arn.Arn;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.common.AttributesBuilder;
@@ -90,17 +87,11 @@ import io.opentelemetry.sdk.trace.data.ExceptionEventData;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.semconv.ResourceAttributes;
 import io.opentelemetry.semconv.SemanticAttributes;
-import java.lang.reflect.Method;
-import java.net.MalformedURLException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import javax.annotation.Nullable;
 
 /**
@@ -134,43 +125,99 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
 
   private static final String DB_CONNECTION_RESOURCE_TYPE = "DB::Connection";
 
+  // Upper bound on distinct Step Functions, SNS and Secrets Manager ARNs held by the cache below.
+  private static final int ARN_IDENTIFIERS_CACHE_SIZE = 256;
+
+  // Resource identifiers derived from ARNs, keyed by the ARN attribute value.
+  private static final MemoizingCache<String, ArnIdentifiers> arnIdentifiersCache =
+      new MemoizingCache<>(ARN_IDENTIFIERS_CACHE_SIZE);
+
+  // Upper bound on distinct service and dependency attribute sets held by the cache below.
+  static final int DEFAULT_METRIC_ATTRIBUTES_CACHE_SIZE = 2048;
+
+  // Built attribute sets, keyed by themselves so that equal sets share one instance.
+  private final MemoizingCache<Attributes, Attributes> metricAttributesCache;
+
+  // Reused per thread, so that generating attributes that are cached allocates no builder.
+  private final ThreadLocal<CachingAttributesBuilder> metricAttributesBuilders;
+
+  // If set, remote operations derived from URLs are learned path templates, not first segments.
+  @Nullable private final PathTemplateLearner pathTemplates;
+
+  // If set, ingress operations are resolved from http.route before the span name.
+  @Nullable private final IngressOperationResolver ingressOperations;
+
+  AwsMetricAttributeGenerator() {
+    this(DEFAULT_METRIC_ATTRIBUTES_CACHE_SIZE);
+  }
+
+  AwsMetricAttributeGenerator(int metricAttributesCacheSize) {
+    this(metricAttributesCacheSize, null);
+  }
+
+  AwsMetricAttributeGenerator(
+      int metricAttributesCacheSize, @Nullable PathTemplateLearner pathTemplates) {
+    this(metricAttributesCacheSize, pathTemplates, null);
+  }
+
+  AwsMetricAttributeGenerator(
+      int metricAttributesCacheSize,
+      @Nullable PathTemplateLearner pathTemplates,
+      @Nullable IngressOperationResolver ingressOperations) {
+    this.metricAttributesCache = new MemoizingCache<>(metricAttributesCacheSize);
+    this.metricAttributesBuilders =
+        ThreadLocal.withInitial(() -> new CachingAttributesBuilder(metricAttributesCache));
+    this.pathTemplates = pathTemplates;
+    this.ingressOperations = ingressOperations;
+  }
+
+  /** Exposes cache hit, miss and eviction counts, for sizing. */
+  MemoizingCache<Attributes, Attributes> getMetricAttributesCache() {
+    return metricAttributesCache;
+  }
+
   // This method is used by the AwsSpanMetricsProcessor to generate service and dependency metrics
   @Override
   public Map<String, Attributes> generateMetricAttributeMapFromSpan(
       SpanData span, Resource resource) {
     Map<String, Attributes> attributesMap = new HashMap<>();
-    if (AwsSpanProcessingUtil.shouldGenerateServiceMetricAttributes(span)) {
+    // Read every span attribute we may need in one pass, rather than re-scanning per lookup
+    SpanAttributesSnapshot attributes = SpanAttributesSnapshot.of(span);
+    if (AwsSpanProcessingUtil.shouldGenerateServiceMetricAttributes(span, attributes)) {
       attributesMap.put(
-          MetricAttributeGenerator.SERVICE_METRIC, generateServiceMetricAttributes(span, resource));
+          MetricAttributeGenerator.SERVICE_METRIC,
+          generateServiceMetricAttributes(span, attributes, resource));
     }
-    if (AwsSpanProcessingUtil.shouldGenerateDependencyMetricAttributes(span)) {
+    if (AwsSpanProcessingUtil.shouldGenerateDependencyMetricAttributes(span, attributes)) {
       attributesMap.put(
           MetricAttributeGenerator.DEPENDENCY_METRIC,
-          generateDependencyMetricAttributes(span, resource));
+          generateDependencyMetricAttributes(span, attributes, resource));
     }
 
     return attributesMap;
   }
 
-  private Attributes generateServiceMetricAttributes(SpanData span, Resource resource) {
-    AttributesBuilder builder = Attributes.builder();
+  private Attributes generateServiceMetricAttributes(
+      SpanData span, SpanAttributesSnapshot attributes, Resource resource) {
+    AttributesBuilder builder = metricAttributesBuilders.get().reset();
     setService(resource, span, builder);
-    setIngressOperation(span, builder);
+    setIngressOperation(span, attributes, builder, ingressOperations);
     setSpanKindForService(span, builder);
-    setHttpStatus(span, builder);
+    setHttpStatus(span, attributes, builder);
 
     return builder.build();
   }
 
-  private Attributes generateDependencyMetricAttributes(SpanData span, Resource resource) {
-    AttributesBuilder builder = Attributes.builder();
+  private Attributes generateDependencyMetricAttributes(
+      SpanData span, SpanAttributesSnapshot attributes, Resource resource) {
+    AttributesBuilder builder = metricAttributesBuilders.get().reset();
     setService(resource, span, builder);
-    setEgressOperation(span, builder);
-    setRemoteServiceAndOperation(span, builder);
-    setRemoteResourceTypeAndIdentifier(span, builder);
+    setEgressOperation(span, attributes, builder);
+    setRemoteServiceAndOperation(span, attributes, builder, pathTemplates);
+    setRemoteResourceTypeAndIdentifier(attributes, builder);
     setSpanKindForDependency(span, builder);
-    setHttpStatus(span, builder);
-    setRemoteDbUser(span, builder);
+    setHttpStatus(span, attributes, builder);
+    setRemoteDbUser(attributes, builder);
 
     return builder.build();
   }
@@ -184,10 +231,18 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
   /**
    * Ingress operation (i.e. operation for Server and Consumer spans) will be generated from
    * "http.method + http.target/with the first API path parameter" if the default span name equals
-   * null, UnknownOperation or http.method value.
+   * null, UnknownOperation or http.method value. With an {@link IngressOperationResolver}, {@code
+   * http.route} is preferred.
    */
-  private static void setIngressOperation(SpanData span, AttributesBuilder builder) {
-    String operation = AwsSpanProcessingUtil.getIngressOperation(span);
+  private static void setIngressOperation(
+      SpanData span,
+      SpanAttributesSnapshot attributes,
+      AttributesBuilder builder,
+      @Nullable IngressOperationResolver ingressOperations) {
+    String operation =
+        ingressOperations != null
+            ? ingressOperations.getIngressOperation(span, attributes)
+            : AwsSpanProcessingUtil.getIngressOperation(span, attributes);
     if (operation.equals(UNKNOWN_OPERATION)) {
       logUnknownAttribute(AWS_LOCAL_OPERATION, span);
     }
@@ -199,8 +254,9 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
    * special span attribute, {@link AwsAttributeKeys#AWS_LOCAL_OPERATION}. This attribute is
    * generated with a separate SpanProcessor, {@link AttributePropagatingSpanProcessor}
    */
-  private static void setEgressOperation(SpanData span, AttributesBuilder builder) {
-    String operation = AwsSpanProcessingUtil.getEgressOperation(span);
+  private static void setEgressOperation(
+      SpanData span, SpanAttributesSnapshot attributes, AttributesBuilder builder) {
+    String operation = AwsSpanProcessingUtil.getEgressOperation(span, attributes);
     if (operation == null) {
       logUnknownAttribute(AWS_LOCAL_OPERATION, span);
       operation = UNKNOWN_OPERATION;
@@ -245,46 +301,54 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
    * `net.peer.sock.port` and `http.url` will be used to derive the RemoteService. And `http.method`
    * and `http.url` will be used to derive the RemoteOperation.
    */
-  private static void setRemoteServiceAndOperation(SpanData span, AttributesBuilder builder) {
+  private static void setRemoteServiceAndOperation(
+      SpanData span,
+      SpanAttributesSnapshot attributes,
+      AttributesBuilder builder,
+      @Nullable PathTemplateLearner pathTemplates) {
     String remoteService = UNKNOWN_REMOTE_SERVICE;
     String remoteOperation = UNKNOWN_REMOTE_OPERATION;
 
-    if (isKeyPresent(span, AWS_REMOTE_SERVICE) || isKeyPresent(span, AWS_REMOTE_OPERATION)) {
-      remoteService = getRemoteService(span, AWS_REMOTE_SERVICE);
-      remoteOperation = getRemoteOperation(span, AWS_REMOTE_OPERATION);
-    } else if (isKeyPresent(span, RPC_SERVICE) || isKeyPresent(span, RPC_METHOD)) {
-      remoteService = normalizeRemoteServiceName(span, getRemoteService(span, RPC_SERVICE));
-      remoteOperation = getRemoteOperation(span, RPC_METHOD);
-
-    } else if (isDBSpan(span)) {
-      remoteService = getRemoteService(span, DB_SYSTEM);
-      if (isKeyPresent(span, DB_OPERATION)) {
-        remoteOperation = getRemoteOperation(span, DB_OPERATION);
+    if (attributes.isKeyPresent(AWS_REMOTE_SERVICE)
+        || attributes.isKeyPresent(AWS_REMOTE_OPERATION)) {
+      remoteService = getRemoteService(attributes, AWS_REMOTE_SERVICE);
+      remoteOperation = getRemoteOperation(attributes, AWS_REMOTE_OPERATION);
+    } else if (attributes.isKeyPresent(RPC_SERVICE) || attributes.isKeyPresent(RPC_METHOD)) {
+      remoteService =
+          normalizeRemoteServiceName(attributes, getRemoteService(attributes, RPC_SERVICE));
+      remoteOperation = getRemoteOperation(attributes, RPC_METHOD);
+
+    } else if (isDBSpan(attributes)) {
+      remoteService = getRemoteService(attributes, DB_SYSTEM);
+      if (attributes.isKeyPresent(DB_OPERATION)) {
+        remoteOperation = getRemoteOperation(attributes, DB_OPERATION);
       } else {
-        remoteOperation = getDBStatementRemoteOperation(span, DB_STATEMENT);
+        remoteOperation = getDBStatementRemoteOperation(attributes, DB_STATEMENT);
       }
-    } else if (isKeyPresent(span, FAAS_INVOKED_NAME) || isKeyPresent(span, FAAS_TRIGGER)) {
-      remoteService = getRemoteService(span, FAAS_INVOKED_NAME);
-      remoteOperation = getRemoteOperation(span, FAAS_TRIGGER);
-    } else if (isKeyPresent(span, MESSAGING_SYSTEM) || isKeyPresent(span, MESSAGING_OPERATION)) {
-      remoteService = getRemoteService(span, MESSAGING_SYSTEM);
-      remoteOperation = getRemoteOperation(span, MESSAGING_OPERATION);
-    } else if (isKeyPresent(span, GRAPHQL_OPERATION_TYPE)) {
+    } else if (attributes.isKeyPresent(FAAS_INVOKED_NAME)
+        || attributes.isKeyPresent(FAAS_TRIGGER)) {
+      remoteService = getRemoteService(attributes, FAAS_INVOKED_NAME);
+      remoteOperation = getRemoteOperation(attributes, FAAS_TRIGGER);
+    } else if (attributes.isKeyPresent(MESSAGING_SYSTEM)
+        || attributes.isKeyPresent(MESSAGING_OPERATION)) {
+      remoteService = getRemoteService(attributes, MESSAGING_SYSTEM);
+      remoteOperation = getRemoteOperation(attributes, MESSAGING_OPERATION);
+    } else if (attributes.isKeyPresent(GRAPHQL_OPERATION_TYPE)) {
       remoteService = GRAPHQL;
-      remoteOperation = getRemoteOperation(span, GRAPHQL_OPERATION_TYPE);
+      remoteOperation = getRemoteOperation(attributes, GRAPHQL_OPERATION_TYPE);
     }
 
     // Peer service takes priority as RemoteService over everything but AWS Remote.
-    if (isKeyPresent(span, PEER_SERVICE) && !isKeyPresent(span, AWS_REMOTE_SERVICE)) {
-      remoteService = getRemoteService(span, PEER_SERVICE);
+    if (attributes.isKeyPresent(PEER_SERVICE) && !attributes.isKeyPresent(AWS_REMOTE_SERVICE)) {
+      remoteService = getRemoteService(attributes, PEER_SERVICE);
     }
 
     // try to derive RemoteService and RemoteOperation from the other related attributes
     if (remoteService.equals(UNKNOWN_REMOTE_SERVICE)) {
-      remoteService = generateRemoteService(span);
+      remoteService = generateRemoteService(span, attributes);
     }
     if (remoteOperation.equals(UNKNOWN_REMOTE_OPERATION)) {
-      remoteOperation = generateRemoteOperation(span);
+      remoteOperation = generateRemoteOperation(span, attributes, pathTemplates);
     }
 
     builder.put(AWS_REMOTE_SERVICE, remoteService);
@@ -293,30 +357,32 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
 
   /**
    * When the remote call operation is undetermined for http use cases, will try to extract the
-   * remote operation name from http url string
+   * remote operation name from http url string. This is the first path segment, or with path
+   * templates enabled, the learned template of the path.
    */
-  private static String generateRemoteOperation(SpanData span) {
+  private static String generateRemoteOperation(
+      SpanData span,
+      SpanAttributesSnapshot attributes,
+      @Nullable PathTemplateLearner pathTemplates) {
     String remoteOperation = UNKNOWN_REMOTE_OPERATION;
-    if (isKeyPresent(span, URL_FULL) || isKeyPresent(span, HTTP_URL)) {
+    if (attributes.isKeyPresent(URL_FULL) || attributes.isKeyPresent(HTTP_URL)) {
       String httpUrl =
-          isKeyPresent(span, URL_FULL)
-              ? span.getAttributes().get(URL_FULL)
-              : span.getAttributes().get(HTTP_URL);
-      try {
-        URL url;
-        if (httpUrl != null) {
-          url = new URL(httpUrl);
-          remoteOperation = AwsSpanProcessingUtil.extractAPIPathValue(url.getPath());
+          attributes.isKeyPresent(URL_FULL) ? attributes.get(URL_FULL) : attributes.get(HTTP_URL);
+      if (httpUrl != null) {
+        String path =
+            pathTemplates != null
+                ? getPathTemplate(httpUrl, pathTemplates)
+                : UrlScanner.getRemoteOperationPath(httpUrl);
+        if (path != null) {
+          remoteOperation = path;
         }
-      } catch (MalformedURLException e) {
-        logger.log(Level.FINEST, "invalid http.url attribute: ", httpUrl);
       }
     }
-    if (isKeyPresent(span, HTTP_REQUEST_METHOD) || isKeyPresent(span, HTTP_METHOD)) {
+    if (attributes.isKeyPresent(HTTP_REQUEST_METHOD) || attributes.isKeyPresent(HTTP_METHOD)) {
       String httpMethod =
-          isKeyPresent(span, HTTP_REQUEST_METHOD)
-              ? span.getAttributes().get(HTTP_REQUEST_METHOD)
-              : span.getAttributes().get(HTTP_METHOD);
+          attributes.isKeyPresent(HTTP_REQUEST_METHOD)
+              ? attributes.get(HTTP_REQUEST_METHOD)
+              : attributes.get(HTTP_METHOD);
       remoteOperation = httpMethod + " " + remoteOperation;
     }
     if (remoteOperation.equals(UNKNOWN_REMOTE_OPERATION)) {
@@ -325,47 +391,48 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
     return remoteOperation;
   }
 
-  private static String generateRemoteService(SpanData span) {
+  @Nullable
+  private static String getPathTemplate(String httpUrl, PathTemplateLearner pathTemplates) {
+    String service = UrlScanner.getRemoteService(httpUrl);
+    String path = UrlScanner.getPath(httpUrl);
+    if (service == null || path == null) {
+      return UrlScanner.getRemoteOperationPath(httpUrl);
+    }
+    return pathTemplates.getTemplate(service, path);
+  }
+
+  private static String generateRemoteService(SpanData span, SpanAttributesSnapshot attributes) {
     String remoteService = UNKNOWN_REMOTE_SERVICE;
-    if (isKeyPresent(span, SERVER_ADDRESS)) {
-      remoteService = getRemoteService(span, SERVER_ADDRESS);
-      if (isKeyPresent(span, SERVER_PORT)) {
-        Long port = span.getAttributes().get(SERVER_PORT);
+    if (attributes.isKeyPresent(SERVER_ADDRESS)) {
+      remoteService = getRemoteService(attributes, SERVER_ADDRESS);
+      if (attributes.isKeyPresent(SERVER_PORT)) {
+        Long port = attributes.get(SERVER_PORT);
         remoteService += ":" + port;
       }
-    } else if (isKeyPresent(span, NET_PEER_NAME)) {
-      remoteService = getRemoteService(span, NET_PEER_NAME);
-      if (isKeyPresent(span, NET_PEER_PORT)) {
-        Long port = span.getAttributes().get(NET_PEER_PORT);
+    } else if (attributes.isKeyPresent(NET_PEER_NAME)) {
+      remoteService = getRemoteService(attributes, NET_PEER_NAME);
+      if (attributes.isKeyPresent(NET_PEER_PORT)) {
+        Long port = attributes.get(NET_PEER_PORT);
         remoteService += ":" + port;
       }
-    } else if (isKeyPresent(span, NETWORK_PEER_ADDRESS)) {
-      remoteService = getRemoteService(span, NETWORK_PEER_ADDRESS);
-      if (isKeyPresent(span, NETWORK_PEER_PORT)) {
-        Long port = span.getAttributes().get(NETWORK_PEER_PORT);
+    } else if (attributes.isKeyPresent(NETWORK_PEER_ADDRESS)) {
+      remoteService = getRemoteService(attributes, NETWORK_PEER_ADDRESS);
+      if (attributes.isKeyPresent(NETWORK_PEER_PORT)) {
+        Long port = attributes.get(NETWORK_PEER_PORT);
         remoteService += ":" + port;
       }
-    } else if (isKeyPresent(span, NET_SOCK_PEER_ADDR)) {
-      remoteService = getRemoteService(span, NET_SOCK_PEER_ADDR);
-      if (isKeyPresent(span, NET_SOCK_PEER_PORT)) {
-        Long port = span.getAttributes().get(NET_SOCK_PEER_PORT);
+    } else if (attributes.isKeyPresent(NET_SOCK_PEER_ADDR)) {
+      remoteService = getRemoteService(attributes, NET_SOCK_PEER_ADDR);
+      if (attributes.isKeyPresent(NET_SOCK_PEER_PORT)) {
+        Long port = attributes.get(NET_SOCK_PEER_PORT);
         remoteService += ":" + port;
       }
-    } else if (isKeyPresent(span, URL_FULL) || isKeyPresent(span, HTTP_URL)) {
+    } else if (attributes.isKeyPresent(URL_FULL) || attributes.isKeyPresent(HTTP_URL)) {
       String httpUrl =
-          isKeyPresent(span, URL_FULL)
-              ? span.getAttributes().get(URL_FULL)
-              : span.getAttributes().get(HTTP_URL);
-      try {
-        URL url = new URL(httpUrl);
-        if (!url.getHost().isEmpty()) {
-          remoteService = url.getHost();
-          if (url.getPort() != -1) {
-            remoteService += ":" + url.getPort();
-          }
-        }
-      } catch (MalformedURLException e) {
-        logger.log(Level.FINEST, "invalid http.url attribute: ", httpUrl);
+          attributes.isKeyPresent(URL_FULL) ? attributes.get(URL_FULL) : attributes.get(HTTP_URL);
+      String host = httpUrl != null ? UrlScanner.getRemoteService(httpUrl) : null;
+      if (host != null) {
+        remoteService = host;
       }
     } else {
       logUnknownAttribute(AWS_REMOTE_SERVICE, span);
@@ -380,8 +447,9 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
    * can detect remote resource information for. Long term, we would like to normalize service name
    * in the upstream.
    */
-  private static String normalizeRemoteServiceName(SpanData span, String serviceName) {
-    if (AwsSpanProcessingUtil.isAwsSDKSpan(span)) {
+  private static String normalizeRemoteServiceName(
+      SpanAttributesSnapshot attributes, String serviceName) {
+    if (AwsSpanProcessingUtil.isAwsSDKSpan(attributes)) {
       switch (serviceName) {
         case "AmazonDynamoDBv2": // AWS SDK v1
         case "DynamoDb": // AWS SDK v2
@@ -439,93 +507,83 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
    * href="https://docs.aws.amazon.com/cloudcontrolapi/latest/userguide/supported-resources.html">AWS
    * Cloud Control resource format</a>.
    */
-  private static void setRemoteResourceTypeAndIdentifier(SpanData span, AttributesBuilder builder) {
+  private static void setRemoteResourceTypeAndIdentifier(
+      SpanAttributesSnapshot attributes, AttributesBuilder builder) {
     Optional<String> remoteResourceType = Optional.empty();
     Optional<String> remoteResourceIdentifier = Optional.empty();
     Optional<String> cloudformationPrimaryIdentifier = Optional.empty();
 
-    if (isAwsSDKSpan(span)) {
-      if (isKeyPresent(span, AWS_TABLE_NAME)) {
+    if (isAwsSDKSpan(attributes)) {
+      if (attributes.isKeyPresent(AWS_TABLE_NAME)) {
         remoteResourceType = Optional.of(NORMALIZED_DYNAMO_DB_SERVICE_NAME + "::Table");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_TABLE_NAME)));
-      } else if (isKeyPresent(span, AWS_STREAM_NAME)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_TABLE_NAME)));
+      } else if (attributes.isKeyPresent(AWS_STREAM_NAME)) {
         remoteResourceType = Optional.of(NORMALIZED_KINESIS_SERVICE_NAME + "::Stream");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_STREAM_NAME)));
-      } else if (isKeyPresent(span, AWS_BUCKET_NAME)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_STREAM_NAME)));
+      } else if (attributes.isKeyPresent(AWS_BUCKET_NAME)) {
         remoteResourceType = Optional.of(NORMALIZED_S3_SERVICE_NAME + "::Bucket");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_BUCKET_NAME)));
-      } else if (isKeyPresent(span, AWS_QUEUE_NAME)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_BUCKET_NAME)));
+      } else if (attributes.isKeyPresent(AWS_QUEUE_NAME)) {
         remoteResourceType = Optional.of(NORMALIZED_SQS_SERVICE_NAME + "::Queue");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_QUEUE_NAME)));
-      } else if (isKeyPresent(span, AWS_QUEUE_URL)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_QUEUE_NAME)));
+      } else if (attributes.isKeyPresent(AWS_QUEUE_URL)) {
         remoteResourceType = Optional.of(NORMALIZED_SQS_SERVICE_NAME + "::Queue");
         remoteResourceIdentifier =
-            SqsUrlParser.getQueueName(escapeDelimiters(span.getAttributes().get(AWS_QUEUE_URL)));
-      } else if (isKeyPresent(span, AWS_AGENT_ID)) {
+            SqsUrlParser.getQueueName(escapeDelimiters(attributes.get(AWS_QUEUE_URL)));
+      } else if (attributes.isKeyPresent(AWS_AGENT_ID)) {
         remoteResourceType = Optional.of(NORMALIZED_BEDROCK_SERVICE_NAME + "::Agent");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_AGENT_ID)));
-      } else if (isKeyPresent(span, AWS_KNOWLEDGE_BASE_ID)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_AGENT_ID)));
+      } else if (attributes.isKeyPresent(AWS_KNOWLEDGE_BASE_ID)) {
         remoteResourceType = Optional.of(NORMALIZED_BEDROCK_SERVICE_NAME + "::KnowledgeBase");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_KNOWLEDGE_BASE_ID)));
-      } else if (isKeyPresent(span, AWS_DATA_SOURCE_ID)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_KNOWLEDGE_BASE_ID)));
+      } else if (attributes.isKeyPresent(AWS_DATA_SOURCE_ID)) {
         remoteResourceType = Optional.of(NORMALIZED_BEDROCK_SERVICE_NAME + "::DataSource");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_DATA_SOURCE_ID)));
-      } else if (isKeyPresent(span, AWS_GUARDRAIL_ID)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_DATA_SOURCE_ID)));
+      } else if (attributes.isKeyPresent(AWS_GUARDRAIL_ID)) {
         remoteResourceType = Optional.of(NORMALIZED_BEDROCK_SERVICE_NAME + "::Guardrail");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_GUARDRAIL_ID)));
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_GUARDRAIL_ID)));
         cloudformationPrimaryIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_GUARDRAIL_ARN)));
-      } else if (isKeyPresent(span, GEN_AI_REQUEST_MODEL)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_GUARDRAIL_ARN)));
+      } else if (attributes.isKeyPresent(GEN_AI_REQUEST_MODEL)) {
         remoteResourceType = Optional.of(NORMALIZED_BEDROCK_SERVICE_NAME + "::Model");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(GEN_AI_REQUEST_MODEL)));
-      } else if (isKeyPresent(span, AWS_STATE_MACHINE_ARN)) {
+            Optional.ofNullable(escapeDelimiters(attributes.get(GEN_AI_REQUEST_MODEL)));
+      } else if (attributes.isKeyPresent(AWS_STATE_MACHINE_ARN)) {
         remoteResourceType = Optional.of(NORMALIZED_STEPFUNCTIONS_SERVICE_NAME + "::StateMachine");
-        remoteResourceIdentifier =
-            getSfnResourceNameFromArn(
-                Optional.ofNullable(
-                    escapeDelimiters(span.getAttributes().get(AWS_STATE_MACHINE_ARN))));
-        cloudformationPrimaryIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_STATE_MACHINE_ARN)));
-      } else if (isKeyPresent(span, AWS_STEP_FUNCTIONS_ACTIVITY_ARN)) {
+        ArnIdentifiers arn = getArnIdentifiers(attributes.get(AWS_STATE_MACHINE_ARN));
+        remoteResourceIdentifier = arn.resourceName;
+        cloudformationPrimaryIdentifier = arn.primaryIdentifier;
+      } else if (attributes.isKeyPresent(AWS_STEP_FUNCTIONS_ACTIVITY_ARN)) {
         remoteResourceType = Optional.of(NORMALIZED_STEPFUNCTIONS_SERVICE_NAME + "::Activity");
-        remoteResourceIdentifier =
-            getSfnResourceNameFromArn(
-                Optional.ofNullable(
-                    escapeDelimiters(span.getAttributes().get(AWS_STEP_FUNCTIONS_ACTIVITY_ARN))));
-        cloudformationPrimaryIdentifier =
-            Optional.ofNullable(
-                escapeDelimiters(span.getAttributes().get(AWS_STEP_FUNCTIONS_ACTIVITY_ARN)));
-      } else if (isKeyPresent(span, AWS_SNS_TOPIC_ARN)) {
+        ArnIdentifiers arn = getArnIdentifiers(attributes.get(AWS_STEP_FUNCTIONS_ACTIVITY_ARN));
+        remoteResourceIdentifier = arn.resourceName;
+        cloudformationPrimaryIdentifier = arn.primaryIdentifier;
+      } else if (attributes.isKeyPresent(AWS_SNS_TOPIC_ARN)) {
         remoteResourceType = Optional.of(NORMALIZED_SNS_SERVICE_NAME + "::Topic");
-        remoteResourceIdentifier =
-            getSnsResourceNameFromArn(
-                Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_SNS_TOPIC_ARN))));
-        cloudformationPrimaryIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_SNS_TOPIC_ARN)));
-      } else if (isKeyPresent(span, AWS_SECRET_ARN)) {
+        ArnIdentifiers arn = getArnIdentifiers(attributes.get(AWS_SNS_TOPIC_ARN));
+        remoteResourceIdentifier = arn.resource;
+        cloudformationPrimaryIdentifier = arn.primaryIdentifier;
+      } else if (attributes.isKeyPresent(AWS_SECRET_ARN)) {
         remoteResourceType = Optional.of(NORMALIZED_SECRETSMANAGER_SERVICE_NAME + "::Secret");
-        remoteResourceIdentifier =
-            getSecretsManagerResourceNameFromArn(
-                Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_SECRET_ARN))));
-        cloudformationPrimaryIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_SECRET_ARN)));
-      } else if (isKeyPresent(span, AWS_LAMBDA_RESOURCE_ID)) {
+        ArnIdentifiers arn = getArnIdentifiers(attributes.get(AWS_SECRET_ARN));
+        remoteResourceIdentifier = arn.resourceName;
+        cloudformationPrimaryIdentifier = arn.primaryIdentifier;
+      } else if (attributes.isKeyPresent(AWS_LAMBDA_RESOURCE_ID)) {
         remoteResourceType = Optional.of(NORMALIZED_LAMBDA_SERVICE_NAME + "::EventSourceMapping");
         remoteResourceIdentifier =
-            Optional.ofNullable(escapeDelimiters(span.getAttributes().get(AWS_LAMBDA_RESOURCE_ID)));
+            Optional.ofNullable(escapeDelimiters(attributes.get(AWS_LAMBDA_RESOURCE_ID)));
       }
-    } else if (isDBSpan(span)) {
+    } else if (isDBSpan(attributes)) {
       remoteResourceType = Optional.of(DB_CONNECTION_RESOURCE_TYPE);
-      remoteResourceIdentifier = getDbConnection(span);
+      remoteResourceIdentifier = getDbConnection(attributes);
     }
 
     if (!cloudformationPrimaryIdentifier.isPresent()) {
@@ -539,19 +597,33 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
     }
   }
 
-  private static Optional<String> getSecretsManagerResourceNameFromArn(Optional<String> stringArn) {
-    Arn resourceArn = Arn.fromString(stringArn.get());
-    return Optional.of(resourceArn.getResource().toString().split(":")[1]);
+  private static ArnIdentifiers getArnIdentifiers(String arn) {
+    return arnIdentifiersCache.computeIfAbsent(arn, ArnIdentifiers::create);
   }
 
-  private static Optional<String> getSfnResourceNameFromArn(Optional<String> stringArn) {
-    Arn resourceArn = Arn.fromString(stringArn.get());
-    return Optional.of(resourceArn.getResource().toString().split(":")[1]);
-  }
+  /**
+   * The remote resource identifiers of a resource given by its ARN. The ARN itself, with delimiters
+   * escaped, is the CloudFormation primary identifier. The remote resource identifier is either the
+   * resource part of the ARN (SNS) or the resource name within it (Step Functions, Secrets
+   * Manager), and is empty if the ARN is malformed.
+   */
+  private static final class ArnIdentifiers {
+    private final Optional<String> primaryIdentifier;
+    private final Optional<String> resource;
+    private final Optional<String> resourceName;
 
-  private static Optional<String> getSnsResourceNameFromArn(Optional<String> stringArn) {
-    Arn resourceArn = Arn.fromString(stringArn.get());
-    return Optional.of(resourceArn.getResource().toString());
+    private ArnIdentifiers(
+        String primaryIdentifier, @Nullable String resource, @Nullable String resourceName) {
+      this.primaryIdentifier = Optional.of(primaryIdentifier);
+      this.resource = Optional.ofNullable(resource);
+      this.resourceName = Optional.ofNullable(resourceName);
+    }
+
+    static ArnIdentifiers create(String arn) {
+      String escapedArn = escapeDelimiters(arn);
+      return new ArnIdentifiers(
+          escapedArn, ArnParser.getResource(escapedArn), ArnParser.getResourceName(escapedArn));
+    }
   }
 
   /**
@@ -578,24 +650,24 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
    * If address is not present, neither RemoteResourceType nor RemoteResourceIdentifier will be
    * provided.
    */
-  private static Optional<String> getDbConnection(SpanData span) {
-    String dbName = span.getAttributes().get(DB_NAME);
+  private static Optional<String> getDbConnection(SpanAttributesSnapshot attributes) {
+    String dbName = attributes.get(DB_NAME);
     Optional<String> dbConnection = Optional.empty();
 
-    if (isKeyPresent(span, SERVER_ADDRESS)) {
-      String serverAddress = span.getAttributes().get(SERVER_ADDRESS);
-      Long serverPort = span.getAttributes().get(SERVER_PORT);
+    if (attributes.isKeyPresent(SERVER_ADDRESS)) {
+      String serverAddress = attributes.get(SERVER_ADDRESS);
+      Long serverPort = attributes.get(SERVER_PORT);
       dbConnection = buildDbConnection(serverAddress, serverPort);
-    } else if (isKeyPresent(span, NET_PEER_NAME)) {
-      String networkPeerAddress = span.getAttributes().get(NET_PEER_NAME);
-      Long networkPeerPort = span.getAttributes().get(NET_PEER_PORT);
+    } else if (attributes.isKeyPresent(NET_PEER_NAME)) {
+      String networkPeerAddress = attributes.get(NET_PEER_NAME);
+      Long networkPeerPort = attributes.get(NET_PEER_PORT);
       dbConnection = buildDbConnection(networkPeerAddress, networkPeerPort);
-    } else if (isKeyPresent(span, SERVER_SOCKET_ADDRESS)) {
-      String serverSocketAddress = span.getAttributes().get(SERVER_SOCKET_ADDRESS);
-      Long serverSocketPort = span.getAttributes().get(SERVER_SOCKET_PORT);
+    } else if (attributes.isKeyPresent(SERVER_SOCKET_ADDRESS)) {
+      String serverSocketAddress = attributes.get(SERVER_SOCKET_ADDRESS);
+      Long serverSocketPort = attributes.get(SERVER_SOCKET_PORT);
       dbConnection = buildDbConnection(serverSocketAddress, serverSocketPort);
-    } else if (isKeyPresent(span, DB_CONNECTION_STRING)) {
-      String connectionString = span.getAttributes().get(DB_CONNECTION_STRING);
+    } else if (attributes.isKeyPresent(DB_CONNECTION_STRING)) {
+      String connectionString = attributes.get(DB_CONNECTION_STRING);
       dbConnection = buildDbConnection(connectionString);
     }
 
@@ -611,22 +683,7 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
   }
 
   private static Optional<String> buildDbConnection(String connectionString) {
-    URI uri;
-    String address;
-    int port;
-    try {
-      uri = new URI(connectionString);
-      address = uri.getHost();
-      port = uri.getPort();
-    } catch (URISyntaxException e) {
-      logger.log(Level.FINEST, "invalid DB ConnectionString: ", connectionString);
-      return Optional.empty();
-    }
-
-    if (address == null) {
-      return Optional.empty();
-    }
-    return Optional.of(escapeDelimiters(address) + (port != -1 ? "|" + port : ""));
+    return UrlScanner.getDbConnection(connectionString);
   }
 
   private static String escapeDelimiters(String input) {
@@ -654,19 +711,20 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
    * See comment on {@link #getAwsStatusCode}, this will set the http status code of the span and
    * allow for desired metric creation.
    */
-  private static void setHttpStatus(SpanData span, AttributesBuilder builder) {
-    if (isKeyPresent(span, HTTP_RESPONSE_STATUS_CODE)) {
+  private static void setHttpStatus(
+      SpanData span, SpanAttributesSnapshot attributes, AttributesBuilder builder) {
+    if (attributes.isKeyPresent(HTTP_RESPONSE_STATUS_CODE)) {
       return;
     }
 
-    if (isKeyPresent(span, HTTP_STATUS_CODE)) {
-      Long statusCode = span.getAttributes().get(HTTP_STATUS_CODE);
+    if (attributes.isKeyPresent(HTTP_STATUS_CODE)) {
+      Long statusCode = attributes.get(HTTP_STATUS_CODE);
       builder.put(HTTP_RESPONSE_STATUS_CODE, statusCode);
       return;
     }
 
-    if (isKeyPresent(span, HTTP_RESPONSE_STATUS_CODE)) {
-      Long statusCode = span.getAttributes().get(HTTP_RESPONSE_STATUS_CODE);
+    if (attributes.isKeyPresent(HTTP_RESPONSE_STATUS_CODE)) {
+      Long statusCode = attributes.get(HTTP_RESPONSE_STATUS_CODE);
       builder.put(HTTP_STATUS_CODE, statusCode);
       return;
     }
@@ -677,9 +735,10 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
     }
   }
 
-  private static void setRemoteDbUser(SpanData span, AttributesBuilder builder) {
-    if (isDBSpan(span) && isKeyPresent(span, DB_USER)) {
-      builder.put(AWS_REMOTE_DB_USER, span.getAttributes().get(DB_USER));
+  private static void setRemoteDbUser(
+      SpanAttributesSnapshot attributes, AttributesBuilder builder) {
+    if (isDBSpan(attributes) && attributes.isKeyPresent(DB_USER)) {
+      builder.put(AWS_REMOTE_DB_USER, attributes.get(DB_USER));
     }
   }
 
@@ -691,7 +750,8 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
    * getStatusCode (for AWS SDK V1) and statusCode (for AWS SDK V2) to get the status code fromt the
    * exception. We rely on reflection here because we cannot cast the throwable to
    * AmazonServiceExceptions (V1) or AwsServiceExceptions (V2) because the throwable comes from a
-   * separate class loader and attempts to cast will fail with ClassCastException.
+   * separate class loader and attempts to cast will fail with ClassCastException. See {@link
+   * AwsSdkStatusCodes}.
    *
    * <p>TODO: Short term workaround. This can be completely removed once
    * https://github.com/open-telemetry/opentelemetry-java-contrib/issues/919 is resolved.
@@ -706,22 +766,9 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
     for (EventData event : spanData.getEvents()) {
       if (event instanceof ExceptionEventData) {
         ExceptionEventData exceptionEvent = (ExceptionEventData) event;
-        Throwable throwable = exceptionEvent.getException();
-
-        try {
-          Method method = throwable.getClass().getMethod("getStatusCode", new Class<?>[] {});
-          Object code = method.invoke(throwable, new Object[] {});
-          return Long.valueOf((Integer) code);
-        } catch (Exception e) {
-          // Take no action
-        }
-
-        try {
-          Method method = throwable.getClass().getMethod("statusCode", new Class<?>[] {});
-          Object code = method.invoke(throwable, new Object[] {});
-          return Long.valueOf((Integer) code);
-        } catch (Exception e) {
-          // Take no action
+        Long statusCode = AwsSdkStatusCodes.getStatusCode(exceptionEvent.getException());
+        if (statusCode != null) {
+          return statusCode;
         }
       }
     }
@@ -729,16 +776,18 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
     return null;
   }
 
-  private static String getRemoteService(SpanData span, AttributeKey<String> remoteServiceKey) {
-    String remoteService = span.getAttributes().get(remoteServiceKey);
+  private static String getRemoteService(
+      SpanAttributesSnapshot attributes, AttributeKey<String> remoteServiceKey) {
+    String remoteService = attributes.get(remoteServiceKey);
     if (remoteService == null) {
       remoteService = UNKNOWN_REMOTE_SERVICE;
     }
     return remoteService;
   }
 
-  private static String getRemoteOperation(SpanData span, AttributeKey<String> remoteOperationKey) {
-    String remoteOperation = span.getAttributes().get(remoteOperationKey);
+  private static String getRemoteOperation(
+      SpanAttributesSnapshot attributes, AttributeKey<String> remoteOperationKey) {
+    String remoteOperation = attributes.get(remoteOperationKey);
     if (remoteOperation == null) {
       remoteOperation = UNKNOWN_REMOTE_OPERATION;
     }
@@ -747,32 +796,14 @@ final class AwsMetricAttributeGenerator implements MetricAttributeGenerator {
 
   /**
    * If no db.operation attribute provided in the span, we use db.statement to compute a valid
-   * remote operation in a best-effort manner. To do this, we take the first substring of the
-   * statement and compare to a regex list of known SQL keywords. The substring length is determined
-   * by the longest known SQL keywords.
+   * remote operation in a best-effort manner. To do this, we match the start of the statement,
+   * after any leading whitespace, against the list of known SQL keywords.
    */
   private static String getDBStatementRemoteOperation(
-      SpanData span, AttributeKey<String> remoteOperationKey) {
-    String remoteOperation = span.getAttributes().get(remoteOperationKey);
-    if (remoteOperation == null) {
-      remoteOperation = UNKNOWN_REMOTE_OPERATION;
-    }
-
-    // Remove all whitespace and newline characters from the beginning of remote_operation
-    // and retrieve the first MAX_KEYWORD_LENGTH characters
-    remoteOperation = remoteOperation.replaceFirst("^\\s+", "");
-    if (remoteOperation.length() > MAX_KEYWORD_LENGTH) {
-      remoteOperation = remoteOperation.substring(0, MAX_KEYWORD_LENGTH);
-    }
-
-    Matcher matcher = SQL_DIALECT_PATTERN.matcher(remoteOperation.toUpperCase());
-    if (matcher.find() && !matcher.group(0).isEmpty()) {
-      remoteOperation = matcher.group(0);
-    } else {
-      remoteOperation = UNKNOWN_REMOTE_OPERATION;
-    }
-
-    return remoteOperation;
+      SpanAttributesSnapshot attributes, AttributeKey<String> remoteOperationKey) {
+    String statement = attributes.get(remoteOperationKey);
+    String remoteOperation = statement != null ? SQL_DIALECT_KEYWORDS.match(statement) : null;
+    return remoteOperation != null ? remoteOperation : UNKNOWN_REMOTE_OPERATION;
   }
 
   private static void logUnknownAttribute(AttributeKey<String> attributeKey, SpanData span) {
@@ -17,7 +17,6 @@ package software.amazon.opentelemetry.javaagent.providers;
 
 import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_SPAN_KIND;
 
-import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.common.AttributesBuilder;
 import io.opentelemetry.sdk.common.CompletableResultCode;
@@ -29,7 +28,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 /**
@@ -42,6 +41,9 @@ import javax.annotation.concurrent.Immutable;
  * <p>This exporter should be coupled with the {@link AwsSpanMetricsProcessor} using the same {@link
  * MetricAttributeGenerator}. This will result in metrics and spans being produced with common
  * attributes.
+ *
+ * <p>If a {@link MetricAttributesHandoff} is shared with the processor, attributes the processor
+ * already generated for a span are reused, and only generated here when the handoff has none.
  */
 @Immutable
 public class AwsMetricAttributesSpanExporter implements SpanExporter {
@@ -49,18 +51,32 @@ public class AwsMetricAttributesSpanExporter implements SpanExporter {
   private final SpanExporter delegate;
   private final MetricAttributeGenerator generator;
   private final Resource resource;
+  @Nullable private final MetricAttributesHandoff attributesHandoff;
 
   /** Use {@link AwsMetricAttributesSpanExporterBuilder} to construct this exporter. */
   static AwsMetricAttributesSpanExporter create(
       SpanExporter delegate, MetricAttributeGenerator generator, Resource resource) {
-    return new AwsMetricAttributesSpanExporter(delegate, generator, resource);
+    return create(delegate, generator, resource, null);
+  }
+
+  /** Use {@link AwsMetricAttributesSpanExporterBuilder} to construct this exporter. */
+  static AwsMetricAttributesSpanExporter create(
+      SpanExporter delegate,
+      MetricAttributeGenerator generator,
+      Resource resource,
+      @Nullable MetricAttributesHandoff attributesHandoff) {
+    return new AwsMetricAttributesSpanExporter(delegate, generator, resource, attributesHandoff);
   }
 
   private AwsMetricAttributesSpanExporter(
-      SpanExporter delegate, MetricAttributeGenerator generator, Resource resource) {
+      SpanExporter delegate,
+      MetricAttributeGenerator generator,
+      Resource resource,
+      @Nullable MetricAttributesHandoff attributesHandoff) {
     this.delegate = delegate;
     this.generator = generator;
     this.resource = resource;
+    this.attributesHandoff = attributesHandoff;
   }
 
   @Override
@@ -97,14 +113,23 @@ public class AwsMetricAttributesSpanExporter implements SpanExporter {
       // Dependency metric, so we take all the Dependency metrics but replace AWS_SPAN_KIND with
       // LOCAL_ROOT.
       Map<String, Attributes> attributeMap =
-          generator.generateMetricAttributeMapFromSpan(span, resource);
+          attributesHandoff != null ? attributesHandoff.take(span.getSpanContext()) : null;
+      boolean generatesServiceMetrics;
+      boolean generatesDependencyMetrics;
+      if (attributeMap != null) {
+        // The processor's generator only produces each map entry when the corresponding check
+        // passes, so the entries stand in for repeating those checks.
+        generatesServiceMetrics = attributeMap.containsKey(MetricAttributeGenerator.SERVICE_METRIC);
+        generatesDependencyMetrics =
+            attributeMap.containsKey(MetricAttributeGenerator.DEPENDENCY_METRIC);
+      } else {
+        attributeMap = generator.generateMetricAttributeMapFromSpan(span, resource);
+        generatesServiceMetrics = AwsSpanProcessingUtil.shouldGenerateServiceMetricAttributes(span);
+        generatesDependencyMetrics =
+            AwsSpanProcessingUtil.shouldGenerateDependencyMetricAttributes(span);
+      }
       Attributes attributes = Attributes.empty();
 
-      boolean generatesServiceMetrics =
-          AwsSpanProcessingUtil.shouldGenerateServiceMetricAttributes(span);
-      boolean generatesDependencyMetrics =
-          AwsSpanProcessingUtil.shouldGenerateDependencyMetricAttributes(span);
-
       if (generatesServiceMetrics && generatesDependencyMetrics) {
         attributes =
             copyAttributesWithLocalRoot(
@@ -136,21 +161,17 @@ public class AwsMetricAttributesSpanExporter implements SpanExporter {
    * need to add derived metric attributes to the span. To work around this, we will wrap the
    * SpanData with a {@link DelegatingSpanData} that simply passes through all API calls, except for
    * those pertaining to Attributes, i.e. {@link SpanData#getAttributes()} and {@link
-   * SpanData#getTotalAttributeCount} APIs.
+   * SpanData#getTotalAttributeCount} APIs. The derived attributes are layered over the original
+   * ones with {@link OverlayAttributes}, rather than copied into a new set with them.
    *
    * <p>See https://github.com/open-telemetry/opentelemetry-specification/issues/1089 for more
    * context on this approach.
    */
   private static SpanData wrapSpanWithAttributes(SpanData span, Attributes attributes) {
     Attributes originalAttributes = span.getAttributes();
-    Attributes replacementAttributes = originalAttributes.toBuilder().putAll(attributes).build();
+    Attributes replacementAttributes = OverlayAttributes.create(originalAttributes, attributes);
 
-    int newAttributeKeyCount = 0;
-    for (Entry<AttributeKey<?>, Object> entry : attributes.asMap().entrySet()) {
-      if (originalAttributes.get(entry.getKey()) == null) {
-        newAttributeKeyCount++;
-      }
-    }
+    int newAttributeKeyCount = replacementAttributes.size() - originalAttributes.size();
     int originalTotalAttributeCount = span.getTotalAttributeCount();
     int replacementTotalAttributeCount = originalTotalAttributeCount + newAttributeKeyCount;
 
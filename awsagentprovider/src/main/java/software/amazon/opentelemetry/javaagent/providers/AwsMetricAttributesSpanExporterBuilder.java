@@ -20,6 +20,7 @@ import static java.util.Objects.requireNonNull;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
+import javax.annotation.Nullable;
 
 public class AwsMetricAttributesSpanExporterBuilder {
 
@@ -33,6 +34,7 @@ public class AwsMetricAttributesSpanExporterBuilder {
 
   // Optional builder elements
   private MetricAttributeGenerator generator = DEFAULT_GENERATOR;
+  @Nullable private MetricAttributesHandoff attributesHandoff;
 
   public static AwsMetricAttributesSpanExporterBuilder create(
       SpanExporter delegate, Resource resource) {
@@ -55,7 +57,20 @@ public class AwsMetricAttributesSpanExporterBuilder {
     return this;
   }
 
+  /**
+   * Sets the handoff that metric attributes generated by an {@link AwsSpanMetricsProcessor} are
+   * taken from, rather than generating them again. The processor must use the same generator. If
+   * unset, attributes are always generated by the exporter.
+   */
+  @CanIgnoreReturnValue
+  AwsMetricAttributesSpanExporterBuilder setAttributesHandoff(
+      MetricAttributesHandoff attributesHandoff) {
+    requireNonNull(attributesHandoff, "attributesHandoff");
+    this.attributesHandoff = attributesHandoff;
+    return this;
+  }
+
   public AwsMetricAttributesSpanExporter build() {
-    return AwsMetricAttributesSpanExporter.create(delegate, generator, resource);
+    return AwsMetricAttributesSpanExporter.create(delegate, generator, resource, attributesHandoff);
   }
 }
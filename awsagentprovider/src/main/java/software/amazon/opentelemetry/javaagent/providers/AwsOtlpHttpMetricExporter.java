@@ -0,0 +1,139 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.exporter.internal.otlp.metrics.LowAllocationMetricsRequestMarshaler;
+import io.opentelemetry.exporter.internal.otlp.metrics.MetricsRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.AggregationTemporalitySelector;
+import io.opentelemetry.sdk.metrics.export.DefaultAggregationSelector;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Exports metrics with OTLP/HTTP in protobuf encoding, like {@link
+ * io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter}, but through the {@link
+ * HttpTransport} shared by all exporters of the agent to the same endpoint authority, with the
+ * headers, compression, TLS, proxy and retry settings of its {@link HttpRequestOptions}. Metrics
+ * are serialized when they are exported, so with {@link MemoryMode#REUSABLE_DATA} they are not used
+ * once {@link #export} returns, and one marshaler is reused for all exports.
+ */
+final class AwsOtlpHttpMetricExporter implements MetricExporter {
+  private static final Logger logger = Logger.getLogger(AwsOtlpHttpMetricExporter.class.getName());
+
+  private final AtomicBoolean isShutdown = new AtomicBoolean();
+
+  private final HttpTransport.RequestQueue queue;
+  private final HttpRequestOptions options;
+  private final AggregationTemporalitySelector aggregationTemporalitySelector;
+  private final DefaultAggregationSelector defaultAggregationSelector;
+  private final MemoryMode memoryMode;
+  @Nullable private final LowAllocationMetricsRequestMarshaler reusableMarshaler;
+
+  static AwsOtlpHttpMetricExporterBuilder builder() {
+    return new AwsOtlpHttpMetricExporterBuilder();
+  }
+
+  AwsOtlpHttpMetricExporter(
+      HttpTransport.RequestQueue queue,
+      HttpRequestOptions options,
+      AggregationTemporalitySelector aggregationTemporalitySelector,
+      DefaultAggregationSelector defaultAggregationSelector,
+      MemoryMode memoryMode) {
+    this.queue = queue;
+    this.options = options;
+    this.aggregationTemporalitySelector = aggregationTemporalitySelector;
+    this.defaultAggregationSelector = defaultAggregationSelector;
+    this.memoryMode = memoryMode;
+    this.reusableMarshaler =
+        memoryMode == MemoryMode.REUSABLE_DATA ? new LowAllocationMetricsRequestMarshaler() : null;
+  }
+
+  @Override
+  public CompletableResultCode export(Collection<MetricData> metrics) {
+    if (isShutdown.get()) {
+      return CompletableResultCode.ofFailure();
+    }
+    byte[] body;
+    try {
+      body = serialize(metrics);
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.SEVERE, "Failed to serialize metrics. Error: " + e.getMessage(), e);
+      return CompletableResultCode.ofFailure();
+    }
+    return queue.send(body, options);
+  }
+
+  // Visible for testing
+  byte[] serialize(Collection<MetricData> metrics) throws IOException {
+    if (reusableMarshaler == null) {
+      return HttpTransport.serialize(MetricsRequestMarshaler.create(metrics), options);
+    }
+    synchronized (reusableMarshaler) {
+      reusableMarshaler.initialize(metrics);
+      try {
+        return HttpTransport.serialize(reusableMarshaler, options);
+      } finally {
+        reusableMarshaler.reset();
+      }
+    }
+  }
+
+  @Override
+  public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+    return aggregationTemporalitySelector.getAggregationTemporality(instrumentType);
+  }
+
+  @Override
+  public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+    return defaultAggregationSelector.getDefaultAggregation(instrumentType);
+  }
+
+  @Override
+  public MemoryMode getMemoryMode() {
+    return memoryMode;
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return queue.flush();
+  }
+
+  /** Stops exporting. The shared transport keeps running for the other exporters. */
+  @Override
+  public CompletableResultCode shutdown() {
+    if (!isShutdown.compareAndSet(false, true)) {
+      logger.log(Level.INFO, "Calling shutdown() multiple times.");
+      return CompletableResultCode.ofSuccess();
+    }
+    return queue.flush();
+  }
+
+  @Override
+  public String toString() {
+    return "AwsOtlpHttpMetricExporter{queue=" + queue + ", memoryMode=" + memoryMode + '}';
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static java.util.Objects.requireNonNull;
+
+import io.opentelemetry.exporter.otlp.internal.OtlpConfigUtil;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.common.export.ProxyOptions;
+import io.opentelemetry.sdk.common.export.RetryPolicy;
+import io.opentelemetry.sdk.metrics.export.AggregationTemporalitySelector;
+import io.opentelemetry.sdk.metrics.export.DefaultAggregationSelector;
+import java.net.URL;
+import java.time.Duration;
+import javax.annotation.Nullable;
+
+final class AwsOtlpHttpMetricExporterBuilder {
+  private static final String DEFAULT_ENDPOINT = "http://localhost:4318/v1/metrics";
+
+  private URL endpoint = HttpTransport.parseEndpoint(DEFAULT_ENDPOINT);
+  private final HttpRequestOptions.Builder options = HttpRequestOptions.builder();
+  private AggregationTemporalitySelector aggregationTemporalitySelector =
+      AggregationTemporalitySelector.alwaysCumulative();
+  private DefaultAggregationSelector defaultAggregationSelector =
+      DefaultAggregationSelector.getDefault();
+  private MemoryMode memoryMode = MemoryMode.REUSABLE_DATA;
+
+  /** Sets the OTLP/HTTP metrics endpoint. If unset, defaults to {@value DEFAULT_ENDPOINT}. */
+  public AwsOtlpHttpMetricExporterBuilder setEndpoint(String endpoint) {
+    this.endpoint = HttpTransport.parseEndpoint(endpoint);
+    return this;
+  }
+
+  /** Sets the read timeout of requests. If unset, defaults to 10s. */
+  public AwsOtlpHttpMetricExporterBuilder setTimeout(Duration timeout) {
+    options.setTimeout(timeout);
+    return this;
+  }
+
+  /** Sets the connect timeout of requests. If unset, defaults to 10s. */
+  public AwsOtlpHttpMetricExporterBuilder setConnectTimeout(Duration connectTimeout) {
+    options.setConnectTimeout(connectTimeout);
+    return this;
+  }
+
+  public AwsOtlpHttpMetricExporterBuilder addHeader(String key, String value) {
+    options.addHeader(key, value);
+    return this;
+  }
+
+  /** Sets the compression of requests, {@code gzip} or {@code none}, the default. */
+  public AwsOtlpHttpMetricExporterBuilder setCompression(String compressionMethod) {
+    options.setCompression(compressionMethod);
+    return this;
+  }
+
+  public AwsOtlpHttpMetricExporterBuilder setTrustedCertificates(byte[] trustedCertificatesPem) {
+    options.setTrustedCertificates(trustedCertificatesPem);
+    return this;
+  }
+
+  public AwsOtlpHttpMetricExporterBuilder setClientTls(
+      byte[] privateKeyPem, byte[] certificatePem) {
+    options.setClientTls(privateKeyPem, certificatePem);
+    return this;
+  }
+
+  public AwsOtlpHttpMetricExporterBuilder setProxyOptions(ProxyOptions proxyOptions) {
+    options.setProxyOptions(proxyOptions);
+    return this;
+  }
+
+  /** Sets how failed requests are retried, or null to not retry them. */
+  public AwsOtlpHttpMetricExporterBuilder setRetryPolicy(@Nullable RetryPolicy retryPolicy) {
+    options.setRetryPolicy(retryPolicy);
+    return this;
+  }
+
+  /**
+   * Applies the OTLP metrics exporter properties, such as {@code otel.exporter.otlp.headers},
+   * compression, timeout, certificates and retries, except for the endpoint, which the agent's
+   * exporters configure themselves.
+   */
+  public AwsOtlpHttpMetricExporterBuilder configure(ConfigProperties configProps) {
+    options.configure(
+        OtlpConfigUtil.DATA_TYPE_METRICS, configProps, unused -> {}, this::setMemoryMode);
+    return this;
+  }
+
+  public AwsOtlpHttpMetricExporterBuilder setAggregationTemporalitySelector(
+      AggregationTemporalitySelector aggregationTemporalitySelector) {
+    requireNonNull(aggregationTemporalitySelector, "aggregationTemporalitySelector");
+    this.aggregationTemporalitySelector = aggregationTemporalitySelector;
+    return this;
+  }
+
+  public AwsOtlpHttpMetricExporterBuilder setDefaultAggregationSelector(
+      DefaultAggregationSelector defaultAggregationSelector) {
+    requireNonNull(defaultAggregationSelector, "defaultAggregationSelector");
+    this.defaultAggregationSelector = defaultAggregationSelector;
+    return this;
+  }
+
+  /** Sets the memory mode. If unset, defaults to {@link MemoryMode#REUSABLE_DATA}. */
+  public AwsOtlpHttpMetricExporterBuilder setMemoryMode(MemoryMode memoryMode) {
+    requireNonNull(memoryMode, "memoryMode");
+    this.memoryMode = memoryMode;
+    return this;
+  }
+
+  public AwsOtlpHttpMetricExporter build() {
+    return new AwsOtlpHttpMetricExporter(
+        HttpTransport.forEndpoint(endpoint).queue(endpoint),
+        options.build(),
+        aggregationTemporalitySelector,
+        defaultAggregationSelector,
+        memoryMode);
+  }
+}
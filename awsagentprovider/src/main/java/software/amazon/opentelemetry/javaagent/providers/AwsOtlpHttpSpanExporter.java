@@ -0,0 +1,114 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.exporter.internal.otlp.traces.LowAllocationTraceRequestMarshaler;
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Exports spans with OTLP/HTTP in protobuf encoding, like {@link
+ * io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter}, but through the {@link
+ * HttpTransport} shared by all exporters of the agent to the same endpoint authority, see {@link
+ * AwsOtlpHttpMetricExporter}.
+ */
+final class AwsOtlpHttpSpanExporter implements SpanExporter {
+  private static final Logger logger = Logger.getLogger(AwsOtlpHttpSpanExporter.class.getName());
+
+  private final AtomicBoolean isShutdown = new AtomicBoolean();
+
+  private final HttpTransport.RequestQueue queue;
+  private final HttpRequestOptions options;
+  private final MemoryMode memoryMode;
+  @Nullable private final LowAllocationTraceRequestMarshaler reusableMarshaler;
+
+  static AwsOtlpHttpSpanExporterBuilder builder() {
+    return new AwsOtlpHttpSpanExporterBuilder();
+  }
+
+  AwsOtlpHttpSpanExporter(
+      HttpTransport.RequestQueue queue, HttpRequestOptions options, MemoryMode memoryMode) {
+    this.queue = queue;
+    this.options = options;
+    this.memoryMode = memoryMode;
+    this.reusableMarshaler =
+        memoryMode == MemoryMode.REUSABLE_DATA ? new LowAllocationTraceRequestMarshaler() : null;
+  }
+
+  @Override
+  public CompletableResultCode export(Collection<SpanData> spans) {
+    if (isShutdown.get()) {
+      return CompletableResultCode.ofFailure();
+    }
+    byte[] body;
+    try {
+      body = serialize(spans);
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.SEVERE, "Failed to serialize spans. Error: " + e.getMessage(), e);
+      return CompletableResultCode.ofFailure();
+    }
+    return queue.send(body, options);
+  }
+
+  // Visible for testing
+  byte[] serialize(Collection<SpanData> spans) throws IOException {
+    if (reusableMarshaler == null) {
+      return HttpTransport.serialize(TraceRequestMarshaler.create(spans), options);
+    }
+    synchronized (reusableMarshaler) {
+      reusableMarshaler.initialize(spans);
+      try {
+        return HttpTransport.serialize(reusableMarshaler, options);
+      } finally {
+        reusableMarshaler.reset();
+      }
+    }
+  }
+
+  // Visible for testing
+  MemoryMode getMemoryMode() {
+    return memoryMode;
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return queue.flush();
+  }
+
+  /** Stops exporting. The shared transport keeps running for the other exporters. */
+  @Override
+  public CompletableResultCode shutdown() {
+    if (!isShutdown.compareAndSet(false, true)) {
+      logger.log(Level.INFO, "Calling shutdown() multiple times.");
+      return CompletableResultCode.ofSuccess();
+    }
+    return queue.flush();
+  }
+
+  @Override
+  public String toString() {
+    return "AwsOtlpHttpSpanExporter{queue=" + queue + ", memoryMode=" + memoryMode + '}';
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import javax.annotation.Nullable;
+
+/**
+ * AwsSdkStatusCodes reads the HTTP status code from AWS SDK service exceptions, through {@code
+ * getStatusCode()} (AWS SDK V1) or {@code statusCode()} (AWS SDK V2). The exception classes come
+ * from the application's class loader, so the accessors are looked up reflectively. They are
+ * resolved once per exception class into method handles and cached in a {@link ClassValue}, as is
+ * their absence, so that repeated errors neither repeat the lookups nor throw {@link
+ * NoSuchMethodException}.
+ */
+final class AwsSdkStatusCodes {
+
+  private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+  private static final MethodType ACCESSOR_TYPE =
+      MethodType.methodType(Object.class, Throwable.class);
+
+  private static final ClassValue<AwsSdkStatusCodes> accessors =
+      new ClassValue<AwsSdkStatusCodes>() {
+        @Override
+        protected AwsSdkStatusCodes computeValue(Class<?> type) {
+          return new AwsSdkStatusCodes(
+              findAccessor(type, "getStatusCode"), findAccessor(type, "statusCode"));
+        }
+      };
+
+  @Nullable private final MethodHandle getStatusCode;
+  @Nullable private final MethodHandle statusCode;
+
+  private AwsSdkStatusCodes(
+      @Nullable MethodHandle getStatusCode, @Nullable MethodHandle statusCode) {
+    this.getStatusCode = getStatusCode;
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * Returns the status code of an AWS SDK V1 or V2 service exception, or null if the throwable has
+   * no accessor for it returning an {@link Integer}.
+   */
+  @Nullable
+  static Long getStatusCode(Throwable throwable) {
+    AwsSdkStatusCodes codes = accessors.get(throwable.getClass());
+    Long code = invoke(codes.getStatusCode, throwable);
+    return code != null ? code : invoke(codes.statusCode, throwable);
+  }
+
+  @Nullable
+  private static Long invoke(@Nullable MethodHandle accessor, Throwable throwable) {
+    if (accessor == null) {
+      return null;
+    }
+    Object code;
+    try {
+      code = accessor.invokeExact(throwable);
+    } catch (Throwable t) {
+      // Anything the accessor throws means there is no status code, as with Method.invoke
+      return null;
+    }
+    return code instanceof Integer ? Long.valueOf((Integer) code) : null;
+  }
+
+  @Nullable
+  private static MethodHandle findAccessor(Class<?> type, String name) {
+    try {
+      Method method = type.getMethod(name);
+      MethodHandle accessor = lookup.unreflect(method);
+      if (Modifier.isStatic(method.getModifiers())) {
+        accessor = MethodHandles.dropArguments(accessor, 0, Throwable.class);
+      }
+      return accessor.asType(ACCESSOR_TYPE);
+    } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+      return null;
+    }
+  }
+}
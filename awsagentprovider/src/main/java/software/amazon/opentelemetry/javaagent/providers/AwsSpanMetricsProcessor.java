@@ -31,8 +31,13 @@ import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
+import software.amazon.opentelemetry.javaagent.providers.RedMetricsAggregator.Outcome;
 
 /**
  * This processor will generate metrics based on span data. It depends on a {@link
@@ -47,6 +52,16 @@ import javax.annotation.concurrent.Immutable;
  * latency is measured with a histogram. Metrics are emitted with attributes derived from span
  * attributes.
  *
+ * <p>Optionally, a {@link RedMetricsAggregator} can be provided instead, in which case the three
+ * histograms are not recorded to and the aggregator publishes the same metrics.
+ *
+ * <p>Metrics are recorded on the thread that ends the span, unless an {@link
+ * AsyncSpanProcessingQueue} is configured, in which case that is done by its background workers.
+ *
+ * <p>If a {@link MetricAttributesHandoff} is shared with the {@link
+ * AwsMetricAttributesSpanExporter}, the attributes generated for each sampled span are handed over
+ * to it, rather than being generated again at export time.
+ *
  * <p>For highest fidelity metrics, this processor should be coupled with the {@link
  * AlwaysRecordSampler}, which will result in 100% of spans being sent to the processor.
  */
@@ -54,6 +69,7 @@ import javax.annotation.concurrent.Immutable;
 public final class AwsSpanMetricsProcessor implements SpanProcessor {
 
   private static final double NANOS_TO_MILLIS = 1_000_000.0;
+  private static final long QUEUE_DRAIN_TIMEOUT_SECONDS = 10;
 
   // Constants for deriving error and fault metrics
   private static final int ERROR_CODE_LOWER_BOUND = 400;
@@ -66,39 +82,78 @@ public final class AwsSpanMetricsProcessor implements SpanProcessor {
   private final LongHistogram faultHistogram;
   private final DoubleHistogram latencyHistogram;
 
+  // If set, replaces the metric instruments above with one fused update per attribute set
+  @Nullable private final RedMetricsAggregator aggregator;
+
   private final MetricAttributeGenerator generator;
   private final Resource resource;
   private final Supplier<CompletableResultCode> forceFlushAction;
 
+  // If set, generated attributes are handed to AwsMetricAttributesSpanExporter for reuse
+  @Nullable private final MetricAttributesHandoff attributesHandoff;
+
+  // If set, spans are processed by background workers rather than by the thread ending them
+  @Nullable private final AsyncSpanProcessingQueue queue;
+
   /** Use {@link AwsSpanMetricsProcessorBuilder} to construct this processor. */
   static AwsSpanMetricsProcessor create(
       LongHistogram errorHistogram,
       LongHistogram faultHistogram,
       DoubleHistogram latencyHistogram,
+      @Nullable RedMetricsAggregator aggregator,
       MetricAttributeGenerator generator,
       Resource resource,
-      Supplier<CompletableResultCode> forceFlushAction) {
+      Supplier<CompletableResultCode> forceFlushAction,
+      @Nullable Function<Consumer<ReadableSpan>, AsyncSpanProcessingQueue> queueFactory,
+      @Nullable MetricAttributesHandoff attributesHandoff) {
     return new AwsSpanMetricsProcessor(
-        errorHistogram, faultHistogram, latencyHistogram, generator, resource, forceFlushAction);
+        errorHistogram,
+        faultHistogram,
+        latencyHistogram,
+        aggregator,
+        generator,
+        resource,
+        forceFlushAction,
+        queueFactory,
+        attributesHandoff);
   }
 
   private AwsSpanMetricsProcessor(
       LongHistogram errorHistogram,
       LongHistogram faultHistogram,
       DoubleHistogram latencyHistogram,
+      @Nullable RedMetricsAggregator aggregator,
       MetricAttributeGenerator generator,
       Resource resource,
-      Supplier<CompletableResultCode> forceFlushAction) {
+      Supplier<CompletableResultCode> forceFlushAction,
+      @Nullable Function<Consumer<ReadableSpan>, AsyncSpanProcessingQueue> queueFactory,
+      @Nullable MetricAttributesHandoff attributesHandoff) {
     this.errorHistogram = errorHistogram;
     this.faultHistogram = faultHistogram;
     this.latencyHistogram = latencyHistogram;
+    this.aggregator = aggregator;
     this.generator = generator;
     this.resource = resource;
     this.forceFlushAction = forceFlushAction;
+    this.attributesHandoff = attributesHandoff;
+    // Created last, as its workers start handling spans with this processor right away
+    this.queue = queueFactory != null ? queueFactory.apply(this::processSpan) : null;
   }
 
   @Override
   public CompletableResultCode forceFlush() {
+    if (queue != null) {
+      // Record metrics for every span ended so far before flushing the meter provider
+      queue.flush(QUEUE_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+    return forceFlushAction.get();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    if (queue != null) {
+      queue.shutdown(QUEUE_DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
     return forceFlushAction.get();
   }
 
@@ -112,10 +167,37 @@ public final class AwsSpanMetricsProcessor implements SpanProcessor {
 
   @Override
   public void onEnd(ReadableSpan span) {
-    SpanData spanData = span.toSpanData();
+    if (queue != null) {
+      queue.submit(span);
+    } else {
+      processSpan(span);
+    }
+  }
+
+  /**
+   * Variant for {@link ApplicationSignalsSpanProcessor}, which converts the span to {@code
+   * spanData} once and shares it between its stages. Must only be called if {@link
+   * #isAsynchronous()} is false, as asynchronous processing converts spans on its workers instead.
+   */
+  void onEnd(ReadableSpan span, SpanData spanData) {
+    processSpan(span, spanData);
+  }
 
+  /** Returns whether spans are processed on workers rather than in {@link #onEnd}. */
+  boolean isAsynchronous() {
+    return queue != null;
+  }
+
+  private void processSpan(ReadableSpan span) {
+    processSpan(span, span.toSpanData());
+  }
+
+  private void processSpan(ReadableSpan span, SpanData spanData) {
     Map<String, Attributes> attributeMap =
         generator.generateMetricAttributeMapFromSpan(spanData, resource);
+    if (attributesHandoff != null) {
+      attributesHandoff.offer(spanData.getSpanContext(), attributeMap);
+    }
 
     for (Map.Entry<String, Attributes> attribute : attributeMap.entrySet()) {
       recordMetrics(span, spanData, attribute.getValue());
@@ -130,7 +212,7 @@ public final class AwsSpanMetricsProcessor implements SpanProcessor {
   // The logic to record error and fault should be kept in sync with the aws-xray exporter whenever
   // possible except for the throttle
   // https://github.com/open-telemetry/opentelemetry-collector-contrib/blob/main/exporter/awsxrayexporter/internal/translator/cause.go#L121-L160
-  private void recordErrorOrFault(SpanData spanData, Attributes attributes) {
+  private static Outcome getOutcome(SpanData spanData, Attributes attributes) {
     Long httpStatusCode = null;
     if (isKeyPresent(spanData, HTTP_RESPONSE_STATUS_CODE)) {
       httpStatusCode = spanData.getAttributes().get(HTTP_RESPONSE_STATUS_CODE);
@@ -140,41 +222,53 @@ public final class AwsSpanMetricsProcessor implements SpanProcessor {
     StatusCode statusCode = spanData.getStatus().getStatusCode();
 
     if (httpStatusCode == null) {
-      httpStatusCode = attributes.get(HTTP_RESPONSE_STATUS_CODE);
-    }
-
-    if (httpStatusCode == null
-        || httpStatusCode < ERROR_CODE_LOWER_BOUND
-        || httpStatusCode > FAULT_CODE_UPPER_BOUND) {
-      if (StatusCode.ERROR.equals(statusCode)) {
-        errorHistogram.record(0, attributes);
-        faultHistogram.record(1, attributes);
+      if (attributes instanceof MetricAttributes) {
+        // Read the generated status code without boxing it
+        MetricAttributes metricAttributes = (MetricAttributes) attributes;
+        if (metricAttributes.hasResponseStatusCode()) {
+          return getOutcome(metricAttributes.getResponseStatusCode(), statusCode);
+        }
       } else {
-        errorHistogram.record(0, attributes);
-        faultHistogram.record(0, attributes);
+        httpStatusCode = attributes.get(HTTP_RESPONSE_STATUS_CODE);
       }
-    } else if (httpStatusCode >= ERROR_CODE_LOWER_BOUND
-        && httpStatusCode <= ERROR_CODE_UPPER_BOUND) {
-      errorHistogram.record(1, attributes);
-      faultHistogram.record(0, attributes);
-    } else if (httpStatusCode >= FAULT_CODE_LOWER_BOUND
-        && httpStatusCode <= FAULT_CODE_UPPER_BOUND) {
-      errorHistogram.record(0, attributes);
-      faultHistogram.record(1, attributes);
+    }
+
+    if (httpStatusCode == null) {
+      return StatusCode.ERROR.equals(statusCode) ? Outcome.FAULT : Outcome.OK;
+    }
+    return getOutcome(httpStatusCode, statusCode);
+  }
+
+  private static Outcome getOutcome(long httpStatusCode, StatusCode statusCode) {
+    if (httpStatusCode < ERROR_CODE_LOWER_BOUND || httpStatusCode > FAULT_CODE_UPPER_BOUND) {
+      return StatusCode.ERROR.equals(statusCode) ? Outcome.FAULT : Outcome.OK;
+    } else if (httpStatusCode <= ERROR_CODE_UPPER_BOUND) {
+      return Outcome.ERROR;
+    } else {
+      return Outcome.FAULT;
     }
   }
 
-  private void recordLatency(ReadableSpan span, Attributes attributes) {
-    long nanos = span.getLatencyNanos();
-    double millis = nanos / NANOS_TO_MILLIS;
+  private void recordErrorOrFault(Outcome outcome, Attributes attributes) {
+    errorHistogram.record(outcome == Outcome.ERROR ? 1 : 0, attributes);
+    faultHistogram.record(outcome == Outcome.FAULT ? 1 : 0, attributes);
+  }
+
+  private void recordLatency(double millis, Attributes attributes) {
     latencyHistogram.record(millis, attributes);
   }
 
   private void recordMetrics(ReadableSpan span, SpanData spanData, Attributes attributes) {
     // Only record metrics if non-empty attributes are returned.
     if (!attributes.isEmpty()) {
-      recordErrorOrFault(spanData, attributes);
-      recordLatency(span, attributes);
+      Outcome outcome = getOutcome(spanData, attributes);
+      double millis = span.getLatencyNanos() / NANOS_TO_MILLIS;
+      if (aggregator != null) {
+        aggregator.record(attributes, outcome, millis);
+      } else {
+        recordErrorOrFault(outcome, attributes);
+        recordLatency(millis, attributes);
+      }
     }
   }
 }
@@ -24,21 +24,26 @@ import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.metrics.MeterProvider;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import software.amazon.opentelemetry.javaagent.providers.AsyncSpanProcessingQueue.OverflowPolicy;
 
 /** A builder for {@link AwsSpanMetricsProcessor} */
 public final class AwsSpanMetricsProcessorBuilder {
 
   // Metric instrument configuration constants
-  private static final String ERROR = "Error";
-  private static final String FAULT = "Fault";
-  private static final String LATENCY = "Latency";
-  private static final String LATENCY_UNITS = "Milliseconds";
+  static final String ERROR = "Error";
+  static final String FAULT = "Fault";
+  static final String LATENCY = "Latency";
+  static final String LATENCY_UNITS = "Milliseconds";
 
   // Defaults
   private static final MetricAttributeGenerator DEFAULT_GENERATOR =
       new AwsMetricAttributeGenerator();
-  private static final String DEFAULT_SCOPE_NAME = "AwsSpanMetricsProcessor";
+  static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 2048;
+  static final String DEFAULT_SCOPE_NAME = "AwsSpanMetricsProcessor";
 
   // Required builder elements
   private final MeterProvider meterProvider;
@@ -52,6 +57,11 @@ public final class AwsSpanMetricsProcessorBuilder {
   // Optional builder elements
   private MetricAttributeGenerator generator = DEFAULT_GENERATOR;
   private String scopeName = DEFAULT_SCOPE_NAME;
+  @Nullable private RedMetricsAggregator aggregator;
+  @Nullable private MetricAttributesHandoff attributesHandoff;
+  private int asyncWorkerCount = 0;
+  private int asyncQueueCapacity = DEFAULT_ASYNC_QUEUE_CAPACITY;
+  private OverflowPolicy asyncOverflowPolicy = OverflowPolicy.INLINE;
 
   public static AwsSpanMetricsProcessorBuilder create(
       MeterProvider meterProvider,
@@ -91,6 +101,69 @@ public final class AwsSpanMetricsProcessorBuilder {
     return this;
   }
 
+  /**
+   * Sets the aggregator that error, fault and latency measurements are recorded to, in place of
+   * histograms created from the meter provider. The aggregator must be registered as a metric
+   * producer with that meter provider, and should use the same scope name. If unset, histograms are
+   * used.
+   */
+  @CanIgnoreReturnValue
+  AwsSpanMetricsProcessorBuilder setAggregator(RedMetricsAggregator aggregator) {
+    requireNonNull(aggregator, "aggregator");
+    this.aggregator = aggregator;
+    return this;
+  }
+
+  /**
+   * Sets the handoff that generated metric attributes are offered to, for reuse by an {@link
+   * AwsMetricAttributesSpanExporter} built with the same handoff and generator. If unset,
+   * attributes are not handed off.
+   */
+  @CanIgnoreReturnValue
+  AwsSpanMetricsProcessorBuilder setAttributesHandoff(MetricAttributesHandoff attributesHandoff) {
+    requireNonNull(attributesHandoff, "attributesHandoff");
+    this.attributesHandoff = attributesHandoff;
+    return this;
+  }
+
+  /**
+   * Sets the number of background workers that record metrics for ended spans. If unset, or set to
+   * 0, metrics are recorded on the thread that ends the span. Must not be negative.
+   */
+  @CanIgnoreReturnValue
+  AwsSpanMetricsProcessorBuilder setAsyncWorkerCount(int asyncWorkerCount) {
+    if (asyncWorkerCount < 0) {
+      throw new IllegalArgumentException("asyncWorkerCount must not be negative");
+    }
+    this.asyncWorkerCount = asyncWorkerCount;
+    return this;
+  }
+
+  /**
+   * Sets the number of ended spans each background worker can hold before the overflow policy
+   * applies, rounded up to a power of two. If unset, defaults to {@link
+   * #DEFAULT_ASYNC_QUEUE_CAPACITY}. Must be positive.
+   */
+  @CanIgnoreReturnValue
+  AwsSpanMetricsProcessorBuilder setAsyncQueueCapacity(int asyncQueueCapacity) {
+    if (asyncQueueCapacity <= 0) {
+      throw new IllegalArgumentException("asyncQueueCapacity must be positive");
+    }
+    this.asyncQueueCapacity = asyncQueueCapacity;
+    return this;
+  }
+
+  /**
+   * Sets what happens to an ended span when its background worker is full. If unset, defaults to
+   * {@link OverflowPolicy#INLINE}. Must not be null.
+   */
+  @CanIgnoreReturnValue
+  AwsSpanMetricsProcessorBuilder setAsyncOverflowPolicy(OverflowPolicy asyncOverflowPolicy) {
+    requireNonNull(asyncOverflowPolicy, "asyncOverflowPolicy");
+    this.asyncOverflowPolicy = asyncOverflowPolicy;
+    return this;
+  }
+
   public AwsSpanMetricsProcessor build() {
     Meter meter = meterProvider.get(scopeName);
     LongHistogram errorHistogram = meter.histogramBuilder(ERROR).ofLongs().build();
@@ -99,6 +172,19 @@ public final class AwsSpanMetricsProcessorBuilder {
         meter.histogramBuilder(LATENCY).setUnit(LATENCY_UNITS).build();
 
     return AwsSpanMetricsProcessor.create(
-        errorHistogram, faultHistogram, latencyHistogram, generator, resource, forceFlushAction);
+        errorHistogram,
+        faultHistogram,
+        latencyHistogram,
+        aggregator,
+        generator,
+        resource,
+        forceFlushAction,
+        asyncWorkerCount > 0 ? this::createQueue : null,
+        attributesHandoff);
+  }
+
+  private AsyncSpanProcessingQueue createQueue(Consumer<ReadableSpan> handler) {
+    return AsyncSpanProcessingQueue.create(
+        handler, asyncWorkerCount, asyncQueueCapacity, asyncOverflowPolicy);
   }
 }
@@ -29,20 +29,15 @@ import static software.amazon.opentelemetry.javaagent.providers.AwsApplicationSi
 import static software.amazon.opentelemetry.javaagent.providers.AwsApplicationSignalsCustomizerProvider.isLambdaEnvironment;
 import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_OPERATION;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectReader;
 import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.data.SpanData;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 
 /** Utility class designed to support shared logic across AWS Span Processors. */
 final class AwsSpanProcessingUtil {
@@ -63,24 +58,12 @@ final class AwsSpanProcessingUtil {
   // TODO: Use Semantic Conventions once upgrade once upgrade to v1.26.0
   static final AttributeKey<String> GEN_AI_REQUEST_MODEL =
       AttributeKey.stringKey("gen_ai.request.model");
-  static final Pattern SQL_DIALECT_PATTERN =
-      Pattern.compile("^(?:" + String.join("|", getDialectKeywords()) + ")\\b");
-
-  private static final String SQL_DIALECT_KEYWORDS_JSON = "configuration/sql_dialect_keywords.json";
+  static final SqlDialectKeywordMatcher SQL_DIALECT_KEYWORDS =
+      SqlDialectKeywordMatcher.create(getDialectKeywords(), MAX_KEYWORD_LENGTH);
 
+  // Generated at build time from configuration/sql_dialect_keywords.json
   static List<String> getDialectKeywords() {
-    try (InputStream jsonFile =
-        AwsSpanProcessingUtil.class
-            .getClassLoader()
-            .getResourceAsStream(SQL_DIALECT_KEYWORDS_JSON)) {
-      ObjectMapper mapper = new ObjectMapper();
-      JsonNode jsonNode = mapper.readValue(jsonFile, JsonNode.class);
-      JsonNode arrayNode = jsonNode.get("keywords");
-      ObjectReader reader = mapper.readerFor(new TypeReference<List<String>>() {});
-      return reader.readValue(arrayNode);
-    } catch (IOException e) {
-      return new ArrayList<>();
-    }
+    return SqlDialectKeywords.KEYWORDS;
   }
 
   /**
@@ -90,23 +73,69 @@ final class AwsSpanProcessingUtil {
    * be the function name + /FunctionHandler.
    */
   static String getIngressOperation(SpanData span) {
+    Attributes attributes = span.getAttributes();
+    return getIngressOperation(
+        span,
+        getHttpMethod(attributes.get(HTTP_REQUEST_METHOD), attributes.get(HTTP_METHOD)),
+        getHttpTarget(attributes.get(URL_PATH), attributes.get(HTTP_TARGET)));
+  }
+
+  static String getIngressOperation(SpanData span, SpanAttributesSnapshot attributes) {
+    return getIngressOperation(
+        span,
+        getHttpMethod(attributes.get(HTTP_REQUEST_METHOD), attributes.get(HTTP_METHOD)),
+        getHttpTarget(attributes.get(URL_PATH), attributes.get(HTTP_TARGET)));
+  }
+
+  /**
+   * Variant of {@link #getIngressOperation(SpanData)} for spans that are still being recorded. It
+   * reads the span through {@link ReadableSpan} accessors so that no {@link SpanData} snapshot is
+   * materialized, which keeps it cheap enough to run from {@code SpanProcessor#onStart}.
+   */
+  static String getIngressOperation(ReadableSpan span) {
+    return getIngressOperation(
+        span.getName(),
+        isLocalRoot(span) && !SpanKind.SERVER.equals(span.getKind()),
+        getHttpMethod(span.getAttribute(HTTP_REQUEST_METHOD), span.getAttribute(HTTP_METHOD)),
+        getHttpTarget(span.getAttribute(URL_PATH), span.getAttribute(HTTP_TARGET)));
+  }
+
+  private static String getIngressOperation(
+      SpanData span, @Nullable String httpMethod, @Nullable String httpTarget) {
+    return getIngressOperation(
+        span.getName(), shouldUseInternalOperation(span), httpMethod, httpTarget);
+  }
+
+  private static String getIngressOperation(
+      String spanName,
+      boolean useInternalOperation,
+      @Nullable String httpMethod,
+      @Nullable String httpTarget) {
     if (isLambdaEnvironment()) {
       return System.getenv(AWS_LAMBDA_FUNCTION_NAME_CONFIG) + "/FunctionHandler";
     }
-    String operation = span.getName();
-    if (shouldUseInternalOperation(span)) {
+    String operation = spanName;
+    if (useInternalOperation) {
       operation = INTERNAL_OPERATION;
-    } else if (!isValidOperation(span, operation)) {
-      operation = generateIngressOperation(span);
+    } else if (!isValidOperation(operation, httpMethod)) {
+      operation = generateIngressOperation(httpMethod, httpTarget);
     }
     return operation;
   }
 
   static String getEgressOperation(SpanData span) {
+    return getEgressOperation(span, span.getAttributes().get(AWS_LOCAL_OPERATION));
+  }
+
+  static String getEgressOperation(SpanData span, SpanAttributesSnapshot attributes) {
+    return getEgressOperation(span, attributes.get(AWS_LOCAL_OPERATION));
+  }
+
+  private static String getEgressOperation(SpanData span, @Nullable String localOperation) {
     if (shouldUseInternalOperation(span)) {
       return INTERNAL_OPERATION;
     } else {
-      return span.getAttributes().get(AWS_LOCAL_OPERATION);
+      return localOperation;
     }
   }
 
@@ -117,14 +146,7 @@ final class AwsSpanProcessingUtil {
    * @return the first part from the http target. Eg, /payment
    */
   static String extractAPIPathValue(String httpTarget) {
-    if (httpTarget == null || httpTarget.isEmpty()) {
-      return "/";
-    }
-    String[] paths = httpTarget.split("/");
-    if (paths.length > 1) {
-      return "/" + paths[1];
-    }
-    return "/";
+    return UrlScanner.getFirstPathSegment(httpTarget);
   }
 
   static boolean isKeyPresent(SpanData span, AttributeKey<?> key) {
@@ -132,23 +154,68 @@ final class AwsSpanProcessingUtil {
   }
 
   static boolean isAwsSDKSpan(SpanData span) {
+    return isAwsSDKRpcSystem(span.getAttributes().get(RPC_SYSTEM));
+  }
+
+  static boolean isAwsSDKSpan(ReadableSpan span) {
+    return isAwsSDKRpcSystem(span.getAttribute(RPC_SYSTEM));
+  }
+
+  static boolean isAwsSDKSpan(SpanAttributesSnapshot attributes) {
+    return isAwsSDKRpcSystem(attributes.get(RPC_SYSTEM));
+  }
+
+  private static boolean isAwsSDKRpcSystem(@Nullable String rpcSystem) {
     // https://opentelemetry.io/docs/specs/otel/trace/semantic_conventions/instrumentation/aws-sdk/#common-attributes
-    return "aws-api".equals(span.getAttributes().get(RPC_SYSTEM));
+    return "aws-api".equals(rpcSystem);
   }
 
   static boolean shouldGenerateServiceMetricAttributes(SpanData span) {
-    return (isLocalRoot(span) && !isSqsReceiveMessageConsumerSpan(span))
+    return shouldGenerateServiceMetricAttributes(
+        span, span.getAttributes().get(MESSAGING_OPERATION));
+  }
+
+  static boolean shouldGenerateServiceMetricAttributes(
+      SpanData span, SpanAttributesSnapshot attributes) {
+    return shouldGenerateServiceMetricAttributes(span, attributes.get(MESSAGING_OPERATION));
+  }
+
+  private static boolean shouldGenerateServiceMetricAttributes(
+      SpanData span, @Nullable String messagingOperation) {
+    return (isLocalRoot(span) && !isSqsReceiveMessageConsumerSpan(span, messagingOperation))
         || SpanKind.SERVER.equals(span.getKind());
   }
 
   static boolean shouldGenerateDependencyMetricAttributes(SpanData span) {
+    Attributes attributes = span.getAttributes();
+    return shouldGenerateDependencyMetricAttributes(
+        span,
+        attributes.get(MESSAGING_OPERATION),
+        attributes.get(AwsAttributeKeys.AWS_CONSUMER_PARENT_SPAN_KIND));
+  }
+
+  static boolean shouldGenerateDependencyMetricAttributes(
+      SpanData span, SpanAttributesSnapshot attributes) {
+    return shouldGenerateDependencyMetricAttributes(
+        span,
+        attributes.get(MESSAGING_OPERATION),
+        attributes.get(AwsAttributeKeys.AWS_CONSUMER_PARENT_SPAN_KIND));
+  }
+
+  private static boolean shouldGenerateDependencyMetricAttributes(
+      SpanData span, @Nullable String messagingOperation, @Nullable String parentSpanKind) {
     return SpanKind.CLIENT.equals(span.getKind())
         || SpanKind.PRODUCER.equals(span.getKind())
-        || (isDependencyConsumerSpan(span) && !isSqsReceiveMessageConsumerSpan(span));
+        || (isDependencyConsumerSpan(span, messagingOperation, parentSpanKind)
+            && !isSqsReceiveMessageConsumerSpan(span, messagingOperation));
   }
 
   static boolean isConsumerProcessSpan(SpanData spanData) {
-    String messagingOperation = spanData.getAttributes().get(MESSAGING_OPERATION);
+    return isConsumerProcessSpan(spanData, spanData.getAttributes().get(MESSAGING_OPERATION));
+  }
+
+  private static boolean isConsumerProcessSpan(
+      SpanData spanData, @Nullable String messagingOperation) {
     return SpanKind.CONSUMER.equals(spanData.getKind()) && PROCESS.equals(messagingOperation);
   }
 
@@ -162,15 +229,22 @@ final class AwsSpanProcessingUtil {
   // parent context and returns true
   // if it is a local root.
   static boolean isLocalRoot(SpanData spanData) {
-    SpanContext parentContext = spanData.getParentSpanContext();
+    return isLocalRoot(spanData.getParentSpanContext());
+  }
+
+  static boolean isLocalRoot(ReadableSpan span) {
+    return isLocalRoot(span.getParentSpanContext());
+  }
+
+  private static boolean isLocalRoot(@Nullable SpanContext parentContext) {
     return parentContext == null || !parentContext.isValid() || parentContext.isRemote();
   }
 
   // To identify the SQS consumer spans produced by AWS SDK instrumentation
-  private static boolean isSqsReceiveMessageConsumerSpan(SpanData spanData) {
+  private static boolean isSqsReceiveMessageConsumerSpan(
+      SpanData spanData, @Nullable String messagingOperation) {
     String spanName = spanData.getName();
     SpanKind spanKind = spanData.getKind();
-    String messagingOperation = spanData.getAttributes().get(MESSAGING_OPERATION);
     InstrumentationScopeInfo instrumentationScopeInfo = spanData.getInstrumentationScopeInfo();
 
     return SQS_RECEIVE_MESSAGE_SPAN_NAME.equalsIgnoreCase(spanName)
@@ -180,15 +254,14 @@ final class AwsSpanProcessingUtil {
         && (messagingOperation == null || messagingOperation.equals(PROCESS));
   }
 
-  private static boolean isDependencyConsumerSpan(SpanData span) {
+  private static boolean isDependencyConsumerSpan(
+      SpanData span, @Nullable String messagingOperation, @Nullable String parentSpanKind) {
     if (!SpanKind.CONSUMER.equals(span.getKind())) {
       return false;
-    } else if (isConsumerProcessSpan(span)) {
+    } else if (isConsumerProcessSpan(span, messagingOperation)) {
       if (isLocalRoot(span)) {
         return true;
       }
-      String parentSpanKind =
-          span.getAttributes().get(AwsAttributeKeys.AWS_CONSUMER_PARENT_SPAN_KIND);
       return !SpanKind.CONSUMER.name().equals(parentSpanKind);
     }
     return true;
@@ -198,54 +271,54 @@ final class AwsSpanProcessingUtil {
    * When Span name is null, UnknownOperation or HttpMethod value, it will be treated as invalid
    * local operation value that needs to be further processed
    */
-  private static boolean isValidOperation(SpanData span, String operation) {
+  static boolean isValidOperation(String operation, @Nullable String httpMethod) {
     if (operation == null || operation.equals(UNKNOWN_OPERATION)) {
       return false;
     }
-    if (isKeyPresent(span, HTTP_REQUEST_METHOD)) {
-      String httpMethod = span.getAttributes().get(HTTP_REQUEST_METHOD);
-      return !operation.equals(httpMethod);
-    } else if (isKeyPresent(span, HTTP_METHOD)) {
-      String httpMethod = span.getAttributes().get(HTTP_METHOD);
-      return !operation.equals(httpMethod);
-    }
-    return true;
+    return httpMethod == null || !operation.equals(httpMethod);
   }
 
   /**
    * When span name is not meaningful(null, unknown or http_method value) as operation name for http
    * use cases. Will try to extract the operation name from http target string
    */
-  private static String generateIngressOperation(SpanData span) {
+  private static String generateIngressOperation(
+      @Nullable String httpMethod, @Nullable String httpTarget) {
     String operation = UNKNOWN_OPERATION;
-    if (isKeyPresent(span, URL_PATH) || isKeyPresent(span, HTTP_TARGET)) {
-      String httpTarget =
-          isKeyPresent(span, URL_PATH)
-              ? span.getAttributes().get(URL_PATH)
-              : span.getAttributes().get(HTTP_TARGET);
-      // get the first part from API path string as operation value
-      // the more levels/parts we get from API path the higher chance for getting high cardinality
-      // data
-      if (httpTarget != null) {
-        operation = extractAPIPathValue(httpTarget);
-        if (isKeyPresent(span, HTTP_REQUEST_METHOD) || isKeyPresent(span, HTTP_METHOD)) {
-          String httpMethod =
-              isKeyPresent(span, HTTP_REQUEST_METHOD)
-                  ? span.getAttributes().get(HTTP_REQUEST_METHOD)
-                  : span.getAttributes().get(HTTP_METHOD);
-          if (httpMethod != null) {
-            operation = httpMethod + " " + operation;
-          }
-        }
+    // get the first part from API path string as operation value
+    // the more levels/parts we get from API path the higher chance for getting high cardinality
+    // data
+    if (httpTarget != null) {
+      operation = extractAPIPathValue(httpTarget);
+      if (httpMethod != null) {
+        operation = httpMethod + " " + operation;
       }
     }
     return operation;
   }
 
+  // http.request.method takes priority over the deprecated http.method
+  @Nullable
+  static String getHttpMethod(@Nullable String httpRequestMethod, @Nullable String httpMethod) {
+    return httpRequestMethod != null ? httpRequestMethod : httpMethod;
+  }
+
+  // url.path takes priority over the deprecated http.target
+  @Nullable
+  static String getHttpTarget(@Nullable String urlPath, @Nullable String httpTarget) {
+    return urlPath != null ? urlPath : httpTarget;
+  }
+
   // Check if the current Span adheres to database semantic conventions
   static boolean isDBSpan(SpanData span) {
     return isKeyPresent(span, DB_SYSTEM)
         || isKeyPresent(span, DB_OPERATION)
         || isKeyPresent(span, DB_STATEMENT);
   }
+
+  static boolean isDBSpan(SpanAttributesSnapshot attributes) {
+    return attributes.isKeyPresent(DB_SYSTEM)
+        || attributes.isKeyPresent(DB_OPERATION)
+        || attributes.isKeyPresent(DB_STATEMENT);
+  }
 }
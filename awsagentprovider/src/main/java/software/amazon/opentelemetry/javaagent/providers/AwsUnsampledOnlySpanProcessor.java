@@ -36,7 +36,12 @@ final class AwsUnsampledOnlySpanProcessor implements SpanProcessor {
 
   @Override
   public void onStart(Context parentContext, ReadWriteSpan span) {
-    if (!span.getSpanContext().isSampled()) {
+    onStart(parentContext, span, span.getSpanContext().isSampled());
+  }
+
+  /** Variant for {@link ApplicationSignalsSpanProcessor}, which reads the sampled flag once. */
+  void onStart(Context parentContext, ReadWriteSpan span, boolean sampled) {
+    if (!sampled) {
       span.setAttribute(AwsAttributeKeys.AWS_TRACE_FLAG_SAMPLED, false);
     }
     delegate.onStart(parentContext, span);
@@ -44,7 +49,11 @@ final class AwsUnsampledOnlySpanProcessor implements SpanProcessor {
 
   @Override
   public void onEnd(ReadableSpan span) {
-    if (!span.getSpanContext().isSampled()) {
+    onEnd(span, span.getSpanContext().isSampled());
+  }
+
+  void onEnd(ReadableSpan span, boolean sampled) {
+    if (!sampled) {
       delegate.onEnd(span);
     }
   }
@@ -0,0 +1,87 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import java.util.function.Predicate;
+
+/**
+ * CachingAttributesBuilder records the key-value pairs put by {@link AwsMetricAttributeGenerator}
+ * into the slots of a {@link MetricAttributes.Builder} and, on {@link #build()}, returns a
+ * previously built {@link Attributes} with the same pairs when one is cached. The cache is looked
+ * up from the slots, so a hit neither builds attributes nor allocates; only a miss builds and
+ * caches a {@link MetricAttributes}. A builder is meant to be {@link #reset()} and reused by one
+ * thread.
+ *
+ * <p>Returning the identical instance on a hit also lets the SDK metric storage resolve its
+ * per-attributes aggregator handle through its equals fast path.
+ */
+final class CachingAttributesBuilder implements AttributesBuilder {
+
+  private final MemoizingCache<Attributes, Attributes> cache;
+  private final MetricAttributes.Builder delegate = MetricAttributes.builder();
+
+  CachingAttributesBuilder(MemoizingCache<Attributes, Attributes> cache) {
+    this.cache = cache;
+  }
+
+  /** Clears this builder, so that it can build other attributes. */
+  CachingAttributesBuilder reset() {
+    delegate.reset();
+    return this;
+  }
+
+  @Override
+  public Attributes build() {
+    Attributes cached = delegate.lookup(cache);
+    if (cached != null) {
+      return cached;
+    }
+    return cache.computeIfAbsent(delegate.build(), attributes -> attributes);
+  }
+
+  @Override
+  public <T> AttributesBuilder put(AttributeKey<Long> key, int value) {
+    delegate.put(key, value);
+    return this;
+  }
+
+  @Override
+  public <T> AttributesBuilder put(AttributeKey<T> key, T value) {
+    delegate.put(key, value);
+    return this;
+  }
+
+  @Override
+  public AttributesBuilder putAll(Attributes attributes) {
+    delegate.putAll(attributes);
+    return this;
+  }
+
+  @Override
+  public <T> AttributesBuilder remove(AttributeKey<T> key) {
+    delegate.remove(key);
+    return this;
+  }
+
+  @Override
+  public AttributesBuilder removeIf(Predicate<AttributeKey<?>> filter) {
+    delegate.removeIf(filter);
+    return this;
+  }
+}
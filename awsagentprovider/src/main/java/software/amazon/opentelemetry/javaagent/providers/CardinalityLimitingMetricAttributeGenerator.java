@@ -0,0 +1,306 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_RESOURCE_IDENTIFIER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_SERVICE;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * CardinalityLimitingMetricAttributeGenerator caps the number of distinct values that attributes
+ * produced by a delegate {@link MetricAttributeGenerator} can take, folding values beyond the cap
+ * into well-known overflow values:
+ *
+ * <ul>
+ *   <li>{@link AwsAttributeKeys#AWS_LOCAL_OPERATION} is capped per {@link
+ *       AwsAttributeKeys#AWS_LOCAL_SERVICE}, overflowing to {@link #OTHER_LOCAL_OPERATION}. The
+ *       local service is derived from the resource, so there are only a few of them.
+ *   <li>{@link AwsAttributeKeys#AWS_REMOTE_SERVICE}, {@link AwsAttributeKeys#AWS_REMOTE_OPERATION}
+ *       and {@link AwsAttributeKeys#AWS_REMOTE_RESOURCE_IDENTIFIER} are capped per local operation,
+ *       overflowing to {@link #OTHER_REMOTE_SERVICE}, {@link #OTHER_REMOTE_OPERATION} and {@link
+ *       #OTHER_REMOTE_RESOURCE}. The CloudFormation primary identifier follows the resource
+ *       identifier.
+ * </ul>
+ *
+ * <p>Values are admitted first come, first served, and stay admitted for the lifetime of the
+ * generator, the same as the SDK's own cardinality limit. Admitted values are tracked in exact
+ * concurrent sets rather than a probabilistic sketch, so that a value is never folded after it was
+ * admitted, nor admitted after it was folded, which would split its series. This retains up to
+ * {@code maxLocalOperations * (1 + 3 * maxValuesPerOperation)} strings per local service, which the
+ * values in the admitted metric series retain anyway. The first overflow of each dimension is
+ * logged, and the number of folded values is reported by the {@value #OVERFLOW_METRIC} counter once
+ * {@link #registerOverflowMetric registered}.
+ *
+ * <p>The same instance must be used by {@link AwsSpanMetricsProcessor} and {@link
+ * AwsMetricAttributesSpanExporter}, so that spans carry the same values as the metrics they
+ * produce.
+ */
+final class CardinalityLimitingMetricAttributeGenerator implements MetricAttributeGenerator {
+
+  private static final Logger logger =
+      Logger.getLogger(CardinalityLimitingMetricAttributeGenerator.class.getName());
+
+  static final String OTHER_LOCAL_OPERATION = "OtherLocalOperation";
+  static final String OTHER_REMOTE_SERVICE = "OtherRemoteService";
+  static final String OTHER_REMOTE_OPERATION = "OtherRemoteOperation";
+  static final String OTHER_REMOTE_RESOURCE = "OtherRemoteResource";
+
+  static final String OVERFLOW_METRIC = "CardinalityOverflow";
+  static final AttributeKey<String> OVERFLOW_DIMENSION = AttributeKey.stringKey("Dimension");
+
+  static final int DEFAULT_MAX_LOCAL_OPERATIONS = 500;
+  static final int DEFAULT_MAX_VALUES_PER_OPERATION = 100;
+
+  private final MetricAttributeGenerator delegate;
+  private final int maxLocalOperations;
+  private final int maxValuesPerOperation;
+  // By local service, or the empty string for attributes without one
+  private final Map<String, ServiceLimits> serviceLimits = new ConcurrentHashMap<>();
+  // Folded attribute sets, so that each is the same instance every time it is produced
+  private final MemoizingCache<Attributes, Attributes> foldedAttributes;
+
+  private final OverflowCounter localOperationOverflows =
+      new OverflowCounter(AWS_LOCAL_OPERATION.getKey(), OTHER_LOCAL_OPERATION);
+  private final OverflowCounter remoteServiceOverflows =
+      new OverflowCounter(AWS_REMOTE_SERVICE.getKey(), OTHER_REMOTE_SERVICE);
+  private final OverflowCounter remoteOperationOverflows =
+      new OverflowCounter(AWS_REMOTE_OPERATION.getKey(), OTHER_REMOTE_OPERATION);
+  private final OverflowCounter remoteResourceOverflows =
+      new OverflowCounter(AWS_REMOTE_RESOURCE_IDENTIFIER.getKey(), OTHER_REMOTE_RESOURCE);
+
+  static CardinalityLimitingMetricAttributeGenerator create(
+      MetricAttributeGenerator delegate, int maxLocalOperations, int maxValuesPerOperation) {
+    if (maxLocalOperations <= 0 || maxValuesPerOperation <= 0) {
+      throw new IllegalArgumentException("Cardinality limits must be positive");
+    }
+    return new CardinalityLimitingMetricAttributeGenerator(
+        delegate, maxLocalOperations, maxValuesPerOperation);
+  }
+
+  private CardinalityLimitingMetricAttributeGenerator(
+      MetricAttributeGenerator delegate, int maxLocalOperations, int maxValuesPerOperation) {
+    this.delegate = delegate;
+    this.maxLocalOperations = maxLocalOperations;
+    this.maxValuesPerOperation = maxValuesPerOperation;
+    this.foldedAttributes =
+        new MemoizingCache<>(AwsMetricAttributeGenerator.DEFAULT_METRIC_ATTRIBUTES_CACHE_SIZE);
+  }
+
+  /**
+   * Reports the number of values folded into overflow values so far, by dimension, as the {@value
+   * #OVERFLOW_METRIC} counter of {@code meter}. Must be called at most once per meter.
+   */
+  void registerOverflowMetric(Meter meter) {
+    OverflowCounter[] counters = {
+      localOperationOverflows,
+      remoteServiceOverflows,
+      remoteOperationOverflows,
+      remoteResourceOverflows
+    };
+    meter
+        .counterBuilder(OVERFLOW_METRIC)
+        .setDescription(
+            "Number of metric attribute values folded into overflow values by the AWS Application"
+                + " Signals cardinality limit")
+        .buildWithCallback(
+            measurement -> {
+              for (OverflowCounter counter : counters) {
+                measurement.record(counter.count.sum(), counter.attributes);
+              }
+            });
+  }
+
+  @Override
+  public Map<String, Attributes> generateMetricAttributeMapFromSpan(
+      SpanData span, Resource resource) {
+    Map<String, Attributes> attributesMap =
+        delegate.generateMetricAttributeMapFromSpan(span, resource);
+    Map<String, Attributes> limitedMap = null;
+    for (Map.Entry<String, Attributes> entry : attributesMap.entrySet()) {
+      Attributes limited = limit(entry.getValue());
+      if (limited != entry.getValue()) {
+        if (limitedMap == null) {
+          limitedMap = new HashMap<>(attributesMap);
+        }
+        limitedMap.put(entry.getKey(), limited);
+      }
+    }
+    return limitedMap != null ? limitedMap : attributesMap;
+  }
+
+  private Attributes limit(Attributes attributes) {
+    String localOperation = attributes.get(AWS_LOCAL_OPERATION);
+    if (localOperation == null) {
+      return attributes;
+    }
+    String localService = attributes.get(AWS_LOCAL_SERVICE);
+    ServiceLimits service =
+        serviceLimits.computeIfAbsent(
+            localService != null ? localService : "",
+            unused -> new ServiceLimits(maxLocalOperations));
+    AttributesBuilder builder = null;
+    if (!service.localOperations.admit(localOperation)) {
+      localOperationOverflows.increment();
+      localOperation = OTHER_LOCAL_OPERATION;
+      builder = attributes.toBuilder().put(AWS_LOCAL_OPERATION, localOperation);
+    }
+
+    OperationLimits limits =
+        service.operationLimits.computeIfAbsent(
+            localOperation, unused -> new OperationLimits(maxValuesPerOperation));
+    String remoteService = attributes.get(AWS_REMOTE_SERVICE);
+    if (remoteService != null && !limits.remoteServices.admit(remoteService)) {
+      remoteServiceOverflows.increment();
+      builder = toBuilder(builder, attributes).put(AWS_REMOTE_SERVICE, OTHER_REMOTE_SERVICE);
+    }
+    String remoteOperation = attributes.get(AWS_REMOTE_OPERATION);
+    if (remoteOperation != null && !limits.remoteOperations.admit(remoteOperation)) {
+      remoteOperationOverflows.increment();
+      builder = toBuilder(builder, attributes).put(AWS_REMOTE_OPERATION, OTHER_REMOTE_OPERATION);
+    }
+    String remoteResource = attributes.get(AWS_REMOTE_RESOURCE_IDENTIFIER);
+    if (remoteResource != null && !limits.remoteResources.admit(remoteResource)) {
+      remoteResourceOverflows.increment();
+      builder =
+          toBuilder(builder, attributes)
+              .put(AWS_REMOTE_RESOURCE_IDENTIFIER, OTHER_REMOTE_RESOURCE)
+              .put(AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER, OTHER_REMOTE_RESOURCE);
+    }
+
+    if (builder == null) {
+      return attributes;
+    }
+    return foldedAttributes.computeIfAbsent(builder.build(), folded -> folded);
+  }
+
+  private static AttributesBuilder toBuilder(
+      @Nullable AttributesBuilder builder, Attributes attributes) {
+    return builder != null ? builder : attributes.toBuilder();
+  }
+
+  // Visible for testing
+  long getLocalOperationOverflowCount() {
+    return localOperationOverflows.count.sum();
+  }
+
+  // Visible for testing
+  long getRemoteServiceOverflowCount() {
+    return remoteServiceOverflows.count.sum();
+  }
+
+  // Visible for testing
+  long getRemoteOperationOverflowCount() {
+    return remoteOperationOverflows.count.sum();
+  }
+
+  // Visible for testing
+  long getRemoteResourceOverflowCount() {
+    return remoteResourceOverflows.count.sum();
+  }
+
+  /** Counts the values folded for a dimension, and logs once when folding starts. */
+  private static final class OverflowCounter {
+    private final String dimension;
+    private final String overflowValue;
+    private final Attributes attributes;
+    private final LongAdder count = new LongAdder();
+    private final AtomicBoolean logged = new AtomicBoolean();
+
+    private OverflowCounter(String dimension, String overflowValue) {
+      this.dimension = dimension;
+      this.overflowValue = overflowValue;
+      this.attributes = Attributes.of(OVERFLOW_DIMENSION, dimension);
+    }
+
+    private void increment() {
+      count.increment();
+      if (!logged.get() && logged.compareAndSet(false, true)) {
+        logger.log(
+            Level.WARNING,
+            "AWS Application Signals cardinality limit reached for {0}, further values are"
+                + " reported as {1}",
+            new Object[] {dimension, overflowValue});
+      }
+    }
+  }
+
+  private static final class ServiceLimits {
+    private final BoundedValueSet localOperations;
+    // Bounded by maxLocalOperations, plus one for OTHER_LOCAL_OPERATION
+    private final Map<String, OperationLimits> operationLimits = new ConcurrentHashMap<>();
+
+    private ServiceLimits(int maxLocalOperations) {
+      this.localOperations = new BoundedValueSet(maxLocalOperations);
+    }
+  }
+
+  private static final class OperationLimits {
+    private final BoundedValueSet remoteServices;
+    private final BoundedValueSet remoteOperations;
+    private final BoundedValueSet remoteResources;
+
+    private OperationLimits(int maxValues) {
+      this.remoteServices = new BoundedValueSet(maxValues);
+      this.remoteOperations = new BoundedValueSet(maxValues);
+      this.remoteResources = new BoundedValueSet(maxValues);
+    }
+  }
+
+  /** A concurrent set that admits at most {@code maxSize} distinct values. */
+  private static final class BoundedValueSet {
+    private final Set<String> values = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSize;
+
+    private BoundedValueSet(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    private boolean admit(String value) {
+      if (values.contains(value)) {
+        return true;
+      }
+      // Reserve a slot before adding, so that concurrent admissions cannot exceed maxSize
+      if (size.get() >= maxSize || size.incrementAndGet() > maxSize) {
+        return values.contains(value);
+      }
+      if (!values.add(value)) {
+        size.decrementAndGet();
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.DoublePointData;
+import io.opentelemetry.sdk.metrics.data.ExemplarData;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramBuckets;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.metrics.data.SummaryPointData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableGaugeData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableSummaryData;
+import io.opentelemetry.sdk.resources.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * ChunkingMetricExporter splits large exports into chunks of a bounded serialized size, and exports
+ * the chunks through its delegate with at most {@code maxParallelChunks} of them in flight, so that
+ * the export of a high-cardinality interval is not sent as one request that may time out as a
+ * whole. The serialized size of each {@link MetricData} is estimated conservatively from its
+ * contents rather than by marshaling it. The chunks keep the metrics grouped by resource and then
+ * by instrumentation scope, in the order they were first seen, and a metric that does not fit into
+ * one chunk is split by its points. Exports that fit into one chunk are passed to the delegate as
+ * they are.
+ *
+ * <p>The result of an export succeeds once all chunks are exported. If some of the chunks failed,
+ * it fails with a {@link PartialExportException} holding the metrics of the failed chunks, so that
+ * only those are carried over to the next export.
+ *
+ * <p>The chunks reference the exported points, so with {@link MemoryMode#REUSABLE_DATA} the reader
+ * must not collect again until the export has completed, as the readers of the agent do.
+ */
+final class ChunkingMetricExporter implements MetricExporter {
+  private static final Logger logger = Logger.getLogger(ChunkingMetricExporter.class.getName());
+
+  static final int DEFAULT_MAX_PARALLEL_CHUNKS = 4;
+
+  // Upper bounds of the serialized sizes of the fields of the OTLP messages, including their tags
+  // and length prefixes.
+  private static final int MESSAGE_OVERHEAD = 6;
+  private static final int FIXED64_FIELD = 9;
+  private static final int VARINT_FIELD = 11;
+  private static final int EXEMPLAR_IDS = 2 + 8 + 2 + 16;
+
+  private final MetricExporter delegate;
+  private final long maxChunkBytes;
+  private final int maxParallelChunks;
+
+  static ChunkingMetricExporter create(
+      MetricExporter delegate, long maxChunkBytes, int maxParallelChunks) {
+    if (maxChunkBytes <= 0) {
+      throw new IllegalArgumentException("maxChunkBytes must be positive");
+    }
+    if (maxParallelChunks <= 0) {
+      throw new IllegalArgumentException("maxParallelChunks must be positive");
+    }
+    return new ChunkingMetricExporter(delegate, maxChunkBytes, maxParallelChunks);
+  }
+
+  private ChunkingMetricExporter(
+      MetricExporter delegate, long maxChunkBytes, int maxParallelChunks) {
+    this.delegate = delegate;
+    this.maxChunkBytes = maxChunkBytes;
+    this.maxParallelChunks = maxParallelChunks;
+  }
+
+  @Override
+  public CompletableResultCode export(Collection<MetricData> metrics) {
+    List<List<MetricData>> chunks = chunk(metrics);
+    if (chunks.size() <= 1) {
+      return delegate.export(metrics);
+    }
+    logger.log(Level.FINE, "Exporting metrics in {0} chunks", chunks.size());
+    return new ChunkedExport(chunks).start();
+  }
+
+  /**
+   * Returns {@code metrics} split into chunks whose estimated serialized size is at most {@code
+   * maxChunkBytes}, unless they hold a single point that is larger on its own.
+   */
+  // Visible for testing
+  List<List<MetricData>> chunk(Collection<MetricData> metrics) {
+    Map<Resource, Map<InstrumentationScopeInfo, List<MetricData>>> groups = new LinkedHashMap<>();
+    for (MetricData metric : metrics) {
+      groups
+          .computeIfAbsent(metric.getResource(), unused -> new LinkedHashMap<>())
+          .computeIfAbsent(metric.getInstrumentationScopeInfo(), unused -> new ArrayList<>())
+          .add(metric);
+    }
+    List<List<MetricData>> chunks = new ArrayList<>();
+    List<MetricData> chunk = new ArrayList<>();
+    long chunkBytes = 0;
+    for (Map.Entry<Resource, Map<InstrumentationScopeInfo, List<MetricData>>> resourceGroup :
+        groups.entrySet()) {
+      long resourceBytes = estimateSize(resourceGroup.getKey());
+      boolean resourceInChunk = false;
+      for (Map.Entry<InstrumentationScopeInfo, List<MetricData>> scopeGroup :
+          resourceGroup.getValue().entrySet()) {
+        long scopeBytes = estimateSize(scopeGroup.getKey());
+        boolean scopeInChunk = false;
+        for (MetricData metric : scopeGroup.getValue()) {
+          for (MetricData piece : split(metric, maxChunkBytes - resourceBytes - scopeBytes)) {
+            long pieceBytes = estimateSize(piece);
+            long groupBytes =
+                (resourceInChunk ? 0 : resourceBytes) + (scopeInChunk ? 0 : scopeBytes);
+            if (!chunk.isEmpty() && chunkBytes + groupBytes + pieceBytes > maxChunkBytes) {
+              chunks.add(chunk);
+              chunk = new ArrayList<>();
+              chunkBytes = 0;
+              groupBytes = resourceBytes + scopeBytes;
+            }
+            chunk.add(piece);
+            chunkBytes += groupBytes + pieceBytes;
+            resourceInChunk = true;
+            scopeInChunk = true;
+          }
+        }
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  // Splits a metric larger than maxBytes into metrics of its points, each at most maxBytes large
+  // unless it holds a single larger point.
+  private static List<MetricData> split(MetricData metric, long maxBytes) {
+    List<MetricData> pieces = new ArrayList<>(1);
+    long headerBytes = estimateHeaderSize(metric);
+    Collection<? extends PointData> points = metric.getData().getPoints();
+    long metricBytes = headerBytes;
+    for (PointData point : points) {
+      metricBytes += estimateSize(point);
+    }
+    if (metricBytes <= maxBytes || points.size() <= 1) {
+      pieces.add(metric);
+      return pieces;
+    }
+    List<PointData> piecePoints = new ArrayList<>();
+    long pieceBytes = headerBytes;
+    for (PointData point : points) {
+      long pointBytes = estimateSize(point);
+      if (!piecePoints.isEmpty() && pieceBytes + pointBytes > maxBytes) {
+        pieces.add(withPoints(metric, piecePoints));
+        piecePoints = new ArrayList<>();
+        pieceBytes = headerBytes;
+      }
+      piecePoints.add(point);
+      pieceBytes += pointBytes;
+    }
+    pieces.add(withPoints(metric, piecePoints));
+    return pieces;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MetricData withPoints(MetricData metric, List<PointData> points) {
+    switch (metric.getType()) {
+      case LONG_GAUGE:
+        return ImmutableMetricData.createLongGauge(
+            metric.getResource(),
+            metric.getInstrumentationScopeInfo(),
+            metric.getName(),
+            metric.getDescription(),
+            metric.getUnit(),
+            ImmutableGaugeData.create((Collection<LongPointData>) (Collection<?>) points));
+      case DOUBLE_GAUGE:
+        return ImmutableMetricData.createDoubleGauge(
+            metric.getResource(),
+            metric.getInstrumentationScopeInfo(),
+            metric.getName(),
+            metric.getDescription(),
+            metric.getUnit(),
+            ImmutableGaugeData.create((Collection<DoublePointData>) (Collection<?>) points));
+      case SUMMARY:
+        return ImmutableMetricData.createDoubleSummary(
+            metric.getResource(),
+            metric.getInstrumentationScopeInfo(),
+            metric.getName(),
+            metric.getDescription(),
+            metric.getUnit(),
+            ImmutableSummaryData.create((Collection<SummaryPointData>) (Collection<?>) points));
+      case LONG_SUM:
+        return MetricPointMerger.withPoints(
+            metric, metric.getLongSumData().getAggregationTemporality(), points);
+      case DOUBLE_SUM:
+        return MetricPointMerger.withPoints(
+            metric, metric.getDoubleSumData().getAggregationTemporality(), points);
+      case HISTOGRAM:
+        return MetricPointMerger.withPoints(
+            metric, metric.getHistogramData().getAggregationTemporality(), points);
+      case EXPONENTIAL_HISTOGRAM:
+        return MetricPointMerger.withPoints(
+            metric, metric.getExponentialHistogramData().getAggregationTemporality(), points);
+    }
+    throw new IllegalArgumentException("Unsupported metric type: " + metric.getType());
+  }
+
+  /** Returns an upper bound of the serialized size of {@code metric} in an OTLP request. */
+  // Visible for testing
+  static long estimateSize(MetricData metric) {
+    long size = estimateHeaderSize(metric);
+    for (PointData point : metric.getData().getPoints()) {
+      size += estimateSize(point);
+    }
+    return size;
+  }
+
+  private static long estimateHeaderSize(MetricData metric) {
+    return 2 * MESSAGE_OVERHEAD
+        + VARINT_FIELD
+        + stringSize(metric.getName())
+        + stringSize(metric.getDescription())
+        + stringSize(metric.getUnit());
+  }
+
+  private static long estimateSize(Resource resource) {
+    return MESSAGE_OVERHEAD * 2
+        + stringSize(resource.getSchemaUrl())
+        + attributesSize(resource.getAttributes());
+  }
+
+  private static long estimateSize(InstrumentationScopeInfo scope) {
+    return MESSAGE_OVERHEAD * 2
+        + stringSize(scope.getName())
+        + stringSize(scope.getVersion())
+        + stringSize(scope.getSchemaUrl())
+        + attributesSize(scope.getAttributes());
+  }
+
+  private static long estimateSize(PointData point) {
+    long size = MESSAGE_OVERHEAD + 2 * FIXED64_FIELD + attributesSize(point.getAttributes());
+    for (ExemplarData exemplar : point.getExemplars()) {
+      size +=
+          MESSAGE_OVERHEAD
+              + 2 * FIXED64_FIELD
+              + EXEMPLAR_IDS
+              + attributesSize(exemplar.getFilteredAttributes());
+    }
+    if (point instanceof LongPointData || point instanceof DoublePointData) {
+      return size + VARINT_FIELD + FIXED64_FIELD;
+    }
+    if (point instanceof HistogramPointData) {
+      HistogramPointData histogram = (HistogramPointData) point;
+      return size
+          + VARINT_FIELD
+          + 4 * FIXED64_FIELD
+          + packedFixed64Size(histogram.getCounts().size())
+          + packedFixed64Size(histogram.getBoundaries().size());
+    }
+    if (point instanceof ExponentialHistogramPointData) {
+      ExponentialHistogramPointData histogram = (ExponentialHistogramPointData) point;
+      return size
+          + 3 * VARINT_FIELD
+          + 6 * FIXED64_FIELD
+          + bucketsSize(histogram.getPositiveBuckets())
+          + bucketsSize(histogram.getNegativeBuckets());
+    }
+    if (point instanceof SummaryPointData) {
+      SummaryPointData summary = (SummaryPointData) point;
+      return size
+          + VARINT_FIELD
+          + FIXED64_FIELD
+          + summary.getValues().size() * (long) (MESSAGE_OVERHEAD + 2 * FIXED64_FIELD);
+    }
+    throw new IllegalArgumentException("Unsupported point type: " + point.getClass());
+  }
+
+  private static long bucketsSize(ExponentialHistogramBuckets buckets) {
+    long size = MESSAGE_OVERHEAD * 2 + VARINT_FIELD;
+    for (long count : buckets.getBucketCounts()) {
+      size += varintSize(count);
+    }
+    return size;
+  }
+
+  private static long packedFixed64Size(int values) {
+    return MESSAGE_OVERHEAD + 8L * values;
+  }
+
+  private static long attributesSize(Attributes attributes) {
+    long[] size = {0};
+    attributes.forEach(
+        (key, value) ->
+            size[0] += 3 * MESSAGE_OVERHEAD + stringSize(key.getKey()) + valueSize(key, value));
+    return size[0];
+  }
+
+  private static long valueSize(AttributeKey<?> key, Object value) {
+    switch (key.getType()) {
+      case STRING:
+        return stringSize((String) value);
+      case BOOLEAN:
+      case LONG:
+        return VARINT_FIELD;
+      case DOUBLE:
+        return FIXED64_FIELD;
+      default:
+        long size = MESSAGE_OVERHEAD;
+        for (Object element : (List<?>) value) {
+          size +=
+              MESSAGE_OVERHEAD
+                  + (element instanceof String ? stringSize((String) element) : VARINT_FIELD);
+        }
+        return size;
+    }
+  }
+
+  private static long stringSize(@Nullable String value) {
+    if (value == null || value.isEmpty()) {
+      return 0;
+    }
+    long size = MESSAGE_OVERHEAD;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      // Surrogate pairs count as 6 rather than 4 bytes, which keeps the estimate an upper bound
+      size += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+    }
+    return size;
+  }
+
+  private static int varintSize(long value) {
+    return value < 0 ? 10 : (63 - Long.numberOfLeadingZeros(value | 1)) / 7 + 1;
+  }
+
+  @Override
+  public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+    return delegate.getAggregationTemporality(instrumentType);
+  }
+
+  @Override
+  public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+    return delegate.getDefaultAggregation(instrumentType);
+  }
+
+  @Override
+  public MemoryMode getMemoryMode() {
+    return delegate.getMemoryMode();
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return delegate.flush();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    return delegate.shutdown();
+  }
+
+  // The export of the chunks of one export. The next chunk is exported once the export of another
+  // completes, so that at most maxParallelChunks are in flight.
+  private final class ChunkedExport {
+    private final List<List<MetricData>> chunks;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final List<MetricData> unexported = new ArrayList<>();
+    private final CompletableResultCode result = new CompletableResultCode();
+    private int failedChunks;
+
+    private ChunkedExport(List<List<MetricData>> chunks) {
+      this.chunks = chunks;
+      this.remaining = new AtomicInteger(chunks.size());
+    }
+
+    private CompletableResultCode start() {
+      for (int i = 0; i < Math.min(maxParallelChunks, chunks.size()); i++) {
+        exportNext();
+      }
+      return result;
+    }
+
+    private void exportNext() {
+      int index = next.getAndIncrement();
+      if (index >= chunks.size()) {
+        return;
+      }
+      List<MetricData> chunk = chunks.get(index);
+      CompletableResultCode chunkResult;
+      try {
+        chunkResult = delegate.export(chunk);
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Exporter threw an Exception", t);
+        chunkResult = CompletableResultCode.ofFailure();
+      }
+      CompletableResultCode completed = chunkResult;
+      completed.whenComplete(
+          () -> {
+            if (!completed.isSuccess()) {
+              synchronized (unexported) {
+                failedChunks++;
+                unexported.addAll(chunk);
+              }
+            }
+            if (remaining.decrementAndGet() == 0) {
+              complete();
+            } else {
+              exportNext();
+            }
+          });
+    }
+
+    private void complete() {
+      synchronized (unexported) {
+        if (failedChunks == 0) {
+          result.succeed();
+        } else {
+          logger.log(
+              Level.FINE,
+              "Failed to export {0} of {1} chunks",
+              new Object[] {failedChunks, chunks.size()});
+          result.failExceptionally(
+              new PartialExportException(failedChunks, chunks.size(), unexported));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramBuckets;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableExponentialHistogramBuckets;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableExponentialHistogramPointData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * A lock-free, base-2 exponential histogram for non-negative measurements, reset on every {@link
+ * #collect}. It is only as precise as the SDK's {@code base2ExponentialBucketHistogram} aggregation
+ * at the scale where 160 buckets cover the recorded range, which is what that aggregation settles
+ * on for typical latency distributions.
+ *
+ * <p>Measurements are bucketed at a fixed {@link #SCALE} over a fixed range, with values outside
+ * the range clamped into the first or last bucket. Bucket counts are kept in a single {@link
+ * AtomicLongArray}, allocated on first use, and striped across up to {@link #MAX_STRIPES} arrays
+ * only once concurrent recorders contend on it, so that histograms of attribute sets recorded by
+ * one thread at a time stay small. At collection, the stripes are merged and downscaled until they
+ * fit in {@link #MAX_BUCKETS} buckets.
+ */
+final class ConcurrentExponentialHistogram {
+
+  // 16 buckets per power of two, i.e. under 4.5% relative error before any downscaling.
+  static final int SCALE = 4;
+  // Same as the default max bucket count of the SDK's base2ExponentialBucketHistogram.
+  static final int MAX_BUCKETS = 160;
+
+  // Covers 2^-10 (about 1 microsecond, for latencies in milliseconds) up to 2^22 (about 70 minutes)
+  private static final int MIN_EXPONENT = -10;
+  private static final int MAX_EXPONENT = 22;
+  private static final int MIN_INDEX = (MIN_EXPONENT << SCALE) - 1;
+  private static final int MAX_INDEX = (MAX_EXPONENT << SCALE) - 1;
+  private static final int BUCKET_COUNT = MAX_INDEX - MIN_INDEX + 1;
+  private static final double MIN_VALUE = Math.scalb(1.0, MIN_EXPONENT);
+  private static final double MAX_VALUE = Math.scalb(1.0, MAX_EXPONENT);
+  private static final double SCALE_FACTOR = Math.scalb(1.0 / Math.log(2), SCALE);
+
+  static final int MAX_STRIPES =
+      Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors())));
+  private static final long NO_MIN = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+  private static final long NO_MAX = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+
+  // Grown by doubling on contention, and never shrunk
+  @Nullable private volatile AtomicLongArray[] stripes;
+  private final LongAdder zeroCount = new LongAdder();
+  private final DoubleAdder sum = new DoubleAdder();
+  private final AtomicLong min = new AtomicLong(NO_MIN);
+  private final AtomicLong max = new AtomicLong(NO_MAX);
+
+  void record(double value) {
+    if (!(value >= 0) || Double.isInfinite(value)) {
+      // Negative, NaN and infinite measurements are never produced for latencies.
+      return;
+    }
+    if (value == 0) {
+      zeroCount.increment();
+    } else {
+      increment(index(value) - MIN_INDEX);
+    }
+    sum.add(value);
+    updateMin(value);
+    updateMax(value);
+  }
+
+  /**
+   * Adds the measurements buffered in {@code partial}, as if they had been recorded here, and
+   * resets it. The caller must own {@code partial}.
+   */
+  void merge(Partial partial) {
+    if (partial.total == 0) {
+      return;
+    }
+    if (partial.zeroCount > 0) {
+      zeroCount.add(partial.zeroCount);
+    }
+    long[] counts = partial.counts;
+    if (counts != null) {
+      AtomicLongArray stripe = stripe(stripes());
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] != 0) {
+          stripe.addAndGet(partial.offset + i - MIN_INDEX, counts[i]);
+        }
+      }
+    }
+    sum.add(partial.sum);
+    updateMin(partial.min);
+    updateMax(partial.max);
+    partial.reset();
+  }
+
+  /**
+   * Moves the measurements recorded here to {@code target}, as if they had been recorded there.
+   * Measurements recorded here concurrently are either moved or left for a later call.
+   */
+  void moveTo(ConcurrentExponentialHistogram target) {
+    AtomicLongArray[] current = stripes;
+    if (current != null) {
+      AtomicLongArray targetStripe = null;
+      for (AtomicLongArray stripe : current) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+          if (stripe.get(i) != 0) {
+            if (targetStripe == null) {
+              targetStripe = target.stripe(target.stripes());
+            }
+            targetStripe.addAndGet(i, stripe.getAndSet(i, 0));
+          }
+        }
+      }
+    }
+    long zeros = zeroCount.sumThenReset();
+    if (zeros > 0) {
+      target.zeroCount.add(zeros);
+    }
+    target.sum.add(sum.sumThenReset());
+    target.updateMin(Double.longBitsToDouble(min.getAndSet(NO_MIN)));
+    target.updateMax(Double.longBitsToDouble(max.getAndSet(NO_MAX)));
+  }
+
+  // Visible for testing
+  int stripeCount() {
+    AtomicLongArray[] current = stripes;
+    return current == null ? 0 : current.length;
+  }
+
+  /**
+   * Returns the measurements recorded since the previous collection, and resets the histogram, or
+   * {@code null} if there were none. Measurements recorded concurrently with collection are
+   * reported either in this collection or in the next.
+   */
+  @Nullable
+  ExponentialHistogramPointData collect(
+      Attributes attributes, long startEpochNanos, long epochNanos) {
+    long[] counts = new long[BUCKET_COUNT];
+    long zeros = zeroCount.sumThenReset();
+    long total = zeros;
+    int low = Integer.MAX_VALUE;
+    int high = Integer.MIN_VALUE;
+    AtomicLongArray[] current = stripes;
+    for (int s = 0; current != null && s < current.length; s++) {
+      AtomicLongArray stripe = current[s];
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        if (stripe.get(i) != 0) {
+          long count = stripe.getAndSet(i, 0);
+          counts[i] += count;
+          total += count;
+          low = Math.min(low, i);
+          high = Math.max(high, i);
+        }
+      }
+    }
+    double collectedSum = sum.sumThenReset();
+    double collectedMin = Double.longBitsToDouble(min.getAndSet(NO_MIN));
+    double collectedMax = Double.longBitsToDouble(max.getAndSet(NO_MAX));
+    if (total == 0) {
+      return null;
+    }
+    ExponentialHistogramBuckets positiveBuckets =
+        low > high
+            ? ImmutableExponentialHistogramBuckets.create(SCALE, 0, emptyCounts())
+            : downscale(counts, low, high);
+    return ImmutableExponentialHistogramPointData.create(
+        positiveBuckets.getScale(),
+        collectedSum,
+        zeros,
+        collectedMin != Double.POSITIVE_INFINITY,
+        collectedMin,
+        collectedMax != Double.NEGATIVE_INFINITY,
+        collectedMax,
+        positiveBuckets,
+        ImmutableExponentialHistogramBuckets.create(positiveBuckets.getScale(), 0, emptyCounts()),
+        startEpochNanos,
+        epochNanos,
+        attributes,
+        Collections.emptyList());
+  }
+
+  /**
+   * Returns the index of the bucket holding {@code value} at {@link #SCALE}, where bucket {@code i}
+   * covers {@code (2^(i/2^SCALE), 2^((i+1)/2^SCALE)]}. Exact powers of two are resolved from the
+   * exponent, the same as the SDK, so that they are not misplaced by logarithm rounding.
+   */
+  static int index(double value) {
+    if (value <= MIN_VALUE) {
+      return MIN_INDEX;
+    }
+    if (value > MAX_VALUE) {
+      return MAX_INDEX;
+    }
+    long significand = Double.doubleToRawLongBits(value) & 0xFFFFFFFFFFFFFL;
+    if (significand == 0) {
+      return (Math.getExponent(value) << SCALE) - 1;
+    }
+    return (int) Math.ceil(Math.log(value) * SCALE_FACTOR) - 1;
+  }
+
+  private static ExponentialHistogramBuckets downscale(long[] counts, int low, int high) {
+    int lowIndex = low + MIN_INDEX;
+    int highIndex = high + MIN_INDEX;
+    int shift = 0;
+    while ((highIndex >> shift) - (lowIndex >> shift) + 1 > MAX_BUCKETS) {
+      shift++;
+    }
+    int offset = lowIndex >> shift;
+    long[] merged = new long[(highIndex >> shift) - offset + 1];
+    for (int i = low; i <= high; i++) {
+      merged[((i + MIN_INDEX) >> shift) - offset] += counts[i];
+    }
+    List<Long> bucketCounts = new ArrayList<>(merged.length);
+    for (long count : merged) {
+      bucketCounts.add(count);
+    }
+    return ImmutableExponentialHistogramBuckets.create(SCALE - shift, offset, bucketCounts);
+  }
+
+  private static List<Long> emptyCounts() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Increments the count of bucket {@code i} in the stripe of the current thread, and adds stripes
+   * if another thread updated the same count at the same time.
+   */
+  private void increment(int i) {
+    AtomicLongArray[] current = stripes();
+    AtomicLongArray stripe = stripe(current);
+    long count = stripe.get(i);
+    if (!stripe.compareAndSet(i, count, count + 1)) {
+      if (current.length < MAX_STRIPES) {
+        grow(current);
+      }
+      stripe.incrementAndGet(i);
+    }
+  }
+
+  private AtomicLongArray[] stripes() {
+    AtomicLongArray[] current = stripes;
+    if (current == null) {
+      synchronized (this) {
+        current = stripes;
+        if (current == null) {
+          current = new AtomicLongArray[] {new AtomicLongArray(BUCKET_COUNT)};
+          stripes = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  private static AtomicLongArray stripe(AtomicLongArray[] stripes) {
+    return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+  }
+
+  /** Doubles the number of stripes, unless another thread already grew them from {@code seen}. */
+  private synchronized void grow(AtomicLongArray[] seen) {
+    if (stripes != seen) {
+      return;
+    }
+    AtomicLongArray[] grown = Arrays.copyOf(seen, seen.length * 2);
+    for (int s = seen.length; s < grown.length; s++) {
+      grown[s] = new AtomicLongArray(BUCKET_COUNT);
+    }
+    stripes = grown;
+  }
+
+  /**
+   * Measurements buffered by a single thread, bucketed the same as {@link
+   * ConcurrentExponentialHistogram} so that they can be {@link #merge merged} into one without
+   * loss. Only the range of buckets recorded so far is allocated. Not thread-safe.
+   */
+  static final class Partial {
+    private static final int INITIAL_BUCKETS = 32;
+
+    private long total;
+    private long zeroCount;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    // Counts of the buckets from index offset on, allocated on first use
+    @Nullable private long[] counts;
+    private int offset;
+
+    void record(double value) {
+      if (!(value >= 0) || Double.isInfinite(value)) {
+        return;
+      }
+      if (value == 0) {
+        zeroCount++;
+      } else {
+        int index = index(value);
+        long[] buckets = bucketsFor(index);
+        buckets[index - offset]++;
+      }
+      total++;
+      sum += value;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+
+    private long[] bucketsFor(int index) {
+      long[] buckets = counts;
+      if (buckets == null) {
+        offset =
+            Math.max(
+                MIN_INDEX, Math.min(index - INITIAL_BUCKETS / 2, MAX_INDEX - INITIAL_BUCKETS + 1));
+        buckets = new long[INITIAL_BUCKETS];
+        counts = buckets;
+      } else if (index < offset || index >= offset + buckets.length) {
+        // Grow to twice the size, or more if needed, within the range of the histogram
+        int low = Math.min(index, offset);
+        int high = Math.max(index, offset + buckets.length - 1);
+        int length = Math.min(Math.max(high - low + 1, buckets.length * 2), BUCKET_COUNT);
+        int newOffset = index < offset ? Math.max(MIN_INDEX, high - length + 1) : low;
+        newOffset = Math.min(newOffset, MAX_INDEX - length + 1);
+        long[] grown = new long[length];
+        System.arraycopy(buckets, 0, grown, offset - newOffset, buckets.length);
+        buckets = grown;
+        counts = grown;
+        offset = newOffset;
+      }
+      return buckets;
+    }
+
+    private void reset() {
+      total = 0;
+      zeroCount = 0;
+      sum = 0;
+      min = Double.POSITIVE_INFINITY;
+      max = Double.NEGATIVE_INFINITY;
+      if (counts != null) {
+        Arrays.fill(counts, 0);
+      }
+    }
+  }
+
+  private void updateMin(double value) {
+    long current;
+    while (value < Double.longBitsToDouble(current = min.get())) {
+      if (min.compareAndSet(current, Double.doubleToRawLongBits(value))) {
+        return;
+      }
+    }
+  }
+
+  private void updateMax(double value) {
+    long current;
+    while (value > Double.longBitsToDouble(current = max.get())) {
+      if (max.compareAndSet(current, Double.doubleToRawLongBits(value))) {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import software.amazon.opentelemetry.javaagent.providers.MetricPointMerger.MetricKey;
+
+/**
+ * DeltaCarryOverBuffer keeps the delta sums and histograms that could not be exported, and merges
+ * them into the metrics of the next collection, so that the exporter sends one payload with the
+ * measurements of both intervals once it is available again. Points of the same series are merged
+ * with a {@link MetricPointMerger}: sums are added and exponential histograms are merged with
+ * rescaling. Cumulative and gauge metrics are not carried over, as the next collection supersedes
+ * them.
+ *
+ * <p>Carried over points are copied, so that the buffer can be used with a reader in {@link
+ * io.opentelemetry.sdk.common.export.MemoryMode#REUSABLE_DATA} mode, whose collected points are
+ * reused by the next collection.
+ *
+ * <p>At most {@code maxPoints} points are carried over. Beyond that, the series that have been
+ * carried over the longest are dropped first. As merged points keep the start time of the earliest
+ * point, a series' age is the start time of its point, which it keeps while it is drained into an
+ * export and carried again when that export fails too.
+ */
+final class DeltaCarryOverBuffer {
+  private static final Logger logger = Logger.getLogger(DeltaCarryOverBuffer.class.getName());
+
+  static final int DEFAULT_MAX_POINTS = 10_000;
+
+  private final MetricPointMerger merger = MetricPointMerger.create();
+  private final int maxPoints;
+  // In the order the series were carried over, which breaks ties between equally old series
+  private final Map<SeriesKey, Series> series = new LinkedHashMap<>();
+
+  static DeltaCarryOverBuffer create() {
+    return new DeltaCarryOverBuffer(DEFAULT_MAX_POINTS);
+  }
+
+  static DeltaCarryOverBuffer create(int maxPoints) {
+    return new DeltaCarryOverBuffer(maxPoints);
+  }
+
+  private DeltaCarryOverBuffer(int maxPoints) {
+    this.maxPoints = maxPoints;
+  }
+
+  /** Keeps the delta points of {@code metrics}, which could not be exported. */
+  synchronized void carry(Collection<MetricData> metrics) {
+    for (MetricData metric : metrics) {
+      if (!MetricPointMerger.isDelta(metric)) {
+        continue;
+      }
+      MetricKey metricKey = new MetricKey(metric);
+      // Only the metadata of the metric is kept, without its possibly reused points
+      MetricData template = null;
+      for (PointData point : metric.getData().getPoints()) {
+        SeriesKey key = new SeriesKey(metricKey, point.getAttributes());
+        Series carried = series.get(key);
+        if (carried == null) {
+          if (template == null) {
+            template =
+                MetricPointMerger.withPoints(
+                    metric, AggregationTemporality.DELTA, Collections.emptyList());
+          }
+          series.put(key, new Series(template, MetricPointMerger.copy(point)));
+        } else {
+          carried.point = merger.merge(carried.point, point);
+        }
+      }
+    }
+    if (series.size() > maxPoints) {
+      dropOldest(series.size() - maxPoints);
+    }
+  }
+
+  private void dropOldest(int count) {
+    List<Map.Entry<SeriesKey, Series>> entries = new ArrayList<>(series.entrySet());
+    // Stable, so that equally old series are dropped in the order they were carried over
+    entries.sort(
+        Comparator.comparingLong(
+            (Map.Entry<SeriesKey, Series> entry) -> entry.getValue().point.getStartEpochNanos()));
+    for (int i = 0; i < count; i++) {
+      series.remove(entries.get(i).getKey());
+    }
+    logger.log(
+        Level.WARNING, "Carry-over buffer is full, dropped {0} un-exported metric points.", count);
+  }
+
+  /**
+   * Returns {@code metrics} with the carried over points merged into the points of the same series,
+   * and the carried over series that {@code metrics} does not have added as metrics of their own.
+   * The buffer is empty afterwards.
+   */
+  synchronized Collection<MetricData> drainInto(Collection<MetricData> metrics) {
+    if (series.isEmpty()) {
+      return metrics;
+    }
+    List<MetricData> result = new ArrayList<>(metrics.size());
+    for (MetricData metric : metrics) {
+      if (!MetricPointMerger.isDelta(metric)) {
+        result.add(metric);
+        continue;
+      }
+      MetricKey metricKey = new MetricKey(metric);
+      Collection<? extends PointData> points = metric.getData().getPoints();
+      List<PointData> merged = null;
+      int index = 0;
+      for (PointData point : points) {
+        Series carried = series.remove(new SeriesKey(metricKey, point.getAttributes()));
+        if (carried != null && merged == null) {
+          merged = new ArrayList<>(points);
+        }
+        if (carried != null) {
+          merged.set(index, merger.merge(carried.point, point));
+        }
+        index++;
+      }
+      result.add(
+          merged == null
+              ? metric
+              : MetricPointMerger.withPoints(metric, AggregationTemporality.DELTA, merged));
+    }
+    Map<MetricKey, List<Series>> leftovers = new LinkedHashMap<>();
+    for (Map.Entry<SeriesKey, Series> entry : series.entrySet()) {
+      leftovers
+          .computeIfAbsent(entry.getKey().metric, unused -> new ArrayList<>())
+          .add(entry.getValue());
+    }
+    for (List<Series> metricSeries : leftovers.values()) {
+      List<PointData> points = new ArrayList<>(metricSeries.size());
+      for (Series carried : metricSeries) {
+        points.add(carried.point);
+      }
+      result.add(
+          MetricPointMerger.withPoints(
+              metricSeries.get(0).metric, AggregationTemporality.DELTA, points));
+    }
+    series.clear();
+    return Collections.unmodifiableList(result);
+  }
+
+  // Visible for testing
+  synchronized int size() {
+    return series.size();
+  }
+
+  private static final class SeriesKey {
+    private final MetricKey metric;
+    private final Attributes attributes;
+
+    private SeriesKey(MetricKey metric, Attributes attributes) {
+      this.metric = metric;
+      this.attributes = attributes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SeriesKey)) {
+        return false;
+      }
+      SeriesKey that = (SeriesKey) o;
+      return metric.equals(that.metric) && attributes.equals(that.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(metric, attributes);
+    }
+  }
+
+  private static final class Series {
+    private final MetricData metric;
+    private PointData point;
+
+    private Series(MetricData metric, PointData point) {
+      this.metric = metric;
+      this.point = point;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static io.opentelemetry.api.internal.Utils.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import io.opentelemetry.exporter.internal.TlsConfigHelper;
+import io.opentelemetry.exporter.internal.compression.Compressor;
+import io.opentelemetry.exporter.internal.compression.CompressorUtil;
+import io.opentelemetry.exporter.otlp.internal.OtlpConfigUtil;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.common.export.ProxyOptions;
+import io.opentelemetry.sdk.common.export.RetryPolicy;
+import java.net.ProxySelector;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * How the requests of one exporter are sent through a {@link HttpTransport}: the timeouts, headers,
+ * compression, TLS, proxy and retries that the SDK's OTLP/HTTP exporters are configured with, so
+ * that exporters on the transport honour the same settings.
+ */
+final class HttpRequestOptions {
+  private static final long DEFAULT_TIMEOUT_SECONDS = 10;
+
+  private final int timeoutMillis;
+  private final int connectTimeoutMillis;
+  private final Map<String, String> headers;
+  @Nullable private final Compressor compressor;
+  @Nullable private final SSLSocketFactory sslSocketFactory;
+  @Nullable private final ProxySelector proxySelector;
+  @Nullable private final RetryPolicy retryPolicy;
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  private HttpRequestOptions(Builder builder) {
+    this.timeoutMillis = (int) builder.timeout.toMillis();
+    this.connectTimeoutMillis = (int) builder.connectTimeout.toMillis();
+    this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(builder.headers));
+    this.compressor = builder.compressor;
+    SSLContext sslContext = builder.hasTls ? builder.tlsConfigHelper.getSslContext() : null;
+    this.sslSocketFactory = sslContext == null ? null : sslContext.getSocketFactory();
+    this.proxySelector =
+        builder.proxyOptions == null ? null : builder.proxyOptions.getProxySelector();
+    this.retryPolicy = builder.retryPolicy;
+  }
+
+  int getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  Map<String, String> getHeaders() {
+    return headers;
+  }
+
+  @Nullable
+  Compressor getCompressor() {
+    return compressor;
+  }
+
+  /** Returns the socket factory of the configured TLS settings, or null for the JVM's defaults. */
+  @Nullable
+  SSLSocketFactory getSslSocketFactory() {
+    return sslSocketFactory;
+  }
+
+  /** Returns the configured proxy selector, or null for the JVM's default one. */
+  @Nullable
+  ProxySelector getProxySelector() {
+    return proxySelector;
+  }
+
+  /** Returns how failed requests are retried, or null if they are not. */
+  @Nullable
+  RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  static final class Builder {
+    private Duration timeout = Duration.ofSeconds(DEFAULT_TIMEOUT_SECONDS);
+    private Duration connectTimeout = Duration.ofSeconds(DEFAULT_TIMEOUT_SECONDS);
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    @Nullable private Compressor compressor;
+    private final TlsConfigHelper tlsConfigHelper = new TlsConfigHelper();
+    private boolean hasTls;
+    @Nullable private ProxyOptions proxyOptions;
+    @Nullable private RetryPolicy retryPolicy = RetryPolicy.getDefault();
+
+    private Builder() {}
+
+    /**
+     * Sets the read timeout of requests, which also bounds how long they wait to be written. If
+     * unset, defaults to {@value DEFAULT_TIMEOUT_SECONDS}s.
+     */
+    Builder setTimeout(Duration timeout) {
+      this.timeout = checkTimeout(timeout);
+      return this;
+    }
+
+    /**
+     * Sets the connect timeout of requests. If unset, defaults to {@value
+     * DEFAULT_TIMEOUT_SECONDS}s.
+     */
+    Builder setConnectTimeout(Duration connectTimeout) {
+      this.connectTimeout = checkTimeout(connectTimeout);
+      return this;
+    }
+
+    Builder addHeader(String key, String value) {
+      requireNonNull(key, "key");
+      requireNonNull(value, "value");
+      headers.put(key, value);
+      return this;
+    }
+
+    /** Sets the compression of request bodies, {@code gzip} or {@code none}, the default. */
+    Builder setCompression(String compressionMethod) {
+      requireNonNull(compressionMethod, "compressionMethod");
+      this.compressor = CompressorUtil.validateAndResolveCompressor(compressionMethod);
+      return this;
+    }
+
+    /** Sets the PEM encoded certificates to trust instead of the JVM's trusted certificates. */
+    Builder setTrustedCertificates(byte[] trustedCertificatesPem) {
+      requireNonNull(trustedCertificatesPem, "trustedCertificatesPem");
+      tlsConfigHelper.setTrustManagerFromCerts(trustedCertificatesPem);
+      hasTls = true;
+      return this;
+    }
+
+    /** Sets the PEM encoded private key and certificate chain to authenticate the client with. */
+    Builder setClientTls(byte[] privateKeyPem, byte[] certificatePem) {
+      requireNonNull(privateKeyPem, "privateKeyPem");
+      requireNonNull(certificatePem, "certificatePem");
+      tlsConfigHelper.setKeyManagerFromCerts(privateKeyPem, certificatePem);
+      hasTls = true;
+      return this;
+    }
+
+    Builder setSslContext(SSLContext sslContext, X509TrustManager trustManager) {
+      requireNonNull(sslContext, "sslContext");
+      requireNonNull(trustManager, "trustManager");
+      tlsConfigHelper.setSslContext(sslContext, trustManager);
+      hasTls = true;
+      return this;
+    }
+
+    /** Sets the proxy of requests. If unset, the JVM's default proxy selector is used. */
+    Builder setProxyOptions(ProxyOptions proxyOptions) {
+      requireNonNull(proxyOptions, "proxyOptions");
+      this.proxyOptions = proxyOptions;
+      return this;
+    }
+
+    /**
+     * Sets how failed requests are retried, or null to not retry them. If unset, defaults to {@link
+     * RetryPolicy#getDefault()}.
+     */
+    Builder setRetryPolicy(@Nullable RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    /**
+     * Applies the OTLP exporter properties of {@code dataType}, e.g. {@code
+     * otel.exporter.otlp.metrics.headers} or {@code otel.exporter.otlp.headers}, like the SDK's
+     * autoconfigured exporters do. The endpoint and memory mode, if configured, are passed to
+     * {@code setEndpoint} and {@code setMemoryMode}.
+     */
+    Builder configure(
+        String dataType,
+        ConfigProperties configProps,
+        Consumer<String> setEndpoint,
+        Consumer<MemoryMode> setMemoryMode) {
+      OtlpConfigUtil.configureOtlpExporterBuilder(
+          dataType,
+          configProps,
+          setEndpoint,
+          this::addHeader,
+          this::setCompression,
+          this::setTimeout,
+          this::setTrustedCertificates,
+          this::setClientTls,
+          this::setRetryPolicy,
+          setMemoryMode);
+      return this;
+    }
+
+    HttpRequestOptions build() {
+      return new HttpRequestOptions(this);
+    }
+
+    private static Duration checkTimeout(Duration timeout) {
+      requireNonNull(timeout, "timeout");
+      checkArgument(
+          !timeout.isNegative() && timeout.toMillis() <= Integer.MAX_VALUE,
+          "timeout must be non-negative and at most Integer.MAX_VALUE milliseconds");
+      return timeout;
+    }
+  }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static java.util.Objects.requireNonNull;
+
+import io.opentelemetry.api.internal.InstrumentationUtil;
+import io.opentelemetry.exporter.internal.compression.Compressor;
+import io.opentelemetry.exporter.internal.marshal.Marshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.RetryPolicy;
+import io.opentelemetry.sdk.internal.DaemonThreadFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * HttpTransport sends the OTLP/HTTP requests of the agent's exporters to one endpoint authority,
+ * e.g. the local CloudWatch agent, so that exporters of different signals to the same collector
+ * share one transport rather than each having an HTTP client of its own.
+ *
+ * <p>Requests are sent with {@link HttpURLConnection}, whose connections are kept alive and pooled
+ * by the JVM per host and port, so consecutive exports reuse their connection and TLS session. The
+ * pool is shared with the application, and configured by its {@code http.keepAlive} and {@code
+ * http.maxConnections} system properties. All transports share one dispatcher of {@value
+ * #DISPATCHER_THREADS} daemon threads, which stop when idle. Each endpoint, i.e. each signal, has a
+ * queue of its own, bounded to {@code maxQueuedRequests}: its requests are sent in order, one at a
+ * time, and the queues of different endpoints take turns on the dispatcher, so that a slow signal
+ * cannot hold up the others. The dispatcher thus never has more than one task per endpoint.
+ *
+ * <p>Each request is sent with the {@link HttpRequestOptions} of its exporter, i.e. its timeouts,
+ * headers, compression, TLS and proxy settings. Like the SDK's OTLP exporters, requests that fail
+ * with an {@link IOException} or a retryable status (429, 502, 503 or 504) are retried with
+ * exponential backoff according to the options' {@link RetryPolicy}. The queue waits for the
+ * retries of a request before sending the next one, without holding a dispatcher thread during the
+ * backoff. Requests are sent with instrumentation suppressed, as the SDK's senders do, so that the
+ * agent does not trace its own exports.
+ */
+final class HttpTransport {
+  private static final Logger logger = Logger.getLogger(HttpTransport.class.getName());
+
+  static final int DISPATCHER_THREADS = 2;
+  static final int DEFAULT_MAX_QUEUED_REQUESTS = 8;
+  private static final int IO_FAILURE = -1;
+
+  private static final ConcurrentMap<String, HttpTransport> transports = new ConcurrentHashMap<>();
+
+  private final String authority;
+  private final Executor dispatcher;
+  private final ScheduledExecutorService retryScheduler;
+  private final int maxQueuedRequests;
+  private final ConcurrentMap<String, RequestQueue> queues = new ConcurrentHashMap<>();
+
+  /** Returns the transport to the authority of {@code endpoint}, shared by all its exporters. */
+  static HttpTransport forEndpoint(URL endpoint) {
+    return transports.computeIfAbsent(
+        authority(endpoint),
+        authority ->
+            new HttpTransport(
+                authority,
+                Dispatcher.EXECUTOR,
+                Dispatcher.RETRY_SCHEDULER,
+                DEFAULT_MAX_QUEUED_REQUESTS));
+  }
+
+  // Visible for testing
+  static HttpTransport create(
+      String authority,
+      Executor dispatcher,
+      ScheduledExecutorService retryScheduler,
+      int maxQueuedRequests) {
+    return new HttpTransport(authority, dispatcher, retryScheduler, maxQueuedRequests);
+  }
+
+  private HttpTransport(
+      String authority,
+      Executor dispatcher,
+      ScheduledExecutorService retryScheduler,
+      int maxQueuedRequests) {
+    this.authority = authority;
+    this.dispatcher = dispatcher;
+    this.retryScheduler = retryScheduler;
+    this.maxQueuedRequests = maxQueuedRequests;
+  }
+
+  /** Returns the queue of requests to {@code endpoint}, which must be of this authority. */
+  RequestQueue queue(URL endpoint) {
+    if (!authority.equals(authority(endpoint))) {
+      throw new IllegalArgumentException(endpoint + " is not an endpoint of " + authority);
+    }
+    return queues.computeIfAbsent(endpoint.toString(), unused -> new RequestQueue(endpoint));
+  }
+
+  /** Serializes {@code marshaler} to a request body, compressed as {@code options} configure. */
+  static byte[] serialize(Marshaler marshaler, HttpRequestOptions options) throws IOException {
+    Compressor compressor = options.getCompressor();
+    if (compressor == null) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(marshaler.getBinarySerializedSize());
+      marshaler.writeBinaryTo(out);
+      return out.toByteArray();
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (OutputStream compressed = compressor.compress(out)) {
+      marshaler.writeBinaryTo(compressed);
+    }
+    return out.toByteArray();
+  }
+
+  /** Returns {@code endpoint} as an URL, if it is an OTLP/HTTP endpoint. */
+  static URL parseEndpoint(String endpoint) {
+    requireNonNull(endpoint, "endpoint must not be null");
+    URL url;
+    try {
+      url = new URL(endpoint);
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException("Invalid endpoint, must be a valid URL: " + endpoint, e);
+    }
+    if (!url.getProtocol().equals("http") && !url.getProtocol().equals("https")) {
+      throw new IllegalArgumentException(
+          "Invalid endpoint, must start with http:// or https://: " + endpoint);
+    }
+    return url;
+  }
+
+  static String authority(URL endpoint) {
+    int port = endpoint.getPort() == -1 ? endpoint.getDefaultPort() : endpoint.getPort();
+    return endpoint.getProtocol() + "://" + endpoint.getHost() + ":" + port;
+  }
+
+  @Override
+  public String toString() {
+    return "HttpTransport{authority=" + authority + '}';
+  }
+
+  /** The requests to one endpoint, sent in order. */
+  final class RequestQueue {
+    private final URL endpoint;
+    private final Deque<Request> pending = new ArrayDeque<>();
+    private boolean dispatching;
+    @Nullable private CompletableResultCode lastResult;
+
+    private RequestQueue(URL endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    /**
+     * Queues a POST of the protobuf {@code body}, serialized by {@link #serialize}, and returns its
+     * result, which fails if the queue is full, the request fails, or the server does not respond
+     * with a 2xx status.
+     */
+    CompletableResultCode send(byte[] body, HttpRequestOptions options) {
+      Request request = new Request(body, options);
+      boolean dispatch = false;
+      synchronized (this) {
+        if (pending.size() >= maxQueuedRequests) {
+          logger.log(
+              Level.WARNING,
+              "Too many requests queued for {0}, dropping export. Is the endpoint reachable?",
+              endpoint);
+          return CompletableResultCode.ofFailure();
+        }
+        pending.add(request);
+        lastResult = request.result;
+        if (!dispatching) {
+          dispatching = true;
+          dispatch = true;
+        }
+      }
+      if (dispatch) {
+        dispatch();
+      }
+      return request.result;
+    }
+
+    /** Returns a result that completes once the requests queued so far have been sent. */
+    synchronized CompletableResultCode flush() {
+      return lastResult == null ? CompletableResultCode.ofSuccess() : lastResult;
+    }
+
+    private void dispatch() {
+      try {
+        dispatcher.execute(this::sendNext);
+      } catch (RejectedExecutionException e) {
+        Request request;
+        synchronized (this) {
+          while ((request = pending.poll()) != null) {
+            request.result.fail();
+          }
+          dispatching = false;
+        }
+        logger.log(Level.WARNING, "HTTP transport rejected export to " + endpoint, e);
+      }
+    }
+
+    // Sends one request, and goes back to the end of the dispatcher's queue for the next one
+    private void sendNext() {
+      Request request;
+      synchronized (this) {
+        request = pending.poll();
+      }
+      if (request == null) {
+        dispatchNext();
+      } else {
+        send(request);
+      }
+    }
+
+    private void send(Request request) {
+      int status = post(endpoint, request.body, request.options);
+      if (status >= 200 && status < 300) {
+        request.result.succeed();
+      } else if (isRetryable(status) && request.canRetry()) {
+        long backoffNanos = ThreadLocalRandom.current().nextLong(request.nextBackoffNanos());
+        try {
+          // The queue stays dispatching, so that the next request waits for the retry
+          retryScheduler.schedule(() -> retry(request), backoffNanos, TimeUnit.NANOSECONDS);
+          return;
+        } catch (RejectedExecutionException e) {
+          request.result.fail();
+        }
+      } else {
+        request.result.fail();
+      }
+      dispatchNext();
+    }
+
+    private void retry(Request request) {
+      try {
+        dispatcher.execute(() -> send(request));
+      } catch (RejectedExecutionException e) {
+        request.result.fail();
+        dispatchNext();
+      }
+    }
+
+    private void dispatchNext() {
+      boolean more;
+      synchronized (this) {
+        more = !pending.isEmpty();
+        dispatching = more;
+      }
+      if (more) {
+        dispatch();
+      }
+    }
+
+    private boolean isRetryable(int status) {
+      return status == IO_FAILURE
+          || status == 429
+          || status == 502
+          || status == 503
+          || status == 504;
+    }
+  }
+
+  /** Returns the HTTP status of the response, or {@link #IO_FAILURE} if there is none. */
+  private static int post(URL endpoint, byte[] body, HttpRequestOptions options) {
+    // Otherwise the agent's HttpURLConnection instrumentation traces the export, and Application
+    // Signals turn its span into dependency metrics, which are exported in turn
+    int[] status = {IO_FAILURE};
+    InstrumentationUtil.suppressInstrumentation(
+        () -> status[0] = postUninstrumented(endpoint, body, options));
+    return status[0];
+  }
+
+  private static int postUninstrumented(URL endpoint, byte[] body, HttpRequestOptions options) {
+    HttpURLConnection connection = null;
+    try {
+      connection = open(endpoint, options.getProxySelector());
+      SSLSocketFactory sslSocketFactory = options.getSslSocketFactory();
+      if (sslSocketFactory != null && connection instanceof HttpsURLConnection) {
+        ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+      }
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      connection.setConnectTimeout(options.getConnectTimeoutMillis());
+      connection.setReadTimeout(options.getTimeoutMillis());
+      for (Map.Entry<String, String> header : options.getHeaders().entrySet()) {
+        connection.setRequestProperty(header.getKey(), header.getValue());
+      }
+      connection.setRequestProperty("Content-Type", "application/x-protobuf");
+      Compressor compressor = options.getCompressor();
+      if (compressor != null) {
+        connection.setRequestProperty("Content-Encoding", compressor.getEncoding());
+      }
+      connection.setFixedLengthStreamingMode(body.length);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+      int status = connection.getResponseCode();
+      // The connection goes back to the keep-alive pool once its response is read to the end
+      drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+      if (status < 200 || status >= 300) {
+        logger.log(
+            Level.WARNING,
+            "Failed to export to {0}. Server responded with HTTP status code {1}",
+            new Object[] {endpoint, status});
+      }
+      return status;
+    } catch (IOException | RuntimeException e) {
+      if (connection != null) {
+        connection.disconnect();
+      }
+      logger.log(Level.WARNING, "Failed to export to " + endpoint, e);
+      return IO_FAILURE;
+    }
+  }
+
+  private static HttpURLConnection open(URL endpoint, @Nullable ProxySelector proxySelector)
+      throws IOException {
+    if (proxySelector == null) {
+      return (HttpURLConnection) endpoint.openConnection();
+    }
+    List<Proxy> proxies;
+    try {
+      proxies = proxySelector.select(endpoint.toURI());
+    } catch (URISyntaxException e) {
+      throw new IOException("Invalid endpoint " + endpoint, e);
+    }
+    Proxy proxy = proxies == null || proxies.isEmpty() ? Proxy.NO_PROXY : proxies.get(0);
+    return (HttpURLConnection) endpoint.openConnection(proxy);
+  }
+
+  private static void drain(@Nullable InputStream in) throws IOException {
+    if (in == null) {
+      return;
+    }
+    try (InputStream stream = in) {
+      byte[] buffer = new byte[1024];
+      while (stream.read(buffer) != -1) {
+        // Discard the response body
+      }
+    }
+  }
+
+  private static final class Request {
+    private final byte[] body;
+    private final HttpRequestOptions options;
+    @Nullable private final RetryPolicy retryPolicy;
+    private final CompletableResultCode result = new CompletableResultCode();
+    private int attempts = 1;
+    private long backoffNanos;
+
+    private Request(byte[] body, HttpRequestOptions options) {
+      this.body = body;
+      this.options = options;
+      this.retryPolicy = options.getRetryPolicy();
+      this.backoffNanos = retryPolicy == null ? 0 : retryPolicy.getInitialBackoff().toNanos();
+    }
+
+    private boolean canRetry() {
+      return retryPolicy != null && attempts < retryPolicy.getMaxAttempts();
+    }
+
+    // Returns the upper bound of the backoff before the next attempt, as the SDK's exporters do
+    private long nextBackoffNanos() {
+      long upperBound = Math.min(backoffNanos, retryPolicy.getMaxBackoff().toNanos());
+      backoffNanos = (long) (backoffNanos * retryPolicy.getBackoffMultiplier());
+      attempts++;
+      return upperBound;
+    }
+  }
+
+  // Created on first use, so that agents that do not use the transport start no threads
+  private static final class Dispatcher {
+    private static final Executor EXECUTOR = create();
+    private static final ScheduledExecutorService RETRY_SCHEDULER = createRetryScheduler();
+
+    private static Executor create() {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              DISPATCHER_THREADS,
+              DISPATCHER_THREADS,
+              60,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              new DaemonThreadFactory("AwsHttpTransport"));
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+
+    private static ScheduledExecutorService createRetryScheduler() {
+      ScheduledThreadPoolExecutor scheduler =
+          new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("AwsHttpTransportRetry"));
+      scheduler.setKeepAliveTime(60, TimeUnit.SECONDS);
+      scheduler.allowCoreThreadTimeOut(true);
+      return scheduler;
+    }
+  }
+}
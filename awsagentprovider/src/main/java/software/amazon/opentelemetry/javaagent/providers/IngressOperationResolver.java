@@ -0,0 +1,159 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_REQUEST_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_ROUTE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_TARGET;
+import static io.opentelemetry.semconv.SemanticAttributes.URL_PATH;
+import static software.amazon.opentelemetry.javaagent.providers.AwsApplicationSignalsCustomizerProvider.AWS_LAMBDA_FUNCTION_NAME_CONFIG;
+import static software.amazon.opentelemetry.javaagent.providers.AwsApplicationSignalsCustomizerProvider.isLambdaEnvironment;
+import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.INTERNAL_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.UNKNOWN_OPERATION;
+
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import javax.annotation.Nullable;
+
+/**
+ * IngressOperationResolver derives ingress operations (i.e. operations of Server and Consumer
+ * spans) from {@code http.route}, which most server instrumentations set to a low-cardinality
+ * template such as {@code /users/{id}}. Without a route, a meaningful span name is used as is, as
+ * in {@link AwsSpanProcessingUtil#getIngressOperation(SpanData)}. Otherwise the operation falls
+ * back to the template learned by a {@link PathTemplateLearner} if one is configured, or to the
+ * first path segment.
+ *
+ * <p>Operations are memoized by HTTP method and template in a bounded cache, so that resolving the
+ * operation of a span does not concatenate strings once its endpoint has been seen.
+ */
+final class IngressOperationResolver {
+
+  static final int DEFAULT_MEMO_SIZE = 1024;
+
+  // Templates of local paths are learned under a name that is not a valid host name, so that they
+  // do not mix with the paths of remote services.
+  static final String LOCAL_SERVICE = "<local>";
+
+  private final MemoizingCache<OperationKey, String> operations;
+  @Nullable private final PathTemplateLearner pathTemplates;
+
+  static IngressOperationResolver create(
+      int memoSize, @Nullable PathTemplateLearner pathTemplates) {
+    return new IngressOperationResolver(memoSize, pathTemplates);
+  }
+
+  private IngressOperationResolver(int memoSize, @Nullable PathTemplateLearner pathTemplates) {
+    this.operations = new MemoizingCache<>(memoSize);
+    this.pathTemplates = pathTemplates;
+  }
+
+  String getIngressOperation(SpanData span, SpanAttributesSnapshot attributes) {
+    return getIngressOperation(
+        span.getName(),
+        AwsSpanProcessingUtil.shouldUseInternalOperation(span),
+        AwsSpanProcessingUtil.getHttpMethod(
+            attributes.get(HTTP_REQUEST_METHOD), attributes.get(HTTP_METHOD)),
+        attributes.get(HTTP_ROUTE),
+        AwsSpanProcessingUtil.getHttpTarget(attributes.get(URL_PATH), attributes.get(HTTP_TARGET)));
+  }
+
+  /** Variant for spans that are still being recorded, as used by attribute propagation. */
+  String getIngressOperation(ReadableSpan span) {
+    return getIngressOperation(
+        span.getName(),
+        AwsSpanProcessingUtil.isLocalRoot(span) && !SpanKind.SERVER.equals(span.getKind()),
+        AwsSpanProcessingUtil.getHttpMethod(
+            span.getAttribute(HTTP_REQUEST_METHOD), span.getAttribute(HTTP_METHOD)),
+        span.getAttribute(HTTP_ROUTE),
+        AwsSpanProcessingUtil.getHttpTarget(
+            span.getAttribute(URL_PATH), span.getAttribute(HTTP_TARGET)));
+  }
+
+  private String getIngressOperation(
+      String spanName,
+      boolean useInternalOperation,
+      @Nullable String httpMethod,
+      @Nullable String httpRoute,
+      @Nullable String httpTarget) {
+    if (isLambdaEnvironment()) {
+      return System.getenv(AWS_LAMBDA_FUNCTION_NAME_CONFIG) + "/FunctionHandler";
+    }
+    if (useInternalOperation) {
+      return INTERNAL_OPERATION;
+    }
+    String template;
+    if (httpRoute != null && !httpRoute.isEmpty()) {
+      template = httpRoute;
+    } else if (AwsSpanProcessingUtil.isValidOperation(spanName, httpMethod)) {
+      return spanName;
+    } else if (httpTarget != null) {
+      template = getTemplate(httpTarget);
+    } else {
+      return UNKNOWN_OPERATION;
+    }
+    if (httpMethod == null) {
+      return template;
+    }
+    return operations.computeIfAbsent(
+        new OperationKey(httpMethod, template), key -> key.httpMethod + " " + key.template);
+  }
+
+  private String getTemplate(String httpTarget) {
+    if (pathTemplates == null) {
+      return UrlScanner.getFirstPathSegment(httpTarget);
+    }
+    int pathEnd = 0;
+    while (pathEnd < httpTarget.length()
+        && httpTarget.charAt(pathEnd) != '?'
+        && httpTarget.charAt(pathEnd) != '#') {
+      pathEnd++;
+    }
+    return pathTemplates.getTemplate(LOCAL_SERVICE, httpTarget.substring(0, pathEnd));
+  }
+
+  MemoizingCache<?, ?> getOperationsCache() {
+    return operations;
+  }
+
+  private static final class OperationKey {
+    private final String httpMethod;
+    private final String template;
+
+    OperationKey(String httpMethod, String template) {
+      this.httpMethod = httpMethod;
+      this.template = template;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof OperationKey)) {
+        return false;
+      }
+      OperationKey that = (OperationKey) o;
+      return httpMethod.equals(that.httpMethod) && template.equals(that.template);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * httpMethod.hashCode() + template.hashCode();
+    }
+  }
+}
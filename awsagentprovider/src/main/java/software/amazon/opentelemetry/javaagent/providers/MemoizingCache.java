@@ -0,0 +1,122 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * MemoizingCache is a bounded, concurrent memo for pure functions over low-cardinality inputs. Once
+ * {@link #maxSize} entries are held, arbitrary existing entries are evicted to make room, which is
+ * sufficient when the working set is expected to fit and the bound only guards against unexpected
+ * cardinality.
+ *
+ * <p>Hit, miss and eviction counts are tracked so that the bound can be sized from observation.
+ */
+final class MemoizingCache<K, V> {
+
+  private final ConcurrentHashMap<K, V> cache = new ConcurrentHashMap<>();
+  private final int maxSize;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  MemoizingCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the value cached for {@code key}, computing and caching it on a miss. Concurrent misses
+   * on the same key may compute the value more than once, but all callers observe the same cached
+   * instance.
+   */
+  V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+    V value = cache.get(key);
+    if (value != null) {
+      hits.increment();
+      return value;
+    }
+    misses.increment();
+    value = mappingFunction.apply(key);
+    if (cache.size() >= maxSize) {
+      evict();
+    }
+    V existing = cache.putIfAbsent(key, value);
+    return existing != null ? existing : value;
+  }
+
+  /**
+   * Returns the value cached for a key equal to {@code key}, or null if there is none. {@code key}
+   * may be a lookup key of another type that has the hash code of the key it stands for and is
+   * equal to it, so that looking up does not require creating a key.
+   */
+  @Nullable
+  V getIfPresent(Object key) {
+    V value = cache.get(key);
+    if (value != null) {
+      hits.increment();
+    }
+    return value;
+  }
+
+  private void evict() {
+    Iterator<K> keys = cache.keySet().iterator();
+    while (cache.size() >= maxSize && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+      evictions.increment();
+    }
+  }
+
+  int size() {
+    return cache.size();
+  }
+
+  long hitCount() {
+    return hits.sum();
+  }
+
+  long missCount() {
+    return misses.sum();
+  }
+
+  long evictionCount() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "MemoizingCache{"
+        + "size="
+        + cache.size()
+        + ", maxSize="
+        + maxSize
+        + ", hits="
+        + hits.sum()
+        + ", misses="
+        + misses.sum()
+        + ", evictions="
+        + evictions.sum()
+        + '}';
+  }
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_RESPONSE_STATUS_CODE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_STATUS_CODE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_DB_USER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_RESOURCE_IDENTIFIER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_RESOURCE_TYPE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_SPAN_KIND;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * MetricAttributes is an immutable {@link Attributes} with a fixed slot for each attribute that
+ * {@link AwsMetricAttributeGenerator} puts on Application Signals metrics. Compared to the SDK
+ * implementation, building one does not sort, status codes are stored as primitives, and the hash
+ * code is computed once on construction without boxing, which makes these attributes cheap to use
+ * as keys of the metric storage and the aggregator. The slots also let {@link
+ * CachingAttributesBuilder} look up a previously built instance from the values put into a {@link
+ * Builder}, without building one.
+ *
+ * <p>Attributes are iterated in key name order, and the hash code is the one of the SDK
+ * implementation with the same attributes. Like the SDK implementation, which is only equal to
+ * attributes of its own class, MetricAttributes are only equal to MetricAttributes, so they must
+ * not be mixed with SDK attributes as keys of the same map, such as the storage of one instrument.
+ * {@link #builder} falls back to the SDK builder as soon as a key outside of the schema is put,
+ * which the generator never does.
+ */
+@Immutable
+final class MetricAttributes implements Attributes {
+
+  // In key name order
+  private static final AttributeKey<?>[] STRING_KEYS = {
+    AWS_LOCAL_OPERATION,
+    AWS_LOCAL_SERVICE,
+    AWS_REMOTE_DB_USER,
+    AWS_REMOTE_OPERATION,
+    AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER,
+    AWS_REMOTE_RESOURCE_IDENTIFIER,
+    AWS_REMOTE_RESOURCE_TYPE,
+    AWS_REMOTE_SERVICE,
+    AWS_SPAN_KIND,
+  };
+
+  // Presence bits of the status code slots, which sort after all string slots
+  private static final int RESPONSE_STATUS_CODE_PRESENT = 1;
+  private static final int STATUS_CODE_PRESENT = 2;
+
+  private final String[] strings;
+  private final long responseStatusCode;
+  private final long statusCode;
+  private final int statusCodesPresent;
+  private final int size;
+  private final int hashCode;
+
+  @Nullable private volatile Map<AttributeKey<?>, Object> map;
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  private MetricAttributes(
+      String[] strings, long responseStatusCode, long statusCode, int statusCodesPresent) {
+    this.strings = strings;
+    this.responseStatusCode = responseStatusCode;
+    this.statusCode = statusCode;
+    this.statusCodesPresent = statusCodesPresent;
+    int size = Integer.bitCount(statusCodesPresent);
+    for (String value : strings) {
+      if (value != null) {
+        size++;
+      }
+    }
+    this.size = size;
+    this.hashCode = hashCode(strings, responseStatusCode, statusCode, statusCodesPresent);
+  }
+
+  // Same as the SDK implementation, which hashes the array of its keys and values in key name
+  // order, without boxing the status codes
+  private static int hashCode(
+      String[] strings, long responseStatusCode, long statusCode, int statusCodesPresent) {
+    int hashCode = 1;
+    for (int i = 0; i < strings.length; i++) {
+      if (strings[i] != null) {
+        hashCode = 31 * (31 * hashCode + STRING_KEYS[i].hashCode()) + strings[i].hashCode();
+      }
+    }
+    if ((statusCodesPresent & RESPONSE_STATUS_CODE_PRESENT) != 0) {
+      hashCode =
+          31 * (31 * hashCode + HTTP_RESPONSE_STATUS_CODE.hashCode())
+              + Long.hashCode(responseStatusCode);
+    }
+    if ((statusCodesPresent & STATUS_CODE_PRESENT) != 0) {
+      hashCode = 31 * (31 * hashCode + HTTP_STATUS_CODE.hashCode()) + Long.hashCode(statusCode);
+    }
+    return 1000003 ^ hashCode;
+  }
+
+  /** Returns whether {@code http.response.status_code} is set, without boxing it. */
+  boolean hasResponseStatusCode() {
+    return (statusCodesPresent & RESPONSE_STATUS_CODE_PRESENT) != 0;
+  }
+
+  long getResponseStatusCode() {
+    return responseStatusCode;
+  }
+
+  @Override
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T> T get(AttributeKey<T> key) {
+    if (key == null) {
+      return null;
+    }
+    int slot = stringSlot(key);
+    if (slot >= 0) {
+      return (T) strings[slot];
+    }
+    if (HTTP_RESPONSE_STATUS_CODE.equals(key)) {
+      return hasResponseStatusCode() ? (T) Long.valueOf(responseStatusCode) : null;
+    }
+    if (HTTP_STATUS_CODE.equals(key)) {
+      return (statusCodesPresent & STATUS_CODE_PRESENT) != 0 ? (T) Long.valueOf(statusCode) : null;
+    }
+    return null;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super AttributeKey<?>, ? super Object> consumer) {
+    for (int i = 0; i < strings.length; i++) {
+      if (strings[i] != null) {
+        consumer.accept(STRING_KEYS[i], strings[i]);
+      }
+    }
+    if (hasResponseStatusCode()) {
+      consumer.accept(HTTP_RESPONSE_STATUS_CODE, responseStatusCode);
+    }
+    if ((statusCodesPresent & STATUS_CODE_PRESENT) != 0) {
+      consumer.accept(HTTP_STATUS_CODE, statusCode);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public Map<AttributeKey<?>, Object> asMap() {
+    Map<AttributeKey<?>, Object> result = map;
+    if (result == null) {
+      Map<AttributeKey<?>, Object> copy = new LinkedHashMap<>(size * 4 / 3 + 1);
+      forEach(copy::put);
+      result = Collections.unmodifiableMap(copy);
+      map = result;
+    }
+    return result;
+  }
+
+  @Override
+  public AttributesBuilder toBuilder() {
+    return new Builder(this);
+  }
+
+  // The schema only holds a handful of keys, so a linear scan beats hashing
+  private static int stringSlot(AttributeKey<?> key) {
+    for (int i = 0; i < STRING_KEYS.length; i++) {
+      if (STRING_KEYS[i] == key) {
+        return i;
+      }
+    }
+    for (int i = 0; i < STRING_KEYS.length; i++) {
+      if (STRING_KEYS[i].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof MetricAttributes)) {
+      return false;
+    }
+    MetricAttributes that = (MetricAttributes) o;
+    return hashCode == that.hashCode
+        && equals(that.strings, that.responseStatusCode, that.statusCode, that.statusCodesPresent);
+  }
+
+  private boolean equals(
+      String[] strings, long responseStatusCode, long statusCode, int statusCodesPresent) {
+    return this.statusCodesPresent == statusCodesPresent
+        && ((statusCodesPresent & RESPONSE_STATUS_CODE_PRESENT) == 0
+            || this.responseStatusCode == responseStatusCode)
+        && ((statusCodesPresent & STATUS_CODE_PRESENT) == 0 || this.statusCode == statusCode)
+        && Arrays.equals(this.strings, strings);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return "MetricAttributes" + asMap();
+  }
+
+  /**
+   * Builder of {@link MetricAttributes}. Like the SDK builder, it ignores null keys and values and
+   * keeps the last value put for a key. Once a key outside of the schema is put, it delegates to
+   * the SDK builder.
+   */
+  static final class Builder implements AttributesBuilder {
+    private String[] strings;
+    // Whether strings is shared with built attributes, and must be copied before it is modified
+    private boolean shared;
+    private long responseStatusCode;
+    private long statusCode;
+    private int statusCodesPresent;
+    @Nullable private AttributesBuilder fallback;
+    private final LookupKey lookupKey = new LookupKey();
+
+    private Builder() {
+      this.strings = new String[STRING_KEYS.length];
+    }
+
+    private Builder(MetricAttributes attributes) {
+      this.strings = attributes.strings;
+      this.shared = true;
+      this.responseStatusCode = attributes.responseStatusCode;
+      this.statusCode = attributes.statusCode;
+      this.statusCodesPresent = attributes.statusCodesPresent;
+    }
+
+    /**
+     * Returns the cached attributes equal to the ones this builder would build, or null if there
+     * are none. Nothing is allocated.
+     */
+    @Nullable
+    Attributes lookup(MemoizingCache<Attributes, Attributes> cache) {
+      return fallback == null ? cache.getIfPresent(lookupKey) : null;
+    }
+
+    /** Clears this builder, so that it can be reused for other attributes. */
+    Builder reset() {
+      if (shared) {
+        strings = new String[STRING_KEYS.length];
+        shared = false;
+      } else {
+        Arrays.fill(strings, null);
+      }
+      statusCodesPresent = 0;
+      fallback = null;
+      return this;
+    }
+
+    @Override
+    public Attributes build() {
+      if (fallback != null) {
+        return fallback.build();
+      }
+      shared = true;
+      return new MetricAttributes(strings, responseStatusCode, statusCode, statusCodesPresent);
+    }
+
+    @Override
+    public <T> Builder put(AttributeKey<Long> key, int value) {
+      return put(key, (long) value);
+    }
+
+    @Override
+    public <T> Builder put(AttributeKey<T> key, T value) {
+      if (key == null || key.getKey().isEmpty() || value == null) {
+        return this;
+      }
+      if (fallback != null) {
+        fallback.put(key, value);
+        return this;
+      }
+      int slot = stringSlot(key);
+      if (slot >= 0) {
+        writableStrings()[slot] = (String) value;
+      } else if (HTTP_RESPONSE_STATUS_CODE.equals(key)) {
+        responseStatusCode = (Long) value;
+        statusCodesPresent |= RESPONSE_STATUS_CODE_PRESENT;
+      } else if (HTTP_STATUS_CODE.equals(key)) {
+        statusCode = (Long) value;
+        statusCodesPresent |= STATUS_CODE_PRESENT;
+      } else {
+        AttributesBuilder sdkBuilder = Attributes.builder();
+        putAllTo(sdkBuilder);
+        sdkBuilder.put(key, value);
+        fallback = sdkBuilder;
+      }
+      return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Builder putAll(Attributes attributes) {
+      if (attributes == null) {
+        return this;
+      }
+      attributes.forEach((key, value) -> put((AttributeKey<Object>) key, value));
+      return this;
+    }
+
+    @Override
+    public <T> Builder remove(AttributeKey<T> key) {
+      if (key == null || key.getKey().isEmpty()) {
+        return this;
+      }
+      // Same as the SDK builder, keys of the same name and type are removed
+      return removeIf(
+          entryKey ->
+              key.getKey().equals(entryKey.getKey()) && key.getType().equals(entryKey.getType()));
+    }
+
+    @Override
+    public Builder removeIf(Predicate<AttributeKey<?>> filter) {
+      if (filter == null) {
+        return this;
+      }
+      if (fallback != null) {
+        fallback.removeIf(filter);
+        return this;
+      }
+      for (int i = 0; i < STRING_KEYS.length; i++) {
+        if (strings[i] != null && filter.test(STRING_KEYS[i])) {
+          writableStrings()[i] = null;
+        }
+      }
+      if ((statusCodesPresent & RESPONSE_STATUS_CODE_PRESENT) != 0
+          && filter.test(HTTP_RESPONSE_STATUS_CODE)) {
+        statusCodesPresent &= ~RESPONSE_STATUS_CODE_PRESENT;
+      }
+      if ((statusCodesPresent & STATUS_CODE_PRESENT) != 0 && filter.test(HTTP_STATUS_CODE)) {
+        statusCodesPresent &= ~STATUS_CODE_PRESENT;
+      }
+      return this;
+    }
+
+    /**
+     * Stands for the attributes being built in lookups of a map keyed by {@link MetricAttributes},
+     * which call {@code equals} on the looked up key. It is never stored in a map, and is not an
+     * {@link Attributes}, so it is never compared the other way around.
+     */
+    private final class LookupKey {
+      @Override
+      public boolean equals(Object o) {
+        return o instanceof MetricAttributes
+            && ((MetricAttributes) o)
+                .equals(strings, responseStatusCode, statusCode, statusCodesPresent);
+      }
+
+      @Override
+      public int hashCode() {
+        return MetricAttributes.hashCode(
+            strings, responseStatusCode, statusCode, statusCodesPresent);
+      }
+    }
+
+    private String[] writableStrings() {
+      if (shared) {
+        strings = strings.clone();
+        shared = false;
+      }
+      return strings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void putAllTo(AttributesBuilder builder) {
+      for (int i = 0; i < STRING_KEYS.length; i++) {
+        if (strings[i] != null) {
+          builder.put((AttributeKey<String>) STRING_KEYS[i], strings[i]);
+        }
+      }
+      if ((statusCodesPresent & RESPONSE_STATUS_CODE_PRESENT) != 0) {
+        builder.put(HTTP_RESPONSE_STATUS_CODE, responseStatusCode);
+      }
+      if ((statusCodesPresent & STATUS_CODE_PRESENT) != 0) {
+        builder.put(HTTP_STATUS_CODE, statusCode);
+      }
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * MetricAttributesHandoff carries the metric attribute map generated for a span by {@link
+ * AwsSpanMetricsProcessor} over to {@link AwsMetricAttributesSpanExporter}, so that each sampled
+ * span only has its metric attributes generated once. Entries are keyed by {@link SpanContext}, and
+ * are removed when the exporter takes them.
+ *
+ * <p>Spans that are never exported, or are exported before the processor has handled them, leave no
+ * entry or a stale one behind. The handoff is therefore bounded, evicting arbitrary entries once
+ * {@link #maxSize} are held, and callers must recompute attributes whenever {@link #take} misses.
+ */
+final class MetricAttributesHandoff {
+
+  // Comfortably above the default BatchSpanProcessor queue size, so entries for spans waiting to
+  // be exported are not normally evicted.
+  static final int DEFAULT_MAX_SIZE = 4096;
+
+  private final ConcurrentHashMap<SpanContext, Map<String, Attributes>> entries =
+      new ConcurrentHashMap<>();
+  private final int maxSize;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  static MetricAttributesHandoff create() {
+    return create(DEFAULT_MAX_SIZE);
+  }
+
+  static MetricAttributesHandoff create(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    return new MetricAttributesHandoff(maxSize);
+  }
+
+  private MetricAttributesHandoff(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Records the attribute map generated for the span. Only sampled spans reach span exporters, so
+   * the map is only recorded for those.
+   */
+  void offer(SpanContext spanContext, Map<String, Attributes> attributeMap) {
+    if (!spanContext.isSampled()) {
+      return;
+    }
+    if (entries.size() >= maxSize) {
+      evict();
+    }
+    entries.put(spanContext, attributeMap);
+  }
+
+  /** Removes and returns the attribute map recorded for the span, or null if there is none. */
+  @Nullable
+  Map<String, Attributes> take(SpanContext spanContext) {
+    Map<String, Attributes> attributeMap = entries.remove(spanContext);
+    if (attributeMap != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return attributeMap;
+  }
+
+  private void evict() {
+    Iterator<SpanContext> keys = entries.keySet().iterator();
+    while (entries.size() >= maxSize && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+      evictions.increment();
+    }
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  long hitCount() {
+    return hits.sum();
+  }
+
+  long missCount() {
+    return misses.sum();
+  }
+
+  long evictionCount() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "MetricAttributesHandoff{"
+        + "size="
+        + entries.size()
+        + ", maxSize="
+        + maxSize
+        + ", hits="
+        + hits.sum()
+        + ", misses="
+        + misses.sum()
+        + ", evictions="
+        + evictions.sum()
+        + '}';
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.DoublePointData;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramBuckets;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.MetricDataType;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableDoublePointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableExponentialHistogramBuckets;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableExponentialHistogramData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableHistogramData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableHistogramPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableLongPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableSumData;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * MetricPointMerger adds up the points of a series over consecutive intervals: the merged point
+ * starts when the earlier point starts, ends when the later point ends, and aggregates the
+ * measurements of both. Sums are added, histograms add their bucket counts, and exponential
+ * histograms are merged at the finest scale at which both points fit within {@code maxBuckets}
+ * buckets, as the SDK does for cumulative exponential histograms. Other points, and explicit bucket
+ * histograms whose boundaries changed, cannot be merged, and the later point is kept.
+ */
+final class MetricPointMerger {
+
+  // Same as the default of Aggregation#base2ExponentialBucketHistogram
+  static final int DEFAULT_MAX_BUCKETS = 160;
+  private static final int MIN_SCALE = -10;
+
+  private final int maxBuckets;
+
+  static MetricPointMerger create() {
+    return new MetricPointMerger(DEFAULT_MAX_BUCKETS);
+  }
+
+  private MetricPointMerger(int maxBuckets) {
+    this.maxBuckets = maxBuckets;
+  }
+
+  /**
+   * Returns {@code earlier} and {@code later} merged, see {@link MetricPointMerger}. The merged
+   * point does not share mutable state with either of them, see {@link #copy}.
+   */
+  PointData merge(PointData earlier, PointData later) {
+    if (earlier instanceof LongPointData && later instanceof LongPointData) {
+      return ImmutableLongPointData.create(
+          earlier.getStartEpochNanos(),
+          later.getEpochNanos(),
+          later.getAttributes(),
+          ((LongPointData) earlier).getValue() + ((LongPointData) later).getValue(),
+          copyOf(((LongPointData) later).getExemplars()));
+    }
+    if (earlier instanceof DoublePointData && later instanceof DoublePointData) {
+      return ImmutableDoublePointData.create(
+          earlier.getStartEpochNanos(),
+          later.getEpochNanos(),
+          later.getAttributes(),
+          ((DoublePointData) earlier).getValue() + ((DoublePointData) later).getValue(),
+          copyOf(((DoublePointData) later).getExemplars()));
+    }
+    if (earlier instanceof HistogramPointData && later instanceof HistogramPointData) {
+      return merge((HistogramPointData) earlier, (HistogramPointData) later);
+    }
+    if (earlier instanceof ExponentialHistogramPointData
+        && later instanceof ExponentialHistogramPointData) {
+      return merge((ExponentialHistogramPointData) earlier, (ExponentialHistogramPointData) later);
+    }
+    return copy(later);
+  }
+
+  /**
+   * Returns a copy of {@code point} that does not share mutable state with it. With {@link
+   * io.opentelemetry.sdk.common.export.MemoryMode#REUSABLE_DATA}, the SDK reuses the points it
+   * collects, and their lists, in the next collection.
+   */
+  static PointData copy(PointData point) {
+    if (point instanceof LongPointData) {
+      LongPointData longPoint = (LongPointData) point;
+      return ImmutableLongPointData.create(
+          longPoint.getStartEpochNanos(),
+          longPoint.getEpochNanos(),
+          longPoint.getAttributes(),
+          longPoint.getValue(),
+          copyOf(longPoint.getExemplars()));
+    }
+    if (point instanceof DoublePointData) {
+      DoublePointData doublePoint = (DoublePointData) point;
+      return ImmutableDoublePointData.create(
+          doublePoint.getStartEpochNanos(),
+          doublePoint.getEpochNanos(),
+          doublePoint.getAttributes(),
+          doublePoint.getValue(),
+          copyOf(doublePoint.getExemplars()));
+    }
+    if (point instanceof HistogramPointData) {
+      HistogramPointData histogram = (HistogramPointData) point;
+      return ImmutableHistogramPointData.create(
+          histogram.getStartEpochNanos(),
+          histogram.getEpochNanos(),
+          histogram.getAttributes(),
+          histogram.getSum(),
+          histogram.hasMin(),
+          histogram.getMin(),
+          histogram.hasMax(),
+          histogram.getMax(),
+          copyOf(histogram.getBoundaries()),
+          copyOf(histogram.getCounts()),
+          copyOf(histogram.getExemplars()));
+    }
+    if (point instanceof ExponentialHistogramPointData) {
+      ExponentialHistogramPointData histogram = (ExponentialHistogramPointData) point;
+      return ImmutableExponentialHistogramPointData.create(
+          histogram.getScale(),
+          histogram.getSum(),
+          histogram.getZeroCount(),
+          histogram.hasMin(),
+          histogram.getMin(),
+          histogram.hasMax(),
+          histogram.getMax(),
+          copy(histogram.getPositiveBuckets()),
+          copy(histogram.getNegativeBuckets()),
+          histogram.getStartEpochNanos(),
+          histogram.getEpochNanos(),
+          histogram.getAttributes(),
+          copyOf(histogram.getExemplars()));
+    }
+    return point;
+  }
+
+  /** Returns whether {@code metric} holds delta sums or histograms, whose points can be merged. */
+  static boolean isDelta(MetricData metric) {
+    switch (metric.getType()) {
+      case LONG_SUM:
+        return metric.getLongSumData().getAggregationTemporality() == AggregationTemporality.DELTA;
+      case DOUBLE_SUM:
+        return metric.getDoubleSumData().getAggregationTemporality()
+            == AggregationTemporality.DELTA;
+      case HISTOGRAM:
+        return metric.getHistogramData().getAggregationTemporality()
+            == AggregationTemporality.DELTA;
+      case EXPONENTIAL_HISTOGRAM:
+        return metric.getExponentialHistogramData().getAggregationTemporality()
+            == AggregationTemporality.DELTA;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns a sum or histogram with the metadata of {@code metric}, and {@code points} with the
+   * given temporality. The points must be of the type of {@code metric}.
+   */
+  @SuppressWarnings("unchecked")
+  static MetricData withPoints(
+      MetricData metric,
+      AggregationTemporality temporality,
+      Collection<? extends PointData> points) {
+    switch (metric.getType()) {
+      case LONG_SUM:
+        return ImmutableMetricData.createLongSum(
+            metric.getResource(),
+            metric.getInstrumentationScopeInfo(),
+            metric.getName(),
+            metric.getDescription(),
+            metric.getUnit(),
+            ImmutableSumData.create(
+                metric.getLongSumData().isMonotonic(),
+                temporality,
+                (Collection<LongPointData>) points));
+      case DOUBLE_SUM:
+        return ImmutableMetricData.createDoubleSum(
+            metric.getResource(),
+            metric.getInstrumentationScopeInfo(),
+            metric.getName(),
+            metric.getDescription(),
+            metric.getUnit(),
+            ImmutableSumData.create(
+                metric.getDoubleSumData().isMonotonic(),
+                temporality,
+                (Collection<DoublePointData>) points));
+      case HISTOGRAM:
+        return ImmutableMetricData.createDoubleHistogram(
+            metric.getResource(),
+            metric.getInstrumentationScopeInfo(),
+            metric.getName(),
+            metric.getDescription(),
+            metric.getUnit(),
+            ImmutableHistogramData.create(temporality, (Collection<HistogramPointData>) points));
+      case EXPONENTIAL_HISTOGRAM:
+        return ImmutableMetricData.createExponentialHistogram(
+            metric.getResource(),
+            metric.getInstrumentationScopeInfo(),
+            metric.getName(),
+            metric.getDescription(),
+            metric.getUnit(),
+            ImmutableExponentialHistogramData.create(
+                temporality, (Collection<ExponentialHistogramPointData>) points));
+      default:
+        throw new IllegalArgumentException("Not a sum or histogram: " + metric.getType());
+    }
+  }
+
+  private static HistogramPointData merge(HistogramPointData previous, HistogramPointData delta) {
+    if (!previous.getBoundaries().equals(delta.getBoundaries())) {
+      return (HistogramPointData) copy(delta);
+    }
+    List<Long> previousCounts = previous.getCounts();
+    List<Long> deltaCounts = delta.getCounts();
+    List<Long> counts = new ArrayList<>(deltaCounts.size());
+    for (int i = 0; i < deltaCounts.size(); i++) {
+      counts.add(previousCounts.get(i) + deltaCounts.get(i));
+    }
+    return ImmutableHistogramPointData.create(
+        previous.getStartEpochNanos(),
+        delta.getEpochNanos(),
+        delta.getAttributes(),
+        previous.getSum() + delta.getSum(),
+        previous.hasMin() || delta.hasMin(),
+        min(previous.hasMin(), previous.getMin(), delta.hasMin(), delta.getMin()),
+        previous.hasMax() || delta.hasMax(),
+        max(previous.hasMax(), previous.getMax(), delta.hasMax(), delta.getMax()),
+        delta.getBoundaries(),
+        counts,
+        copyOf(delta.getExemplars()));
+  }
+
+  private ExponentialHistogramPointData merge(
+      ExponentialHistogramPointData previous, ExponentialHistogramPointData delta) {
+    int scale = Math.min(previous.getScale(), delta.getScale());
+    while (scale > MIN_SCALE
+        && (bucketCount(previous.getPositiveBuckets(), delta.getPositiveBuckets(), scale)
+                > maxBuckets
+            || bucketCount(previous.getNegativeBuckets(), delta.getNegativeBuckets(), scale)
+                > maxBuckets)) {
+      scale--;
+    }
+    return ImmutableExponentialHistogramPointData.create(
+        scale,
+        previous.getSum() + delta.getSum(),
+        previous.getZeroCount() + delta.getZeroCount(),
+        previous.hasMin() || delta.hasMin(),
+        min(previous.hasMin(), previous.getMin(), delta.hasMin(), delta.getMin()),
+        previous.hasMax() || delta.hasMax(),
+        max(previous.hasMax(), previous.getMax(), delta.hasMax(), delta.getMax()),
+        addBuckets(previous.getPositiveBuckets(), delta.getPositiveBuckets(), scale),
+        addBuckets(previous.getNegativeBuckets(), delta.getNegativeBuckets(), scale),
+        previous.getStartEpochNanos(),
+        delta.getEpochNanos(),
+        delta.getAttributes(),
+        copyOf(delta.getExemplars()));
+  }
+
+  // The number of buckets spanned by both sets of buckets at the given scale
+  private static int bucketCount(
+      ExponentialHistogramBuckets a, ExponentialHistogramBuckets b, int scale) {
+    long low = Long.MAX_VALUE;
+    long high = Long.MIN_VALUE;
+    for (ExponentialHistogramBuckets buckets : new ExponentialHistogramBuckets[] {a, b}) {
+      int size = buckets.getBucketCounts().size();
+      if (size > 0) {
+        int shift = buckets.getScale() - scale;
+        low = Math.min(low, buckets.getOffset() >> shift);
+        high = Math.max(high, (buckets.getOffset() + size - 1) >> shift);
+      }
+    }
+    return low > high ? 0 : (int) (high - low + 1);
+  }
+
+  private static ExponentialHistogramBuckets addBuckets(
+      ExponentialHistogramBuckets a, ExponentialHistogramBuckets b, int scale) {
+    int low = Integer.MAX_VALUE;
+    int high = Integer.MIN_VALUE;
+    for (ExponentialHistogramBuckets buckets : new ExponentialHistogramBuckets[] {a, b}) {
+      int size = buckets.getBucketCounts().size();
+      if (size > 0) {
+        int shift = buckets.getScale() - scale;
+        low = Math.min(low, buckets.getOffset() >> shift);
+        high = Math.max(high, (buckets.getOffset() + size - 1) >> shift);
+      }
+    }
+    if (low > high) {
+      return ImmutableExponentialHistogramBuckets.create(scale, 0, Collections.emptyList());
+    }
+    long[] counts = new long[high - low + 1];
+    for (ExponentialHistogramBuckets buckets : new ExponentialHistogramBuckets[] {a, b}) {
+      int shift = buckets.getScale() - scale;
+      int offset = buckets.getOffset();
+      List<Long> bucketCounts = buckets.getBucketCounts();
+      for (int i = 0; i < bucketCounts.size(); i++) {
+        counts[((offset + i) >> shift) - low] += bucketCounts.get(i);
+      }
+    }
+    List<Long> list = new ArrayList<>(counts.length);
+    for (long count : counts) {
+      list.add(count);
+    }
+    return ImmutableExponentialHistogramBuckets.create(scale, low, list);
+  }
+
+  private static ExponentialHistogramBuckets copy(ExponentialHistogramBuckets buckets) {
+    return ImmutableExponentialHistogramBuckets.create(
+        buckets.getScale(), buckets.getOffset(), copyOf(buckets.getBucketCounts()));
+  }
+
+  private static <T> List<T> copyOf(List<T> list) {
+    return list.isEmpty() ? Collections.emptyList() : new ArrayList<>(list);
+  }
+
+  private static double min(boolean hasA, double a, boolean hasB, double b) {
+    if (!hasA) {
+      return b;
+    }
+    return hasB ? Math.min(a, b) : a;
+  }
+
+  private static double max(boolean hasA, double a, boolean hasB, double b) {
+    if (!hasA) {
+      return b;
+    }
+    return hasB ? Math.max(a, b) : a;
+  }
+
+  /** Identifies a metric by its scope, name and type. */
+  static final class MetricKey {
+    private final InstrumentationScopeInfo scope;
+    private final String name;
+    private final MetricDataType type;
+
+    MetricKey(MetricData metric) {
+      this.scope = metric.getInstrumentationScopeInfo();
+      this.name = metric.getName();
+      this.type = metric.getType();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof MetricKey)) {
+        return false;
+      }
+      MetricKey other = (MetricKey) o;
+      return scope.equals(other.scope) && name.equals(other.name) && type == other.type;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(scope, name, type);
+    }
+  }
+}
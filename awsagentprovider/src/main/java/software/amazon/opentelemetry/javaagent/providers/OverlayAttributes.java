@@ -0,0 +1,197 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * OverlayAttributes is a read-only {@link Attributes} view of a small set of attributes layered
+ * over a base set, without copying the base. Where both sets hold the same {@link AttributeKey},
+ * the overlay value shadows the base value.
+ *
+ * <p>It is intended for adding a handful of derived attributes to spans with many attributes, where
+ * building a merged copy would re-sort and re-allocate the whole base set. {@link #get} and {@link
+ * #forEach} consult the overlay first, and {@link #size} is computed once on construction. {@link
+ * #asMap} is materialized on first use.
+ *
+ * <p>Unlike {@link AttributesBuilder}, which treats keys with the same name as the same key,
+ * shadowing here requires equal keys, i.e. the same name and type.
+ *
+ * <p>Like the SDK implementation, which is only equal to attributes of its own class,
+ * OverlayAttributes are only equal to OverlayAttributes with the same attributes, however they are
+ * layered. The hash code is the one of the SDK implementation with the same attributes.
+ */
+@Immutable
+final class OverlayAttributes implements Attributes {
+
+  private final Attributes base;
+  private final AttributeKey<?>[] overlayKeys;
+  private final Object[] overlayValues;
+  private final int size;
+
+  @Nullable private volatile Map<AttributeKey<?>, Object> map;
+  private volatile int hashCode;
+
+  /** Returns {@code base} with {@code overlay} layered over it. */
+  static Attributes create(Attributes base, Attributes overlay) {
+    if (overlay.isEmpty()) {
+      return base;
+    }
+    if (base.isEmpty()) {
+      return overlay;
+    }
+    return new OverlayAttributes(base, overlay);
+  }
+
+  private OverlayAttributes(Attributes base, Attributes overlay) {
+    this.base = base;
+    int overlaySize = overlay.size();
+    AttributeKey<?>[] keys = new AttributeKey<?>[overlaySize];
+    Object[] values = new Object[overlaySize];
+    int[] count = new int[1];
+    int[] shadowed = new int[1];
+    overlay.forEach(
+        (key, value) -> {
+          keys[count[0]] = key;
+          values[count[0]] = value;
+          count[0]++;
+          if (base.get(key) != null) {
+            shadowed[0]++;
+          }
+        });
+    this.overlayKeys = keys;
+    this.overlayValues = values;
+    this.size = base.size() + overlaySize - shadowed[0];
+  }
+
+  @Override
+  @Nullable
+  @SuppressWarnings("unchecked")
+  public <T> T get(AttributeKey<T> key) {
+    int index = overlayIndex(key);
+    if (index >= 0) {
+      return (T) overlayValues[index];
+    }
+    return base.get(key);
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super AttributeKey<?>, ? super Object> consumer) {
+    base.forEach(
+        (key, value) -> {
+          if (overlayIndex(key) < 0) {
+            consumer.accept(key, value);
+          }
+        });
+    for (int i = 0; i < overlayKeys.length; i++) {
+      consumer.accept(overlayKeys[i], overlayValues[i]);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public Map<AttributeKey<?>, Object> asMap() {
+    Map<AttributeKey<?>, Object> result = map;
+    if (result == null) {
+      Map<AttributeKey<?>, Object> copy = new LinkedHashMap<>(size * 4 / 3 + 1);
+      forEach(copy::put);
+      result = Collections.unmodifiableMap(copy);
+      map = result;
+    }
+    return result;
+  }
+
+  @Override
+  public AttributesBuilder toBuilder() {
+    AttributesBuilder builder = base.toBuilder();
+    for (int i = 0; i < overlayKeys.length; i++) {
+      putUnchecked(builder, overlayKeys[i], overlayValues[i]);
+    }
+    return builder;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void putUnchecked(
+      AttributesBuilder builder, AttributeKey<T> key, Object value) {
+    builder.put(key, (T) value);
+  }
+
+  // The overlay only holds a handful of derived attributes, so a linear scan beats hashing
+  private int overlayIndex(AttributeKey<?> key) {
+    for (int i = 0; i < overlayKeys.length; i++) {
+      if (overlayKeys[i] == key || overlayKeys[i].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (!(o instanceof OverlayAttributes)) {
+      return false;
+    }
+    return asMap().equals(((OverlayAttributes) o).asMap());
+  }
+
+  @Override
+  public int hashCode() {
+    int result = hashCode;
+    if (result == 0) {
+      // Same as the SDK implementation, which hashes the array of its keys and values in key name
+      // order
+      List<Map.Entry<AttributeKey<?>, Object>> entries = new ArrayList<>(asMap().entrySet());
+      entries.sort(Comparator.comparing(entry -> entry.getKey().getKey()));
+      Object[] data = new Object[entries.size() * 2];
+      for (int i = 0; i < entries.size(); i++) {
+        data[2 * i] = entries.get(i).getKey();
+        data[2 * i + 1] = entries.get(i).getValue();
+      }
+      result = 1000003 ^ Arrays.hashCode(data);
+      hashCode = result;
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "OverlayAttributes" + asMap();
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * The failure of an export of which only some metrics could not be exported, e.g. some of the
+ * chunks of a {@link ChunkingMetricExporter}. Readers that carry the metrics of failed exports over
+ * carry only {@link #getUnexported()}, so that the metrics that were exported are not sent twice.
+ */
+final class PartialExportException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  private final transient List<MetricData> unexported;
+
+  PartialExportException(int failedChunks, int chunks, List<MetricData> unexported) {
+    // No stack trace, as the failure is reported by the result code rather than thrown
+    super("Failed to export " + failedChunks + " of " + chunks + " chunks", null, false, false);
+    this.unexported = Collections.unmodifiableList(unexported);
+  }
+
+  List<MetricData> getUnexported() {
+    return unexported;
+  }
+
+  /**
+   * Returns the metrics of {@code exported} that were not exported, according to the failure of its
+   * export.
+   */
+  static Collection<MetricData> unexported(
+      Collection<MetricData> exported, @Nullable Throwable failure) {
+    return failure instanceof PartialExportException
+        ? ((PartialExportException) failure).getUnexported()
+        : exported;
+  }
+}
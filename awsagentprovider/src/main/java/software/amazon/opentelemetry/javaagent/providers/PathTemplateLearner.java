@@ -0,0 +1,316 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.sdk.internal.DaemonThreadFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * PathTemplateLearner reduces URL paths to templates, e.g. {@code /v1/users/{param}/orders}, by
+ * learning which path positions of a remote service take many distinct values. Paths are kept in a
+ * trie of segments per remote service. Each node counts the distinct segments that follow it with a
+ * 64-bit linear counting sketch, and once that count reaches {@link #maxValues} the node is
+ * collapsed: any segment that follows it is rendered as {@link #PARAMETER}.
+ *
+ * <p>Memory is bounded by the number of services and the number of nodes per service; paths that do
+ * not fit are rendered with {@link #PARAMETER} in place of the segments that could not be learned.
+ * Templates are read without locking, and only new segments are added under the lock of a single
+ * hash bin. A background task periodically compacts the tries: children of collapsed nodes are
+ * folded into their parameter node, services that were not seen since the previous compaction are
+ * dropped, and the sketches of nodes that have not collapsed are reset, so that distinct values are
+ * counted per compaction interval.
+ */
+final class PathTemplateLearner {
+
+  static final String PARAMETER = "{param}";
+
+  static final int DEFAULT_MAX_VALUES = 16;
+  static final int MAX_MAX_VALUES = 32;
+  static final int DEFAULT_MAX_DEPTH = 4;
+  static final int DEFAULT_MAX_NODES_PER_SERVICE = 1024;
+  static final int DEFAULT_MAX_SERVICES = 256;
+  static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofMinutes(1);
+
+  private static final String ROOT_PATH = "/";
+  private static final int SKETCH_BITS = 64;
+
+  private final int maxValues;
+  private final int maxDepth;
+  private final int maxNodesPerService;
+  private final int maxServices;
+  // The number of sketch bits expected to be set by maxValues distinct segments
+  private final int collapseBits;
+
+  private final Map<String, ServiceTrie> services = new ConcurrentHashMap<>();
+
+  @Nullable private ScheduledExecutorService compactionExecutor;
+
+  static PathTemplateLearner create(int maxValues) {
+    return new PathTemplateLearner(
+        maxValues, DEFAULT_MAX_DEPTH, DEFAULT_MAX_NODES_PER_SERVICE, DEFAULT_MAX_SERVICES);
+  }
+
+  static PathTemplateLearner create(
+      int maxValues, int maxDepth, int maxNodesPerService, int maxServices) {
+    return new PathTemplateLearner(maxValues, maxDepth, maxNodesPerService, maxServices);
+  }
+
+  private PathTemplateLearner(
+      int maxValues, int maxDepth, int maxNodesPerService, int maxServices) {
+    if (maxValues <= 0 || maxValues > MAX_MAX_VALUES) {
+      throw new IllegalArgumentException(
+          "maxValues must be between 1 and " + MAX_MAX_VALUES + ", was " + maxValues);
+    }
+    if (maxDepth <= 0 || maxNodesPerService <= 0 || maxServices <= 0) {
+      throw new IllegalArgumentException("Path template limits must be positive");
+    }
+    this.maxValues = maxValues;
+    this.maxDepth = maxDepth;
+    this.maxNodesPerService = maxNodesPerService;
+    this.maxServices = maxServices;
+    this.collapseBits =
+        (int)
+            Math.ceil(
+                SKETCH_BITS * (1 - Math.pow((SKETCH_BITS - 1) / (double) SKETCH_BITS, maxValues)));
+  }
+
+  /** Compacts the tries every {@code interval} on a daemon thread, until {@link #shutdown}. */
+  synchronized void startCompaction(Duration interval) {
+    if (compactionExecutor != null) {
+      return;
+    }
+    compactionExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            new DaemonThreadFactory("AwsPathTemplateLearner"));
+    long nanos = interval.toNanos();
+    compactionExecutor.scheduleWithFixedDelay(this::compact, nanos, nanos, TimeUnit.NANOSECONDS);
+  }
+
+  synchronized void shutdown() {
+    if (compactionExecutor != null) {
+      compactionExecutor.shutdownNow();
+      compactionExecutor = null;
+    }
+  }
+
+  /**
+   * Returns the template of {@code path} for {@code service}, learning from it, e.g. {@code
+   * /users/{param}} for {@code /users/1234}. At most {@link #maxDepth} segments are kept. If the
+   * service does not fit within the bound on services, the first segment is returned as is, as
+   * {@link AwsSpanProcessingUtil#extractAPIPathValue} would.
+   */
+  String getTemplate(String service, String path) {
+    ServiceTrie trie = services.get(service);
+    if (trie == null) {
+      if (services.size() >= maxServices) {
+        return UrlScanner.getFirstPathSegment(path);
+      }
+      trie = services.computeIfAbsent(service, unused -> new ServiceTrie());
+    }
+    return getTemplate(trie, path);
+  }
+
+  private String getTemplate(ServiceTrie trie, String path) {
+    trie.used = true;
+
+    StringBuilder template = null;
+    Node node = trie.root;
+    int length = path.length();
+    int depth = 0;
+    int i = 0;
+    while (i < length && depth < maxDepth) {
+      if (path.charAt(i) == '/') {
+        i++;
+        continue;
+      }
+      int end = path.indexOf('/', i);
+      if (end < 0) {
+        end = length;
+      }
+      if (template == null) {
+        template = new StringBuilder(length);
+      }
+      template.append('/');
+
+      node.record(path, i, end);
+      if (!node.collapsed && Long.bitCount(node.sketch.get()) >= collapseBits) {
+        node.collapsed = true;
+      }
+      Node next = null;
+      if (!node.collapsed) {
+        String segment = path.substring(i, end);
+        next = node.children.get(segment);
+        if (next == null && trie.nodes.get() < maxNodesPerService) {
+          next = node.children.computeIfAbsent(segment, unused -> trie.newNode());
+        }
+        if (next != null) {
+          template.append(segment);
+        }
+      }
+      if (next == null) {
+        template.append(PARAMETER);
+        next = node.getParameter(trie);
+      }
+      node = next;
+      depth++;
+      i = end;
+    }
+    return template != null ? template.toString() : ROOT_PATH;
+  }
+
+  /**
+   * Folds the children of collapsed nodes into their parameter node, drops services that were not
+   * used since the previous compaction, and resets the sketches of nodes that have not collapsed.
+   */
+  void compact() {
+    services
+        .entrySet()
+        .removeIf(
+            entry -> {
+              ServiceTrie trie = entry.getValue();
+              if (!trie.used) {
+                return true;
+              }
+              trie.used = false;
+              compact(trie.root);
+              trie.nodes.set(count(trie.root) - 1);
+              return false;
+            });
+  }
+
+  private static void compact(Node node) {
+    if (node.collapsed) {
+      if (!node.children.isEmpty()) {
+        Node parameter = node.getParameter(null);
+        for (Node child : node.children.values()) {
+          merge(child, parameter);
+        }
+        node.children.clear();
+      }
+    } else {
+      node.sketch.set(0);
+    }
+    for (Node child : node.children.values()) {
+      compact(child);
+    }
+    Node parameter = node.parameter;
+    if (parameter != null) {
+      compact(parameter);
+    }
+  }
+
+  private static void merge(Node from, Node into) {
+    into.sketch.accumulateAndGet(from.sketch.get(), (a, b) -> a | b);
+    if (from.collapsed) {
+      into.collapsed = true;
+    }
+    for (Map.Entry<String, Node> entry : from.children.entrySet()) {
+      merge(entry.getValue(), into.children.computeIfAbsent(entry.getKey(), unused -> new Node()));
+    }
+    Node parameter = from.parameter;
+    if (parameter != null) {
+      merge(parameter, into.getParameter(null));
+    }
+  }
+
+  private static int count(Node node) {
+    int count = 1;
+    for (Node child : node.children.values()) {
+      count += count(child);
+    }
+    Node parameter = node.parameter;
+    if (parameter != null) {
+      count += count(parameter);
+    }
+    return count;
+  }
+
+  int serviceCount() {
+    return services.size();
+  }
+
+  @Override
+  public String toString() {
+    return "PathTemplateLearner{"
+        + "services="
+        + services.size()
+        + ", maxValues="
+        + maxValues
+        + ", maxDepth="
+        + maxDepth
+        + ", maxNodesPerService="
+        + maxNodesPerService
+        + ", maxServices="
+        + maxServices
+        + '}';
+  }
+
+  private static final class ServiceTrie {
+    private final Node root = new Node();
+    // Nodes other than the root
+    private final AtomicInteger nodes = new AtomicInteger();
+    private volatile boolean used;
+
+    Node newNode() {
+      nodes.incrementAndGet();
+      return new Node();
+    }
+  }
+
+  private static final class Node {
+    private final Map<String, Node> children = new ConcurrentHashMap<>();
+    // Linear counting sketch of the distinct segments following this node
+    private final AtomicLong sketch = new AtomicLong();
+    private volatile boolean collapsed;
+    @Nullable private volatile Node parameter;
+
+    void record(String path, int start, int end) {
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + path.charAt(i);
+      }
+      // Spread the hash, as segments often differ only in their last characters
+      hash *= 0x9E3779B9;
+      long bit = 1L << (hash >>> (Integer.SIZE - 6));
+      long current = sketch.get();
+      while ((current & bit) == 0 && !sketch.compareAndSet(current, current | bit)) {
+        current = sketch.get();
+      }
+    }
+
+    Node getParameter(@Nullable ServiceTrie trie) {
+      Node parameter = this.parameter;
+      if (parameter == null) {
+        synchronized (this) {
+          parameter = this.parameter;
+          if (parameter == null) {
+            parameter = trie != null ? trie.newNode() : new Node();
+            this.parameter = parameter;
+          }
+        }
+      }
+      return parameter;
+    }
+  }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.Clock;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricProducer;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableExponentialHistogramBuckets;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableExponentialHistogramData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.resources.Resource;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * RedMetricsAggregator is an optional replacement for the Error, Fault and Latency histograms of
+ * {@link AwsSpanMetricsProcessor}. Instead of three instrument records per attribute set, each span
+ * makes one update to a cell owned by this aggregator: a striped outcome counter and a {@link
+ * ConcurrentExponentialHistogram} for latency. Cells are published as delta base-2 exponential
+ * histograms, the same shape the Application Signals exporter configures for these instruments,
+ * when the {@link io.opentelemetry.sdk.metrics.SdkMeterProvider} it is registered with collects.
+ *
+ * <p>A 0/1 histogram is fully described by its count of ones and zeros, so Error and Fault are
+ * derived from the outcome counters and always reported at the SDK's max scale of 20, where a value
+ * of 1 falls in bucket -1.
+ *
+ * <p>With per-thread buffers enabled, each thread accumulates its measurements in a small map of
+ * attribute set to partial aggregates that only it writes, and the buffers are merged into the
+ * shared cells on {@link #produce}. Threads then never contend on the shared cells, or on a lock,
+ * while recording: each buffer alternates between two generations of partial aggregates, and {@link
+ * #produce} drains the one its thread no longer writes. Attribute sets are resolved to their shared
+ * cell when first buffered, so cardinality overflow is the same as without buffers. A thread that
+ * buffers more than {@link #MAX_BUFFERED_CELLS} attribute sets records the rest directly. Buffers
+ * of threads that have terminated are merged one last time and then dropped.
+ *
+ * <p>Measurements are reset on every {@link #produce}, so the aggregator must be registered with a
+ * meter provider that has exactly one metric reader. Cells without measurements since the previous
+ * {@link #produce} are evicted, so that attribute sets that are no longer recorded free up their
+ * cell for others, like the SDK's delta metric storage does. Measurements that race with the
+ * eviction of their cell are moved to a new cell on the next {@link #produce}, and are only lost if
+ * their thread stalls for a whole collection interval between resolving the cell and recording.
+ */
+final class RedMetricsAggregator implements MetricProducer {
+
+  /** Outcome of a span, as classified by {@link AwsSpanMetricsProcessor}. */
+  enum Outcome {
+    OK,
+    ERROR,
+    FAULT
+  }
+
+  // Same as the default cardinality limit of the SDK metric storage
+  static final int DEFAULT_MAX_CELLS = 2000;
+  static final int MAX_BUFFERED_CELLS = 128;
+  private static final Attributes OVERFLOW_ATTRIBUTES =
+      Attributes.of(AttributeKey.booleanKey("otel.metric.overflow"), true);
+
+  private static final int MAX_SCALE = 20;
+  // Bucket holding exactly 1 at MAX_SCALE, see ConcurrentExponentialHistogram#index
+  private static final int ONE_INDEX = -1;
+
+  private final InstrumentationScopeInfo scope;
+  private final Clock clock;
+  private final int maxCells;
+  private final Map<Attributes, Cell> cells = new ConcurrentHashMap<>();
+  // Cells evicted by the previous collection, guarded by collectLock
+  private final Map<Attributes, Cell> evictedCells = new HashMap<>();
+  @Nullable private final ThreadLocal<ThreadBuffer> threadBuffers;
+  // Buffers of all threads that have recorded, until they are drained after their thread ended
+  private final Queue<ThreadBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+  private final Object collectLock = new Object();
+  private long lastCollectEpochNanos;
+
+  static RedMetricsAggregator create(String scopeName) {
+    return create(scopeName, false);
+  }
+
+  static RedMetricsAggregator create(String scopeName, boolean perThreadBuffers) {
+    return new RedMetricsAggregator(
+        InstrumentationScopeInfo.create(scopeName),
+        Clock.getDefault(),
+        DEFAULT_MAX_CELLS,
+        perThreadBuffers);
+  }
+
+  // Visible for testing
+  static RedMetricsAggregator create(String scopeName, Clock clock, int maxCells) {
+    return create(scopeName, clock, maxCells, false);
+  }
+
+  // Visible for testing
+  static RedMetricsAggregator create(
+      String scopeName, Clock clock, int maxCells, boolean perThreadBuffers) {
+    return new RedMetricsAggregator(
+        InstrumentationScopeInfo.create(scopeName), clock, maxCells, perThreadBuffers);
+  }
+
+  private RedMetricsAggregator(
+      InstrumentationScopeInfo scope, Clock clock, int maxCells, boolean perThreadBuffers) {
+    this.scope = scope;
+    this.clock = clock;
+    this.maxCells = maxCells;
+    this.threadBuffers = perThreadBuffers ? ThreadLocal.withInitial(this::newThreadBuffer) : null;
+    this.lastCollectEpochNanos = clock.now();
+  }
+
+  void record(Attributes attributes, Outcome outcome, double latencyMillis) {
+    ThreadLocal<ThreadBuffer> threadBuffers = this.threadBuffers;
+    if (threadBuffers != null) {
+      threadBuffers.get().record(attributes, outcome, latencyMillis);
+    } else {
+      record(getCell(attributes), outcome, latencyMillis);
+    }
+  }
+
+  private static void record(Cell cell, Outcome outcome, double latencyMillis) {
+    switch (outcome) {
+      case ERROR:
+        cell.errors.increment();
+        break;
+      case FAULT:
+        cell.faults.increment();
+        break;
+      default:
+        cell.ok.increment();
+    }
+    cell.latency.record(latencyMillis);
+  }
+
+  private Cell getCell(Attributes attributes) {
+    Cell cell = cells.get(attributes);
+    if (cell != null) {
+      return cell;
+    }
+    if (cells.size() >= maxCells) {
+      attributes = OVERFLOW_ATTRIBUTES;
+    }
+    return cells.computeIfAbsent(attributes, unused -> new Cell());
+  }
+
+  private ThreadBuffer newThreadBuffer() {
+    ThreadBuffer buffer = new ThreadBuffer();
+    buffers.add(buffer);
+    return buffer;
+  }
+
+  // Visible for testing
+  int threadBufferCount() {
+    return buffers.size();
+  }
+
+  @Override
+  public Collection<MetricData> produce(Resource resource) {
+    synchronized (collectLock) {
+      for (Iterator<ThreadBuffer> it = buffers.iterator(); it.hasNext(); ) {
+        ThreadBuffer buffer = it.next();
+        // Checked before draining, so that nothing recorded before the thread ended is lost
+        boolean terminated = buffer.isOwnerTerminated();
+        buffer.drain();
+        if (terminated) {
+          it.remove();
+        }
+      }
+      for (Map.Entry<Attributes, Cell> entry : evictedCells.entrySet()) {
+        moveLateMeasurements(entry.getValue(), entry.getKey());
+      }
+      evictedCells.clear();
+
+      long startEpochNanos = lastCollectEpochNanos;
+      long epochNanos = clock.now();
+      lastCollectEpochNanos = epochNanos;
+
+      List<ExponentialHistogramPointData> errorPoints = new ArrayList<>();
+      List<ExponentialHistogramPointData> faultPoints = new ArrayList<>();
+      List<ExponentialHistogramPointData> latencyPoints = new ArrayList<>();
+      for (Map.Entry<Attributes, Cell> entry : cells.entrySet()) {
+        Attributes attributes = entry.getKey();
+        Cell cell = entry.getValue();
+        long ok = cell.ok.sumThenReset();
+        long errors = cell.errors.sumThenReset();
+        long faults = cell.faults.sumThenReset();
+        if (ok + errors + faults > 0) {
+          errorPoints.add(
+              binaryPoint(errors, ok + faults, attributes, startEpochNanos, epochNanos));
+          faultPoints.add(
+              binaryPoint(faults, ok + errors, attributes, startEpochNanos, epochNanos));
+        }
+        ExponentialHistogramPointData latencyPoint =
+            cell.latency.collect(attributes, startEpochNanos, epochNanos);
+        if (latencyPoint != null) {
+          latencyPoints.add(latencyPoint);
+        } else if (ok + errors + faults == 0) {
+          cell.evicted = true;
+          cells.remove(attributes, cell);
+          evictedCells.put(attributes, cell);
+        }
+      }
+
+      List<MetricData> metrics = new ArrayList<>(3);
+      addMetric(metrics, resource, AwsSpanMetricsProcessorBuilder.ERROR, "", errorPoints);
+      addMetric(metrics, resource, AwsSpanMetricsProcessorBuilder.FAULT, "", faultPoints);
+      addMetric(
+          metrics,
+          resource,
+          AwsSpanMetricsProcessorBuilder.LATENCY,
+          AwsSpanMetricsProcessorBuilder.LATENCY_UNITS,
+          latencyPoints);
+      return metrics;
+    }
+  }
+
+  /**
+   * Moves the measurements recorded to {@code evicted} after it was evicted to the current cell of
+   * {@code attributes}.
+   */
+  private void moveLateMeasurements(Cell evicted, Attributes attributes) {
+    long ok = evicted.ok.sumThenReset();
+    long errors = evicted.errors.sumThenReset();
+    long faults = evicted.faults.sumThenReset();
+    // Outcomes are counted before latencies are recorded, so there are no latencies without them
+    if (ok + errors + faults == 0) {
+      return;
+    }
+    Cell cell = getCell(attributes);
+    cell.ok.add(ok);
+    cell.errors.add(errors);
+    cell.faults.add(faults);
+    evicted.latency.moveTo(cell.latency);
+  }
+
+  // Visible for testing
+  int cellCount() {
+    return cells.size();
+  }
+
+  private void addMetric(
+      List<MetricData> metrics,
+      Resource resource,
+      String name,
+      String unit,
+      List<ExponentialHistogramPointData> points) {
+    if (points.isEmpty()) {
+      return;
+    }
+    metrics.add(
+        ImmutableMetricData.createExponentialHistogram(
+            resource,
+            scope,
+            name,
+            "",
+            unit,
+            ImmutableExponentialHistogramData.create(AggregationTemporality.DELTA, points)));
+  }
+
+  private static ExponentialHistogramPointData binaryPoint(
+      long ones, long zeros, Attributes attributes, long startEpochNanos, long epochNanos) {
+    List<Long> counts = ones > 0 ? Collections.singletonList(ones) : Collections.<Long>emptyList();
+    return ImmutableExponentialHistogramPointData.create(
+        MAX_SCALE,
+        ones,
+        zeros,
+        true,
+        zeros > 0 ? 0 : 1,
+        true,
+        ones > 0 ? 1 : 0,
+        ImmutableExponentialHistogramBuckets.create(MAX_SCALE, ones > 0 ? ONE_INDEX : 0, counts),
+        ImmutableExponentialHistogramBuckets.create(MAX_SCALE, 0, Collections.<Long>emptyList()),
+        startEpochNanos,
+        epochNanos,
+        attributes,
+        Collections.emptyList());
+  }
+
+  /**
+   * Partial aggregates of a single thread, without locks. Only the owning thread records into the
+   * current generation, and {@link #drain} hands it a drained one in exchange, then waits for a
+   * record that may still be writing to the previous one before draining it.
+   */
+  private final class ThreadBuffer {
+    private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+    // Odd while the owner records, only written by the owner
+    private final AtomicLong recordings = new AtomicLong();
+    private volatile Generation current = new Generation();
+    // Drained generation to hand to the owner on the next drain, guarded by collectLock
+    private Generation spare = new Generation();
+
+    void record(Attributes attributes, Outcome outcome, double latencyMillis) {
+      long count = recordings.get();
+      // A volatile write, so that drain sees this record in progress unless current is read after
+      // drain replaced it
+      recordings.set(count + 1);
+      try {
+        current.record(attributes, outcome, latencyMillis);
+      } finally {
+        recordings.lazySet(count + 2);
+      }
+    }
+
+    void drain() {
+      Generation drained = current;
+      current = spare;
+      long count = recordings.get();
+      if ((count & 1) != 0) {
+        // The owner may have read the previous generation before the exchange
+        while (recordings.get() == count) {
+          Thread.yield();
+        }
+      }
+      drained.drain();
+      spare = drained;
+    }
+
+    boolean isOwnerTerminated() {
+      Thread thread = owner.get();
+      return thread == null || !thread.isAlive();
+    }
+  }
+
+  /** Partial aggregates by attribute set, written by one thread at a time. */
+  private final class Generation {
+    private final Map<Attributes, PartialCell> partials = new HashMap<>();
+
+    void record(Attributes attributes, Outcome outcome, double latencyMillis) {
+      PartialCell partial = partials.get(attributes);
+      if (partial == null) {
+        Cell cell = getCell(attributes);
+        if (partials.size() >= MAX_BUFFERED_CELLS) {
+          RedMetricsAggregator.record(cell, outcome, latencyMillis);
+          return;
+        }
+        partial = new PartialCell(cell);
+        partials.put(attributes, partial);
+      }
+      switch (outcome) {
+        case ERROR:
+          partial.errors++;
+          break;
+        case FAULT:
+          partial.faults++;
+          break;
+        default:
+          partial.ok++;
+      }
+      partial.latency.record(latencyMillis);
+    }
+
+    /**
+     * Merges the partial aggregates into their cells, and drops those that had nothing to merge, so
+     * that attribute sets the thread no longer records do not hold on to buffer space, and those of
+     * evicted cells, so that the thread resolves a new cell when it records them again.
+     */
+    void drain() {
+      for (Iterator<PartialCell> it = partials.values().iterator(); it.hasNext(); ) {
+        PartialCell partial = it.next();
+        if (partial.ok + partial.errors + partial.faults == 0) {
+          it.remove();
+          continue;
+        }
+        Cell cell = partial.cell;
+        if (partial.ok > 0) {
+          cell.ok.add(partial.ok);
+        }
+        if (partial.errors > 0) {
+          cell.errors.add(partial.errors);
+        }
+        if (partial.faults > 0) {
+          cell.faults.add(partial.faults);
+        }
+        cell.latency.merge(partial.latency);
+        partial.ok = 0;
+        partial.errors = 0;
+        partial.faults = 0;
+        if (cell.evicted) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  private static final class PartialCell {
+    private final Cell cell;
+    private final ConcurrentExponentialHistogram.Partial latency =
+        new ConcurrentExponentialHistogram.Partial();
+    private long ok;
+    private long errors;
+    private long faults;
+
+    PartialCell(Cell cell) {
+      this.cell = cell;
+    }
+  }
+
+  private static final class Cell {
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder faults = new LongAdder();
+    private final ConcurrentExponentialHistogram latency = new ConcurrentExponentialHistogram();
+    // Set once the cell is removed from the cells map, never reset
+    private volatile boolean evicted;
+  }
+}
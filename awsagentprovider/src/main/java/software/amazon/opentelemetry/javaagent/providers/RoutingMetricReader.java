@@ -0,0 +1,284 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.internal.DaemonThreadFactory;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.CollectionRegistration;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * RoutingMetricReader collects the metrics of a meter provider once per interval on behalf of
+ * several exporters, and exports to each of them the metrics of the instrumentation scopes it was
+ * added for. Compared to a {@link ScopeBasedPeriodicMetricReader} per exporter, the meters of
+ * scopes shared by several exporters, e.g. the JMX metrics, are read once per interval, and one
+ * thread schedules all exports.
+ *
+ * <p>Exporters must agree on the aggregation temporality and default aggregation of every
+ * instrument type, as the meter provider keeps a single storage per reader. Exporters that do not
+ * are given separate readers, see {@link #tryAddRoute}. In particular, an exporter that wants
+ * cumulative temporality is not served from the delta storage of another exporter, as a delta
+ * collection cannot tell a synchronous series without measurements from an asynchronous series that
+ * is no longer observed. The JMX exporter therefore exports delta metrics when it shares the reader
+ * of the Application Signals runtime metrics, see {@link
+ * AwsJMXMetricsCustomizerProvider#registerMetricReader}.
+ *
+ * <p>Exports are expected to complete asynchronously, as they do for OTLP exporters. An exporter
+ * whose previous export has not completed yet misses the collection, while the others are exported
+ * to as usual. Its delta metrics, and those of a failed export, are merged into its next export by
+ * a {@link DeltaCarryOverBuffer}. As metrics are collected while such an export may still be in
+ * progress, they are always collected as {@link MemoryMode#IMMUTABLE_DATA}.
+ */
+final class RoutingMetricReader implements MetricReader {
+  private static final Logger logger = Logger.getLogger(RoutingMetricReader.class.getName());
+
+  private final long intervalNanos;
+  private final ScheduledExecutorService scheduler;
+  private final List<Route> routes = new ArrayList<>();
+  private final Set<String> scopeNames = new HashSet<>();
+  private final Object lock = new Object();
+  private final Object collectLock = new Object();
+  private final boolean scopedCollection;
+
+  @Nullable private volatile ScopedMetricCollector collector;
+  @Nullable private volatile ScheduledFuture<?> scheduledFuture;
+
+  /**
+   * Returns a reader without routes, that collects every {@code interval} once registered, by scope
+   * if {@code scopedCollection} is enabled, see {@link ScopedMetricCollector}.
+   */
+  static RoutingMetricReader create(Duration interval, boolean scopedCollection) {
+    return new RoutingMetricReader(
+        interval.toNanos(),
+        Executors.newScheduledThreadPool(1, new DaemonThreadFactory("AwsRoutingMetricReader")),
+        scopedCollection);
+  }
+
+  // Visible for testing
+  static RoutingMetricReader create(Duration interval, ScheduledExecutorService scheduler) {
+    return new RoutingMetricReader(interval.toNanos(), scheduler, false);
+  }
+
+  private RoutingMetricReader(
+      long intervalNanos, ScheduledExecutorService scheduler, boolean scopedCollection) {
+    this.intervalNanos = intervalNanos;
+    this.scheduler = scheduler;
+    this.scopedCollection = scopedCollection;
+  }
+
+  /**
+   * Adds a route for {@code exporter}, unless the reader is registered already, or its interval,
+   * aggregation temporalities or default aggregations differ from those of the existing routes.
+   */
+  boolean tryAddRoute(MetricExporter exporter, Set<String> scopeNames, long intervalNanos) {
+    synchronized (lock) {
+      if (collector != null || intervalNanos != this.intervalNanos) {
+        return false;
+      }
+      if (!routes.isEmpty()) {
+        MetricExporter first = routes.get(0).exporter;
+        for (InstrumentType type : InstrumentType.values()) {
+          if (first.getAggregationTemporality(type) != exporter.getAggregationTemporality(type)) {
+            return false;
+          }
+          // Aggregations do not implement equals, but describe their configuration in toString
+          if (!first
+              .getDefaultAggregation(type)
+              .toString()
+              .equals(exporter.getDefaultAggregation(type).toString())) {
+            return false;
+          }
+        }
+      }
+      routes.add(new Route(exporter, scopeNames));
+      this.scopeNames.addAll(scopeNames);
+      return true;
+    }
+  }
+
+  @Override
+  public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+    return routes.isEmpty()
+        ? AggregationTemporality.CUMULATIVE
+        : routes.get(0).exporter.getAggregationTemporality(instrumentType);
+  }
+
+  /** Always {@link MemoryMode#IMMUTABLE_DATA}, see {@link RoutingMetricReader}. */
+  @Override
+  public MemoryMode getMemoryMode() {
+    return MemoryMode.IMMUTABLE_DATA;
+  }
+
+  @Override
+  public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+    return routes.isEmpty()
+        ? Aggregation.defaultAggregation()
+        : routes.get(0).exporter.getDefaultAggregation(instrumentType);
+  }
+
+  @Override
+  public void register(CollectionRegistration registration) {
+    synchronized (lock) {
+      collector = ScopedMetricCollector.create(registration, scopeNames, this, scopedCollection);
+      if (scheduledFuture == null) {
+        scheduledFuture =
+            scheduler.scheduleAtFixedRate(
+                this::run, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  @Override
+  public CompletableResultCode forceFlush() {
+    return collectAndExport();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    ScheduledFuture<?> scheduledFuture = this.scheduledFuture;
+    if (scheduledFuture != null) {
+      scheduledFuture.cancel(false);
+    }
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(5, TimeUnit.SECONDS);
+      collectAndExport().join(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      scheduler.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    List<CompletableResultCode> results = new ArrayList<>(routes.size());
+    for (Route route : routes) {
+      results.add(route.exporter.shutdown());
+    }
+    return CompletableResultCode.ofAll(results);
+  }
+
+  private void run() {
+    // Ignore the result in order to keep run() asynchronous
+    collectAndExport();
+  }
+
+  // Runs a collect cycle, and an export cycle for every route.
+  private CompletableResultCode collectAndExport() {
+    ScopedMetricCollector collector = this.collector;
+    if (collector == null) {
+      return CompletableResultCode.ofSuccess();
+    }
+    // Collections are serialized, so that every converter sees them in order
+    synchronized (collectLock) {
+      Collection<MetricData> metrics;
+      try {
+        metrics = collector.collect();
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Metric collection threw an Exception", t);
+        return CompletableResultCode.ofFailure();
+      }
+      List<CompletableResultCode> results = new ArrayList<>(routes.size());
+      for (Route route : routes) {
+        results.add(route.export(metrics));
+      }
+      return CompletableResultCode.ofAll(results);
+    }
+  }
+
+  @Override
+  public String toString() {
+    List<MetricExporter> exporters = new ArrayList<>(routes.size());
+    for (Route route : routes) {
+      exporters.add(route.exporter);
+    }
+    return "RoutingMetricReader{"
+        + "exporters="
+        + exporters
+        + ", intervalNanos="
+        + intervalNanos
+        + '}';
+  }
+
+  private static final class Route {
+    private final MetricExporter exporter;
+    private final Set<String> scopeNames;
+    private final AtomicBoolean exportAvailable = new AtomicBoolean(true);
+    private final DeltaCarryOverBuffer carryOver = DeltaCarryOverBuffer.create();
+
+    Route(MetricExporter exporter, Set<String> scopeNames) {
+      this.exporter = exporter;
+      this.scopeNames = Collections.unmodifiableSet(new HashSet<>(scopeNames));
+    }
+
+    CompletableResultCode export(Collection<MetricData> metrics) {
+      List<MetricData> routed = new ArrayList<>();
+      for (MetricData metric : metrics) {
+        if (scopeNames.contains(metric.getInstrumentationScopeInfo().getName())) {
+          routed.add(metric);
+        }
+      }
+      if (!exportAvailable.compareAndSet(true, false)) {
+        logger.log(Level.FINE, "Exporter busy. Deferring metrics to the next export.");
+        carryOver.carry(routed);
+        return CompletableResultCode.ofFailure();
+      }
+      Collection<MetricData> exported = carryOver.drainInto(routed);
+      if (exported.isEmpty()) {
+        logger.log(Level.FINE, "No metric data to export - skipping export.");
+        exportAvailable.set(true);
+        return CompletableResultCode.ofSuccess();
+      }
+      CompletableResultCode result = new CompletableResultCode();
+      try {
+        CompletableResultCode exportResult = exporter.export(exported);
+        exportResult.whenComplete(
+            () -> {
+              if (!exportResult.isSuccess()) {
+                logger.log(Level.FINE, "Exporter failed");
+                carryOver.carry(
+                    PartialExportException.unexported(
+                        exported, exportResult.getFailureThrowable()));
+              }
+              exportAvailable.set(true);
+              result.succeed();
+            });
+      } catch (Throwable t) {
+        exportAvailable.set(true);
+        logger.log(Level.WARNING, "Exporter threw an Exception", t);
+        result.fail();
+      }
+      return result;
+    }
+  }
+}
@@ -16,17 +16,30 @@
 package software.amazon.opentelemetry.javaagent.providers;
 
 import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigurationException;
 import io.opentelemetry.sdk.autoconfigure.spi.internal.DefaultConfigProperties;
+import io.opentelemetry.sdk.common.export.MemoryMode;
 import io.opentelemetry.sdk.metrics.Aggregation;
 import io.opentelemetry.sdk.metrics.InstrumentSelector;
 import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
 import io.opentelemetry.sdk.metrics.View;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
 import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class SDKMeterProviderBuilder {
+  static final String SHARED_METRIC_READER_ENABLED_CONFIG = "otel.aws.metric.reader.shared.enabled";
+  static final String EXPORTER_MEMORY_MODE_CONFIG = "otel.java.exporter.memory_mode";
+  static final String SHARED_HTTP_TRANSPORT_ENABLED_CONFIG =
+      "otel.aws.exporter.shared.http.transport.enabled";
+  static final String CARRY_OVER_MAX_POINTS_CONFIG = "otel.aws.metric.carry.over.max.points";
+  static final String SCOPED_COLLECTION_ENABLED_CONFIG =
+      "otel.aws.metric.scoped.collection.enabled";
+
   static void configureMetricFilter(
       ConfigProperties configProps,
       SdkMeterProviderBuilder sdkMeterProviderBuilder,
@@ -48,6 +61,95 @@ public class SDKMeterProviderBuilder {
     }
   }
 
+  /** Returns whether exporters share readers, see {@link #registerScopeBasedMetricReader}. */
+  static boolean isSharedMetricReaderEnabled(ConfigProperties configProps) {
+    return configProps.getBoolean(SHARED_METRIC_READER_ENABLED_CONFIG, false);
+  }
+
+  /**
+   * Registers a reader that exports the metrics of {@code registeredScopeNames} to {@code
+   * metricsExporter}. If enabled by {@value #SHARED_METRIC_READER_ENABLED_CONFIG}, the exporter is
+   * added to one of {@code sharedReaders} that accepts it, or to a new {@link RoutingMetricReader}
+   * that is registered and added to {@code sharedReaders}, so that metrics are collected once for
+   * all exporters of a reader; the JMX metrics are then exported with the delta temporality of the
+   * Application Signals runtime metrics they share a reader with. Otherwise, up to {@value
+   * #CARRY_OVER_MAX_POINTS_CONFIG} delta points of failed exports are carried over to the next
+   * export, none by default. If enabled by {@value #SCOPED_COLLECTION_ENABLED_CONFIG}, readers with
+   * cumulative temporality only read the meters of their scopes, see {@link ScopedMetricCollector}.
+   */
+  static void registerScopeBasedMetricReader(
+      ConfigProperties configProps,
+      SdkMeterProviderBuilder sdkMeterProviderBuilder,
+      MetricExporter metricsExporter,
+      Set<String> registeredScopeNames,
+      Duration exportInterval,
+      List<RoutingMetricReader> sharedReaders) {
+    if (isSharedMetricReaderEnabled(configProps)) {
+      for (RoutingMetricReader reader : sharedReaders) {
+        if (reader.tryAddRoute(metricsExporter, registeredScopeNames, exportInterval.toNanos())) {
+          return;
+        }
+      }
+      RoutingMetricReader reader =
+          RoutingMetricReader.create(
+              exportInterval, configProps.getBoolean(SCOPED_COLLECTION_ENABLED_CONFIG, false));
+      reader.tryAddRoute(metricsExporter, registeredScopeNames, exportInterval.toNanos());
+      sdkMeterProviderBuilder.registerMetricReader(reader);
+      sharedReaders.add(reader);
+    } else {
+      sdkMeterProviderBuilder.registerMetricReader(
+          ScopeBasedPeriodicMetricReader.create(metricsExporter, registeredScopeNames)
+              .setInterval(exportInterval)
+              .setMaxCarriedOverPoints(getCarryOverMaxPoints(configProps))
+              .setScopedCollection(configProps.getBoolean(SCOPED_COLLECTION_ENABLED_CONFIG, false))
+              .build());
+    }
+  }
+
+  private static int getCarryOverMaxPoints(ConfigProperties configProps) {
+    int maxPoints = configProps.getInt(CARRY_OVER_MAX_POINTS_CONFIG, 0);
+    if (maxPoints < 0) {
+      throw new ConfigurationException(
+          "Invalid metric carry-over max points, must not be negative: " + maxPoints);
+    }
+    return maxPoints;
+  }
+
+  /**
+   * Returns the memory mode of the metric exporters created by the agent, configured like that of
+   * the SDK's exporters by {@value #EXPORTER_MEMORY_MODE_CONFIG}. Defaults to {@link
+   * MemoryMode#REUSABLE_DATA}, the default of the SDK's OTLP metric exporters.
+   */
+  static MemoryMode getExporterMemoryMode(ConfigProperties configProps) {
+    String memoryMode = configProps.getString(EXPORTER_MEMORY_MODE_CONFIG);
+    if (memoryMode == null) {
+      return MemoryMode.REUSABLE_DATA;
+    }
+    try {
+      return MemoryMode.valueOf(memoryMode.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new ConfigurationException("Unrecognized memory mode: " + memoryMode, e);
+    }
+  }
+
+  /**
+   * Returns whether the OTLP/HTTP metric exporters of the agent, and the autoconfigured OTLP/HTTP
+   * span exporter, send through a {@link HttpTransport} shared by endpoint authority, see {@link
+   * AwsOtlpHttpMetricExporter} and {@link AwsOtlpHttpSpanExporter}. Like the SDK's exporters, they
+   * are configured by the {@code otel.exporter.otlp.*} headers, compression, timeout, certificate
+   * and retry properties; the proxy is that of the JVM's default proxy selector, as with the SDK's
+   * exporters. This differs from the SDK's exporters in that connections are pooled by the JVM's
+   * {@link java.net.HttpURLConnection} keep-alive cache, which the application shares and
+   * configures with the {@code http.keepAlive} and {@code http.maxConnections} system properties.
+   * Failed requests are retried like the SDK's, and once the retries are exhausted, or the queue of
+   * an endpoint is full, the export fails and is dropped: cumulative metrics, such as the JMX
+   * metrics, are complete again with the next export, while delta metrics are lost unless carried
+   * over, see {@value #CARRY_OVER_MAX_POINTS_CONFIG}.
+   */
+  static boolean isSharedHttpTransportEnabled(ConfigProperties configProps) {
+    return configProps.getBoolean(SHARED_HTTP_TRANSPORT_ENABLED_CONFIG, false);
+  }
+
   static Duration getMetricExportInterval(
       ConfigProperties configProps, Duration exportIntervalEnvVar, Logger logger) {
     Duration exportInterval =
@@ -25,8 +25,6 @@ import io.opentelemetry.sdk.metrics.export.CollectionRegistration;
 import io.opentelemetry.sdk.metrics.export.MetricExporter;
 import io.opentelemetry.sdk.metrics.export.MetricReader;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -41,7 +39,10 @@ import javax.annotation.Nullable;
  * functionality of the {@link io.opentelemetry.sdk.metrics.export.PeriodicMetricReader}. Due to the
  * fact that {@link io.opentelemetry.sdk.metrics.export.PeriodicMetricReader} is a final class and
  * cannot be directly extended, this class duplicates and modifies the relevant code to support
- * scope-based metric reading.
+ * scope-based metric reading. Only the meters of the registered scopes are collected, see {@link
+ * ScopedMetricCollector}. If enabled, the delta metrics of a failed export are merged into the next
+ * export, see {@link DeltaCarryOverBuffer}. While an export is still in progress, no metrics are
+ * collected, so that the delta storages of the SDK keep the measurements for the next export.
  *
  * <p>Source code based on opentelemetry-java v1.34.1.
  */
@@ -54,7 +55,10 @@ public class ScopeBasedPeriodicMetricReader implements MetricReader {
   private final ScheduledExecutorService scheduler;
   private final Scheduled scheduled;
   private final Object lock = new Object();
-  private volatile CollectionRegistration collectionRegistration = CollectionRegistration.noop();
+  private final Set<String> registeredScopeNames;
+  @Nullable private final DeltaCarryOverBuffer carryOver;
+  private final boolean scopedCollection;
+  private volatile ScopedMetricCollector collector;
 
   @Nullable private volatile ScheduledFuture<?> scheduledFuture;
 
@@ -67,11 +71,19 @@ public class ScopeBasedPeriodicMetricReader implements MetricReader {
       MetricExporter exporter,
       long intervalNanos,
       ScheduledExecutorService scheduler,
-      Set<String> registeredScopeNames) {
+      Set<String> registeredScopeNames,
+      @Nullable DeltaCarryOverBuffer carryOver,
+      boolean scopedCollection) {
     this.exporter = exporter;
     this.intervalNanos = intervalNanos;
     this.scheduler = scheduler;
-    this.scheduled = new Scheduled(registeredScopeNames);
+    this.registeredScopeNames = registeredScopeNames;
+    this.carryOver = carryOver;
+    this.scopedCollection = scopedCollection;
+    this.collector =
+        ScopedMetricCollector.createFiltering(
+            CollectionRegistration.noop(), registeredScopeNames, MemoryMode.IMMUTABLE_DATA);
+    this.scheduled = new Scheduled();
   }
 
   /**
@@ -146,12 +158,15 @@ public class ScopeBasedPeriodicMetricReader implements MetricReader {
   }
 
   /**
-   * This method is a direct copy from the{@link
-   * io.opentelemetry.sdk.metrics.export.PeriodicMetricReader} class and has not been modified.
+   * This method is modified from the {@link
+   * io.opentelemetry.sdk.metrics.export.PeriodicMetricReader} class to collect through a {@link
+   * ScopedMetricCollector} for the registered scopes, in the memory mode of the exporter.
    */
   @Override
   public void register(CollectionRegistration collectionRegistration) {
-    this.collectionRegistration = collectionRegistration;
+    this.collector =
+        ScopedMetricCollector.create(
+            collectionRegistration, registeredScopeNames, this, scopedCollection);
     start();
   }
 
@@ -182,11 +197,6 @@ public class ScopeBasedPeriodicMetricReader implements MetricReader {
 
   private final class Scheduled implements Runnable {
     private final AtomicBoolean exportAvailable = new AtomicBoolean(true);
-    private final Set<String> registeredScopeNames;
-
-    private Scheduled(Set<String> registeredScopeNames) {
-      this.registeredScopeNames = registeredScopeNames;
-    }
 
     @Override
     public void run() {
@@ -199,24 +209,26 @@ public class ScopeBasedPeriodicMetricReader implements MetricReader {
       CompletableResultCode flushResult = new CompletableResultCode();
       if (exportAvailable.compareAndSet(true, false)) {
         try {
-          Collection<MetricData> metricData = collectionRegistration.collectAllMetrics();
+          Collection<MetricData> metricData = collector.collect();
+          if (carryOver != null) {
+            metricData = carryOver.drainInto(metricData);
+          }
           if (metricData.isEmpty()) {
             logger.log(Level.FINE, "No metric data to export - skipping export.");
             flushResult.succeed();
             exportAvailable.set(true);
           } else {
-            List<MetricData> exportingMetrics = new LinkedList<>();
-            for (MetricData metricDatum : metricData) {
-              String scopeName = metricDatum.getInstrumentationScopeInfo().getName();
-              if (registeredScopeNames.contains(scopeName)) {
-                exportingMetrics.add(metricDatum);
-              }
-            }
-            CompletableResultCode result = exporter.export(exportingMetrics);
+            Collection<MetricData> exported = metricData;
+            CompletableResultCode result = exporter.export(exported);
             result.whenComplete(
                 () -> {
                   if (!result.isSuccess()) {
                     logger.log(Level.FINE, "Exporter failed");
+                    if (carryOver != null) {
+                      carryOver.carry(
+                          PartialExportException.unexported(
+                              exported, result.getFailureThrowable()));
+                    }
                   }
                   flushResult.succeed();
                   exportAvailable.set(true);
@@ -228,7 +240,7 @@ public class ScopeBasedPeriodicMetricReader implements MetricReader {
           flushResult.fail();
         }
       } else {
-        logger.log(Level.FINE, "Exporter busy. Dropping metrics.");
+        logger.log(Level.FINE, "Exporter busy. Deferring metrics to the next export.");
         flushResult.fail();
       }
       return flushResult;
@@ -32,6 +32,8 @@ public class ScopeBasedPeriodicMetricReaderBuilder {
   private final MetricExporter metricExporter;
   private final Set<String> registeredScopeNames;
   private long intervalNanos = TimeUnit.MINUTES.toNanos(DEFAULT_SCHEDULE_DELAY_MINUTES);
+  private int maxCarriedOverPoints;
+  private boolean scopedCollection;
 
   @Nullable private ScheduledExecutorService executor;
 
@@ -66,6 +68,27 @@ public class ScopeBasedPeriodicMetricReaderBuilder {
     return this;
   }
 
+  /**
+   * Sets the maximum number of delta metric points of failed exports that are carried over to the
+   * next export. {@code 0} disables the carry-over. If unset, defaults to {@code 0}, so that failed
+   * exports are dropped, as they are by the SDK's periodic metric reader.
+   */
+  public ScopeBasedPeriodicMetricReaderBuilder setMaxCarriedOverPoints(int maxCarriedOverPoints) {
+    checkArgument(maxCarriedOverPoints >= 0, "maxCarriedOverPoints must not be negative");
+    this.maxCarriedOverPoints = maxCarriedOverPoints;
+    return this;
+  }
+
+  /**
+   * Sets whether only the meters of the registered scopes are read, if the exporter's temporality
+   * is cumulative, see {@link ScopedMetricCollector}. If unset, defaults to {@code false}, so that
+   * all metrics are collected and filtered by scope.
+   */
+  public ScopeBasedPeriodicMetricReaderBuilder setScopedCollection(boolean scopedCollection) {
+    this.scopedCollection = scopedCollection;
+    return this;
+  }
+
   /** Build a {@link ScopeBasedPeriodicMetricReader} with the configuration of this builder. */
   public ScopeBasedPeriodicMetricReader build() {
     ScheduledExecutorService executor = this.executor;
@@ -75,6 +98,11 @@ public class ScopeBasedPeriodicMetricReaderBuilder {
               1, new DaemonThreadFactory("AwsScopeBasedPeriodicMetricReader"));
     }
     return new ScopeBasedPeriodicMetricReader(
-        metricExporter, intervalNanos, executor, registeredScopeNames);
+        metricExporter,
+        intervalNanos,
+        executor,
+        registeredScopeNames,
+        maxCarriedOverPoints == 0 ? null : DeltaCarryOverBuffer.create(maxCarriedOverPoints),
+        scopedCollection);
   }
 }
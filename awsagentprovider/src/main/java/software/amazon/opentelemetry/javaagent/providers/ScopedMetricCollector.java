@@ -0,0 +1,295 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.sdk.common.Clock;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.internal.ComponentRegistry;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.CollectionRegistration;
+import io.opentelemetry.sdk.metrics.export.MetricProducer;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
+import io.opentelemetry.sdk.metrics.internal.export.RegisteredReader;
+import io.opentelemetry.sdk.metrics.internal.state.MeterProviderSharedState;
+import io.opentelemetry.sdk.resources.Resource;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * ScopedMetricCollector collects the metrics of a set of instrumentation scopes through a {@link
+ * CollectionRegistration}. By default, it collects all metrics with {@link
+ * CollectionRegistration#collectAllMetrics}, which reads and resets the storages of every meter in
+ * the process, and keeps those of its scopes.
+ *
+ * <p>Scoped collection is opt-in, and only applies to readers with cumulative temporality for every
+ * instrument type. The meters of the wanted scopes are then collected one by one, through the same
+ * package-private {@code SdkMeter#collectAll} the SDK uses, and meters of other scopes are not read
+ * at all: their callbacks are not invoked, and their storages for the reader are never reset. A
+ * cumulative storage is never reset by a collection either, so it holds the same series whether it
+ * is read or not. A delta storage, however, would accumulate every series until its cardinality
+ * limit, and then fold new series into the overflow series for good, so delta readers always
+ * collect all metrics. Each metric reader has storages of its own, so other readers are unaffected.
+ *
+ * <p>The SDK internals are looked up reflectively from the registration, by field and method names
+ * of opentelemetry-java v1.44.1, as the SDK has no supported way to collect some meters for one
+ * reader: views, including {@link io.opentelemetry.sdk.metrics.Aggregation#drop()} views, apply to
+ * all readers, and {@link MetricProducer}s only see the metrics they produce. As an SDK update may
+ * change them, if the internals do not match, a warning is logged, and all metrics are collected.
+ * ScopedMetricCollectorTest fails if they stop matching the bundled SDK.
+ *
+ * <p>With {@link MemoryMode#REUSABLE_DATA}, the list of collected metrics is reused by every
+ * collection, like the metrics in it are reused by the SDK, so it must not be used once the next
+ * collection starts.
+ */
+final class ScopedMetricCollector {
+  private static final Logger logger = Logger.getLogger(ScopedMetricCollector.class.getName());
+
+  private final CollectionRegistration registration;
+  private final Set<String> scopeNames;
+  @Nullable private final SdkMeters sdkMeters;
+  @Nullable private final List<MetricData> reusableMetrics;
+
+  /**
+   * Returns a collector for {@code reader}, which collects by scope if {@code scopedCollection} is
+   * enabled and the reader's temporality is cumulative for every instrument type, and otherwise
+   * collects all metrics and filters them by scope.
+   */
+  static ScopedMetricCollector create(
+      CollectionRegistration registration,
+      Set<String> scopeNames,
+      MetricReader reader,
+      boolean scopedCollection) {
+    if (!scopedCollection) {
+      return createFiltering(registration, scopeNames, reader.getMemoryMode());
+    }
+    if (!isCumulative(reader)) {
+      logger.log(
+          Level.INFO,
+          "Metrics are collected by scope only with cumulative temporality, collecting all metrics"
+              + " for {0}",
+          reader);
+      return createFiltering(registration, scopeNames, reader.getMemoryMode());
+    }
+    return createScoped(registration, scopeNames, reader.getMemoryMode());
+  }
+
+  static ScopedMetricCollector createScoped(
+      CollectionRegistration registration, Set<String> scopeNames, MemoryMode memoryMode) {
+    SdkMeters sdkMeters = SdkMeters.lookup(registration);
+    if (sdkMeters == null) {
+      // Other registrations are expected not to match, such as the ones of tests
+      logger.log(
+          isSdkRegistration(registration) ? Level.WARNING : Level.FINE,
+          "Cannot collect metrics by scope with this version of the OpenTelemetry SDK, collecting"
+              + " all metrics and filtering them by scope instead");
+    }
+    return new ScopedMetricCollector(registration, scopeNames, sdkMeters, memoryMode);
+  }
+
+  static ScopedMetricCollector createFiltering(
+      CollectionRegistration registration, Set<String> scopeNames, MemoryMode memoryMode) {
+    return new ScopedMetricCollector(registration, scopeNames, null, memoryMode);
+  }
+
+  private ScopedMetricCollector(
+      CollectionRegistration registration,
+      Set<String> scopeNames,
+      @Nullable SdkMeters sdkMeters,
+      MemoryMode memoryMode) {
+    this.registration = registration;
+    this.scopeNames = scopeNames;
+    this.sdkMeters = sdkMeters;
+    this.reusableMetrics = memoryMode == MemoryMode.REUSABLE_DATA ? new ArrayList<>() : null;
+  }
+
+  boolean isScoped() {
+    return sdkMeters != null;
+  }
+
+  /** Returns the metrics of the scopes of this collector. */
+  Collection<MetricData> collect() {
+    List<MetricData> metrics;
+    if (reusableMetrics != null) {
+      reusableMetrics.clear();
+      metrics = reusableMetrics;
+    } else {
+      metrics = new ArrayList<>();
+    }
+    if (sdkMeters != null) {
+      sdkMeters.collect(scopeNames, metrics);
+    } else {
+      addInScope(registration.collectAllMetrics(), scopeNames, metrics);
+    }
+    return metrics;
+  }
+
+  private static boolean isCumulative(MetricReader reader) {
+    for (InstrumentType type : InstrumentType.values()) {
+      if (reader.getAggregationTemporality(type) != AggregationTemporality.CUMULATIVE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSdkRegistration(CollectionRegistration registration) {
+    return registration.getClass().getName().startsWith("io.opentelemetry.sdk.");
+  }
+
+  private static void addInScope(
+      Collection<MetricData> collected, Set<String> scopeNames, List<MetricData> metrics) {
+    for (MetricData metricData : collected) {
+      if (scopeNames.contains(metricData.getInstrumentationScopeInfo().getName())) {
+        metrics.add(metricData);
+      }
+    }
+  }
+
+  /**
+   * The SDK meters of a meter provider, as read by one of its readers, and the metric producers
+   * registered with it, which are produced and filtered as a whole.
+   */
+  private static final class SdkMeters {
+    private final ComponentRegistry<?> registry;
+    private final RegisteredReader reader;
+    private final Clock clock;
+    private final Resource resource;
+    private final List<MetricProducer> producers;
+    private final Method getInstrumentationScopeInfo;
+    private final Method collectAll;
+
+    private SdkMeters(
+        ComponentRegistry<?> registry,
+        RegisteredReader reader,
+        MeterProviderSharedState sharedState,
+        List<MetricProducer> producers,
+        Method getInstrumentationScopeInfo,
+        Method collectAll) {
+      this.registry = registry;
+      this.reader = reader;
+      this.clock = sharedState.getClock();
+      this.resource = sharedState.getResource();
+      this.producers = producers;
+      this.getInstrumentationScopeInfo = getInstrumentationScopeInfo;
+      this.collectAll = collectAll;
+    }
+
+    /**
+     * Looks up the SDK internals behind {@code registration}, or returns {@code null} if it is not
+     * the SDK's or they are not as expected.
+     */
+    @Nullable
+    static SdkMeters lookup(CollectionRegistration registration) {
+      try {
+        Object producerList = readField(registration, "metricProducers");
+        Object sharedState = readField(registration, "sharedState");
+        if (!(producerList instanceof List) || !(sharedState instanceof MeterProviderSharedState)) {
+          return null;
+        }
+        // One producer, nested in the meter provider like the registration, reads the SDK
+        // meters. The others were registered with the meter provider.
+        Class<?> meterProviderClass = registration.getClass().getEnclosingClass();
+        Object leased = null;
+        List<MetricProducer> producers = new ArrayList<>();
+        for (Object producer : (List<?>) producerList) {
+          if (meterProviderClass != null
+              && producer.getClass().getEnclosingClass() == meterProviderClass
+              && leased == null) {
+            leased = producer;
+          } else {
+            producers.add((MetricProducer) producer);
+          }
+        }
+        if (leased == null) {
+          return null;
+        }
+        Object registry = readField(leased, "registry");
+        Object reader = readField(leased, "registeredReader");
+        if (!(registry instanceof ComponentRegistry) || !(reader instanceof RegisteredReader)) {
+          return null;
+        }
+
+        // Meters are usually created after the reader is registered, so the meter class is looked
+        // up next to the producer class rather than from the registry
+        String producerClassName = leased.getClass().getName();
+        Class<?> meterClass =
+            Class.forName(
+                producerClassName.substring(0, producerClassName.lastIndexOf('.') + 1) + "SdkMeter",
+                false,
+                leased.getClass().getClassLoader());
+        Method getInstrumentationScopeInfo =
+            meterClass.getDeclaredMethod("getInstrumentationScopeInfo");
+        Method collectAll =
+            meterClass.getDeclaredMethod("collectAll", RegisteredReader.class, long.class);
+        getInstrumentationScopeInfo.setAccessible(true);
+        collectAll.setAccessible(true);
+        return new SdkMeters(
+            (ComponentRegistry<?>) registry,
+            (RegisteredReader) reader,
+            (MeterProviderSharedState) sharedState,
+            producers,
+            getInstrumentationScopeInfo,
+            collectAll);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        logger.log(Level.FINE, "SDK meters are not accessible", e);
+        return null;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    void collect(Set<String> scopeNames, List<MetricData> metrics) {
+      long epochNanos = clock.now();
+      try {
+        for (Object meter : registry.getComponents()) {
+          InstrumentationScopeInfo scope =
+              (InstrumentationScopeInfo) getInstrumentationScopeInfo.invoke(meter);
+          if (scopeNames.contains(scope.getName())) {
+            metrics.addAll((Collection<MetricData>) collectAll.invoke(meter, reader, epochNanos));
+          }
+        }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+      reader.setLastCollectEpochNanos(epochNanos);
+      for (MetricProducer producer : producers) {
+        addInScope(producer.produce(resource), scopeNames, metrics);
+      }
+    }
+  }
+
+  private static Object readField(Object target, String name) throws ReflectiveOperationException {
+    Field field = target.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    return field.get(target);
+  }
+}
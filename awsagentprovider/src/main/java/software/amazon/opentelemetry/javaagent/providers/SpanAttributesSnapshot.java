@@ -0,0 +1,204 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static io.opentelemetry.semconv.SemanticAttributes.DB_CONNECTION_STRING;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_NAME;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_OPERATION;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_STATEMENT;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_SYSTEM;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_USER;
+import static io.opentelemetry.semconv.SemanticAttributes.FAAS_INVOKED_NAME;
+import static io.opentelemetry.semconv.SemanticAttributes.FAAS_TRIGGER;
+import static io.opentelemetry.semconv.SemanticAttributes.GRAPHQL_OPERATION_TYPE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_REQUEST_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_RESPONSE_STATUS_CODE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_ROUTE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_STATUS_CODE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_TARGET;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_URL;
+import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_OPERATION;
+import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_SYSTEM;
+import static io.opentelemetry.semconv.SemanticAttributes.NETWORK_PEER_ADDRESS;
+import static io.opentelemetry.semconv.SemanticAttributes.NETWORK_PEER_PORT;
+import static io.opentelemetry.semconv.SemanticAttributes.NET_PEER_NAME;
+import static io.opentelemetry.semconv.SemanticAttributes.NET_PEER_PORT;
+import static io.opentelemetry.semconv.SemanticAttributes.NET_SOCK_PEER_ADDR;
+import static io.opentelemetry.semconv.SemanticAttributes.NET_SOCK_PEER_PORT;
+import static io.opentelemetry.semconv.SemanticAttributes.PEER_SERVICE;
+import static io.opentelemetry.semconv.SemanticAttributes.RPC_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.RPC_SERVICE;
+import static io.opentelemetry.semconv.SemanticAttributes.RPC_SYSTEM;
+import static io.opentelemetry.semconv.SemanticAttributes.SERVER_ADDRESS;
+import static io.opentelemetry.semconv.SemanticAttributes.SERVER_PORT;
+import static io.opentelemetry.semconv.SemanticAttributes.SERVER_SOCKET_ADDRESS;
+import static io.opentelemetry.semconv.SemanticAttributes.SERVER_SOCKET_PORT;
+import static io.opentelemetry.semconv.SemanticAttributes.URL_FULL;
+import static io.opentelemetry.semconv.SemanticAttributes.URL_PATH;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_AGENT_ID;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_BUCKET_NAME;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_CONSUMER_PARENT_SPAN_KIND;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_DATA_SOURCE_ID;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_GUARDRAIL_ARN;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_GUARDRAIL_ID;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_KNOWLEDGE_BASE_ID;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LAMBDA_RESOURCE_ID;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_QUEUE_NAME;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_QUEUE_URL;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_SECRET_ARN;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_SNS_TOPIC_ARN;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_STATE_MACHINE_ARN;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_STEP_FUNCTIONS_ACTIVITY_ARN;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_STREAM_NAME;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_TABLE_NAME;
+import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.GEN_AI_REQUEST_MODEL;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * SpanAttributesSnapshot captures, in a single pass over {@link Attributes#forEach}, the values of
+ * every span attribute consulted by {@link AwsMetricAttributeGenerator} and {@link
+ * AwsSpanProcessingUtil}. The SDK stores span attributes in a flat array, so each {@link
+ * Attributes#get} is a linear scan; deriving metric attributes used to perform dozens of such scans
+ * per span. Reads against the snapshot are constant time.
+ *
+ * <p>Only keys listed in {@link #KEYS} are captured. Reading any other key falls back to the
+ * underlying attributes, so the snapshot is always a correct (if slower) view of the span.
+ */
+final class SpanAttributesSnapshot implements BiConsumer<AttributeKey<?>, Object> {
+
+  private static final AttributeKey<?>[] KEYS = {
+    // AWS remote attributes, and local operation propagated by AttributePropagatingSpanProcessor
+    AWS_REMOTE_SERVICE,
+    AWS_REMOTE_OPERATION,
+    AWS_LOCAL_OPERATION,
+    AWS_CONSUMER_PARENT_SPAN_KIND,
+    // RPC and AWS SDK
+    RPC_SYSTEM,
+    RPC_SERVICE,
+    RPC_METHOD,
+    // DB
+    DB_SYSTEM,
+    DB_OPERATION,
+    DB_STATEMENT,
+    DB_NAME,
+    DB_USER,
+    DB_CONNECTION_STRING,
+    // FAAS, messaging and GraphQL
+    FAAS_INVOKED_NAME,
+    FAAS_TRIGGER,
+    MESSAGING_SYSTEM,
+    MESSAGING_OPERATION,
+    GRAPHQL_OPERATION_TYPE,
+    PEER_SERVICE,
+    // Peer address fallbacks
+    SERVER_ADDRESS,
+    SERVER_PORT,
+    NET_PEER_NAME,
+    NET_PEER_PORT,
+    NETWORK_PEER_ADDRESS,
+    NETWORK_PEER_PORT,
+    NET_SOCK_PEER_ADDR,
+    NET_SOCK_PEER_PORT,
+    SERVER_SOCKET_ADDRESS,
+    SERVER_SOCKET_PORT,
+    // HTTP
+    HTTP_REQUEST_METHOD,
+    HTTP_METHOD,
+    HTTP_RESPONSE_STATUS_CODE,
+    HTTP_STATUS_CODE,
+    URL_FULL,
+    HTTP_URL,
+    URL_PATH,
+    HTTP_TARGET,
+    HTTP_ROUTE,
+    // AWS SDK remote resources
+    AWS_TABLE_NAME,
+    AWS_STREAM_NAME,
+    AWS_BUCKET_NAME,
+    AWS_QUEUE_NAME,
+    AWS_QUEUE_URL,
+    AWS_AGENT_ID,
+    AWS_KNOWLEDGE_BASE_ID,
+    AWS_DATA_SOURCE_ID,
+    AWS_GUARDRAIL_ID,
+    AWS_GUARDRAIL_ARN,
+    GEN_AI_REQUEST_MODEL,
+    AWS_STATE_MACHINE_ARN,
+    AWS_STEP_FUNCTIONS_ACTIVITY_ARN,
+    AWS_SNS_TOPIC_ARN,
+    AWS_SECRET_ARN,
+    AWS_LAMBDA_RESOURCE_ID,
+  };
+
+  private static final Map<AttributeKey<?>, Integer> SLOTS = new HashMap<>();
+
+  static {
+    for (int i = 0; i < KEYS.length; i++) {
+      SLOTS.put(KEYS[i], i);
+    }
+  }
+
+  private final Attributes attributes;
+  private final Object[] values = new Object[KEYS.length];
+
+  static SpanAttributesSnapshot of(SpanData span) {
+    return of(span.getAttributes());
+  }
+
+  static SpanAttributesSnapshot of(Attributes attributes) {
+    SpanAttributesSnapshot snapshot = new SpanAttributesSnapshot(attributes);
+    attributes.forEach(snapshot);
+    return snapshot;
+  }
+
+  private SpanAttributesSnapshot(Attributes attributes) {
+    this.attributes = attributes;
+  }
+
+  /** Only meant to be invoked by {@link Attributes#forEach} while the snapshot is being built. */
+  @Override
+  public void accept(AttributeKey<?> key, Object value) {
+    Integer slot = SLOTS.get(key);
+    if (slot != null) {
+      values[slot] = value;
+    }
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  <T> T get(AttributeKey<T> key) {
+    Integer slot = SLOTS.get(key);
+    if (slot == null) {
+      return attributes.get(key);
+    }
+    return (T) values[slot];
+  }
+
+  boolean isKeyPresent(AttributeKey<?> key) {
+    return get(key) != null;
+  }
+}
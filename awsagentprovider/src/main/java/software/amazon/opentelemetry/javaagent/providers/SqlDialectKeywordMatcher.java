@@ -0,0 +1,186 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * SqlDialectKeywordMatcher finds the SQL keyword a DB statement starts with, using a
+ * case-insensitive trie over a keyword list. It gives the same result as upper-casing the first
+ * {@code maxLength} characters of the statement, after leading whitespace, and matching them
+ * against {@code ^(?:KEYWORD1|KEYWORD2|...)\b}, i.e. the first keyword in list order that is
+ * followed by a word boundary, but without allocating.
+ *
+ * <p>Only ASCII input is matched by the trie. If a non-ASCII character could affect the result, as
+ * {@link String#toUpperCase()} maps some of these to ASCII letters, the statement is matched with
+ * the equivalent regular expression instead, which is compiled on first use.
+ */
+final class SqlDialectKeywordMatcher {
+
+  private static final int NO_MATCH = Integer.MAX_VALUE;
+  private static final char END_OF_INPUT = 0;
+
+  private final String[] keywords;
+  private final int maxLength;
+  private final Node root;
+  @Nullable private volatile Pattern pattern;
+
+  static SqlDialectKeywordMatcher create(List<String> keywords, int maxLength) {
+    return new SqlDialectKeywordMatcher(keywords, maxLength);
+  }
+
+  private SqlDialectKeywordMatcher(List<String> keywords, int maxLength) {
+    this.keywords = keywords.toArray(new String[0]);
+    this.maxLength = maxLength;
+    NodeBuilder rootBuilder = new NodeBuilder();
+    for (int i = 0; i < this.keywords.length; i++) {
+      String keyword = this.keywords[i];
+      if (keyword.isEmpty()) {
+        continue;
+      }
+      NodeBuilder node = rootBuilder;
+      for (int j = 0; j < keyword.length(); j++) {
+        node = node.children.computeIfAbsent(keyword.charAt(j), unused -> new NodeBuilder());
+      }
+      if (node.keywordIndex < 0) {
+        node.keywordIndex = i;
+      }
+    }
+    this.root = rootBuilder.build(END_OF_INPUT);
+  }
+
+  /**
+   * Returns the keyword the statement starts with, as one of the keywords this matcher was created
+   * with, or null if there is none.
+   */
+  @Nullable
+  String match(String statement) {
+    int length = statement.length();
+    int start = 0;
+    while (start < length && isWhitespace(statement.charAt(start))) {
+      start++;
+    }
+    int end = Math.min(length, start + maxLength);
+    boolean dottedCapitalI = usesDottedCapitalI();
+
+    Node node = root;
+    int match = NO_MATCH;
+    for (int i = start; node != null; i++) {
+      char c = i < end ? statement.charAt(i) : END_OF_INPUT;
+      if (c >= 0x80 || (c == 'i' && dottedCapitalI)) {
+        return matchWithPattern(statement);
+      }
+      if (node.keywordIndex < match && isWordChar(node.label) != isWordChar(c)) {
+        match = node.keywordIndex;
+      }
+      if (i == end) {
+        break;
+      }
+      node = node.child(toUpperCase(c));
+    }
+    return match == NO_MATCH ? null : keywords[match];
+  }
+
+  /** Matches the statement with the regular expression the trie is equivalent to. */
+  @Nullable
+  String matchWithPattern(String statement) {
+    Pattern pattern = this.pattern;
+    if (pattern == null) {
+      pattern = Pattern.compile("^(?:" + String.join("|", keywords) + ")\\b");
+      this.pattern = pattern;
+    }
+    int start = 0;
+    while (start < statement.length() && isWhitespace(statement.charAt(start))) {
+      start++;
+    }
+    String prefix = statement.substring(start, Math.min(statement.length(), start + maxLength));
+    Matcher matcher = pattern.matcher(prefix.toUpperCase());
+    if (matcher.find() && !matcher.group(0).isEmpty()) {
+      return matcher.group(0);
+    }
+    return null;
+  }
+
+  // Characters matched by \s
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+  }
+
+  // Characters matched by \w, which for ASCII are also the word characters of \b
+  private static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+  }
+
+  private static char toUpperCase(char c) {
+    return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+  }
+
+  // String.toUpperCase() maps 'i' to a non-ASCII capital I in these locales
+  private static boolean usesDottedCapitalI() {
+    String language = Locale.getDefault().getLanguage();
+    return language.equals("tr") || language.equals("az");
+  }
+
+  private static final class Node {
+    // The last character of the keyword prefix this node stands for
+    private final char label;
+    // The index of the keyword ending at this node, or NO_MATCH
+    private final int keywordIndex;
+    private final char[] childLabels;
+    private final Node[] children;
+
+    private Node(char label, int keywordIndex, char[] childLabels, Node[] children) {
+      this.label = label;
+      this.keywordIndex = keywordIndex;
+      this.childLabels = childLabels;
+      this.children = children;
+    }
+
+    @Nullable
+    Node child(char c) {
+      char[] labels = childLabels;
+      for (int i = 0; i < labels.length; i++) {
+        if (labels[i] == c) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+  }
+
+  private static final class NodeBuilder {
+    private final Map<Character, NodeBuilder> children = new TreeMap<>();
+    private int keywordIndex = -1;
+
+    Node build(char label) {
+      char[] childLabels = new char[children.size()];
+      Node[] childNodes = new Node[children.size()];
+      int i = 0;
+      for (Map.Entry<Character, NodeBuilder> entry : children.entrySet()) {
+        childLabels[i] = entry.getKey();
+        childNodes[i] = entry.getValue().build(entry.getKey());
+        i++;
+      }
+      return new Node(label, keywordIndex < 0 ? NO_MATCH : keywordIndex, childLabels, childNodes);
+    }
+  }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * UrlScanner derives remote service names, remote operations and DB connections from URL and URI
+ * strings by scanning them in place, instead of constructing {@link URL} or {@link URI} objects.
+ *
+ * <p>The scanner only accepts the common, unambiguous shapes of these strings, e.g. {@code
+ * http://host:port/path?query}, and defers everything else (user info, IPv6 literals, escapes, dot
+ * segments, unusual schemes, ...) to {@link URL} and {@link URI}, so results are always the same as
+ * those classes would give. Results are substrings of the input in most cases; these are interned
+ * by content so that repeated inputs do not allocate.
+ */
+final class UrlScanner {
+
+  private static final Logger logger = Logger.getLogger(UrlScanner.class.getName());
+
+  private static final String HTTP_PREFIX = "http://";
+  private static final String HTTPS_PREFIX = "https://";
+  private static final String ROOT_PATH = "/";
+  private static final int MAX_PORT = 65535;
+
+  private static final int INTERNER_SIZE = 1024;
+  private static final int DB_CONNECTION_CACHE_SIZE = 256;
+
+  private static final RegionInterner remoteServices = new RegionInterner(INTERNER_SIZE);
+  private static final RegionInterner pathSegments = new RegionInterner(INTERNER_SIZE);
+  private static final MemoizingCache<String, Optional<String>> dbConnections =
+      new MemoizingCache<>(DB_CONNECTION_CACHE_SIZE);
+
+  /**
+   * Returns the host of an HTTP URL, followed by {@code :port} if the URL has an explicit port.
+   * Returns null if the URL is malformed or has no host.
+   */
+  @Nullable
+  static String getRemoteService(String url) {
+    int authorityStart = httpAuthorityStart(url);
+    if (authorityStart < 0) {
+      return getRemoteServiceWithUrl(url);
+    }
+    int end = url.length();
+    int hostEnd = authorityStart;
+    while (hostEnd < end && isHostChar(url.charAt(hostEnd))) {
+      hostEnd++;
+    }
+    if (hostEnd == authorityStart) {
+      return getRemoteServiceWithUrl(url);
+    }
+    int authorityEnd = hostEnd;
+    if (authorityEnd < end && url.charAt(authorityEnd) == ':') {
+      authorityEnd = scanPort(url, authorityEnd + 1);
+      if (authorityEnd < 0) {
+        return getRemoteServiceWithUrl(url);
+      }
+    }
+    if (authorityEnd < end && url.charAt(authorityEnd) != '/') {
+      return getRemoteServiceWithUrl(url);
+    }
+    if (!isPlainTail(url, authorityEnd)) {
+      return getRemoteServiceWithUrl(url);
+    }
+    return remoteServices.intern(url, authorityStart, authorityEnd);
+  }
+
+  /**
+   * Returns the first segment of the path of an HTTP URL, as {@link
+   * AwsSpanProcessingUtil#extractAPIPathValue} would for {@link URL#getPath()}. Returns null if the
+   * URL is malformed.
+   */
+  @Nullable
+  static String getRemoteOperationPath(String url) {
+    int pathStart = httpPathStart(url);
+    if (pathStart < 0) {
+      return getRemoteOperationPathWithUrl(url);
+    }
+    return firstPathSegment(url, pathStart, httpPathEnd(url, pathStart));
+  }
+
+  /**
+   * Returns the path of an HTTP URL, as {@link URL#getPath()} would, or null if the URL is
+   * malformed.
+   */
+  @Nullable
+  static String getPath(String url) {
+    int pathStart = httpPathStart(url);
+    if (pathStart < 0) {
+      return getPathWithUrl(url);
+    }
+    return url.substring(pathStart, httpPathEnd(url, pathStart));
+  }
+
+  // Returns the index following the authority of an HTTP URL, or -1 if URL needs to parse it
+  private static int httpPathStart(String url) {
+    int authorityStart = httpAuthorityStart(url);
+    if (authorityStart < 0) {
+      return -1;
+    }
+    int end = url.length();
+    int authorityEnd = authorityStart;
+    while (authorityEnd < end && isHostChar(url.charAt(authorityEnd))) {
+      authorityEnd++;
+    }
+    if (authorityEnd == authorityStart) {
+      return -1;
+    }
+    if (authorityEnd < end && url.charAt(authorityEnd) == ':') {
+      authorityEnd = scanPort(url, authorityEnd + 1);
+      if (authorityEnd < 0) {
+        return -1;
+      }
+    }
+    if (authorityEnd < end && url.charAt(authorityEnd) != '/') {
+      return -1;
+    }
+    if (!isPlainTail(url, authorityEnd)) {
+      return -1;
+    }
+    return authorityEnd;
+  }
+
+  private static int httpPathEnd(String url, int pathStart) {
+    int pathEnd = pathStart;
+    while (pathEnd < url.length() && url.charAt(pathEnd) != '?' && url.charAt(pathEnd) != '#') {
+      pathEnd++;
+    }
+    return pathEnd;
+  }
+
+  /**
+   * Returns the first segment of an HTTP target prefixed with {@code /}, e.g. {@code /payment} for
+   * {@code /payment/1234}, or {@code /} if there is none. This matches taking element 1 of {@code
+   * httpTarget.split("/")}.
+   */
+  static String getFirstPathSegment(@Nullable String httpTarget) {
+    if (httpTarget == null || httpTarget.isEmpty()) {
+      return ROOT_PATH;
+    }
+    return firstPathSegment(httpTarget, 0, httpTarget.length());
+  }
+
+  /**
+   * Returns the host of a DB connection string URI, followed by {@code |port} if it has an explicit
+   * port, with delimiters escaped. Returns empty if the string is not a valid URI or has no host.
+   */
+  static Optional<String> getDbConnection(String connectionString) {
+    return dbConnections.computeIfAbsent(connectionString, UrlScanner::scanDbConnection);
+  }
+
+  private static Optional<String> scanDbConnection(String connectionString) {
+    int end = connectionString.length();
+    int schemeEnd = 0;
+    while (schemeEnd < end && isSchemeChar(connectionString.charAt(schemeEnd), schemeEnd == 0)) {
+      schemeEnd++;
+    }
+    if (schemeEnd == 0 || !connectionString.startsWith("://", schemeEnd)) {
+      return getDbConnectionWithUri(connectionString);
+    }
+    int hostStart = schemeEnd + 3;
+    int hostEnd = hostStart;
+    while (hostEnd < end && isHostChar(connectionString.charAt(hostEnd))) {
+      hostEnd++;
+    }
+    if (!isUriHostName(connectionString, hostStart, hostEnd)) {
+      return getDbConnectionWithUri(connectionString);
+    }
+    int authorityEnd = hostEnd;
+    if (authorityEnd < end && connectionString.charAt(authorityEnd) == ':') {
+      authorityEnd = scanPort(connectionString, authorityEnd + 1);
+      if (authorityEnd < 0) {
+        return getDbConnectionWithUri(connectionString);
+      }
+    }
+    if (authorityEnd < end && !isAuthorityTerminator(connectionString.charAt(authorityEnd))) {
+      return getDbConnectionWithUri(connectionString);
+    }
+    for (int i = authorityEnd; i < end; i++) {
+      if (!isUriTailChar(connectionString.charAt(i))) {
+        return getDbConnectionWithUri(connectionString);
+      }
+    }
+    String host = connectionString.substring(hostStart, hostEnd);
+    return Optional.of(
+        authorityEnd > hostEnd
+            ? host + "|" + connectionString.substring(hostEnd + 1, authorityEnd)
+            : host);
+  }
+
+  // Returns the index following "http://" or "https://", or -1 for any other prefix
+  private static int httpAuthorityStart(String url) {
+    if (url.startsWith(HTTP_PREFIX)) {
+      return HTTP_PREFIX.length();
+    }
+    if (url.startsWith(HTTPS_PREFIX)) {
+      return HTTPS_PREFIX.length();
+    }
+    return -1;
+  }
+
+  // Scans 1 to 5 digits without a leading zero, returning the index after them, or -1
+  private static int scanPort(String s, int start) {
+    int end = Math.min(s.length(), start + 6);
+    int i = start;
+    int port = 0;
+    while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+      port = port * 10 + (s.charAt(i) - '0');
+      i++;
+    }
+    if (i == start || i - start > 5 || s.charAt(start) == '0' || port > MAX_PORT) {
+      return -1;
+    }
+    return i;
+  }
+
+  private static String firstPathSegment(String s, int start, int end) {
+    int firstSlash = s.indexOf('/', start);
+    if (firstSlash < 0 || firstSlash >= end) {
+      return ROOT_PATH;
+    }
+    int segmentEnd = firstSlash + 1;
+    while (segmentEnd < end && s.charAt(segmentEnd) != '/') {
+      segmentEnd++;
+    }
+    if (segmentEnd == firstSlash + 1) {
+      return ROOT_PATH;
+    }
+    return pathSegments.intern(s, firstSlash, segmentEnd);
+  }
+
+  // Printable ASCII without dot segments, which URL would normalize
+  private static boolean isPlainTail(String url, int start) {
+    int end = url.length();
+    for (int i = start; i < end; i++) {
+      char c = url.charAt(i);
+      if (c <= ' ' || c >= 0x7f || c == '\\') {
+        return false;
+      }
+      if (c == '.' && url.charAt(i - 1) == '/') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // URL ends the authority at the first '/' even past a '?', so only '/' is taken as a terminator
+  // for URLs; URI ends it at any of these
+  private static boolean isAuthorityTerminator(char c) {
+    return c == '/' || c == '?' || c == '#';
+  }
+
+  private static boolean isHostChar(char c) {
+    return (c >= 'a' && c <= 'z')
+        || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9')
+        || c == '.'
+        || c == '-'
+        || c == '_';
+  }
+
+  private static boolean isSchemeChar(char c, boolean first) {
+    if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+      return true;
+    }
+    return !first && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.');
+  }
+
+  // Characters URI accepts unescaped in paths and queries, excluding fragments and escapes
+  private static boolean isUriTailChar(char c) {
+    if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+      return true;
+    }
+    return "-_.!~*'();/?:@&=+$,".indexOf(c) >= 0;
+  }
+
+  /**
+   * Returns true if the region is a host name that URI parses as a server-based authority, i.e.
+   * dot-separated labels of letters, digits and inner hyphens, the last of which starts with a
+   * letter. IPv4 addresses and anything else are left to URI.
+   */
+  private static boolean isUriHostName(String s, int start, int end) {
+    if (start == end) {
+      return false;
+    }
+    int labelStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i == end || s.charAt(i) == '.') {
+        if (i == labelStart
+            || s.charAt(labelStart) == '-'
+            || s.charAt(i - 1) == '-'
+            || (i == end && !isLetter(s.charAt(labelStart)))) {
+          return false;
+        }
+        labelStart = i + 1;
+      } else {
+        char c = s.charAt(i);
+        if (c == '_') {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  @Nullable
+  static String getRemoteServiceWithUrl(String httpUrl) {
+    try {
+      URL url = new URL(httpUrl);
+      if (!url.getHost().isEmpty()) {
+        String remoteService = url.getHost();
+        if (url.getPort() != -1) {
+          remoteService += ":" + url.getPort();
+        }
+        return remoteService;
+      }
+    } catch (MalformedURLException e) {
+      logger.log(Level.FINEST, "invalid http.url attribute: ", httpUrl);
+    }
+    return null;
+  }
+
+  @Nullable
+  static String getRemoteOperationPathWithUrl(String httpUrl) {
+    try {
+      URL url = new URL(httpUrl);
+      return AwsSpanProcessingUtil.extractAPIPathValue(url.getPath());
+    } catch (MalformedURLException e) {
+      logger.log(Level.FINEST, "invalid http.url attribute: ", httpUrl);
+    }
+    return null;
+  }
+
+  @Nullable
+  static String getPathWithUrl(String httpUrl) {
+    try {
+      return new URL(httpUrl).getPath();
+    } catch (MalformedURLException e) {
+      logger.log(Level.FINEST, "invalid http.url attribute: ", httpUrl);
+    }
+    return null;
+  }
+
+  static String getFirstPathSegmentWithSplit(@Nullable String httpTarget) {
+    if (httpTarget == null || httpTarget.isEmpty()) {
+      return ROOT_PATH;
+    }
+    String[] paths = httpTarget.split("/");
+    if (paths.length > 1) {
+      return "/" + paths[1];
+    }
+    return ROOT_PATH;
+  }
+
+  static Optional<String> getDbConnectionWithUri(String connectionString) {
+    URI uri;
+    String address;
+    int port;
+    try {
+      uri = new URI(connectionString);
+      address = uri.getHost();
+      port = uri.getPort();
+    } catch (URISyntaxException e) {
+      logger.log(Level.FINEST, "invalid DB ConnectionString: ", connectionString);
+      return Optional.empty();
+    }
+
+    if (address == null) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        address.replace("^", "^^").replace("|", "^|") + (port != -1 ? "|" + port : ""));
+  }
+
+  /**
+   * A fixed-size, direct-mapped table of strings, looked up by the content of a region of another
+   * string, so that a substring only needs to be allocated the first time it is seen. Colliding
+   * regions simply replace each other. Writes race benignly, as strings are immutable and a stale
+   * or replaced slot only costs an allocation.
+   */
+  private static final class RegionInterner {
+    private final String[] table;
+    private final int mask;
+
+    RegionInterner(int size) {
+      table = new String[size];
+      mask = size - 1;
+    }
+
+    String intern(String s, int start, int end) {
+      int length = end - start;
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + s.charAt(i);
+      }
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      String cached = table[slot];
+      if (cached != null
+          && cached.length() == length
+          && cached.regionMatches(0, s, start, length)) {
+        return cached;
+      }
+      String value = s.substring(start, end);
+      table[slot] = value;
+      return value;
+    }
+  }
+
+  private UrlScanner() {}
+}
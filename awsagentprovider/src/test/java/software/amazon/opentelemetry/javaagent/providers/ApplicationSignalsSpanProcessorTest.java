@@ -0,0 +1,227 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SdkTracerProviderBuilder;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.semconv.SemanticAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class ApplicationSignalsSpanProcessorTest {
+
+  private static final Resource RESOURCE =
+      Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "test-service"));
+
+  @Test
+  public void testMatchesIndividualProcessors() {
+    Result fused = run(true);
+    Result individual = run(false);
+
+    assertThat(fused.spans).hasSize(3);
+    assertThat(fused.spans).isEqualTo(individual.spans);
+    assertThat(fused.metrics).isNotEmpty();
+    assertThat(fused.metrics).isEqualTo(individual.metrics);
+    // Propagated from the local root server span
+    assertThat(fused.spans.get("client"))
+        .containsEntry(AwsAttributeKeys.AWS_LOCAL_OPERATION.getKey(), "GET /users");
+  }
+
+  @Test
+  public void testUnsampledOnlyStage() {
+    InMemorySpanExporter unsampledExporter = InMemorySpanExporter.create();
+    AwsUnsampledOnlySpanProcessor unsampledOnly =
+        new AwsUnsampledOnlySpanProcessor(
+            SimpleSpanProcessor.builder(unsampledExporter).setExportUnsampledSpans(true).build());
+    ApplicationSignalsSpanProcessor processor =
+        ApplicationSignalsSpanProcessor.create(
+            AttributePropagatingSpanProcessorBuilder.create().build(), null, unsampledOnly);
+    assertThat(processor.isStartRequired()).isTrue();
+    assertThat(processor.isEndRequired()).isTrue();
+
+    SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder()
+            .setSampler(AlwaysRecordSampler.create(Sampler.alwaysOff()))
+            .addSpanProcessor(processor)
+            .build();
+    Tracer tracer = tracerProvider.get("test");
+    tracer.spanBuilder("unsampled").setSpanKind(SpanKind.SERVER).startSpan().end();
+
+    assertThat(unsampledExporter.getFinishedSpanItems()).hasSize(1);
+    assertThat(
+            unsampledExporter
+                .getFinishedSpanItems()
+                .get(0)
+                .getAttributes()
+                .get(AwsAttributeKeys.AWS_TRACE_FLAG_SAMPLED))
+        .isFalse();
+    assertThat(
+            tracerProvider.shutdown().join(10, java.util.concurrent.TimeUnit.SECONDS).isSuccess())
+        .isTrue();
+  }
+
+  @Test
+  public void testMetricsAndUnsampledOnlyStages() {
+    InMemoryMetricReader metricReader = InMemoryMetricReader.create();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder().setResource(RESOURCE).registerMetricReader(metricReader).build();
+    InMemorySpanExporter unsampledExporter = InMemorySpanExporter.create();
+    AwsUnsampledOnlySpanProcessor unsampledOnly =
+        new AwsUnsampledOnlySpanProcessor(
+            SimpleSpanProcessor.builder(unsampledExporter).setExportUnsampledSpans(true).build());
+    AwsSpanMetricsProcessor spanMetrics =
+        AwsSpanMetricsProcessorBuilder.create(meterProvider, RESOURCE, meterProvider::forceFlush)
+            .build();
+    SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder()
+            .setResource(RESOURCE)
+            .setSampler(AlwaysRecordSampler.create(Sampler.alwaysOff()))
+            .addSpanProcessor(
+                ApplicationSignalsSpanProcessor.create(
+                    AttributePropagatingSpanProcessorBuilder.create().build(),
+                    spanMetrics,
+                    unsampledOnly))
+            .build();
+    Tracer tracer = tracerProvider.get("test");
+    tracer.spanBuilder("GET").setSpanKind(SpanKind.SERVER).startSpan().end();
+
+    assertThat(unsampledExporter.getFinishedSpanItems()).hasSize(1);
+    assertThat(
+            unsampledExporter
+                .getFinishedSpanItems()
+                .get(0)
+                .getAttributes()
+                .get(AwsAttributeKeys.AWS_TRACE_FLAG_SAMPLED))
+        .isFalse();
+    assertThat(metricReader.collectAllMetrics())
+        .anySatisfy(metric -> assertThat(metric.getName()).isEqualTo("Latency"));
+    assertThat(
+            tracerProvider.shutdown().join(10, java.util.concurrent.TimeUnit.SECONDS).isSuccess())
+        .isTrue();
+  }
+
+  @Test
+  public void testPropagationOnly() {
+    ApplicationSignalsSpanProcessor processor =
+        ApplicationSignalsSpanProcessor.create(
+            AttributePropagatingSpanProcessorBuilder.create().build(), null, null);
+    assertThat(processor.isEndRequired()).isFalse();
+    assertThat(processor.forceFlush().isSuccess()).isTrue();
+    assertThat(processor.shutdown().isSuccess()).isTrue();
+  }
+
+  private static Result run(boolean fused) {
+    InMemoryMetricReader metricReader = InMemoryMetricReader.create();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder().setResource(RESOURCE).registerMetricReader(metricReader).build();
+    InMemorySpanExporter spanExporter = InMemorySpanExporter.create();
+
+    AttributePropagatingSpanProcessor attributePropagation =
+        AttributePropagatingSpanProcessorBuilder.create().build();
+    AwsSpanMetricsProcessor spanMetrics =
+        AwsSpanMetricsProcessorBuilder.create(meterProvider, RESOURCE, meterProvider::forceFlush)
+            .build();
+    SdkTracerProviderBuilder tracerProviderBuilder =
+        SdkTracerProvider.builder().setResource(RESOURCE);
+    if (fused) {
+      tracerProviderBuilder.addSpanProcessor(
+          ApplicationSignalsSpanProcessor.create(attributePropagation, spanMetrics, null));
+    } else {
+      tracerProviderBuilder.addSpanProcessor(attributePropagation).addSpanProcessor(spanMetrics);
+    }
+    SdkTracerProvider tracerProvider =
+        tracerProviderBuilder.addSpanProcessor(SimpleSpanProcessor.create(spanExporter)).build();
+
+    Tracer tracer = tracerProvider.get("test");
+    Span server =
+        tracer
+            .spanBuilder("GET")
+            .setSpanKind(SpanKind.SERVER)
+            .setAttribute(SemanticAttributes.HTTP_REQUEST_METHOD, "GET")
+            .setAttribute(SemanticAttributes.URL_PATH, "/users/1234")
+            .startSpan();
+    try (Scope ignored = server.makeCurrent()) {
+      Span internal = tracer.spanBuilder("internal").startSpan();
+      try (Scope ignored2 = internal.makeCurrent()) {
+        tracer
+            .spanBuilder("client")
+            .setSpanKind(SpanKind.CLIENT)
+            .setAttribute(SemanticAttributes.URL_FULL, "http://www.example.com/orders/1")
+            .setAttribute(SemanticAttributes.HTTP_RESPONSE_STATUS_CODE, 503L)
+            .startSpan()
+            .end();
+      }
+      internal.end();
+    }
+    server.setAttribute(SemanticAttributes.HTTP_RESPONSE_STATUS_CODE, 404L);
+    server.end();
+    tracerProvider.forceFlush();
+
+    Result result = new Result();
+    for (SpanData span : spanExporter.getFinishedSpanItems()) {
+      Map<String, Object> attributes = new TreeMap<>();
+      span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+      result.spans.put(span.getName(), attributes);
+    }
+    List<MetricData> metrics = new ArrayList<>(metricReader.collectAllMetrics());
+    metrics.sort(Comparator.comparing(MetricData::getName));
+    for (MetricData metric : metrics) {
+      List<String> points =
+          metric.getHistogramData().getPoints().stream()
+              .map(ApplicationSignalsSpanProcessorTest::describe)
+              .sorted()
+              .collect(Collectors.toList());
+      result.metrics.put(metric.getName(), points);
+    }
+    tracerProvider.shutdown();
+    meterProvider.shutdown();
+    return result;
+  }
+
+  // Latencies differ between runs, so only attributes and counts are compared
+  private static String describe(HistogramPointData point) {
+    Map<String, Object> attributes = new TreeMap<>();
+    point.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+    return attributes + " count=" + point.getCount();
+  }
+
+  private static final class Result {
+    private final Map<String, Map<String, Object>> spans = new TreeMap<>();
+    private final Map<String, List<String>> metrics = new TreeMap<>();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.amazonaws.arn.Arn;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class ArnParserTest {
+
+  private static final List<String> ARNS =
+      Arrays.asList(
+          "arn:aws:states:us-east-1:123456789012:stateMachine:test_state_machine",
+          "arn:aws:states:us-east-1:123456789012:stateMachine:test_state_machine:v1",
+          "arn:aws:states:us-east-1:007003123456789012:activity:testActivity",
+          "arn:aws:sns:us-west-2:012345678901:testTopic",
+          "arn:aws:sns:us-west-2:012345678901:testTopic.fifo",
+          "arn:aws:secretsmanager:us-east-1:123456789012:secret:secretName",
+          "arn:aws:secretsmanager:us-east-1:123456789012:secret:secretName-a1b2c3",
+          "arn:aws:s3:::bucket",
+          "arn:aws:s3:::bucket/key/with/slashes",
+          "arn:aws:iam::123456789012:role/path/to/role",
+          "arn:aws:lambda:us-east-1:123456789012:function:name:alias",
+          "arn:aws-cn:sns:cn-north-1:123456789012:topic",
+          "arn:aws:sns:us-west-2:012345678901:",
+          "arn:aws:sns:us-west-2:012345678901",
+          "arn:aws:sns:us-west-2",
+          "arn::sns:us-west-2:012345678901:topic",
+          "arn:aws::us-west-2:012345678901:topic",
+          "arn:aws:states:us-east-1:123456789012:stateMachine:",
+          "arn:aws:states:us-east-1:123456789012:stateMachine::v1",
+          "arn:aws:states:us-east-1:123456789012:stateMachine::name:v1",
+          "arn:aws:states:us-east-1:123456789012::name",
+          "arn:aws:states:us-east-1:123456789012:/name",
+          "arn:aws:states:us-east-1:123456789012:type/",
+          "arn:aws:states:us-east-1:123456789012:type/:v1",
+          "arn:aws:sns:us-west-2:012345678901:^|escaped^^",
+          "ARN:aws:sns:us-west-2:012345678901:topic",
+          "arn",
+          "arn:",
+          "");
+
+  @Test
+  public void testResourceParity() {
+    for (String arn : ARNS) {
+      assertThat(ArnParser.getResource(arn)).as(arn).isEqualTo(getResourceWithSdk(arn));
+    }
+  }
+
+  @Test
+  public void testResourceNameParity() {
+    for (String arn : ARNS) {
+      assertThat(ArnParser.getResourceName(arn)).as(arn).isEqualTo(getResourceNameWithSdk(arn));
+    }
+  }
+
+  @Test
+  public void testResourceNames() {
+    assertThat(
+            ArnParser.getResourceName(
+                "arn:aws:states:us-east-1:123456789012:stateMachine:test_state_machine"))
+        .isEqualTo("test_state_machine");
+    assertThat(ArnParser.getResource("arn:aws:sns:us-west-2:012345678901:testTopic"))
+        .isEqualTo("testTopic");
+    assertThat(ArnParser.getResource("arn:aws:iam::123456789012:role/path/to/role"))
+        .isEqualTo("role:path/to/role");
+    assertThat(ArnParser.getResourceName("arn:aws:sns:us-west-2:012345678901:testTopic")).isNull();
+    assertThat(ArnParser.getResource("not an arn")).isNull();
+  }
+
+  @Test
+  public void testRandomizedParity() {
+    Random random = new Random(0);
+    String alphabet = "ab:/-";
+    for (int i = 0; i < 50000; i++) {
+      StringBuilder sb = new StringBuilder(random.nextInt(4) > 0 ? "arn:" : "");
+      int length = random.nextInt(20);
+      for (int j = 0; j < length; j++) {
+        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      String arn = sb.toString();
+      assertThat(ArnParser.getResource(arn)).as(arn).isEqualTo(getResourceWithSdk(arn));
+      assertThat(ArnParser.getResourceName(arn)).as(arn).isEqualTo(getResourceNameWithSdk(arn));
+    }
+  }
+
+  // The derivation the parser replaces, with exceptions mapped to null
+  private static String getResourceWithSdk(String arn) {
+    try {
+      return Arn.fromString(arn).getResource().toString();
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static String getResourceNameWithSdk(String arn) {
+    try {
+      return Arn.fromString(arn).getResource().toString().split(":")[1];
+    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import software.amazon.opentelemetry.javaagent.providers.AsyncSpanProcessingQueue.OverflowPolicy;
+
+/** Unit tests for {@link AsyncSpanProcessingQueue}. */
+class AsyncSpanProcessingQueueTest {
+  private static final ReadableSpan SPAN = mock(ReadableSpan.class);
+
+  @Test
+  public void testFlushHandlesAllSubmittedSpans() throws InterruptedException {
+    AtomicInteger handled = new AtomicInteger();
+    AsyncSpanProcessingQueue queue =
+        AsyncSpanProcessingQueue.create(
+            span -> handled.incrementAndGet(), 2, 64, OverflowPolicy.INLINE);
+
+    List<Thread> producers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread producer =
+          new Thread(
+              () -> {
+                for (int j = 0; j < 10_000; j++) {
+                  queue.submit(SPAN);
+                }
+              });
+      producers.add(producer);
+      producer.start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+
+    assertThat(queue.flush(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(handled.get()).isEqualTo(40_000);
+    assertThat(queue.getDroppedSpanCount()).isZero();
+    assertThat(queue.shutdown(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+  }
+
+  @Test
+  public void testDropPolicyCountsDroppedSpans() {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger handled = new AtomicInteger();
+    AsyncSpanProcessingQueue queue =
+        AsyncSpanProcessingQueue.create(
+            blockingHandler(release, handled), 1, 4, OverflowPolicy.DROP);
+
+    for (int i = 0; i < 20; i++) {
+      queue.submit(SPAN);
+    }
+    // At most one span in the handler and four in the buffer
+    assertThat(queue.getDroppedSpanCount()).isGreaterThanOrEqualTo(15);
+
+    release.countDown();
+    assertThat(queue.shutdown(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(handled.get() + queue.getDroppedSpanCount()).isEqualTo(20);
+  }
+
+  @Test
+  public void testInlinePolicyHandlesOverflowOnCallingThread() {
+    CountDownLatch release = new CountDownLatch(1);
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    AtomicInteger handled = new AtomicInteger();
+    Consumer<ReadableSpan> blocking = blockingHandler(release, handled);
+    AsyncSpanProcessingQueue queue =
+        AsyncSpanProcessingQueue.create(
+            span -> {
+              threads.add(Thread.currentThread());
+              if (Thread.currentThread().isDaemon()) {
+                blocking.accept(span);
+              } else {
+                handled.incrementAndGet();
+              }
+            },
+            1,
+            4,
+            OverflowPolicy.INLINE);
+
+    for (int i = 0; i < 20; i++) {
+      queue.submit(SPAN);
+    }
+    assertThat(threads).contains(Thread.currentThread());
+
+    release.countDown();
+    assertThat(queue.shutdown(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(handled.get()).isEqualTo(20);
+    assertThat(queue.getDroppedSpanCount()).isZero();
+  }
+
+  @Test
+  public void testSpansAfterShutdownAreHandledInline() {
+    List<Thread> threads = new ArrayList<>();
+    AsyncSpanProcessingQueue queue =
+        AsyncSpanProcessingQueue.create(
+            span -> threads.add(Thread.currentThread()), 1, 4, OverflowPolicy.DROP);
+    assertThat(queue.shutdown(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+
+    queue.submit(SPAN);
+    assertThat(threads).containsExactly(Thread.currentThread());
+  }
+
+  @Test
+  public void testSpansSubmittedDuringShutdownAreHandled() throws InterruptedException {
+    for (int run = 0; run < 20; run++) {
+      AtomicInteger handled = new AtomicInteger();
+      AtomicInteger submitted = new AtomicInteger();
+      AsyncSpanProcessingQueue queue =
+          AsyncSpanProcessingQueue.create(
+              span -> handled.incrementAndGet(), 2, 64, OverflowPolicy.INLINE);
+      CountDownLatch started = new CountDownLatch(4);
+      List<Thread> producers = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        Thread producer =
+            new Thread(
+                () -> {
+                  started.countDown();
+                  for (int j = 0; j < 5_000; j++) {
+                    queue.submit(SPAN);
+                    submitted.incrementAndGet();
+                  }
+                });
+        producers.add(producer);
+        producer.start();
+      }
+      started.await();
+
+      assertThat(queue.shutdown(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+      for (Thread producer : producers) {
+        producer.join();
+      }
+      // Spans offered by producers that raced with shutdown are not left in a stopped buffer
+      assertThat(handled.get()).isEqualTo(submitted.get()).isEqualTo(20_000);
+    }
+  }
+
+  private static Consumer<ReadableSpan> blockingHandler(
+      CountDownLatch release, AtomicInteger handled) {
+    return span -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      handled.incrementAndGet();
+    };
+  }
+}
@@ -19,6 +19,12 @@ import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_OPERATION;
 import static io.opentelemetry.semconv.SemanticAttributes.MessagingOperationValues.PROCESS;
 import static io.opentelemetry.semconv.SemanticAttributes.RPC_SYSTEM;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
@@ -28,9 +34,9 @@ import io.opentelemetry.api.trace.TraceFlags;
 import io.opentelemetry.api.trace.TraceState;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
 import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
-import io.opentelemetry.sdk.trace.data.SpanData;
 import java.util.Arrays;
 import java.util.function.Function;
 import org.junit.jupiter.api.BeforeEach;
@@ -40,7 +46,7 @@ class AttributePropagatingSpanProcessorTest {
 
   private Tracer tracer;
 
-  Function<SpanData, String> spanNameExtractor = AwsSpanProcessingUtil::getIngressOperation;
+  Function<ReadableSpan, String> spanNameExtractor = AwsSpanProcessingUtil::getIngressOperation;
   AttributeKey<String> spanNameKey = AttributeKey.stringKey("spanName");
   AttributeKey<String> testKey1 = AttributeKey.stringKey("key1");
   AttributeKey<String> testKey2 = AttributeKey.stringKey("key2");
@@ -261,6 +267,35 @@ class AttributePropagatingSpanProcessorTest {
         .isEqualTo(SpanKind.CONSUMER.name());
   }
 
+  @Test
+  public void testOnStartDoesNotMaterializeSpanData() {
+    ReadWriteSpan parentSpan = mock(ReadWriteSpan.class);
+    when(parentSpan.getKind()).thenReturn(SpanKind.SERVER);
+    when(parentSpan.getName()).thenReturn("GET /parent");
+    when(parentSpan.getParentSpanContext()).thenReturn(SpanContext.getInvalid());
+    when(parentSpan.getAttribute(RPC_SYSTEM)).thenReturn("aws-api");
+    doCallRealMethod().when(parentSpan).storeInContext(any());
+
+    ReadWriteSpan childSpan = mock(ReadWriteSpan.class);
+    when(childSpan.getKind()).thenReturn(SpanKind.CLIENT);
+    when(childSpan.getParentSpanContext())
+        .thenReturn(
+            SpanContext.create(
+                "0af7651916cd43dd8448eb211c80319c",
+                "b7ad6b7169203331",
+                TraceFlags.getSampled(),
+                TraceState.getDefault()));
+
+    AttributePropagatingSpanProcessor.create(
+            spanNameExtractor, spanNameKey, Arrays.asList(testKey1, testKey2))
+        .onStart(Context.root().with(parentSpan), childSpan);
+
+    verify(parentSpan, never()).toSpanData();
+    verify(childSpan, never()).toSpanData();
+    verify(childSpan).setAttribute(AwsAttributeKeys.AWS_SDK_DESCENDANT, "true");
+    verify(childSpan).setAttribute(spanNameKey, "GET /parent");
+  }
+
   private Span createNestedSpan(Span parentSpan, int depth) {
     if (depth == 0) {
       return parentSpan;
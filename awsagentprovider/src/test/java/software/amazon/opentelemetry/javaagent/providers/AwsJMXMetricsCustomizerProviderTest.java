@@ -0,0 +1,104 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
+import io.opentelemetry.sdk.autoconfigure.spi.ConfigProperties;
+import io.opentelemetry.sdk.autoconfigure.spi.internal.DefaultConfigProperties;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AwsJMXMetricsCustomizerProviderTest {
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  @AfterEach
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void testSharesReaderOfRuntimeMetricsWithDeltaTemporality() {
+    // The reader of the Application Signals runtime metrics, see
+    // AwsApplicationSignalsCustomizerProvider
+    RoutingMetricReader runtimeReader =
+        RoutingMetricReader.create(Duration.ofMinutes(1), scheduler);
+    MetricExporter runtimeExporter =
+        OtlpHttpMetricExporter.builder()
+            .setEndpoint("http://localhost:4316/v1/metrics")
+            .setDefaultAggregationSelector(
+                type ->
+                    type == InstrumentType.HISTOGRAM
+                        ? Aggregation.base2ExponentialBucketHistogram()
+                        : Aggregation.defaultAggregation())
+            .setAggregationTemporalitySelector(CloudWatchTemporalitySelector.alwaysDelta())
+            .build();
+    assertThat(
+            runtimeReader.tryAddRoute(
+                runtimeExporter,
+                Collections.singleton("io.opentelemetry.jmx"),
+                Duration.ofMinutes(1).toNanos()))
+        .isTrue();
+    List<RoutingMetricReader> sharedReaders = new ArrayList<>();
+    sharedReaders.add(runtimeReader);
+
+    AwsJMXMetricsCustomizerProvider.registerMetricReader(
+        SdkMeterProvider.builder(), sharedConfig(), sharedReaders);
+
+    assertThat(sharedReaders).containsExactly(runtimeReader);
+    assertThat(runtimeReader.toString()).contains("http://localhost:4314/v1/metrics");
+    for (InstrumentType type : InstrumentType.values()) {
+      assertThat(runtimeReader.getAggregationTemporality(type))
+          .isEqualTo(runtimeExporter.getAggregationTemporality(type));
+    }
+  }
+
+  @Test
+  public void testExportsCumulativeWithoutSharedReader() {
+    List<RoutingMetricReader> sharedReaders = new ArrayList<>();
+
+    AwsJMXMetricsCustomizerProvider.registerMetricReader(
+        SdkMeterProvider.builder(), sharedConfig(), sharedReaders);
+
+    assertThat(sharedReaders).hasSize(1);
+    for (InstrumentType type : InstrumentType.values()) {
+      assertThat(sharedReaders.get(0).getAggregationTemporality(type))
+          .isEqualTo(AggregationTemporality.CUMULATIVE);
+    }
+  }
+
+  private static ConfigProperties sharedConfig() {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("otel.aws.jmx.exporter.metrics.endpoint", "http://localhost:4314/v1/metrics");
+    properties.put("otel.exporter.otlp.protocol", "http/protobuf");
+    properties.put("otel.aws.metric.reader.shared.enabled", "true");
+    return DefaultConfigProperties.createFromMap(properties);
+  }
+}
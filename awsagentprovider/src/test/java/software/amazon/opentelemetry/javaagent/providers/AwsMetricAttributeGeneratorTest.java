@@ -19,6 +19,8 @@ import static io.opentelemetry.semconv.ResourceAttributes.SERVICE_NAME;
 import static io.opentelemetry.semconv.SemanticAttributes.*;
 import static io.opentelemetry.semconv.SemanticAttributes.MessagingOperationValues.PROCESS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_AGENT_ID;
@@ -58,8 +60,10 @@ import io.opentelemetry.sdk.trace.data.ExceptionEventData;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -82,6 +86,8 @@ class AwsMetricAttributeGeneratorTest {
   private static final String LOCAL_ROOT = "LOCAL_ROOT";
 
   private Attributes attributesMock;
+  // Backs attributesMock.forEach, which the generator uses to snapshot span attributes
+  private Map<AttributeKey<?>, Object> mockedAttributes;
   private SpanData spanDataMock;
   private InstrumentationScopeInfo instrumentationScopeInfoMock;
   private Resource resource;
@@ -116,6 +122,15 @@ class AwsMetricAttributeGeneratorTest {
   @BeforeEach
   public void setUpMocks() {
     attributesMock = mock(Attributes.class);
+    mockedAttributes = new LinkedHashMap<>();
+    doAnswer(
+            invocation -> {
+              BiConsumer<AttributeKey<?>, Object> consumer = invocation.getArgument(0);
+              mockedAttributes.forEach(consumer);
+              return null;
+            })
+        .when(attributesMock)
+        .forEach(any());
     instrumentationScopeInfoMock = mock(InstrumentationScopeInfo.class);
     when(instrumentationScopeInfoMock.getName()).thenReturn("Scope name");
     spanDataMock = mock(SpanData.class);
@@ -211,7 +226,7 @@ class AwsMetricAttributeGeneratorTest {
     when(spanDataMock.getKind()).thenReturn(SpanKind.SERVER);
     Map<String, Attributes> actualAttributesMap =
         GENERATOR.generateMetricAttributeMapFromSpan(spanDataMock, resource);
-    assertThat(actualAttributesMap).isEqualTo(expectedAttributesMap);
+    assertThat(asMaps(actualAttributesMap)).isEqualTo(asMaps(expectedAttributesMap));
   }
 
   @Test
@@ -231,7 +246,7 @@ class AwsMetricAttributeGeneratorTest {
     when(spanDataMock.getKind()).thenReturn(SpanKind.INTERNAL);
     Map<String, Attributes> actualAttributesMap =
         GENERATOR.generateMetricAttributeMapFromSpan(spanDataMock, resource);
-    assertThat(actualAttributesMap).isEqualTo(expectedAttributesMap);
+    assertThat(asMaps(actualAttributesMap)).isEqualTo(asMaps(expectedAttributesMap));
   }
 
   @Test
@@ -262,7 +277,7 @@ class AwsMetricAttributeGeneratorTest {
     when(spanDataMock.getKind()).thenReturn(SpanKind.CLIENT);
     Map<String, Attributes> actualAttributesMap =
         GENERATOR.generateMetricAttributeMapFromSpan(spanDataMock, resource);
-    assertThat(actualAttributesMap).isEqualTo(expectedAttributesMap);
+    assertThat(asMaps(actualAttributesMap)).isEqualTo(asMaps(expectedAttributesMap));
   }
 
   @Test
@@ -294,7 +309,7 @@ class AwsMetricAttributeGeneratorTest {
     when(spanDataMock.getKind()).thenReturn(SpanKind.CONSUMER);
     Map<String, Attributes> actualAttributesMap =
         GENERATOR.generateMetricAttributeMapFromSpan(spanDataMock, resource);
-    assertThat(actualAttributesMap).isEqualTo(expectedAttributesMap);
+    assertThat(asMaps(actualAttributesMap)).isEqualTo(asMaps(expectedAttributesMap));
   }
 
   @Test
@@ -326,7 +341,7 @@ class AwsMetricAttributeGeneratorTest {
     when(spanDataMock.getKind()).thenReturn(SpanKind.PRODUCER);
     Map<String, Attributes> actualAttributesMap =
         GENERATOR.generateMetricAttributeMapFromSpan(spanDataMock, resource);
-    assertThat(actualAttributesMap).isEqualTo(expectedAttributesMap);
+    assertThat(asMaps(actualAttributesMap)).isEqualTo(asMaps(expectedAttributesMap));
   }
 
   @Test
@@ -357,6 +372,61 @@ class AwsMetricAttributeGeneratorTest {
     validateAttributesProducedForNonLocalRootSpanOfKind(expectedAttributes, SpanKind.SERVER);
   }
 
+  @Test
+  public void testMetricAttributesAreCachedAcrossSpans() {
+    AwsMetricAttributeGenerator generator = new AwsMetricAttributeGenerator(1);
+    updateResourceWithServiceName();
+    when(spanDataMock.getKind()).thenReturn(SpanKind.SERVER);
+    when(spanDataMock.getName()).thenReturn(SPAN_NAME_VALUE);
+
+    Attributes first =
+        generator.generateMetricAttributeMapFromSpan(spanDataMock, resource).get(SERVICE_METRIC);
+    Attributes second =
+        generator.generateMetricAttributeMapFromSpan(spanDataMock, resource).get(SERVICE_METRIC);
+    assertThat(second).isSameAs(first);
+
+    when(spanDataMock.getName()).thenReturn("Other span name");
+    Attributes third =
+        generator.generateMetricAttributeMapFromSpan(spanDataMock, resource).get(SERVICE_METRIC);
+    assertThat(third).isNotEqualTo(first);
+    assertThat(third.get(AWS_LOCAL_OPERATION)).isEqualTo("Other span name");
+
+    MemoizingCache<?, ?> cache = generator.getMetricAttributesCache();
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(2);
+    assertThat(cache.evictionCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRemoteOperationWithPathTemplates() {
+    AwsMetricAttributeGenerator generator =
+        new AwsMetricAttributeGenerator(1, PathTemplateLearner.create(4));
+    when(spanDataMock.getKind()).thenReturn(SpanKind.CLIENT);
+
+    Attributes actualAttributes = null;
+    for (int i = 0; i < 50; i++) {
+      mockAttribute(HTTP_URL, "http://www.example.com/users/" + (1000 + i) + "/orders?page=1");
+      actualAttributes =
+          generator
+              .generateMetricAttributeMapFromSpan(spanDataMock, resource)
+              .get(DEPENDENCY_METRIC);
+    }
+    assertThat(actualAttributes.get(AWS_REMOTE_SERVICE)).isEqualTo("www.example.com");
+    assertThat(actualAttributes.get(AWS_REMOTE_OPERATION)).isEqualTo("/users/{param}/orders");
+
+    mockAttribute(HTTP_URL, "http://www.example.com/health");
+    actualAttributes =
+        generator.generateMetricAttributeMapFromSpan(spanDataMock, resource).get(DEPENDENCY_METRIC);
+    assertThat(actualAttributes.get(AWS_REMOTE_OPERATION)).isEqualTo("/health");
+
+    mockAttribute(HTTP_URL, "http://www.example.com");
+    actualAttributes =
+        generator.generateMetricAttributeMapFromSpan(spanDataMock, resource).get(DEPENDENCY_METRIC);
+    assertThat(actualAttributes.get(AWS_REMOTE_OPERATION)).isEqualTo("/");
+    mockAttribute(HTTP_URL, null);
+  }
+
   @Test
   public void testServerSpanWithNullSpanName() {
     updateResourceWithServiceName();
@@ -1070,6 +1140,20 @@ class AwsMetricAttributeGeneratorTest {
 
   private <T> void mockAttribute(AttributeKey<T> key, T value) {
     when(attributesMock.get(key)).thenReturn(value);
+    if (value == null) {
+      mockedAttributes.remove(key);
+    } else {
+      mockedAttributes.put(key, value);
+    }
+  }
+
+  // The generated attributes are only equal to attributes of their own class, so their contents are
+  // compared
+  private static Map<String, Map<AttributeKey<?>, Object>> asMaps(
+      Map<String, Attributes> attributesMap) {
+    Map<String, Map<AttributeKey<?>, Object>> maps = new HashMap<>();
+    attributesMap.forEach((metric, attributes) -> maps.put(metric, attributes.asMap()));
+    return maps;
   }
 
   private void validateAttributesProducedForNonLocalRootSpanOfKind(
@@ -1084,10 +1168,10 @@ class AwsMetricAttributeGeneratorTest {
           || SpanKind.CLIENT.equals(kind)
           || SpanKind.CONSUMER.equals(kind)) {
         assertThat(serviceAttributes).isNull();
-        assertThat(dependencyAttributes).isEqualTo(expectedAttributes);
+        assertThat(dependencyAttributes.asMap()).isEqualTo(expectedAttributes.asMap());
         assertThat(dependencyAttributes.size()).isEqualTo(expectedAttributes.size());
       } else {
-        assertThat(serviceAttributes).isEqualTo(expectedAttributes);
+        assertThat(serviceAttributes.asMap()).isEqualTo(expectedAttributes.asMap());
         assertThat(serviceAttributes.size()).isEqualTo(expectedAttributes.size());
         assertThat(dependencyAttributes).isNull();
       }
@@ -1310,9 +1394,8 @@ class AwsMetricAttributeGeneratorTest {
 
   @Test
   public void testNoMetricWhenConsumerProcessWithConsumerParent() {
-    when(attributesMock.get(AwsAttributeKeys.AWS_CONSUMER_PARENT_SPAN_KIND))
-        .thenReturn(SpanKind.CONSUMER.name());
-    when(attributesMock.get(MESSAGING_OPERATION)).thenReturn(PROCESS);
+    mockAttribute(AwsAttributeKeys.AWS_CONSUMER_PARENT_SPAN_KIND, SpanKind.CONSUMER.name());
+    mockAttribute(MESSAGING_OPERATION, PROCESS);
     when(spanDataMock.getKind()).thenReturn(SpanKind.CONSUMER);
 
     Map<String, Attributes> attributeMap =
@@ -1327,9 +1410,8 @@ class AwsMetricAttributeGeneratorTest {
 
   @Test
   public void testBothMetricsWhenLocalRootConsumerProcess() {
-    when(attributesMock.get(AwsAttributeKeys.AWS_CONSUMER_PARENT_SPAN_KIND))
-        .thenReturn(SpanKind.CONSUMER.name());
-    when(attributesMock.get(MESSAGING_OPERATION)).thenReturn(PROCESS);
+    mockAttribute(AwsAttributeKeys.AWS_CONSUMER_PARENT_SPAN_KIND, SpanKind.CONSUMER.name());
+    mockAttribute(MESSAGING_OPERATION, PROCESS);
     when(spanDataMock.getKind()).thenReturn(SpanKind.CONSUMER);
     when(parentSpanContextMock.isValid()).thenReturn(false);
 
@@ -32,6 +32,8 @@ import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
 import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.data.EventData;
@@ -444,6 +446,43 @@ class AwsMetricAttributesSpanExporterTest {
     metricAttributes.forEach((k, v) -> assertThat(exportedAttributes.get(k)).isEqualTo(v));
   }
 
+  @Test
+  public void testExportReusesHandedOffAttributes() {
+    MetricAttributesHandoff handoff = MetricAttributesHandoff.create();
+    AwsMetricAttributesSpanExporter exporter =
+        AwsMetricAttributesSpanExporter.create(delegateMock, generatorMock, testResource, handoff);
+    Attributes spanAttributes = buildSpanAttributes(CONTAINS_ATTRIBUTES);
+    SpanData spanDataMock = buildSpanDataMock(spanAttributes);
+    SpanContext spanContext =
+        SpanContext.create(
+            "0af7651916cd43dd8448eb211c80319c",
+            "b7ad6b7169203331",
+            TraceFlags.getSampled(),
+            TraceState.getDefault());
+    when(spanDataMock.getSpanContext()).thenReturn(spanContext);
+    Attributes metricAttributes = buildMetricAttributes(CONTAINS_ATTRIBUTES);
+    handoff.offer(spanContext, Collections.singletonMap(SERVICE_METRIC, metricAttributes));
+
+    exporter.export(Collections.singletonList(spanDataMock));
+    verifyNoInteractions(generatorMock);
+    verify(delegateMock, times(1)).export(delegateExportCaptor.capture());
+    List<SpanData> exportedSpans = (List<SpanData>) delegateExportCaptor.getValue();
+    assertThat(exportedSpans.size()).isEqualTo(1);
+
+    Attributes exportedAttributes = exportedSpans.get(0).getAttributes();
+    assertThat(exportedAttributes.size()).isEqualTo(2);
+    spanAttributes.forEach((k, v) -> assertThat(exportedAttributes.get(k)).isEqualTo(v));
+    metricAttributes.forEach((k, v) -> assertThat(exportedAttributes.get(k)).isEqualTo(v));
+    assertThat(handoff.size()).isEqualTo(0);
+
+    // A second export of the same span finds nothing handed off, and generates attributes again
+    configureMocksForExport(spanDataMock, metricAttributes);
+    exporter.export(Collections.singletonList(spanDataMock));
+    verify(generatorMock, times(1)).generateMetricAttributeMapFromSpan(spanDataMock, testResource);
+    assertThat(handoff.hitCount()).isEqualTo(1);
+    assertThat(handoff.missCount()).isEqualTo(1);
+  }
+
   private static Attributes buildSpanAttributes(boolean containsAttribute) {
     if (containsAttribute) {
       return Attributes.of(AttributeKey.stringKey("original key"), "original value");
@@ -0,0 +1,175 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.autoconfigure.spi.internal.DefaultConfigProperties;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableLongPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableSumData;
+import io.opentelemetry.sdk.resources.Resource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link AwsOtlpHttpMetricExporter}, against a local stand-in collector. */
+class AwsOtlpHttpMetricExporterTest {
+  private HttpServer server;
+  private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+  private final List<String> contentTypes = new CopyOnWriteArrayList<>();
+  private final List<String> apiKeys = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/v1/metrics",
+        exchange -> {
+          ByteArrayOutputStream body = new ByteArrayOutputStream();
+          try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+              body.write(buffer, 0, read);
+            }
+          }
+          bodies.add(body.toByteArray());
+          contentTypes.add(exchange.getRequestHeaders().getFirst("Content-Type"));
+          apiKeys.add(String.valueOf(exchange.getRequestHeaders().getFirst("api-key")));
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    server.start();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testExportsProtobufRequest() throws IOException {
+    // A single metric, as the marshalers of the two memory modes may order metrics differently
+    Collection<MetricData> metrics = Collections.singletonList(longSum("requests", 3));
+    for (MemoryMode memoryMode : MemoryMode.values()) {
+      AwsOtlpHttpMetricExporter exporter = exporter(memoryMode);
+      assertThat(exporter.getMemoryMode()).isEqualTo(memoryMode);
+      assertThat(exporter.export(metrics).join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+      exporter.shutdown();
+    }
+
+    byte[] expected = exporter(MemoryMode.IMMUTABLE_DATA).serialize(metrics);
+    assertThat(expected).isNotEmpty();
+    assertThat(bodies).hasSize(2);
+    assertThat(bodies.get(0)).isEqualTo(expected);
+    assertThat(bodies.get(1)).isEqualTo(expected);
+    assertThat(contentTypes).containsOnly("application/x-protobuf");
+  }
+
+  @Test
+  public void testReusesMarshaler() throws IOException {
+    AwsOtlpHttpMetricExporter exporter = exporter(MemoryMode.REUSABLE_DATA);
+    byte[] first = exporter.serialize(Collections.singletonList(longSum("requests", 3)));
+    byte[] second = exporter.serialize(Collections.singletonList(longSum("errors", 5)));
+
+    byte[] expected =
+        exporter(MemoryMode.IMMUTABLE_DATA)
+            .serialize(Collections.singletonList(longSum("errors", 5)));
+    assertThat(second).isEqualTo(expected).isNotEqualTo(first);
+  }
+
+  @Test
+  public void testRejectsExportsAfterShutdown() {
+    AwsOtlpHttpMetricExporter exporter = exporter(MemoryMode.IMMUTABLE_DATA);
+    assertThat(exporter.shutdown().join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(exporter.export(Collections.singletonList(longSum("requests", 1))).isSuccess())
+        .isFalse();
+    assertThat(bodies).isEmpty();
+  }
+
+  @Test
+  public void testConfiguresFromPropertiesExceptEndpoint() {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("otel.exporter.otlp.protocol", "http/protobuf");
+    properties.put("otel.exporter.otlp.metrics.endpoint", "http://127.0.0.1:1/v1/metrics");
+    properties.put("otel.exporter.otlp.metrics.headers", "api-key=secret");
+    AwsOtlpHttpMetricExporter exporter =
+        AwsOtlpHttpMetricExporter.builder()
+            .configure(DefaultConfigProperties.createFromMap(properties))
+            .setEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/metrics")
+            .build();
+
+    assertThat(
+            exporter
+                .export(Collections.singletonList(longSum("requests", 1)))
+                .join(10, TimeUnit.SECONDS)
+                .isSuccess())
+        .isTrue();
+    assertThat(apiKeys).containsExactly("secret");
+  }
+
+  @Test
+  public void testRejectsInvalidEndpoint() {
+    assertThatThrownBy(() -> AwsOtlpHttpMetricExporter.builder().setEndpoint("localhost:4316"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(
+            () -> AwsOtlpHttpMetricExporter.builder().setEndpoint("ftp://localhost:4316/v1"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private AwsOtlpHttpMetricExporter exporter(MemoryMode memoryMode) {
+    return AwsOtlpHttpMetricExporter.builder()
+        .setEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/metrics")
+        .setMemoryMode(memoryMode)
+        .build();
+  }
+
+  private static MetricData longSum(String name, long value) {
+    return ImmutableMetricData.createLongSum(
+        Resource.empty(),
+        InstrumentationScopeInfo.create("test"),
+        name,
+        "",
+        "1",
+        ImmutableSumData.create(
+            true,
+            AggregationTemporality.DELTA,
+            Collections.singletonList(
+                ImmutableLongPointData.create(
+                    0, 1, Attributes.of(AttributeKey.stringKey("key"), "v"), value))));
+  }
+}
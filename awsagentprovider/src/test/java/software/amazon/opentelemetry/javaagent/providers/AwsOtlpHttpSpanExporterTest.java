@@ -0,0 +1,145 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.sdk.autoconfigure.spi.internal.DefaultConfigProperties;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.testing.trace.TestSpanData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link AwsOtlpHttpSpanExporter}, against a local stand-in collector. */
+class AwsOtlpHttpSpanExporterTest {
+  private HttpServer server;
+  private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+  private final List<String> apiKeys = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/v1/traces",
+        exchange -> {
+          ByteArrayOutputStream body = new ByteArrayOutputStream();
+          try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+              body.write(buffer, 0, read);
+            }
+          }
+          bodies.add(body.toByteArray());
+          apiKeys.add(String.valueOf(exchange.getRequestHeaders().getFirst("api-key")));
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    server.start();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testExportsProtobufRequest() throws IOException {
+    Collection<SpanData> spans = Collections.singletonList(span("GET /orders"));
+    for (MemoryMode memoryMode : MemoryMode.values()) {
+      AwsOtlpHttpSpanExporter exporter =
+          AwsOtlpHttpSpanExporter.builder()
+              .setEndpoint(endpoint())
+              .setMemoryMode(memoryMode)
+              .build();
+      assertThat(exporter.export(spans).join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+      exporter.shutdown();
+    }
+
+    byte[] expected =
+        AwsOtlpHttpSpanExporter.builder()
+            .setMemoryMode(MemoryMode.IMMUTABLE_DATA)
+            .build()
+            .serialize(spans);
+    assertThat(expected).isNotEmpty();
+    assertThat(bodies).hasSize(2);
+    assertThat(bodies.get(0)).isEqualTo(expected);
+    assertThat(bodies.get(1)).isEqualTo(expected);
+  }
+
+  @Test
+  public void testConfiguresFromProperties() {
+    Map<String, String> properties = new HashMap<>();
+    properties.put("otel.exporter.otlp.protocol", "http/protobuf");
+    properties.put("otel.exporter.otlp.traces.endpoint", endpoint());
+    properties.put("otel.exporter.otlp.headers", "api-key=secret");
+    properties.put("otel.java.exporter.memory_mode", "immutable_data");
+    AwsOtlpHttpSpanExporter exporter =
+        AwsOtlpHttpSpanExporter.builder()
+            .configure(DefaultConfigProperties.createFromMap(properties))
+            .build();
+
+    assertThat(exporter.getMemoryMode()).isEqualTo(MemoryMode.IMMUTABLE_DATA);
+    assertThat(
+            exporter
+                .export(Collections.singletonList(span("GET /orders")))
+                .join(10, TimeUnit.SECONDS)
+                .isSuccess())
+        .isTrue();
+    assertThat(apiKeys).containsExactly("secret");
+  }
+
+  private String endpoint() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/traces";
+  }
+
+  private static SpanData span(String name) {
+    return TestSpanData.builder()
+        .setName(name)
+        .setKind(SpanKind.SERVER)
+        .setSpanContext(
+            SpanContext.create(
+                "0af7651916cd43dd8448eb211c80319c",
+                "b7ad6b7169203331",
+                TraceFlags.getSampled(),
+                TraceState.getDefault()))
+        .setStartEpochNanos(1)
+        .setEndEpochNanos(2)
+        .setStatus(StatusData.unset())
+        .setHasEnded(true)
+        .build();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class AwsSdkStatusCodesTest {
+
+  public static class V1ServiceException extends RuntimeException {
+    public int getStatusCode() {
+      return 400;
+    }
+  }
+
+  public static class V2ServiceException extends RuntimeException {
+    public int statusCode() {
+      return 503;
+    }
+  }
+
+  public static class ThrottlingException extends V2ServiceException {}
+
+  public static class ThrowingStatusCodeException extends RuntimeException {
+    public int getStatusCode() {
+      throw new IllegalStateException();
+    }
+
+    public int statusCode() {
+      return 500;
+    }
+  }
+
+  public static class LongStatusCodeException extends RuntimeException {
+    public long getStatusCode() {
+      return 500L;
+    }
+  }
+
+  public static class StaticStatusCodeException extends RuntimeException {
+    public static Integer statusCode() {
+      return 429;
+    }
+  }
+
+  @Test
+  public void testStatusCodes() {
+    assertThat(AwsSdkStatusCodes.getStatusCode(new V1ServiceException())).isEqualTo(400L);
+    assertThat(AwsSdkStatusCodes.getStatusCode(new V2ServiceException())).isEqualTo(503L);
+    assertThat(AwsSdkStatusCodes.getStatusCode(new ThrottlingException())).isEqualTo(503L);
+    assertThat(AwsSdkStatusCodes.getStatusCode(new StaticStatusCodeException())).isEqualTo(429L);
+  }
+
+  @Test
+  public void testFallsBackLikeReflectiveInvocation() {
+    assertThat(AwsSdkStatusCodes.getStatusCode(new ThrowingStatusCodeException())).isEqualTo(500L);
+    assertThat(AwsSdkStatusCodes.getStatusCode(new LongStatusCodeException())).isNull();
+  }
+
+  @Test
+  public void testNoStatusCode() {
+    // Repeated to exercise the cached absence of accessors
+    for (int i = 0; i < 3; i++) {
+      assertThat(AwsSdkStatusCodes.getStatusCode(new IllegalStateException())).isNull();
+      assertThat(AwsSdkStatusCodes.getStatusCode(new Error())).isNull();
+    }
+  }
+}
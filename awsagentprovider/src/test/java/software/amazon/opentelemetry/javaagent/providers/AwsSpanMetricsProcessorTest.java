@@ -34,6 +34,8 @@ import io.opentelemetry.api.metrics.DoubleHistogram;
 import io.opentelemetry.api.metrics.LongHistogram;
 import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
@@ -95,9 +97,12 @@ class AwsSpanMetricsProcessorTest {
             errorHistogramMock,
             faultHistogramMock,
             latencyHistogramMock,
+            null,
             generatorMock,
             testResource,
-            this::forceFlushAction);
+            this::forceFlushAction,
+            null,
+            null);
   }
 
   @Test
@@ -153,6 +158,97 @@ class AwsSpanMetricsProcessorTest {
     verifyNoInteractions(latencyHistogramMock);
   }
 
+  @Test
+  public void testOnEndMetricsGenerationWithAggregator() {
+    RedMetricsAggregator aggregatorMock = mock(RedMetricsAggregator.class);
+    AwsSpanMetricsProcessor processor =
+        AwsSpanMetricsProcessor.create(
+            errorHistogramMock,
+            faultHistogramMock,
+            latencyHistogramMock,
+            aggregatorMock,
+            generatorMock,
+            testResource,
+            this::forceFlushAction,
+            null,
+            null);
+    Attributes spanAttributes = Attributes.of(HTTP_RESPONSE_STATUS_CODE, 500L);
+    ReadableSpan readableSpanMock =
+        buildReadableSpanMock(spanAttributes, SpanKind.PRODUCER, null, StatusData.unset());
+    Map<String, Attributes> metricAttributesMap =
+        buildMetricAttributes(CONTAINS_ATTRIBUTES, readableSpanMock.toSpanData());
+    configureMocksForOnEnd(readableSpanMock, metricAttributesMap);
+
+    processor.onEnd(readableSpanMock);
+    verify(aggregatorMock)
+        .record(
+            eq(metricAttributesMap.get(DEPENDENCY_METRIC)),
+            eq(RedMetricsAggregator.Outcome.FAULT),
+            eq(TEST_LATENCY_MILLIS));
+    verifyNoInteractions(errorHistogramMock);
+    verifyNoInteractions(faultHistogramMock);
+    verifyNoInteractions(latencyHistogramMock);
+  }
+
+  @Test
+  public void testOnEndMetricsGenerationAsync() {
+    AwsSpanMetricsProcessor processor =
+        AwsSpanMetricsProcessor.create(
+            errorHistogramMock,
+            faultHistogramMock,
+            latencyHistogramMock,
+            null,
+            generatorMock,
+            testResource,
+            this::forceFlushAction,
+            handler ->
+                AsyncSpanProcessingQueue.create(
+                    handler, 1, 16, AsyncSpanProcessingQueue.OverflowPolicy.INLINE),
+            null);
+    Attributes spanAttributes = buildSpanAttributes(CONTAINS_ATTRIBUTES);
+    ReadableSpan readableSpanMock = buildReadableSpanMock(spanAttributes);
+    Map<String, Attributes> metricAttributesMap =
+        buildMetricAttributes(CONTAINS_ATTRIBUTES, readableSpanMock.toSpanData());
+    configureMocksForOnEnd(readableSpanMock, metricAttributesMap);
+
+    processor.onEnd(readableSpanMock);
+    assertThat(processor.forceFlush()).isEqualTo(CompletableResultCode.ofSuccess());
+    verifyHistogramRecords(metricAttributesMap, 1, 0);
+    assertThat(processor.shutdown()).isEqualTo(CompletableResultCode.ofSuccess());
+  }
+
+  @Test
+  public void testOnEndOffersAttributesToHandoff() {
+    MetricAttributesHandoff handoff = MetricAttributesHandoff.create();
+    AwsSpanMetricsProcessor processor =
+        AwsSpanMetricsProcessor.create(
+            errorHistogramMock,
+            faultHistogramMock,
+            latencyHistogramMock,
+            null,
+            generatorMock,
+            testResource,
+            this::forceFlushAction,
+            null,
+            handoff);
+    Attributes spanAttributes = buildSpanAttributes(CONTAINS_ATTRIBUTES);
+    ReadableSpan readableSpanMock = buildReadableSpanMock(spanAttributes);
+    SpanContext spanContext =
+        SpanContext.create(
+            "0af7651916cd43dd8448eb211c80319c",
+            "b7ad6b7169203331",
+            TraceFlags.getSampled(),
+            TraceState.getDefault());
+    when(readableSpanMock.toSpanData().getSpanContext()).thenReturn(spanContext);
+    Map<String, Attributes> metricAttributesMap =
+        buildMetricAttributes(CONTAINS_ATTRIBUTES, readableSpanMock.toSpanData());
+    configureMocksForOnEnd(readableSpanMock, metricAttributesMap);
+
+    processor.onEnd(readableSpanMock);
+    verifyHistogramRecords(metricAttributesMap, 1, 0);
+    assertThat(handoff.take(spanContext)).isSameAs(metricAttributesMap);
+  }
+
   @Test
   public void testsOnEndMetricsGenerationLocalRootServerSpan() {
     Attributes spanAttributes = buildSpanAttributes(CONTAINS_NO_ATTRIBUTES);
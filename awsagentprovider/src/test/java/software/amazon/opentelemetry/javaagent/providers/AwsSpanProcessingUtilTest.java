@@ -29,6 +29,7 @@ import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.SpanContext;
 import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
@@ -284,6 +285,34 @@ public class AwsSpanProcessingUtilTest {
         .isTrue();
   }
 
+  @Test
+  public void testGetIngressOperationFromReadableSpan() {
+    ReadableSpan readableSpanMock = mock(ReadableSpan.class);
+    when(readableSpanMock.getName()).thenReturn("GET");
+    when(readableSpanMock.getKind()).thenReturn(SpanKind.SERVER);
+    when(readableSpanMock.getAttribute(HTTP_REQUEST_METHOD)).thenReturn("GET");
+    when(readableSpanMock.getAttribute(URL_PATH)).thenReturn("/users/1234");
+    assertThat(AwsSpanProcessingUtil.getIngressOperation(readableSpanMock)).isEqualTo("GET /users");
+
+    when(readableSpanMock.getKind()).thenReturn(SpanKind.CONSUMER);
+    assertThat(AwsSpanProcessingUtil.getIngressOperation(readableSpanMock))
+        .isEqualTo(INTERNAL_OPERATION);
+  }
+
+  @Test
+  public void testIsLocalRootFromReadableSpan() {
+    ReadableSpan readableSpanMock = mock(ReadableSpan.class);
+    assertThat(AwsSpanProcessingUtil.isLocalRoot(readableSpanMock)).isTrue();
+
+    SpanContext parentSpanContext = mock(SpanContext.class);
+    when(readableSpanMock.getParentSpanContext()).thenReturn(parentSpanContext);
+    when(parentSpanContext.isValid()).thenReturn(true);
+    assertThat(AwsSpanProcessingUtil.isLocalRoot(readableSpanMock)).isFalse();
+
+    when(parentSpanContext.isRemote()).thenReturn(true);
+    assertThat(AwsSpanProcessingUtil.isLocalRoot(readableSpanMock)).isTrue();
+  }
+
   @Test
   public void testIsLocalRoot() {
     // Parent Context is empty
@@ -0,0 +1,193 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_RESOURCE_IDENTIFIER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_RESOURCE_TYPE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.CardinalityLimitingMetricAttributeGenerator.OTHER_LOCAL_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.CardinalityLimitingMetricAttributeGenerator.OTHER_REMOTE_RESOURCE;
+import static software.amazon.opentelemetry.javaagent.providers.CardinalityLimitingMetricAttributeGenerator.OTHER_REMOTE_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.CardinalityLimitingMetricAttributeGenerator.OVERFLOW_DIMENSION;
+import static software.amazon.opentelemetry.javaagent.providers.CardinalityLimitingMetricAttributeGenerator.OVERFLOW_METRIC;
+import static software.amazon.opentelemetry.javaagent.providers.MetricAttributeGenerator.DEPENDENCY_METRIC;
+import static software.amazon.opentelemetry.javaagent.providers.MetricAttributeGenerator.SERVICE_METRIC;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link CardinalityLimitingMetricAttributeGenerator}. */
+class CardinalityLimitingMetricAttributeGeneratorTest {
+  private static final SpanData SPAN = mock(SpanData.class);
+  private static final Resource RESOURCE = Resource.empty();
+
+  private Map<String, Attributes> generated;
+  private CardinalityLimitingMetricAttributeGenerator generator;
+
+  @BeforeEach
+  public void setUp() {
+    generated = new HashMap<>();
+    generator =
+        CardinalityLimitingMetricAttributeGenerator.create((span, resource) -> generated, 2, 2);
+  }
+
+  @Test
+  public void testLocalOperationsBeyondLimitAreFolded() {
+    assertThat(service("GET /a").get(AWS_LOCAL_OPERATION)).isEqualTo("GET /a");
+    assertThat(service("GET /b").get(AWS_LOCAL_OPERATION)).isEqualTo("GET /b");
+    assertThat(service("GET /c").get(AWS_LOCAL_OPERATION)).isEqualTo(OTHER_LOCAL_OPERATION);
+    assertThat(service("GET /d").get(AWS_LOCAL_OPERATION)).isEqualTo(OTHER_LOCAL_OPERATION);
+    // Admitted values stay admitted
+    assertThat(service("GET /a").get(AWS_LOCAL_OPERATION)).isEqualTo("GET /a");
+    assertThat(generator.getLocalOperationOverflowCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testLocalOperationsAreLimitedPerService() {
+    service("GET /a");
+    service("GET /b");
+    assertThat(service("GET /c").get(AWS_LOCAL_OPERATION)).isEqualTo(OTHER_LOCAL_OPERATION);
+
+    generated.put(
+        SERVICE_METRIC,
+        Attributes.of(AWS_LOCAL_SERVICE, "other-service", AWS_LOCAL_OPERATION, "GET /c"));
+    assertThat(
+            generator
+                .generateMetricAttributeMapFromSpan(SPAN, RESOURCE)
+                .get(SERVICE_METRIC)
+                .get(AWS_LOCAL_OPERATION))
+        .isEqualTo("GET /c");
+    assertThat(generator.getLocalOperationOverflowCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testOverflowCountsAreReportedAsMetric() {
+    InMemoryMetricReader reader = InMemoryMetricReader.create();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder().registerMetricReader(reader).build();
+    generator.registerOverflowMetric(meterProvider.get("test"));
+    service("GET /a");
+    service("GET /b");
+    service("GET /c");
+    generated.clear();
+    dependency("GET /a", "table1");
+    dependency("GET /a", "table2");
+    dependency("GET /a", "table3");
+    dependency("GET /a", "table4");
+
+    MetricData metric = reader.collectAllMetrics().iterator().next();
+    assertThat(metric.getName()).isEqualTo(OVERFLOW_METRIC);
+    Map<String, Long> counts = new HashMap<>();
+    for (LongPointData point : metric.getLongSumData().getPoints()) {
+      counts.put(point.getAttributes().get(OVERFLOW_DIMENSION), point.getValue());
+    }
+    assertThat(counts)
+        .containsEntry(AWS_LOCAL_OPERATION.getKey(), 1L)
+        .containsEntry(AWS_REMOTE_SERVICE.getKey(), 0L)
+        .containsEntry(AWS_REMOTE_OPERATION.getKey(), 0L)
+        .containsEntry(AWS_REMOTE_RESOURCE_IDENTIFIER.getKey(), 2L);
+  }
+
+  @Test
+  public void testUnchangedAttributesAreReturnedAsIs() {
+    Attributes attributes = serviceAttributes("GET /a");
+    generated.put(SERVICE_METRIC, attributes);
+    assertThat(generator.generateMetricAttributeMapFromSpan(SPAN, RESOURCE).get(SERVICE_METRIC))
+        .isSameAs(attributes);
+  }
+
+  @Test
+  public void testFoldedAttributesAreTheSameInstance() {
+    service("GET /a");
+    service("GET /b");
+    assertThat(service("GET /c")).isSameAs(service("GET /d"));
+  }
+
+  @Test
+  public void testRemoteValuesAreLimitedPerLocalOperation() {
+    assertThat(dependency("GET /a", "table1").get(AWS_REMOTE_RESOURCE_IDENTIFIER))
+        .isEqualTo("table1");
+    assertThat(dependency("GET /a", "table2").get(AWS_REMOTE_RESOURCE_IDENTIFIER))
+        .isEqualTo("table2");
+    Attributes folded = dependency("GET /a", "table3");
+    assertThat(folded.get(AWS_REMOTE_RESOURCE_IDENTIFIER)).isEqualTo(OTHER_REMOTE_RESOURCE);
+    assertThat(folded.get(AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER)).isEqualTo(OTHER_REMOTE_RESOURCE);
+    assertThat(folded.get(AWS_REMOTE_RESOURCE_TYPE)).isEqualTo("AWS::DynamoDB::Table");
+    assertThat(folded.get(AWS_REMOTE_SERVICE)).isEqualTo("AWS::DynamoDB");
+
+    // Each local operation has its own limits
+    assertThat(dependency("GET /b", "table3").get(AWS_REMOTE_RESOURCE_IDENTIFIER))
+        .isEqualTo("table3");
+    assertThat(generator.getRemoteResourceOverflowCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRemoteServicesBeyondLimitAreFolded() {
+    remoteService("GET /a", "host1:80");
+    remoteService("GET /a", "host2:80");
+    assertThat(remoteService("GET /a", "host3:80").get(AWS_REMOTE_SERVICE))
+        .isEqualTo(OTHER_REMOTE_SERVICE);
+    assertThat(generator.getRemoteServiceOverflowCount()).isEqualTo(1);
+    assertThat(generator.getRemoteOperationOverflowCount()).isZero();
+  }
+
+  private Attributes service(String localOperation) {
+    generated.put(SERVICE_METRIC, serviceAttributes(localOperation));
+    return generator.generateMetricAttributeMapFromSpan(SPAN, RESOURCE).get(SERVICE_METRIC);
+  }
+
+  private Attributes dependency(String localOperation, String table) {
+    generated.put(
+        DEPENDENCY_METRIC,
+        serviceAttributes(localOperation).toBuilder()
+            .put(AWS_REMOTE_SERVICE, "AWS::DynamoDB")
+            .put(AWS_REMOTE_OPERATION, "GetItem")
+            .put(AWS_REMOTE_RESOURCE_TYPE, "AWS::DynamoDB::Table")
+            .put(AWS_REMOTE_RESOURCE_IDENTIFIER, table)
+            .put(AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER, table)
+            .build());
+    return generator.generateMetricAttributeMapFromSpan(SPAN, RESOURCE).get(DEPENDENCY_METRIC);
+  }
+
+  private Attributes remoteService(String localOperation, String remoteService) {
+    generated.put(
+        DEPENDENCY_METRIC,
+        serviceAttributes(localOperation).toBuilder()
+            .put(AWS_REMOTE_SERVICE, remoteService)
+            .put(AWS_REMOTE_OPERATION, "GET /")
+            .build());
+    return generator.generateMetricAttributeMapFromSpan(SPAN, RESOURCE).get(DEPENDENCY_METRIC);
+  }
+
+  private static Attributes serviceAttributes(String localOperation) {
+    return Attributes.of(AWS_LOCAL_SERVICE, "service", AWS_LOCAL_OPERATION, localOperation);
+  }
+}
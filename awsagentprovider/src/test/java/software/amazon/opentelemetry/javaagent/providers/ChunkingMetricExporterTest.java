@@ -0,0 +1,279 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.DefaultAggregationSelector;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link ChunkingMetricExporter}, partly against a local stand-in collector. */
+class ChunkingMetricExporterTest {
+  private static final int MAX_CHUNK_BYTES = 16 * 1024;
+  private static final AttributeKey<String> OPERATION = AttributeKey.stringKey("Operation");
+
+  private HttpServer server;
+  private final List<Integer> bodySizes = new CopyOnWriteArrayList<>();
+  private Collection<MetricData> metrics;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/v1/metrics",
+        exchange -> {
+          int size = 0;
+          try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+              size += read;
+            }
+          }
+          bodySizes.add(size);
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    server.start();
+    metrics = collectMetrics();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testEstimatesUpperBoundOfSerializedSize() throws IOException {
+    AwsOtlpHttpMetricExporter serializer = otlpExporter();
+    for (MetricData metric : metrics) {
+      long estimate = ChunkingMetricExporter.estimateSize(metric);
+      int serialized = serializer.serialize(singleton(metric)).length;
+      // The serialized request also holds the resource and scope
+      assertThat(estimate).isLessThan(2L * serialized);
+      assertThat(estimate + 1024).isGreaterThanOrEqualTo(serialized);
+    }
+  }
+
+  @Test
+  public void testSplitsIntoBoundedChunksByResourceAndScope() throws IOException {
+    ChunkingMetricExporter exporter =
+        ChunkingMetricExporter.create(new RecordingExporter(), MAX_CHUNK_BYTES, 2);
+    AwsOtlpHttpMetricExporter serializer = otlpExporter();
+
+    List<List<MetricData>> chunks = exporter.chunk(metrics);
+
+    assertThat(chunks).hasSizeGreaterThan(3);
+    List<InstrumentationScopeInfo> scopes = new ArrayList<>();
+    for (List<MetricData> chunk : chunks) {
+      assertThat(serializer.serialize(chunk).length).isLessThanOrEqualTo(MAX_CHUNK_BYTES);
+      for (MetricData metric : chunk) {
+        if (scopes.isEmpty()
+            || !scopes.get(scopes.size() - 1).equals(metric.getInstrumentationScopeInfo())) {
+          scopes.add(metric.getInstrumentationScopeInfo());
+        }
+      }
+    }
+    // Each scope is in consecutive chunks
+    assertThat(scopes).doesNotHaveDuplicates().hasSize(2);
+    assertThat(pointCount(flatten(chunks))).isEqualTo(pointCount(metrics));
+  }
+
+  @Test
+  public void testExportsSmallExportAsIs() {
+    RecordingExporter delegate = new RecordingExporter();
+    ChunkingMetricExporter exporter = ChunkingMetricExporter.create(delegate, Long.MAX_VALUE, 2);
+
+    CompletableResultCode result = exporter.export(metrics);
+
+    assertThat(delegate.exports).singleElement().isSameAs(metrics);
+    assertThat(result.isDone()).isFalse();
+    delegate.results.get(0).succeed();
+    assertThat(result.isSuccess()).isTrue();
+  }
+
+  @Test
+  public void testBoundsChunksInFlight() {
+    RecordingExporter delegate = new RecordingExporter();
+    ChunkingMetricExporter exporter = ChunkingMetricExporter.create(delegate, MAX_CHUNK_BYTES, 2);
+    int chunks = exporter.chunk(metrics).size();
+
+    CompletableResultCode result = exporter.export(metrics);
+
+    assertThat(delegate.exports).hasSize(2);
+    for (int i = 0; i < chunks; i++) {
+      assertThat(result.isDone()).isFalse();
+      delegate.results.get(i).succeed();
+      assertThat(delegate.exports).hasSize(Math.min(i + 3, chunks));
+    }
+    assertThat(result.isSuccess()).isTrue();
+    assertThat(pointCount(flatten(delegate.exports))).isEqualTo(pointCount(metrics));
+  }
+
+  @Test
+  public void testFailsWithMetricsOfFailedChunks() {
+    RecordingExporter delegate = new RecordingExporter();
+    ChunkingMetricExporter exporter = ChunkingMetricExporter.create(delegate, MAX_CHUNK_BYTES, 3);
+    int chunks = exporter.chunk(metrics).size();
+
+    CompletableResultCode result = exporter.export(metrics);
+    List<MetricData> failed = new ArrayList<>();
+    for (int i = 0; i < chunks; i++) {
+      if (i % 2 == 0) {
+        delegate.results.get(i).succeed();
+      } else {
+        failed.addAll(delegate.exports.get(i));
+        delegate.results.get(i).fail();
+      }
+    }
+
+    assertThat(result.isDone()).isTrue();
+    assertThat(result.isSuccess()).isFalse();
+    assertThat(result.getFailureThrowable()).isInstanceOf(PartialExportException.class);
+    assertThat(PartialExportException.unexported(metrics, result.getFailureThrowable()))
+        .containsExactlyElementsOf(failed);
+  }
+
+  @Test
+  public void testExportsChunksToCollector() {
+    ChunkingMetricExporter exporter =
+        ChunkingMetricExporter.create(otlpExporter(), MAX_CHUNK_BYTES, 3);
+    int chunks = exporter.chunk(metrics).size();
+
+    assertThat(exporter.export(metrics).join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+
+    assertThat(bodySizes).hasSize(chunks);
+    assertThat(bodySizes).allSatisfy(size -> assertThat(size).isLessThanOrEqualTo(MAX_CHUNK_BYTES));
+  }
+
+  private AwsOtlpHttpMetricExporter otlpExporter() {
+    return AwsOtlpHttpMetricExporter.builder()
+        .setEndpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/metrics")
+        .setMemoryMode(MemoryMode.IMMUTABLE_DATA)
+        .build();
+  }
+
+  // Application Signals like metrics of many operations, in two scopes
+  private static Collection<MetricData> collectMetrics() {
+    InMemoryMetricReader reader =
+        InMemoryMetricReader.builder()
+            .setAggregationTemporalitySelector(instrumentType -> AggregationTemporality.DELTA)
+            .setDefaultAggregationSelector(
+                DefaultAggregationSelector.getDefault()
+                    .with(InstrumentType.HISTOGRAM, Aggregation.base2ExponentialBucketHistogram()))
+            .build();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder()
+            .setResource(
+                Resource.create(Attributes.of(AttributeKey.stringKey("service.name"), "service")))
+            .registerMetricReader(reader)
+            .build();
+    Meter meter = meterProvider.get("io.test.signals");
+    DoubleHistogram latency = meter.histogramBuilder("Latency").setUnit("ms").build();
+    LongCounter errors = meter.counterBuilder("Error").build();
+    LongCounter other = meterProvider.get("io.test.other").counterBuilder("other").build();
+    for (int i = 0; i < 300; i++) {
+      Attributes attributes = Attributes.of(OPERATION, "GET /api/resource/" + i);
+      for (int j = 1; j <= 20; j++) {
+        latency.record(i * j, attributes);
+      }
+      errors.add(i, attributes);
+      other.add(i, attributes);
+    }
+    Collection<MetricData> metrics = reader.collectAllMetrics();
+    meterProvider.close();
+    return metrics;
+  }
+
+  private static List<MetricData> singleton(MetricData metric) {
+    List<MetricData> metrics = new ArrayList<>(1);
+    metrics.add(metric);
+    return metrics;
+  }
+
+  private static List<MetricData> flatten(List<? extends Collection<MetricData>> chunks) {
+    List<MetricData> metrics = new ArrayList<>();
+    for (Collection<MetricData> chunk : chunks) {
+      metrics.addAll(chunk);
+    }
+    return metrics;
+  }
+
+  private static int pointCount(Collection<MetricData> metrics) {
+    int points = 0;
+    for (MetricData metric : metrics) {
+      points += metric.getData().getPoints().size();
+    }
+    return points;
+  }
+
+  // Completes its exports once their results are completed
+  private static class RecordingExporter implements MetricExporter {
+    private final List<Collection<MetricData>> exports = new CopyOnWriteArrayList<>();
+    private final List<CompletableResultCode> results = new CopyOnWriteArrayList<>();
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      CompletableResultCode result = new CompletableResultCode();
+      exports.add(metrics);
+      results.add(result);
+      return result;
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return AggregationTemporality.DELTA;
+    }
+  }
+}
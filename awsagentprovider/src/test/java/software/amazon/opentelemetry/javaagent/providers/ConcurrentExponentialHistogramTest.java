@@ -0,0 +1,93 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramPointData;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link ConcurrentExponentialHistogram}. */
+class ConcurrentExponentialHistogramTest {
+
+  @Test
+  public void testAllocatesOneStripeWithoutContention() {
+    ConcurrentExponentialHistogram histogram = new ConcurrentExponentialHistogram();
+    assertThat(histogram.stripeCount()).isEqualTo(0);
+    histogram.record(0);
+    assertThat(histogram.stripeCount()).isEqualTo(0);
+
+    for (int i = 0; i < 1000; i++) {
+      histogram.record(i);
+    }
+    assertThat(histogram.stripeCount()).isEqualTo(1);
+    assertThat(histogram.collect(Attributes.empty(), 0, 1).getCount()).isEqualTo(1001);
+  }
+
+  @Test
+  public void testAddsStripesOnlyUpToMax() throws InterruptedException {
+    ConcurrentExponentialHistogram histogram = new ConcurrentExponentialHistogram();
+    int threadCount = 4;
+    int recordsPerThread = 100_000;
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[threadCount];
+    for (int t = 0; t < threadCount; t++) {
+      threads[t] =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < recordsPerThread; i++) {
+                  histogram.record(1);
+                }
+              });
+      threads[t].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(histogram.stripeCount()).isBetween(1, ConcurrentExponentialHistogram.MAX_STRIPES);
+    assertThat(histogram.collect(Attributes.empty(), 0, 1).getCount())
+        .isEqualTo((long) threadCount * recordsPerThread);
+  }
+
+  @Test
+  public void testMovesMeasurements() {
+    ConcurrentExponentialHistogram source = new ConcurrentExponentialHistogram();
+    ConcurrentExponentialHistogram target = new ConcurrentExponentialHistogram();
+    source.record(0);
+    source.record(2);
+    source.record(300);
+    target.record(5);
+
+    source.moveTo(target);
+
+    assertThat(source.collect(Attributes.empty(), 0, 1)).isNull();
+    ExponentialHistogramPointData point = target.collect(Attributes.empty(), 0, 1);
+    assertThat(point.getCount()).isEqualTo(4);
+    assertThat(point.getZeroCount()).isEqualTo(1);
+    assertThat(point.getSum()).isEqualTo(307);
+    assertThat(point.getMin()).isEqualTo(0);
+    assertThat(point.getMax()).isEqualTo(300);
+  }
+}
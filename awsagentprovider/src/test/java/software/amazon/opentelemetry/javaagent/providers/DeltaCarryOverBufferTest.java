@@ -0,0 +1,322 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleCounter;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentSelector;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.View;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.DoublePointData;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramBuckets;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableGaugeData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableLongPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableSumData;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.testing.time.TestClock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link DeltaCarryOverBuffer}. */
+class DeltaCarryOverBufferTest {
+  private static final InstrumentationScopeInfo SCOPE = InstrumentationScopeInfo.create("test");
+
+  @Test
+  public void testMatchesSingleDeltaCollection() {
+    TestClock clock = TestClock.create();
+    InMemoryMetricReader everyInterval = reader();
+    InMemoryMetricReader once = reader();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder()
+            .setClock(clock)
+            .setResource(Resource.empty())
+            .registerMetricReader(everyInterval)
+            .registerMetricReader(once)
+            .registerView(
+                InstrumentSelector.builder().setName("explicit").build(),
+                View.builder().setAggregation(Aggregation.explicitBucketHistogram()).build())
+            .build();
+    Meter meter = meterProvider.get(SCOPE.getName());
+    LongCounter longCounter = meter.counterBuilder("longCounter").build();
+    DoubleCounter doubleCounter = meter.counterBuilder("doubleCounter").ofDoubles().build();
+    DoubleHistogram explicit = meter.histogramBuilder("explicit").build();
+    DoubleHistogram exponential = meter.histogramBuilder("exponential").build();
+
+    Random random = new Random(42);
+    DeltaCarryOverBuffer buffer = DeltaCarryOverBuffer.create();
+    Collection<MetricData> merged = Collections.emptyList();
+    for (int interval = 0; interval < 5; interval++) {
+      // A new series in every interval, so that some are carried over and some are not
+      for (int series = 0; series <= interval; series++) {
+        Attributes attributes = attributes(series);
+        for (int i = 0; i < 20; i++) {
+          longCounter.add(random.nextInt(100), attributes);
+          doubleCounter.add(random.nextInt(400) / 4.0, attributes);
+          // Values exact in binary, spread widely so that exponential histograms downscale
+          double value =
+              Math.scalb((double) random.nextInt(4096) + 1, random.nextInt(8 * interval + 2) - 10);
+          explicit.record(value, attributes);
+          exponential.record(value, attributes);
+        }
+      }
+      clock.advance(Duration.ofSeconds(60));
+      if (interval < 4) {
+        // Failed exports
+        buffer.carry(everyInterval.collectAllMetrics());
+      } else {
+        merged = buffer.drainInto(everyInterval.collectAllMetrics());
+      }
+    }
+
+    assertThat(describe(merged)).isEqualTo(describe(once.collectAllMetrics())).hasSize(4);
+    assertThat(buffer.size()).isZero();
+    meterProvider.close();
+  }
+
+  @Test
+  public void testCopiesReusedPoints() {
+    InMemoryMetricReader reader =
+        InMemoryMetricReader.builder()
+            .setAggregationTemporalitySelector(unused -> AggregationTemporality.DELTA)
+            .setMemoryMode(MemoryMode.REUSABLE_DATA)
+            .build();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder().registerMetricReader(reader).build();
+    LongCounter counter = meterProvider.get(SCOPE.getName()).counterBuilder("counter").build();
+    DeltaCarryOverBuffer buffer = DeltaCarryOverBuffer.create();
+
+    counter.add(5, attributes(0));
+    buffer.carry(reader.collectAllMetrics());
+    counter.add(3, attributes(1));
+    buffer.carry(reader.collectAllMetrics());
+    // Reuses the point objects of the first collection
+    counter.add(1, attributes(0));
+    Collection<MetricData> merged = buffer.drainInto(reader.collectAllMetrics());
+
+    Map<Attributes, Long> values = new HashMap<>();
+    for (MetricData metric : merged) {
+      for (LongPointData point : metric.getLongSumData().getPoints()) {
+        values.put(point.getAttributes(), point.getValue());
+      }
+    }
+    assertThat(values).containsOnly(entry(attributes(0), 6L), entry(attributes(1), 3L));
+    meterProvider.close();
+  }
+
+  @Test
+  public void testAppendsSeriesMissingFromCollection() {
+    DeltaCarryOverBuffer buffer = DeltaCarryOverBuffer.create();
+    buffer.carry(Arrays.asList(longSum("carried", attributes(0), 0, 1, 5)));
+
+    MetricData current = longSum("current", attributes(0), 1, 2, 3);
+    Collection<MetricData> merged = buffer.drainInto(Collections.singletonList(current));
+
+    assertThat(merged).hasSize(2).contains(current);
+    assertThat(values(merged)).containsEntry("carried", 5L).containsEntry("current", 3L);
+  }
+
+  @Test
+  public void testMergesPointsOfSameSeries() {
+    DeltaCarryOverBuffer buffer = DeltaCarryOverBuffer.create();
+    buffer.carry(Collections.singletonList(longSum("sum", attributes(0), 0, 1, 5)));
+    buffer.carry(Collections.singletonList(longSum("sum", attributes(0), 1, 2, 7)));
+
+    Collection<MetricData> merged =
+        buffer.drainInto(Collections.singletonList(longSum("sum", attributes(0), 2, 3, 1)));
+
+    assertThat(merged).hasSize(1);
+    LongPointData point = merged.iterator().next().getLongSumData().getPoints().iterator().next();
+    assertThat(point.getValue()).isEqualTo(13);
+    assertThat(point.getStartEpochNanos()).isEqualTo(0);
+    assertThat(point.getEpochNanos()).isEqualTo(3);
+  }
+
+  @Test
+  public void testIgnoresNonDeltaMetrics() {
+    DeltaCarryOverBuffer buffer = DeltaCarryOverBuffer.create();
+    MetricData gauge =
+        ImmutableMetricData.createDoubleGauge(
+            Resource.empty(), SCOPE, "gauge", "", "1", ImmutableGaugeData.empty());
+    buffer.carry(Collections.singletonList(gauge));
+
+    assertThat(buffer.size()).isZero();
+    List<MetricData> current = Collections.singletonList(gauge);
+    assertThat(buffer.drainInto(current)).isSameAs(current);
+  }
+
+  @Test
+  public void testSpillsOldestSeriesFirst() {
+    DeltaCarryOverBuffer buffer = DeltaCarryOverBuffer.create(2);
+    buffer.carry(Collections.singletonList(longSum("sum", attributes(0), 0, 1, 1)));
+    buffer.carry(
+        Arrays.asList(
+            longSum("sum", attributes(1), 0, 1, 2), longSum("sum", attributes(2), 0, 1, 3)));
+    assertThat(buffer.size()).isEqualTo(2);
+
+    Map<Attributes, Long> values = new HashMap<>();
+    for (MetricData metric : buffer.drainInto(Collections.emptyList())) {
+      for (LongPointData point : metric.getLongSumData().getPoints()) {
+        values.put(point.getAttributes(), point.getValue());
+      }
+    }
+    assertThat(values).containsOnlyKeys(attributes(1), attributes(2));
+  }
+
+  @Test
+  public void testSpillsOldestSeriesAcrossConsecutiveFailures() {
+    DeltaCarryOverBuffer buffer = DeltaCarryOverBuffer.create(2);
+    // First export fails
+    buffer.carry(Collections.singletonList(longSum("old", attributes(0), 0, 1, 1)));
+    // Second export, with the carried over series appended, fails too
+    Collection<MetricData> exported =
+        buffer.drainInto(Collections.singletonList(longSum("newer", attributes(0), 1, 2, 2)));
+    buffer.carry(exported);
+    // Third export lists the oldest series last, and fails with the series of its own
+    exported =
+        buffer.drainInto(
+            Arrays.asList(
+                longSum("newest", attributes(0), 2, 3, 3), longSum("old", attributes(0), 2, 3, 4)));
+    buffer.carry(exported);
+    assertThat(buffer.size()).isEqualTo(2);
+
+    assertThat(values(buffer.drainInto(Collections.emptyList())))
+        .containsOnly(entry("newer", 2L), entry("newest", 3L));
+  }
+
+  private static InMemoryMetricReader reader() {
+    return InMemoryMetricReader.builder()
+        .setAggregationTemporalitySelector(unused -> AggregationTemporality.DELTA)
+        .setDefaultAggregationSelector(
+            type ->
+                type == InstrumentType.HISTOGRAM
+                    ? Aggregation.base2ExponentialBucketHistogram()
+                    : Aggregation.defaultAggregation())
+        .build();
+  }
+
+  private static Attributes attributes(int series) {
+    return Attributes.of(AttributeKey.stringKey("key"), "value" + series);
+  }
+
+  private static MetricData longSum(
+      String name, Attributes attributes, long startEpochNanos, long epochNanos, long value) {
+    return ImmutableMetricData.createLongSum(
+        Resource.empty(),
+        SCOPE,
+        name,
+        "",
+        "1",
+        ImmutableSumData.create(
+            true,
+            AggregationTemporality.DELTA,
+            Collections.singletonList(
+                ImmutableLongPointData.create(startEpochNanos, epochNanos, attributes, value))));
+  }
+
+  private static Map<String, Long> values(Collection<MetricData> metrics) {
+    Map<String, Long> values = new HashMap<>();
+    for (MetricData metric : metrics) {
+      for (LongPointData point : metric.getLongSumData().getPoints()) {
+        values.put(metric.getName(), point.getValue());
+      }
+    }
+    return values;
+  }
+
+  // Describes the points of every metric by their values, independently of their implementation.
+  // Start times are left out, as a series that first appears in a later interval starts with it.
+  private static Map<String, Map<Attributes, String>> describe(Collection<MetricData> metrics) {
+    Map<String, Map<Attributes, String>> described = new HashMap<>();
+    for (MetricData metric : metrics) {
+      Map<Attributes, String> points =
+          described.computeIfAbsent(metric.getName(), unused -> new HashMap<>());
+      for (PointData point : metric.getData().getPoints()) {
+        points.put(point.getAttributes(), describe(point));
+      }
+    }
+    return described;
+  }
+
+  private static String describe(PointData point) {
+    String time = point.getEpochNanos() + " ";
+    if (point instanceof LongPointData) {
+      return time + ((LongPointData) point).getValue();
+    }
+    if (point instanceof DoublePointData) {
+      return time + ((DoublePointData) point).getValue();
+    }
+    if (point instanceof HistogramPointData) {
+      HistogramPointData histogram = (HistogramPointData) point;
+      return time
+          + Arrays.asList(
+              histogram.getSum(),
+              histogram.getCount(),
+              histogram.getMin(),
+              histogram.getMax(),
+              histogram.getBoundaries(),
+              histogram.getCounts());
+    }
+    ExponentialHistogramPointData histogram = (ExponentialHistogramPointData) point;
+    return time
+        + Arrays.asList(
+            histogram.getScale(),
+            histogram.getSum(),
+            histogram.getCount(),
+            histogram.getZeroCount(),
+            histogram.getMin(),
+            histogram.getMax(),
+            buckets(histogram.getPositiveBuckets()),
+            buckets(histogram.getNegativeBuckets()));
+  }
+
+  private static Map<Integer, Long> buckets(ExponentialHistogramBuckets buckets) {
+    Map<Integer, Long> counts = new TreeMap<>();
+    List<Long> bucketCounts = buckets.getBucketCounts();
+    for (int i = 0; i < bucketCounts.size(); i++) {
+      if (bucketCounts.get(i) != 0) {
+        counts.put(buckets.getOffset() + i, bucketCounts.get(i));
+      }
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.internal.InstrumentationUtil;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.exporter.internal.marshal.Marshaler;
+import io.opentelemetry.exporter.internal.otlp.metrics.MetricsRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.common.export.ProxyOptions;
+import io.opentelemetry.sdk.common.export.RetryPolicy;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableLongPointData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableSumData;
+import io.opentelemetry.sdk.resources.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link HttpTransport}, against a local stand-in collector. */
+class HttpTransportTest {
+  private static final RetryPolicy FAST_RETRIES =
+      RetryPolicy.builder()
+          .setMaxAttempts(3)
+          .setInitialBackoff(Duration.ofMillis(1))
+          .setMaxBackoff(Duration.ofMillis(10))
+          .build();
+  private static final HttpRequestOptions OPTIONS =
+      HttpRequestOptions.builder()
+          .setTimeout(Duration.ofSeconds(5))
+          .setRetryPolicy(FAST_RETRIES)
+          .build();
+
+  private HttpServer server;
+  private final List<String> paths = new CopyOnWriteArrayList<>();
+  private final List<Headers> headers = new CopyOnWriteArrayList<>();
+  private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+  private final Set<Integer> clientPorts = new HashSet<>();
+  private final AtomicInteger status = new AtomicInteger(200);
+  // Number of requests to answer with a retryable status before answering with status
+  private final AtomicInteger unavailable = new AtomicInteger();
+  private ExecutorService dispatcher;
+  private ScheduledExecutorService retryScheduler;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          ByteArrayOutputStream body = new ByteArrayOutputStream();
+          try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read()) != -1) {
+              body.write(read);
+            }
+          }
+          bodies.add(body.toByteArray());
+          headers.add(exchange.getRequestHeaders());
+          paths.add(exchange.getRequestURI().getPath());
+          synchronized (clientPorts) {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+          }
+          byte[] response = new byte[] {1, 2, 3};
+          exchange.sendResponseHeaders(
+              unavailable.getAndDecrement() > 0 ? 503 : status.get(), response.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+          }
+        });
+    server.setExecutor(Executors.newSingleThreadExecutor());
+    server.start();
+    dispatcher = Executors.newSingleThreadExecutor();
+    retryScheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.stop(0);
+    dispatcher.shutdownNow();
+    retryScheduler.shutdownNow();
+  }
+
+  @Test
+  public void testSharesTransportPerAuthority() throws IOException {
+    HttpTransport metrics = HttpTransport.forEndpoint(new URL("http://localhost:4316/v1/metrics"));
+    assertThat(HttpTransport.forEndpoint(new URL("http://localhost:4316/v1/traces")))
+        .isSameAs(metrics);
+    assertThat(HttpTransport.forEndpoint(new URL("http://localhost:4318/v1/metrics")))
+        .isNotSameAs(metrics);
+    assertThat(HttpTransport.forEndpoint(new URL("https://localhost:4316/v1/metrics")))
+        .isNotSameAs(metrics);
+    assertThat(HttpTransport.forEndpoint(new URL("http://localhost/v1/metrics")))
+        .isSameAs(HttpTransport.forEndpoint(new URL("http://localhost:80/v1/metrics")));
+
+    URL endpoint = new URL("http://localhost:4316/v1/metrics");
+    assertThat(metrics.queue(endpoint)).isSameAs(metrics.queue(endpoint));
+    assertThat(metrics.queue(new URL("http://localhost:4316/v1/traces")))
+        .isNotSameAs(metrics.queue(endpoint));
+    assertThatThrownBy(() -> metrics.queue(new URL("http://localhost:4318/v1/metrics")))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testReusesConnection() throws IOException {
+    URL endpoint = endpoint("/v1/metrics");
+    HttpTransport.RequestQueue queue = HttpTransport.forEndpoint(endpoint).queue(endpoint);
+
+    for (int i = 0; i < 5; i++) {
+      CompletableResultCode result = queue.send(new byte[100], OPTIONS);
+      assertThat(result.join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    }
+
+    assertThat(paths).hasSize(5).containsOnly("/v1/metrics");
+    assertThat(clientPorts).hasSize(1);
+  }
+
+  @Test
+  public void testFailsOnErrorStatus() throws IOException {
+    URL endpoint = endpoint("/v1/metrics");
+    HttpTransport.RequestQueue queue = transport(endpoint).queue(endpoint);
+
+    status.set(400);
+    assertThat(queue.send(new byte[10], OPTIONS).join(10, TimeUnit.SECONDS).isSuccess()).isFalse();
+    // Not retried
+    assertThat(paths).hasSize(1);
+    status.set(200);
+    assertThat(queue.send(new byte[10], OPTIONS).join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+  }
+
+  @Test
+  public void testRetriesRetryableStatus() throws IOException {
+    URL endpoint = endpoint("/v1/metrics");
+    HttpTransport.RequestQueue queue = transport(endpoint).queue(endpoint);
+
+    unavailable.set(2);
+    CompletableResultCode first = queue.send(new byte[10], OPTIONS);
+    CompletableResultCode second = queue.send(new byte[10], OPTIONS);
+    assertThat(first.join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    assertThat(second.join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    // The second request waits for the retries of the first
+    assertThat(paths).hasSize(4);
+
+    unavailable.set(FAST_RETRIES.getMaxAttempts());
+    assertThat(queue.send(new byte[10], OPTIONS).join(10, TimeUnit.SECONDS).isSuccess()).isFalse();
+    assertThat(paths).hasSize(4 + FAST_RETRIES.getMaxAttempts());
+  }
+
+  @Test
+  public void testDoesNotRetryWithoutRetryPolicy() throws IOException {
+    URL endpoint = endpoint("/v1/metrics");
+    HttpTransport.RequestQueue queue = transport(endpoint).queue(endpoint);
+    HttpRequestOptions options = HttpRequestOptions.builder().setRetryPolicy(null).build();
+
+    unavailable.set(1);
+    assertThat(queue.send(new byte[10], options).join(10, TimeUnit.SECONDS).isSuccess()).isFalse();
+    assertThat(paths).hasSize(1);
+  }
+
+  @Test
+  public void testSendsWithOptions() throws IOException {
+    URL endpoint = endpoint("/v1/metrics");
+    HttpTransport.RequestQueue queue = transport(endpoint).queue(endpoint);
+    List<Boolean> suppressed = new CopyOnWriteArrayList<>();
+    ProxySelector noProxy =
+        new ProxySelector() {
+          @Override
+          public List<Proxy> select(URI uri) {
+            suppressed.add(InstrumentationUtil.shouldSuppressInstrumentation(Context.current()));
+            return Collections.singletonList(Proxy.NO_PROXY);
+          }
+
+          @Override
+          public void connectFailed(URI uri, SocketAddress address, IOException e) {}
+        };
+    HttpRequestOptions options =
+        HttpRequestOptions.builder()
+            .addHeader("Authorization", "Bearer token")
+            .setCompression("gzip")
+            .setProxyOptions(ProxyOptions.create(noProxy))
+            .build();
+    Marshaler marshaler =
+        MetricsRequestMarshaler.create(Collections.singletonList(longSum("requests", 3)));
+
+    byte[] body = HttpTransport.serialize(marshaler, options);
+    assertThat(queue.send(body, options).join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+
+    assertThat(headers.get(0).getFirst("Authorization")).isEqualTo("Bearer token");
+    assertThat(headers.get(0).getFirst("Content-Encoding")).isEqualTo("gzip");
+    assertThat(gunzip(bodies.get(0)))
+        .isEqualTo(HttpTransport.serialize(marshaler, HttpRequestOptions.builder().build()));
+    // The agent does not trace its own exports
+    assertThat(suppressed).containsExactly(true);
+  }
+
+  @Test
+  public void testFailsWhenUnreachable() throws IOException {
+    URL endpoint = endpoint("/v1/metrics");
+    server.stop(0);
+    HttpTransport.RequestQueue queue = transport(endpoint).queue(endpoint);
+
+    assertThat(queue.send(new byte[10], OPTIONS).join(10, TimeUnit.SECONDS).isSuccess()).isFalse();
+  }
+
+  @Test
+  public void testBoundsQueue() throws IOException {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    URL endpoint = endpoint("/v1/metrics");
+    HttpTransport transport =
+        HttpTransport.create(HttpTransport.authority(endpoint), tasks::add, retryScheduler, 2);
+    HttpTransport.RequestQueue queue = transport.queue(endpoint);
+
+    CompletableResultCode first = queue.send(new byte[10], OPTIONS);
+    CompletableResultCode second = queue.send(new byte[10], OPTIONS);
+    CompletableResultCode third = queue.send(new byte[10], OPTIONS);
+    assertThat(third.isDone()).isTrue();
+    assertThat(third.isSuccess()).isFalse();
+    assertThat(queue.flush()).isSameAs(second);
+
+    runAll(tasks);
+    assertThat(first.isSuccess()).isTrue();
+    assertThat(second.isSuccess()).isTrue();
+    assertThat(paths).hasSize(2);
+  }
+
+  @Test
+  public void testSignalsTakeTurns() throws IOException {
+    Queue<Runnable> tasks = new ArrayDeque<>();
+    URL metrics = endpoint("/v1/metrics");
+    URL traces = endpoint("/v1/traces");
+    HttpTransport transport =
+        HttpTransport.create(HttpTransport.authority(metrics), tasks::add, retryScheduler, 8);
+
+    for (int i = 0; i < 3; i++) {
+      transport.queue(metrics).send(new byte[10], OPTIONS);
+    }
+    transport.queue(traces).send(new byte[10], OPTIONS);
+    // One task per queue at a time
+    assertThat(tasks).hasSize(2);
+
+    runAll(tasks);
+    assertThat(paths).containsExactly("/v1/metrics", "/v1/traces", "/v1/metrics", "/v1/metrics");
+  }
+
+  private HttpTransport transport(URL endpoint) {
+    return HttpTransport.create(
+        HttpTransport.authority(endpoint),
+        dispatcher,
+        retryScheduler,
+        HttpTransport.DEFAULT_MAX_QUEUED_REQUESTS);
+  }
+
+  private URL endpoint(String path) throws IOException {
+    return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+  }
+
+  private static MetricData longSum(String name, long value) {
+    return ImmutableMetricData.createLongSum(
+        Resource.empty(),
+        InstrumentationScopeInfo.create("test"),
+        name,
+        "",
+        "1",
+        ImmutableSumData.create(
+            true,
+            AggregationTemporality.DELTA,
+            Collections.singletonList(
+                ImmutableLongPointData.create(
+                    0, 1, Attributes.of(AttributeKey.stringKey("key"), "v"), value))));
+  }
+
+  private static byte[] gunzip(byte[] body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+      int read;
+      while ((read = in.read()) != -1) {
+        out.write(read);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static void runAll(Queue<Runnable> tasks) {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      task.run();
+    }
+  }
+}
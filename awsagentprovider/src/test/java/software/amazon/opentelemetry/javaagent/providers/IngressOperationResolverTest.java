@@ -0,0 +1,140 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_REQUEST_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_ROUTE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_TARGET;
+import static io.opentelemetry.semconv.SemanticAttributes.URL_PATH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.INTERNAL_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.UNKNOWN_OPERATION;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.Test;
+
+public class IngressOperationResolverTest {
+
+  private final IngressOperationResolver resolver =
+      IngressOperationResolver.create(IngressOperationResolver.DEFAULT_MEMO_SIZE, null);
+
+  @Test
+  public void testRoutePreferredOverSpanName() {
+    Attributes attributes =
+        Attributes.of(
+            HTTP_REQUEST_METHOD, "GET", HTTP_ROUTE, "/users/{id}", URL_PATH, "/users/1234");
+    assertOperation("GET /users/1234", SpanKind.SERVER, attributes, "GET /users/{id}");
+    assertOperation("GET", SpanKind.SERVER, attributes, "GET /users/{id}");
+  }
+
+  @Test
+  public void testRouteWithoutMethod() {
+    assertOperation(
+        "GET", SpanKind.SERVER, Attributes.of(HTTP_ROUTE, "/users/{id}"), "/users/{id}");
+  }
+
+  @Test
+  public void testDeprecatedHttpAttributes() {
+    assertOperation(
+        null,
+        SpanKind.SERVER,
+        Attributes.of(HTTP_METHOD, "POST", HTTP_TARGET, "/payment/123?id=1"),
+        "POST /payment");
+  }
+
+  @Test
+  public void testSpanNameWithoutRoute() {
+    assertOperation(
+        "ValidName",
+        SpanKind.SERVER,
+        Attributes.of(HTTP_REQUEST_METHOD, "GET", URL_PATH, "/users/1234"),
+        "ValidName");
+  }
+
+  @Test
+  public void testFirstSegmentWithoutRoute() {
+    assertOperation(
+        "GET",
+        SpanKind.SERVER,
+        Attributes.of(HTTP_REQUEST_METHOD, "GET", URL_PATH, "/users/1234"),
+        "GET /users");
+    assertOperation(UNKNOWN_OPERATION, SpanKind.SERVER, Attributes.empty(), UNKNOWN_OPERATION);
+  }
+
+  @Test
+  public void testInternalOperation() {
+    assertOperation(
+        "ValidName", SpanKind.CLIENT, Attributes.of(HTTP_ROUTE, "/users/{id}"), INTERNAL_OPERATION);
+  }
+
+  @Test
+  public void testLearnedTemplateWithoutRoute() {
+    IngressOperationResolver learningResolver =
+        IngressOperationResolver.create(
+            IngressOperationResolver.DEFAULT_MEMO_SIZE, PathTemplateLearner.create(4));
+    SpanData span = mockSpanData("GET", SpanKind.SERVER);
+    String operation = null;
+    for (int i = 0; i < 50; i++) {
+      Attributes attributes =
+          Attributes.of(HTTP_REQUEST_METHOD, "GET", URL_PATH, "/users/" + i + "/orders?page=2");
+      operation = learningResolver.getIngressOperation(span, SpanAttributesSnapshot.of(attributes));
+    }
+    assertThat(operation).isEqualTo("GET /users/{param}/orders");
+  }
+
+  @Test
+  public void testOperationsAreMemoized() {
+    Attributes attributes = Attributes.of(HTTP_REQUEST_METHOD, "GET", HTTP_ROUTE, "/users/{id}");
+    SpanData span = mockSpanData("GET", SpanKind.SERVER);
+    String first = resolver.getIngressOperation(span, SpanAttributesSnapshot.of(attributes));
+    String second = resolver.getIngressOperation(span, SpanAttributesSnapshot.of(attributes));
+    assertThat(second).isSameAs(first);
+    assertThat(resolver.getOperationsCache().hitCount()).isEqualTo(1);
+    assertThat(resolver.getOperationsCache().missCount()).isEqualTo(1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void assertOperation(
+      @Nullable String spanName, SpanKind kind, Attributes attributes, String expectedOperation) {
+    SpanData spanData = mockSpanData(spanName, kind);
+    assertThat(resolver.getIngressOperation(spanData, SpanAttributesSnapshot.of(attributes)))
+        .isEqualTo(expectedOperation);
+
+    // Attribute propagation resolves the same operation from the span while it is recorded
+    ReadableSpan readableSpan = mock(ReadableSpan.class);
+    when(readableSpan.getName()).thenReturn(spanName);
+    when(readableSpan.getKind()).thenReturn(kind);
+    attributes.forEach(
+        (key, value) ->
+            when(readableSpan.getAttribute((AttributeKey<Object>) key)).thenReturn(value));
+    assertThat(resolver.getIngressOperation(readableSpan)).isEqualTo(expectedOperation);
+  }
+
+  private static SpanData mockSpanData(@Nullable String spanName, SpanKind kind) {
+    SpanData span = mock(SpanData.class);
+    when(span.getName()).thenReturn(spanName);
+    when(span.getKind()).thenReturn(kind);
+    return span;
+  }
+}
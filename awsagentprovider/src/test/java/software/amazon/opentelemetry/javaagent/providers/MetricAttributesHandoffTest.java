@@ -0,0 +1,75 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class MetricAttributesHandoffTest {
+
+  private static final String TRACE_ID = "0af7651916cd43dd8448eb211c80319c";
+
+  private static final Map<String, Attributes> ATTRIBUTE_MAP =
+      Collections.singletonMap(MetricAttributeGenerator.SERVICE_METRIC, Attributes.empty());
+
+  @Test
+  public void testTakeReturnsOfferedMapOnce() {
+    MetricAttributesHandoff handoff = MetricAttributesHandoff.create();
+    SpanContext spanContext = spanContext("b7ad6b7169203331", TraceFlags.getSampled());
+
+    handoff.offer(spanContext, ATTRIBUTE_MAP);
+    assertThat(handoff.take(spanContext)).isSameAs(ATTRIBUTE_MAP);
+    assertThat(handoff.take(spanContext)).isNull();
+    assertThat(handoff.hitCount()).isEqualTo(1);
+    assertThat(handoff.missCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testUnsampledSpansAreNotRecorded() {
+    MetricAttributesHandoff handoff = MetricAttributesHandoff.create();
+    SpanContext spanContext = spanContext("b7ad6b7169203331", TraceFlags.getDefault());
+
+    handoff.offer(spanContext, ATTRIBUTE_MAP);
+    assertThat(handoff.size()).isEqualTo(0);
+    assertThat(handoff.take(spanContext)).isNull();
+  }
+
+  @Test
+  public void testSizeIsBounded() {
+    MetricAttributesHandoff handoff = MetricAttributesHandoff.create(4);
+    for (int i = 0; i < 10; i++) {
+      handoff.offer(
+          spanContext(String.format("%016x", i + 1), TraceFlags.getSampled()), ATTRIBUTE_MAP);
+    }
+    assertThat(handoff.size()).isEqualTo(4);
+    assertThat(handoff.evictionCount()).isEqualTo(6);
+
+    // The most recent entry is always retained
+    assertThat(handoff.take(spanContext(String.format("%016x", 10), TraceFlags.getSampled())))
+        .isSameAs(ATTRIBUTE_MAP);
+  }
+
+  private static SpanContext spanContext(String spanId, TraceFlags traceFlags) {
+    return SpanContext.create(TRACE_ID, spanId, traceFlags, TraceState.getDefault());
+  }
+}
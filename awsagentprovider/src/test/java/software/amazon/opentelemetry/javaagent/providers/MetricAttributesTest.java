@@ -0,0 +1,243 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_RESPONSE_STATUS_CODE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_STATUS_CODE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_LOCAL_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_DB_USER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_OPERATION;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_RESOURCE_IDENTIFIER;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_RESOURCE_TYPE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_REMOTE_SERVICE;
+import static software.amazon.opentelemetry.javaagent.providers.AwsAttributeKeys.AWS_SPAN_KIND;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class MetricAttributesTest {
+
+  @SuppressWarnings("unchecked")
+  private static final List<AttributeKey<Object>> KEYS =
+      Arrays.asList(
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_LOCAL_SERVICE,
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_LOCAL_OPERATION,
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_REMOTE_SERVICE,
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_REMOTE_OPERATION,
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_REMOTE_RESOURCE_TYPE,
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_REMOTE_RESOURCE_IDENTIFIER,
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_CLOUDFORMATION_PRIMARY_IDENTIFIER,
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_REMOTE_DB_USER,
+          (AttributeKey<Object>) (AttributeKey<?>) AWS_SPAN_KIND,
+          (AttributeKey<Object>) (AttributeKey<?>) HTTP_RESPONSE_STATUS_CODE,
+          (AttributeKey<Object>) (AttributeKey<?>) HTTP_STATUS_CODE,
+          // Outside of the schema
+          (AttributeKey<Object>) (AttributeKey<?>) AttributeKey.stringKey("other"),
+          (AttributeKey<Object>) (AttributeKey<?>) AttributeKey.longKey(AWS_SPAN_KIND.getKey()));
+
+  @Test
+  public void testMatchesSdkAttributes() {
+    Attributes expected =
+        Attributes.builder()
+            .put(AWS_SPAN_KIND, "CLIENT")
+            .put(AWS_LOCAL_SERVICE, "service")
+            .put(HTTP_RESPONSE_STATUS_CODE, 200L)
+            .put(AWS_LOCAL_OPERATION, "GET /")
+            .build();
+    Attributes attributes =
+        MetricAttributes.builder()
+            .put(AWS_SPAN_KIND, "CLIENT")
+            .put(AWS_LOCAL_SERVICE, "service")
+            .put(HTTP_RESPONSE_STATUS_CODE, 200)
+            .put(AWS_LOCAL_OPERATION, "GET /")
+            .build();
+
+    assertThat(attributes).isInstanceOf(MetricAttributes.class);
+    assertMatches(attributes, expected);
+    assertThat(attributes.get(HTTP_RESPONSE_STATUS_CODE)).isEqualTo(200L);
+    assertThat(attributes.get(HTTP_STATUS_CODE)).isNull();
+    assertThat(attributes.get(AWS_REMOTE_SERVICE)).isNull();
+    assertThat(attributes.get(AttributeKey.stringKey("other"))).isNull();
+    assertThat(((MetricAttributes) attributes).hasResponseStatusCode()).isTrue();
+    assertThat(((MetricAttributes) attributes).getResponseStatusCode()).isEqualTo(200L);
+  }
+
+  @Test
+  public void testEmpty() {
+    Attributes attributes = MetricAttributes.builder().build();
+    assertThat(attributes.isEmpty()).isTrue();
+    assertMatches(attributes, Attributes.empty());
+  }
+
+  @Test
+  public void testNullsAreIgnored() {
+    Attributes attributes =
+        MetricAttributes.builder()
+            .put(AWS_LOCAL_SERVICE, null)
+            .put((AttributeKey<String>) null, "value")
+            .put(AttributeKey.stringKey(""), "value")
+            .put(AWS_SPAN_KIND, "SERVER")
+            .build();
+    assertMatches(attributes, Attributes.of(AWS_SPAN_KIND, "SERVER"));
+  }
+
+  @Test
+  public void testFallsBackOutsideOfSchema() {
+    AttributeKey<Long> spanKindAsLong = AttributeKey.longKey(AWS_SPAN_KIND.getKey());
+    Attributes attributes =
+        MetricAttributes.builder()
+            .put(AWS_LOCAL_SERVICE, "service")
+            .put(AWS_SPAN_KIND, "SERVER")
+            .put(spanKindAsLong, 1L)
+            .build();
+    assertThat(attributes).isNotInstanceOf(MetricAttributes.class);
+    assertThat(attributes)
+        .isEqualTo(Attributes.of(AWS_LOCAL_SERVICE, "service", spanKindAsLong, 1L));
+  }
+
+  @Test
+  public void testBuilderIsReusable() {
+    AttributesBuilder builder = MetricAttributes.builder().put(AWS_LOCAL_SERVICE, "service");
+    Attributes first = builder.build();
+    Attributes second = builder.put(AWS_LOCAL_SERVICE, "other").remove(HTTP_STATUS_CODE).build();
+    assertThat(first.get(AWS_LOCAL_SERVICE)).isEqualTo("service");
+    assertThat(second.get(AWS_LOCAL_SERVICE)).isEqualTo("other");
+
+    Attributes third = first.toBuilder().put(HTTP_STATUS_CODE, 500L).build();
+    assertThat(third).isInstanceOf(MetricAttributes.class);
+    assertMatches(third, Attributes.of(AWS_LOCAL_SERVICE, "service", HTTP_STATUS_CODE, 500L));
+    assertMatches(first, Attributes.of(AWS_LOCAL_SERVICE, "service"));
+  }
+
+  @Test
+  public void testRemove() {
+    Attributes attributes =
+        MetricAttributes.builder()
+            .put(AWS_LOCAL_SERVICE, "service")
+            .put(AWS_REMOTE_SERVICE, "remote")
+            .put(HTTP_RESPONSE_STATUS_CODE, 404L)
+            .remove(AWS_REMOTE_SERVICE)
+            .remove(AttributeKey.longKey(AWS_LOCAL_SERVICE.getKey()))
+            .removeIf(key -> key.getKey().startsWith("http."))
+            .build();
+    assertMatches(attributes, Attributes.of(AWS_LOCAL_SERVICE, "service"));
+  }
+
+  @Test
+  public void testRandomizedParity() {
+    Random random = new Random(0);
+    for (int i = 0; i < 10_000; i++) {
+      AttributesBuilder expectedBuilder = Attributes.builder();
+      AttributesBuilder builder =
+          random.nextBoolean()
+              ? MetricAttributes.builder()
+              : MetricAttributes.builder().put(AWS_SPAN_KIND, "SERVER").build().toBuilder();
+      expectedBuilder.putAll(builder.build());
+      int puts = random.nextInt(8);
+      for (int j = 0; j < puts; j++) {
+        AttributeKey<Object> key = KEYS.get(random.nextInt(KEYS.size()));
+        Object value = randomValue(random, key);
+        if (random.nextInt(8) == 0) {
+          builder.remove(key);
+          expectedBuilder.remove(key);
+        } else {
+          builder.put(key, value);
+          expectedBuilder.put(key, value);
+        }
+      }
+      assertMatches(builder.build(), expectedBuilder.build());
+    }
+  }
+
+  @Test
+  public void testLooksUpWithoutBuilding() {
+    MemoizingCache<Attributes, Attributes> cache = new MemoizingCache<>(16);
+    Attributes cached =
+        cache.computeIfAbsent(
+            MetricAttributes.builder()
+                .put(AWS_LOCAL_SERVICE, "service")
+                .put(HTTP_STATUS_CODE, 500L)
+                .build(),
+            attributes -> attributes);
+
+    MetricAttributes.Builder builder =
+        MetricAttributes.builder().put(HTTP_STATUS_CODE, 500L).put(AWS_LOCAL_SERVICE, "service");
+    assertThat(builder.lookup(cache)).isSameAs(cached);
+    assertThat(builder.put(HTTP_STATUS_CODE, 404L).lookup(cache)).isNull();
+    assertThat(builder.remove(HTTP_STATUS_CODE).lookup(cache)).isNull();
+    // Removed status codes are not compared
+    assertThat(
+            builder
+                .reset()
+                .put(AWS_LOCAL_SERVICE, "service")
+                .put(HTTP_STATUS_CODE, 500L)
+                .lookup(cache))
+        .isSameAs(cached);
+    assertThat(builder.put(AttributeKey.stringKey("other"), "value").lookup(cache)).isNull();
+    assertThat(builder.reset().lookup(cache)).isNull();
+    assertThat(cache.hitCount()).isEqualTo(2);
+  }
+
+  private static Object randomValue(Random random, AttributeKey<?> key) {
+    switch (key.getType()) {
+      case LONG:
+        return (long) (random.nextInt(5) * 100);
+      case STRING:
+        return String.valueOf(random.nextInt(3));
+      default:
+        throw new AssertionError(key.getType());
+    }
+  }
+
+  private static void assertMatches(Attributes attributes, Attributes expected) {
+    assertThat(attributes.size()).isEqualTo(expected.size());
+    assertThat(attributes.isEmpty()).isEqualTo(expected.isEmpty());
+    assertThat(attributes.asMap()).isEqualTo(expected.asMap());
+    assertThat(attributes.hashCode()).isEqualTo(expected.hashCode());
+    assertThat(attributes.toBuilder().build()).isEqualTo(attributes);
+    for (AttributeKey<Object> key : KEYS) {
+      assertThat(attributes.get(key)).as(key.toString()).isEqualTo(expected.get(key));
+    }
+    // Iterated in key name order, like the SDK implementation
+    List<AttributeKey<?>> keys = new ArrayList<>();
+    attributes.forEach((key, value) -> keys.add(key));
+    List<AttributeKey<?>> expectedKeys = new ArrayList<>();
+    expected.forEach((key, value) -> expectedKeys.add(key));
+    assertThat(keys).isEqualTo(expectedKeys);
+    if (attributes instanceof MetricAttributes) {
+      // Like the SDK implementation, only equal to attributes of the same class, either way round
+      assertThat(attributes).isNotEqualTo(expected);
+      assertThat(expected).isNotEqualTo(attributes);
+      Attributes same = MetricAttributes.builder().putAll(expected).build();
+      assertThat(attributes).isEqualTo(same);
+      assertThat(same).isEqualTo(attributes);
+      assertThat(same.hashCode()).isEqualTo(attributes.hashCode());
+      assertThat(attributes.toString()).startsWith("MetricAttributes{");
+    } else {
+      assertThat(attributes).isEqualTo(expected);
+      assertThat(expected).isEqualTo(attributes);
+    }
+  }
+}
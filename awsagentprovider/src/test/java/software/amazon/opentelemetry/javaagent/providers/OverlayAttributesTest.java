@@ -0,0 +1,98 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class OverlayAttributesTest {
+
+  private static final AttributeKey<String> KEY_A = AttributeKey.stringKey("a");
+  private static final AttributeKey<String> KEY_B = AttributeKey.stringKey("b");
+  private static final AttributeKey<Long> KEY_C = AttributeKey.longKey("c");
+  private static final AttributeKey<String> KEY_D = AttributeKey.stringKey("d");
+
+  @Test
+  public void testOverlayMatchesMergedCopy() {
+    Attributes base = Attributes.of(KEY_A, "base-a", KEY_B, "base-b", KEY_C, 3L);
+    Attributes overlay = Attributes.of(KEY_B, "overlay-b", KEY_D, "overlay-d");
+    Attributes merged = base.toBuilder().putAll(overlay).build();
+
+    Attributes attributes = OverlayAttributes.create(base, overlay);
+
+    assertThat(attributes.size()).isEqualTo(merged.size());
+    assertThat(attributes.isEmpty()).isFalse();
+    assertThat(attributes.get(KEY_A)).isEqualTo("base-a");
+    assertThat(attributes.get(KEY_B)).isEqualTo("overlay-b");
+    assertThat(attributes.get(KEY_C)).isEqualTo(3L);
+    assertThat(attributes.get(KEY_D)).isEqualTo("overlay-d");
+    assertThat(attributes.get(AttributeKey.stringKey("missing"))).isNull();
+
+    Map<AttributeKey<?>, Object> visited = new HashMap<>();
+    attributes.forEach(
+        (key, value) -> assertThat(visited.put(key, value)).as("visited once: " + key).isNull());
+    assertThat(visited).isEqualTo(merged.asMap());
+    assertThat(attributes.asMap()).isEqualTo(merged.asMap());
+    assertThat(attributes.toBuilder().build()).isEqualTo(merged);
+    assertThat(attributes.hashCode()).isEqualTo(merged.hashCode());
+  }
+
+  @Test
+  public void testEqualityIsSymmetric() {
+    Attributes base = Attributes.of(KEY_A, "base-a", KEY_B, "base-b", KEY_C, 3L);
+    Attributes overlay = Attributes.of(KEY_B, "overlay-b", KEY_D, "overlay-d");
+    Attributes merged = base.toBuilder().putAll(overlay).build();
+    Attributes attributes = OverlayAttributes.create(base, overlay);
+    // The same attributes, layered differently
+    Attributes relayered =
+        OverlayAttributes.create(
+            Attributes.of(KEY_A, "base-a", KEY_D, "overlay-d"),
+            Attributes.of(KEY_B, "overlay-b", KEY_C, 3L));
+
+    // Like the SDK implementation, only equal to attributes of the same class, either way round
+    assertThat(attributes).isNotEqualTo(merged);
+    assertThat(merged).isNotEqualTo(attributes);
+    assertThat(attributes).isEqualTo(relayered);
+    assertThat(relayered).isEqualTo(attributes);
+    assertThat(relayered.hashCode()).isEqualTo(attributes.hashCode());
+    assertThat(attributes)
+        .isNotEqualTo(OverlayAttributes.create(base, Attributes.of(KEY_D, "overlay-d")));
+  }
+
+  @Test
+  public void testOverlayWithoutNewKeys() {
+    Attributes base = Attributes.of(KEY_A, "base-a", KEY_B, "base-b");
+    Attributes overlay = Attributes.of(KEY_A, "overlay-a");
+
+    Attributes attributes = OverlayAttributes.create(base, overlay);
+
+    assertThat(attributes.size()).isEqualTo(2);
+    assertThat(attributes.asMap()).containsEntry(KEY_A, "overlay-a").containsEntry(KEY_B, "base-b");
+  }
+
+  @Test
+  public void testEmptySetsAreNotWrapped() {
+    Attributes attributes = Attributes.of(KEY_A, "a");
+
+    assertThat(OverlayAttributes.create(attributes, Attributes.empty())).isSameAs(attributes);
+    assertThat(OverlayAttributes.create(Attributes.empty(), attributes)).isSameAs(attributes);
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public class PathTemplateLearnerTest {
+
+  private static final String SERVICE = "api.example.com";
+
+  @Test
+  public void testLowCardinalityPathsAreKept() {
+    PathTemplateLearner learner = PathTemplateLearner.create(8);
+    for (int i = 0; i < 100; i++) {
+      assertThat(learner.getTemplate(SERVICE, "/v1/orders")).isEqualTo("/v1/orders");
+      assertThat(learner.getTemplate(SERVICE, "/v1/customers")).isEqualTo("/v1/customers");
+      assertThat(learner.getTemplate(SERVICE, "/v2/orders/")).isEqualTo("/v2/orders");
+    }
+    assertThat(learner.getTemplate(SERVICE, "")).isEqualTo("/");
+    assertThat(learner.getTemplate(SERVICE, "//")).isEqualTo("/");
+  }
+
+  @Test
+  public void testHighCardinalityPositionsCollapse() {
+    PathTemplateLearner learner = PathTemplateLearner.create(8);
+    for (int i = 0; i < 100; i++) {
+      learner.getTemplate(SERVICE, "/v1/users/" + (1000 + i) + "/orders");
+    }
+    assertThat(learner.getTemplate(SERVICE, "/v1/users/5555/orders"))
+        .isEqualTo("/v1/users/{param}/orders");
+    assertThat(learner.getTemplate(SERVICE, "/v1/users/1000/orders"))
+        .isEqualTo("/v1/users/{param}/orders");
+    // Siblings of the collapsed position are unaffected
+    assertThat(learner.getTemplate(SERVICE, "/v1/orders")).isEqualTo("/v1/orders");
+  }
+
+  @Test
+  public void testServicesAreLearnedSeparately() {
+    PathTemplateLearner learner = PathTemplateLearner.create(8);
+    for (int i = 0; i < 100; i++) {
+      learner.getTemplate(SERVICE, "/items/" + i);
+    }
+    assertThat(learner.getTemplate(SERVICE, "/items/7")).isEqualTo("/items/{param}");
+    assertThat(learner.getTemplate("other.example.com", "/items/7")).isEqualTo("/items/7");
+  }
+
+  @Test
+  public void testDepthIsBounded() {
+    PathTemplateLearner learner = PathTemplateLearner.create(8, 2, 100, 10);
+    assertThat(learner.getTemplate(SERVICE, "/a/b/c/d")).isEqualTo("/a/b");
+  }
+
+  @Test
+  public void testNodesAreBounded() {
+    PathTemplateLearner learner = PathTemplateLearner.create(32, 4, 3, 10);
+    assertThat(learner.getTemplate(SERVICE, "/a/b")).isEqualTo("/a/b");
+    assertThat(learner.getTemplate(SERVICE, "/c")).isEqualTo("/c");
+    assertThat(learner.getTemplate(SERVICE, "/d/e")).isEqualTo("/{param}/{param}");
+  }
+
+  @Test
+  public void testServicesAreBounded() {
+    PathTemplateLearner learner = PathTemplateLearner.create(8, 4, 100, 1);
+    assertThat(learner.getTemplate(SERVICE, "/a/b")).isEqualTo("/a/b");
+    assertThat(learner.getTemplate("other.example.com", "/a/b")).isEqualTo("/a");
+    assertThat(learner.serviceCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCompaction() {
+    PathTemplateLearner learner = PathTemplateLearner.create(8);
+    for (int i = 0; i < 100; i++) {
+      learner.getTemplate(SERVICE, "/users/" + i + "/orders");
+    }
+    learner.compact();
+    assertThat(learner.getTemplate(SERVICE, "/users/1/orders")).isEqualTo("/users/{param}/orders");
+
+    // Distinct values are counted per compaction interval
+    for (int round = 0; round < 20; round++) {
+      learner.getTemplate(SERVICE, "/regions/" + (round % 2 == 0 ? "east" : "west"));
+      learner.compact();
+    }
+    assertThat(learner.getTemplate(SERVICE, "/regions/east")).isEqualTo("/regions/east");
+
+    // Services that are not seen between compactions are dropped
+    learner.getTemplate("other.example.com", "/a");
+    learner.compact();
+    learner.getTemplate(SERVICE, "/a");
+    learner.compact();
+    assertThat(learner.serviceCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testInvalidLimits() {
+    assertThatThrownBy(() -> PathTemplateLearner.create(0))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> PathTemplateLearner.create(PathTemplateLearner.MAX_MAX_VALUES + 1))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> PathTemplateLearner.create(8, 0, 1, 1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
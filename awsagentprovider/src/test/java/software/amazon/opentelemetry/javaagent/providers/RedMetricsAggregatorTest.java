@@ -0,0 +1,447 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.ExponentialHistogramPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.testing.time.TestClock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.opentelemetry.javaagent.providers.RedMetricsAggregator.Outcome;
+
+/** Unit tests for {@link RedMetricsAggregator}. */
+class RedMetricsAggregatorTest {
+  private static final String AGGREGATOR_SCOPE = "aggregator";
+  private static final String SDK_SCOPE = "sdk";
+  private static final Attributes SERVICE_ATTRIBUTES =
+      Attributes.of(AttributeKey.stringKey("aws.local.operation"), "GET /ping");
+  private static final Attributes DEPENDENCY_ATTRIBUTES =
+      Attributes.of(AttributeKey.stringKey("aws.remote.service"), "AWS::S3");
+
+  private TestClock clock;
+  private RedMetricsAggregator aggregator;
+  private InMemoryMetricReader reader;
+  private LongHistogram errorHistogram;
+  private LongHistogram faultHistogram;
+  private DoubleHistogram latencyHistogram;
+
+  @BeforeEach
+  public void setUp() {
+    clock = TestClock.create();
+    aggregator = RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, 3);
+    // Same temporality and aggregation as the Application Signals exporter
+    reader =
+        InMemoryMetricReader.builder()
+            .setAggregationTemporalitySelector(unused -> AggregationTemporality.DELTA)
+            .setDefaultAggregationSelector(
+                type ->
+                    type == InstrumentType.HISTOGRAM
+                        ? Aggregation.base2ExponentialBucketHistogram()
+                        : Aggregation.defaultAggregation())
+            .build();
+    SdkMeterProvider meterProvider =
+        SdkMeterProvider.builder()
+            .setClock(clock)
+            .setResource(Resource.empty())
+            .registerMetricReader(reader)
+            .registerMetricProducer(aggregator)
+            .build();
+    Meter meter = meterProvider.get(SDK_SCOPE);
+    errorHistogram = meter.histogramBuilder(AwsSpanMetricsProcessorBuilder.ERROR).ofLongs().build();
+    faultHistogram = meter.histogramBuilder(AwsSpanMetricsProcessorBuilder.FAULT).ofLongs().build();
+    latencyHistogram =
+        meter
+            .histogramBuilder(AwsSpanMetricsProcessorBuilder.LATENCY)
+            .setUnit(AwsSpanMetricsProcessorBuilder.LATENCY_UNITS)
+            .build();
+  }
+
+  @Test
+  public void testMatchesSdkExponentialHistograms() {
+    record(SERVICE_ATTRIBUTES, Outcome.OK, 0.5);
+    record(SERVICE_ATTRIBUTES, Outcome.ERROR, 12.3);
+    record(SERVICE_ATTRIBUTES, Outcome.FAULT, 250);
+    record(SERVICE_ATTRIBUTES, Outcome.OK, 4);
+    record(SERVICE_ATTRIBUTES, Outcome.OK, 0);
+    record(DEPENDENCY_ATTRIBUTES, Outcome.OK, 1);
+    record(DEPENDENCY_ATTRIBUTES, Outcome.OK, 3.75);
+    clock.advance(Duration.ofSeconds(60));
+
+    Map<String, Map<String, MetricData>> metrics = collectByScope();
+    for (String name :
+        new String[] {
+          AwsSpanMetricsProcessorBuilder.ERROR,
+          AwsSpanMetricsProcessorBuilder.FAULT,
+          AwsSpanMetricsProcessorBuilder.LATENCY
+        }) {
+      MetricData expected = metrics.get(SDK_SCOPE).get(name);
+      MetricData actual = metrics.get(AGGREGATOR_SCOPE).get(name);
+      assertThat(actual.getUnit()).isEqualTo(expected.getUnit());
+      assertThat(actual.getExponentialHistogramData().getAggregationTemporality())
+          .isEqualTo(AggregationTemporality.DELTA);
+      for (Attributes attributes : new Attributes[] {SERVICE_ATTRIBUTES, DEPENDENCY_ATTRIBUTES}) {
+        assertSamePoint(point(actual, attributes), point(expected, attributes));
+      }
+    }
+  }
+
+  @Test
+  public void testResetsAfterCollection() {
+    aggregator.record(SERVICE_ATTRIBUTES, Outcome.ERROR, 10);
+    assertThat(aggregator.produce(Resource.empty())).hasSize(3);
+    assertThat(aggregator.produce(Resource.empty())).isEmpty();
+
+    aggregator.record(SERVICE_ATTRIBUTES, Outcome.OK, 20);
+    Collection<MetricData> metrics = aggregator.produce(Resource.empty());
+    assertThat(metrics).hasSize(3);
+    for (MetricData metric : metrics) {
+      assertThat(point(metric, SERVICE_ATTRIBUTES).getCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testOverflowBeyondMaxCells() {
+    for (int i = 0; i < 5; i++) {
+      aggregator.record(Attributes.of(AttributeKey.stringKey("key"), "value" + i), Outcome.OK, 1);
+    }
+    Attributes overflow = Attributes.of(AttributeKey.booleanKey("otel.metric.overflow"), true);
+    for (MetricData metric : aggregator.produce(Resource.empty())) {
+      assertThat(metric.getExponentialHistogramData().getPoints()).hasSize(4);
+      assertThat(point(metric, overflow).getCount()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void testOverflowsOnlyBeyondMaxCells() {
+    for (int i = 0; i < 3; i++) {
+      aggregator.record(Attributes.of(AttributeKey.stringKey("key"), "value" + i), Outcome.OK, 1);
+    }
+    Attributes overflow = Attributes.of(AttributeKey.booleanKey("otel.metric.overflow"), true);
+    for (MetricData metric : aggregator.produce(Resource.empty())) {
+      assertThat(metric.getExponentialHistogramData().getPoints())
+          .hasSize(3)
+          .noneMatch(point -> point.getAttributes().equals(overflow));
+    }
+
+    aggregator.record(Attributes.of(AttributeKey.stringKey("key"), "value3"), Outcome.OK, 1);
+    for (MetricData metric : aggregator.produce(Resource.empty())) {
+      assertThat(metric.getExponentialHistogramData().getPoints()).hasSize(1);
+      assertThat(point(metric, overflow).getCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testEvictsCellsIdleForACollection() {
+    Attributes overflow = Attributes.of(AttributeKey.booleanKey("otel.metric.overflow"), true);
+    for (int i = 0; i < 5; i++) {
+      aggregator.record(Attributes.of(AttributeKey.stringKey("key"), "value" + i), Outcome.OK, 1);
+    }
+    assertThat(aggregator.produce(Resource.empty())).hasSize(3);
+    assertThat(aggregator.cellCount()).isEqualTo(4);
+
+    // Only the cell recorded since the previous collection is kept
+    aggregator.record(SERVICE_ATTRIBUTES, Outcome.OK, 1);
+    assertThat(aggregator.cellCount()).isEqualTo(4);
+    aggregator.produce(Resource.empty());
+    assertThat(aggregator.produce(Resource.empty())).isEmpty();
+    assertThat(aggregator.cellCount()).isEqualTo(0);
+
+    // New attribute sets get cells of their own again
+    for (int i = 5; i < 8; i++) {
+      aggregator.record(Attributes.of(AttributeKey.stringKey("key"), "value" + i), Outcome.OK, 1);
+    }
+    for (MetricData metric : aggregator.produce(Resource.empty())) {
+      assertThat(metric.getExponentialHistogramData().getPoints())
+          .hasSize(3)
+          .noneMatch(point -> point.getAttributes().equals(overflow));
+    }
+  }
+
+  @Test
+  public void testKeepsCellsRecordedEveryCollection() {
+    for (int i = 0; i < 10; i++) {
+      aggregator.record(SERVICE_ATTRIBUTES, Outcome.OK, i);
+      for (MetricData metric : aggregator.produce(Resource.empty())) {
+        assertThat(point(metric, SERVICE_ATTRIBUTES).getCount()).isEqualTo(1);
+      }
+      assertThat(aggregator.cellCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testPerThreadBuffersEvictCellsIdleForACollection() {
+    RedMetricsAggregator buffered = RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, 3, true);
+    buffered.record(SERVICE_ATTRIBUTES, Outcome.OK, 1);
+    assertThat(buffered.produce(Resource.empty())).hasSize(3);
+    assertThat(buffered.produce(Resource.empty())).isEmpty();
+    assertThat(buffered.cellCount()).isEqualTo(0);
+
+    // Measurements buffered for the evicted cell are moved to a new one
+    buffered.record(SERVICE_ATTRIBUTES, Outcome.ERROR, 2);
+    for (MetricData metric : buffered.produce(Resource.empty())) {
+      assertThat(point(metric, SERVICE_ATTRIBUTES).getCount()).isEqualTo(1);
+    }
+    assertThat(buffered.cellCount()).isEqualTo(1);
+
+    for (int i = 0; i < 3; i++) {
+      buffered.record(SERVICE_ATTRIBUTES, Outcome.OK, 3);
+      for (MetricData metric : buffered.produce(Resource.empty())) {
+        assertThat(point(metric, SERVICE_ATTRIBUTES).getCount()).isEqualTo(1);
+      }
+      assertThat(buffered.cellCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testPerThreadBuffersMatchSharedRecording() throws InterruptedException {
+    RedMetricsAggregator shared = RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, 3, false);
+    RedMetricsAggregator buffered = RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, 3, true);
+    Attributes[] attributes = {SERVICE_ATTRIBUTES, DEPENDENCY_ATTRIBUTES};
+    Outcome[] outcomes = Outcome.values();
+    for (int round = 0; round < 2; round++) {
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+        long seed = round * threads.length + t;
+        threads[t] =
+            new Thread(
+                () -> {
+                  Random random = new Random(seed);
+                  for (int i = 0; i < 1000; i++) {
+                    Attributes attrs = attributes[random.nextInt(attributes.length)];
+                    Outcome outcome = outcomes[random.nextInt(outcomes.length)];
+                    // Latencies from sub-microsecond to minutes, so buffers grow in both directions
+                    double latency =
+                        random.nextInt(10) == 0 ? 0 : Math.pow(10, random.nextDouble() * 11 - 4);
+                    shared.record(attrs, outcome, latency);
+                    buffered.record(attrs, outcome, latency);
+                  }
+                });
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      clock.advance(Duration.ofSeconds(60));
+
+      Map<String, MetricData> expected = byName(shared.produce(Resource.empty()));
+      Map<String, MetricData> actual = byName(buffered.produce(Resource.empty()));
+      assertThat(actual.keySet()).isEqualTo(expected.keySet()).hasSize(3);
+      for (Map.Entry<String, MetricData> entry : expected.entrySet()) {
+        for (Attributes attrs : attributes) {
+          // Sums are added up in a different order, so they may differ in the last bits
+          ExponentialHistogramPointData expectedPoint = point(entry.getValue(), attrs);
+          assertSamePoint(
+              point(actual.get(entry.getKey()), attrs),
+              expectedPoint,
+              within(Math.ulp(expectedPoint.getSum()) * 64));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPerThreadBuffersLoseNothingWhileCollecting() throws InterruptedException {
+    RedMetricsAggregator buffered = RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, 3, true);
+    Thread[] threads = new Thread[4];
+    int recordsPerThread = 200_000;
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] =
+          new Thread(
+              () -> {
+                for (int i = 0; i < recordsPerThread; i++) {
+                  buffered.record(SERVICE_ATTRIBUTES, Outcome.OK, 1);
+                }
+              });
+      threads[t].start();
+    }
+    long count = 0;
+    boolean recording = true;
+    while (recording) {
+      recording = false;
+      for (Thread thread : threads) {
+        recording |= thread.isAlive();
+      }
+      for (MetricData metric : buffered.produce(Resource.empty())) {
+        if (metric.getName().equals(AwsSpanMetricsProcessorBuilder.LATENCY)) {
+          count += point(metric, SERVICE_ATTRIBUTES).getCount();
+        }
+      }
+    }
+    assertThat(count).isEqualTo((long) threads.length * recordsPerThread);
+  }
+
+  @Test
+  public void testDrainsBuffersOfTerminatedThreads() throws InterruptedException {
+    RedMetricsAggregator buffered = RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, 3, true);
+    Thread thread = new Thread(() -> buffered.record(SERVICE_ATTRIBUTES, Outcome.FAULT, 7));
+    thread.start();
+    thread.join();
+    assertThat(buffered.threadBufferCount()).isEqualTo(1);
+
+    Collection<MetricData> metrics = buffered.produce(Resource.empty());
+    assertThat(metrics).hasSize(3);
+    for (MetricData metric : metrics) {
+      assertThat(point(metric, SERVICE_ATTRIBUTES).getCount()).isEqualTo(1);
+    }
+    assertThat(buffered.threadBufferCount()).isZero();
+    assertThat(buffered.produce(Resource.empty())).isEmpty();
+  }
+
+  @Test
+  public void testPerThreadBuffersKeepRecordingAcrossCollections() {
+    RedMetricsAggregator buffered = RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, 3, true);
+    buffered.record(SERVICE_ATTRIBUTES, Outcome.ERROR, 10);
+    assertThat(buffered.produce(Resource.empty())).hasSize(3);
+    assertThat(buffered.produce(Resource.empty())).isEmpty();
+    // The running thread keeps its buffer
+    assertThat(buffered.threadBufferCount()).isEqualTo(1);
+
+    buffered.record(SERVICE_ATTRIBUTES, Outcome.OK, 20);
+    buffered.record(SERVICE_ATTRIBUTES, Outcome.OK, 30);
+    for (MetricData metric : buffered.produce(Resource.empty())) {
+      ExponentialHistogramPointData point = point(metric, SERVICE_ATTRIBUTES);
+      assertThat(point.getCount()).isEqualTo(2);
+      if (metric.getName().equals(AwsSpanMetricsProcessorBuilder.LATENCY)) {
+        assertThat(point.getSum()).isEqualTo(50);
+        assertThat(point.getMin()).isEqualTo(20);
+        assertThat(point.getMax()).isEqualTo(30);
+      }
+    }
+  }
+
+  @Test
+  public void testPerThreadBuffersOverflowBeyondMaxCells() {
+    RedMetricsAggregator buffered = RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, 3, true);
+    for (int i = 0; i < 5; i++) {
+      buffered.record(Attributes.of(AttributeKey.stringKey("key"), "value" + i), Outcome.OK, 1);
+    }
+    Attributes overflow = Attributes.of(AttributeKey.booleanKey("otel.metric.overflow"), true);
+    for (MetricData metric : buffered.produce(Resource.empty())) {
+      assertThat(metric.getExponentialHistogramData().getPoints()).hasSize(4);
+      assertThat(point(metric, overflow).getCount()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void testRecordsDirectlyBeyondMaxBufferedCells() {
+    int cellCount = RedMetricsAggregator.MAX_BUFFERED_CELLS + 10;
+    RedMetricsAggregator buffered =
+        RedMetricsAggregator.create(AGGREGATOR_SCOPE, clock, cellCount, true);
+    for (int i = 0; i < cellCount; i++) {
+      buffered.record(Attributes.of(AttributeKey.stringKey("key"), "value" + i), Outcome.OK, i);
+    }
+    for (MetricData metric : buffered.produce(Resource.empty())) {
+      assertThat(metric.getExponentialHistogramData().getPoints()).hasSize(cellCount);
+    }
+  }
+
+  private static Map<String, MetricData> byName(Collection<MetricData> metrics) {
+    Map<String, MetricData> byName = new HashMap<>();
+    for (MetricData metric : metrics) {
+      byName.put(metric.getName(), metric);
+    }
+    return byName;
+  }
+
+  private void record(Attributes attributes, Outcome outcome, double latencyMillis) {
+    aggregator.record(attributes, outcome, latencyMillis);
+    errorHistogram.record(outcome == Outcome.ERROR ? 1 : 0, attributes);
+    faultHistogram.record(outcome == Outcome.FAULT ? 1 : 0, attributes);
+    latencyHistogram.record(latencyMillis, attributes);
+  }
+
+  private Map<String, Map<String, MetricData>> collectByScope() {
+    Map<String, Map<String, MetricData>> metrics = new HashMap<>();
+    for (MetricData metric : reader.collectAllMetrics()) {
+      metrics
+          .computeIfAbsent(
+              metric.getInstrumentationScopeInfo().getName(), unused -> new HashMap<>())
+          .put(metric.getName(), metric);
+    }
+    return metrics;
+  }
+
+  private static ExponentialHistogramPointData point(MetricData metric, Attributes attributes) {
+    return metric.getExponentialHistogramData().getPoints().stream()
+        .filter(point -> point.getAttributes().equals(attributes))
+        .findFirst()
+        .orElseThrow(AssertionError::new);
+  }
+
+  private static void assertSamePoint(
+      ExponentialHistogramPointData actual, ExponentialHistogramPointData expected) {
+    assertSamePoint(actual, expected, within(0.0));
+  }
+
+  private static void assertSamePoint(
+      ExponentialHistogramPointData actual,
+      ExponentialHistogramPointData expected,
+      Offset<Double> sumOffset) {
+    assertThat(actual.getCount()).isEqualTo(expected.getCount());
+    assertThat(actual.getSum()).isCloseTo(expected.getSum(), sumOffset);
+    assertThat(actual.getMin()).isEqualTo(expected.getMin());
+    assertThat(actual.getMax()).isEqualTo(expected.getMax());
+    assertThat(actual.getZeroCount()).isEqualTo(expected.getZeroCount());
+    // Latencies are bucketed at a fixed scale, so narrow distributions that the SDK keeps at a
+    // finer scale are compared after downscaling the SDK buckets to the same scale.
+    assertThat(actual.getScale()).isLessThanOrEqualTo(expected.getScale());
+    int shift = expected.getScale() - actual.getScale();
+    if (shift > 0) {
+      assertThat(actual.getScale()).isEqualTo(ConcurrentExponentialHistogram.SCALE);
+    }
+    int expectedOffset = expected.getPositiveBuckets().getOffset();
+    Map<Integer, Long> expectedCounts = new TreeMap<>();
+    List<Long> counts = expected.getPositiveBuckets().getBucketCounts();
+    for (int i = 0; i < counts.size(); i++) {
+      if (counts.get(i) != 0) {
+        expectedCounts.merge((expectedOffset + i) >> shift, counts.get(i), Long::sum);
+      }
+    }
+    Map<Integer, Long> actualCounts = new TreeMap<>();
+    int actualOffset = actual.getPositiveBuckets().getOffset();
+    counts = actual.getPositiveBuckets().getBucketCounts();
+    for (int i = 0; i < counts.size(); i++) {
+      if (counts.get(i) != 0) {
+        actualCounts.put(actualOffset + i, counts.get(i));
+      }
+    }
+    assertThat(actualCounts).isEqualTo(expectedCounts);
+    assertThat(actual.getStartEpochNanos()).isEqualTo(expected.getStartEpochNanos());
+    assertThat(actual.getEpochNanos()).isEqualTo(expected.getEpochNanos());
+  }
+}
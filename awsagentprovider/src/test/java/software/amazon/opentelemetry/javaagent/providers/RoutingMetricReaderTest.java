@@ -0,0 +1,270 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricExporter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link RoutingMetricReader}. */
+class RoutingMetricReaderTest {
+  private static final String JMX_SCOPE = "io.opentelemetry.jmx";
+  private static final String OTHER_SCOPE = "io.test.other";
+  private static final Duration INTERVAL = Duration.ofMinutes(1);
+  private static final Attributes ATTRIBUTES = Attributes.of(AttributeKey.stringKey("key"), "v");
+
+  private ScheduledExecutorService scheduler;
+  private SdkMeterProvider meterProvider;
+
+  @BeforeEach
+  public void setUp() {
+    scheduler = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    if (meterProvider != null) {
+      meterProvider.close();
+    }
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void testCollectsOnceForAllExporters() {
+    InMemoryMetricExporter allScopes = InMemoryMetricExporter.create(AggregationTemporality.DELTA);
+    InMemoryMetricExporter jmxScope = InMemoryMetricExporter.create(AggregationTemporality.DELTA);
+    RoutingMetricReader reader = RoutingMetricReader.create(INTERVAL, scheduler);
+    assertThat(reader.tryAddRoute(allScopes, scopes(JMX_SCOPE, OTHER_SCOPE), INTERVAL.toNanos()))
+        .isTrue();
+    assertThat(reader.tryAddRoute(jmxScope, scopes(JMX_SCOPE), INTERVAL.toNanos())).isTrue();
+    meterProvider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+
+    AtomicInteger callbacks = new AtomicInteger();
+    meterProvider
+        .get(JMX_SCOPE)
+        .gaugeBuilder("gauge")
+        .buildWithCallback(
+            gauge -> {
+              callbacks.incrementAndGet();
+              gauge.record(1, ATTRIBUTES);
+            });
+    LongCounter counter = meterProvider.get(JMX_SCOPE).counterBuilder("counter").build();
+    meterProvider.get(OTHER_SCOPE).counterBuilder("other").build().add(1, ATTRIBUTES);
+
+    counter.add(3, ATTRIBUTES);
+    assertThat(reader.forceFlush().isSuccess()).isTrue();
+    assertThat(callbacks).hasValue(1);
+    assertThat(names(allScopes.getFinishedMetricItems()))
+        .containsExactlyInAnyOrder("gauge", "counter", "other");
+    assertThat(names(jmxScope.getFinishedMetricItems()))
+        .containsExactlyInAnyOrder("gauge", "counter");
+    assertThat(counterPoint(allScopes).getValue()).isEqualTo(3);
+    assertThat(counterPoint(jmxScope).getValue()).isEqualTo(3);
+
+    allScopes.reset();
+    jmxScope.reset();
+    counter.add(4, ATTRIBUTES);
+    reader.forceFlush();
+    assertThat(callbacks).hasValue(2);
+    assertThat(counterPoint(allScopes).getValue()).isEqualTo(4);
+    assertThat(counterPoint(jmxScope).getValue()).isEqualTo(4);
+  }
+
+  @Test
+  public void testIsolatesBusyExporter() {
+    InMemoryMetricExporter fastExporter =
+        InMemoryMetricExporter.create(AggregationTemporality.DELTA);
+    StuckExporter stuckExporter = new StuckExporter();
+    RoutingMetricReader reader = RoutingMetricReader.create(INTERVAL, scheduler);
+    reader.tryAddRoute(stuckExporter, scopes(JMX_SCOPE), INTERVAL.toNanos());
+    reader.tryAddRoute(fastExporter, scopes(JMX_SCOPE), INTERVAL.toNanos());
+    meterProvider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+    LongCounter counter = meterProvider.get(JMX_SCOPE).counterBuilder("counter").build();
+
+    for (int i = 1; i <= 3; i++) {
+      counter.add(i, ATTRIBUTES);
+      reader.forceFlush();
+      assertThat(counterPoint(fastExporter).getValue()).isEqualTo(i);
+      fastExporter.reset();
+    }
+    assertThat(stuckExporter.exports).hasValue(1);
+    stuckExporter.pending.succeed();
+  }
+
+  @Test
+  public void testCarriesOverMetricsOfBusyAndFailedExports() {
+    StuckExporter stuckExporter = new StuckExporter();
+    RoutingMetricReader reader = RoutingMetricReader.create(INTERVAL, scheduler);
+    reader.tryAddRoute(stuckExporter, scopes(JMX_SCOPE), INTERVAL.toNanos());
+    meterProvider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+    LongCounter counter = meterProvider.get(JMX_SCOPE).counterBuilder("counter").build();
+
+    for (int i = 1; i <= 3; i++) {
+      counter.add(i, ATTRIBUTES);
+      reader.forceFlush();
+    }
+    assertThat(stuckExporter.exports).hasValue(1);
+    stuckExporter.pending.fail();
+    counter.add(4, ATTRIBUTES);
+    reader.forceFlush();
+
+    assertThat(stuckExporter.exports).hasValue(2);
+    assertThat(stuckExporter.lastExported).hasSize(1);
+    MetricData counterData = stuckExporter.lastExported.iterator().next();
+    assertThat(counterData.getLongSumData().getPoints())
+        .singleElement()
+        .satisfies(point -> assertThat(point.getValue()).isEqualTo(10));
+  }
+
+  @Test
+  public void testCarriesOverOnlyUnexportedMetricsOfPartialFailure() {
+    StuckExporter stuckExporter = new StuckExporter();
+    RoutingMetricReader reader = RoutingMetricReader.create(INTERVAL, scheduler);
+    reader.tryAddRoute(stuckExporter, scopes(JMX_SCOPE), INTERVAL.toNanos());
+    meterProvider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+    LongCounter counter = meterProvider.get(JMX_SCOPE).counterBuilder("counter").build();
+    LongCounter other = meterProvider.get(JMX_SCOPE).counterBuilder("other").build();
+
+    counter.add(1, ATTRIBUTES);
+    other.add(2, ATTRIBUTES);
+    reader.forceFlush();
+    List<MetricData> unexported = new ArrayList<>();
+    for (MetricData metric : stuckExporter.lastExported) {
+      if (metric.getName().equals("counter")) {
+        unexported.add(metric);
+      }
+    }
+    stuckExporter.pending.failExceptionally(new PartialExportException(1, 2, unexported));
+    counter.add(3, ATTRIBUTES);
+    other.add(4, ATTRIBUTES);
+    reader.forceFlush();
+
+    assertThat(stuckExporter.exports).hasValue(2);
+    assertThat(sumValue(stuckExporter.lastExported, "counter")).isEqualTo(4);
+    assertThat(sumValue(stuckExporter.lastExported, "other")).isEqualTo(4);
+  }
+
+  @Test
+  public void testRejectsIncompatibleRoutes() {
+    RoutingMetricReader reader = RoutingMetricReader.create(INTERVAL, scheduler);
+    MetricExporter delta = InMemoryMetricExporter.create(AggregationTemporality.DELTA);
+    MetricExporter cumulative = InMemoryMetricExporter.create(AggregationTemporality.CUMULATIVE);
+    MetricExporter otherAggregation =
+        new StuckExporter() {
+          @Override
+          public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+            return Aggregation.base2ExponentialBucketHistogram();
+          }
+        };
+
+    assertThat(reader.tryAddRoute(delta, scopes(JMX_SCOPE), INTERVAL.toNanos())).isTrue();
+    assertThat(reader.tryAddRoute(new StuckExporter(), scopes(JMX_SCOPE), INTERVAL.toNanos()))
+        .isTrue();
+    // A cumulative exporter would be served from the delta storage of the others
+    assertThat(reader.tryAddRoute(cumulative, scopes(JMX_SCOPE), INTERVAL.toNanos())).isFalse();
+    assertThat(reader.tryAddRoute(otherAggregation, scopes(JMX_SCOPE), INTERVAL.toNanos()))
+        .isFalse();
+    assertThat(reader.tryAddRoute(delta, scopes(JMX_SCOPE), Duration.ofSeconds(10).toNanos()))
+        .isFalse();
+
+    meterProvider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+    // Routes cannot be added once the reader is registered
+    assertThat(reader.tryAddRoute(delta, scopes(OTHER_SCOPE), INTERVAL.toNanos())).isFalse();
+  }
+
+  private static Set<String> scopes(String... names) {
+    Set<String> scopes = new HashSet<>();
+    Collections.addAll(scopes, names);
+    return scopes;
+  }
+
+  private static List<String> names(Collection<MetricData> metrics) {
+    List<String> names = new ArrayList<>();
+    for (MetricData metric : metrics) {
+      names.add(metric.getName());
+    }
+    return names;
+  }
+
+  private static LongPointData counterPoint(InMemoryMetricExporter exporter) {
+    return exporter.getFinishedMetricItems().stream()
+        .filter(metric -> metric.getName().equals("counter"))
+        .flatMap(metric -> metric.getLongSumData().getPoints().stream())
+        .findFirst()
+        .orElseThrow(AssertionError::new);
+  }
+
+  private static long sumValue(Collection<MetricData> metrics, String name) {
+    return metrics.stream()
+        .filter(metric -> metric.getName().equals(name))
+        .flatMap(metric -> metric.getLongSumData().getPoints().stream())
+        .mapToLong(LongPointData::getValue)
+        .sum();
+  }
+
+  // Completes its exports once pending is completed
+  private static class StuckExporter implements MetricExporter {
+    private final AtomicInteger exports = new AtomicInteger();
+    private final CompletableResultCode pending = new CompletableResultCode();
+    private volatile Collection<MetricData> lastExported = Collections.emptyList();
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      exports.incrementAndGet();
+      lastExported = metrics;
+      return pending;
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return AggregationTemporality.DELTA;
+    }
+  }
+}
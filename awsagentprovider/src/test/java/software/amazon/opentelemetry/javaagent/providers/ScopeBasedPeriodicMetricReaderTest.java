@@ -17,15 +17,20 @@ package software.amazon.opentelemetry.javaagent.providers;
 
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
 import io.opentelemetry.sdk.metrics.data.MetricData;
 import io.opentelemetry.sdk.metrics.export.CollectionRegistration;
 import io.opentelemetry.sdk.metrics.export.MetricExporter;
 import io.opentelemetry.sdk.metrics.internal.data.ImmutableGaugeData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableLongPointData;
 import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableSumData;
 import io.opentelemetry.sdk.resources.Resource;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -103,6 +108,72 @@ class ScopeBasedPeriodicMetricReaderTest {
     assertTrue(result.isSuccess());
   }
 
+  @Test
+  public void testDropsDeltaOfFailedExportByDefault() {
+    Mockito.when(metricExporter.export(Mockito.anyCollection()))
+        .thenReturn(CompletableResultCode.ofFailure())
+        .thenReturn(CompletableResultCode.ofSuccess());
+    Mockito.when(collectionRegistration.collectAllMetrics())
+        .thenReturn(Collections.singletonList(getDeltaSum(0, 1, 5)))
+        .thenReturn(Collections.singletonList(getDeltaSum(1, 2, 3)));
+
+    reader.forceFlush();
+    reader.forceFlush();
+
+    Mockito.verify(metricExporter)
+        .export(
+            Mockito.argThat(
+                metrics ->
+                    metrics.iterator().next().getLongSumData().getPoints().stream()
+                        .allMatch(point -> point.getValue() == 3)));
+  }
+
+  @Test
+  public void testCarriesOverDeltaOfFailedExport() {
+    reader =
+        ScopeBasedPeriodicMetricReader.create(
+                metricExporter, Collections.singleton("io.test.retained"))
+            .setInterval(60, TimeUnit.SECONDS)
+            .setMaxCarriedOverPoints(DeltaCarryOverBuffer.DEFAULT_MAX_POINTS)
+            .build();
+    reader.register(collectionRegistration);
+    Mockito.when(metricExporter.export(Mockito.anyCollection()))
+        .thenReturn(CompletableResultCode.ofFailure())
+        .thenReturn(CompletableResultCode.ofSuccess());
+    Mockito.when(collectionRegistration.collectAllMetrics())
+        .thenReturn(Collections.singletonList(getDeltaSum(0, 1, 5)))
+        .thenReturn(Collections.singletonList(getDeltaSum(1, 2, 3)));
+
+    reader.forceFlush();
+    CompletableResultCode result = reader.forceFlush();
+
+    Mockito.verify(metricExporter)
+        .export(
+            Mockito.argThat(
+                metrics ->
+                    metrics.size() == 1
+                        && metrics.iterator().next().getLongSumData().getPoints().stream()
+                            .allMatch(
+                                point ->
+                                    point.getValue() == 8 && point.getStartEpochNanos() == 0)));
+    assertTrue(result.isSuccess());
+  }
+
+  private static MetricData getDeltaSum(long startEpochNanos, long epochNanos, long value) {
+    return ImmutableMetricData.createLongSum(
+        Resource.empty(),
+        InstrumentationScopeInfo.create("io.test.retained"),
+        "sum",
+        "",
+        "1",
+        ImmutableSumData.create(
+            true,
+            AggregationTemporality.DELTA,
+            Collections.singletonList(
+                ImmutableLongPointData.create(
+                    startEpochNanos, epochNanos, Attributes.empty(), value))));
+  }
+
   private static MetricData getMetricData(String instrumentationScope) {
     return ImmutableMetricData.createDoubleGauge(
         Resource.empty(),
@@ -0,0 +1,363 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.CollectionRegistration;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableGaugeData;
+import io.opentelemetry.sdk.metrics.internal.data.ImmutableMetricData;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.testing.time.TestClock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Unit tests for {@link ScopedMetricCollector}. */
+class ScopedMetricCollectorTest {
+  private static final String RETAINED = "io.test.retained";
+  private static final String DROPPED = "io.test.dropped";
+  private static final Set<String> SCOPE_NAMES = Collections.singleton(RETAINED);
+  private static final Attributes ATTRIBUTES = Attributes.of(AttributeKey.stringKey("key"), "v");
+
+  private final TestClock clock = TestClock.create();
+  private SdkMeterProvider meterProvider;
+
+  @AfterEach
+  public void tearDown() {
+    if (meterProvider != null) {
+      meterProvider.close();
+    }
+  }
+
+  @Test
+  public void testResolvesInternalsOfBundledSdk() {
+    for (MemoryMode memoryMode : MemoryMode.values()) {
+      CapturingReader reader = new CapturingReader(AggregationTemporality.DELTA, memoryMode);
+      SdkMeterProvider provider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+      assertThat(
+              ScopedMetricCollector.createScoped(reader.registration, SCOPE_NAMES, memoryMode)
+                  .isScoped())
+          .as("SDK internals used by ScopedMetricCollector changed, update its lookup")
+          .isTrue();
+      provider.close();
+    }
+  }
+
+  @Test
+  public void testCollectsOnlyRegisteredScopes() {
+    CapturingReader reader = new CapturingReader(AggregationTemporality.DELTA);
+    meterProvider = SdkMeterProvider.builder().setClock(clock).registerMetricReader(reader).build();
+    ScopedMetricCollector collector =
+        ScopedMetricCollector.createScoped(
+            reader.registration, SCOPE_NAMES, MemoryMode.IMMUTABLE_DATA);
+    assertThat(collector.isScoped()).isTrue();
+
+    meterProvider.get(RETAINED).counterBuilder("retained").build().add(1, ATTRIBUTES);
+    Meter dropped = meterProvider.get(DROPPED);
+    dropped.counterBuilder("dropped").build().add(1, ATTRIBUTES);
+    AtomicInteger callbacks = new AtomicInteger();
+    dropped.gaugeBuilder("gauge").buildWithCallback(unused -> callbacks.incrementAndGet());
+
+    Collection<MetricData> metrics = collector.collect();
+    assertThat(metrics).extracting(MetricData::getName).containsExactly("retained");
+    assertThat(callbacks).hasValue(0);
+  }
+
+  @Test
+  public void testDeltasAcrossCollections() {
+    CapturingReader reader = new CapturingReader(AggregationTemporality.DELTA);
+    InMemoryMetricReader otherReader = InMemoryMetricReader.createDelta();
+    meterProvider =
+        SdkMeterProvider.builder()
+            .setClock(clock)
+            .registerMetricReader(reader)
+            .registerMetricReader(otherReader)
+            .build();
+    ScopedMetricCollector collector =
+        ScopedMetricCollector.createScoped(
+            reader.registration, SCOPE_NAMES, MemoryMode.IMMUTABLE_DATA);
+    LongCounter retained = meterProvider.get(RETAINED).counterBuilder("retained").build();
+    LongCounter dropped = meterProvider.get(DROPPED).counterBuilder("dropped").build();
+
+    retained.add(3, ATTRIBUTES);
+    dropped.add(5, ATTRIBUTES);
+    clock.advance(Duration.ofSeconds(60));
+    LongPointData first = sumPoint(collector.collect(), "retained");
+    assertThat(first.getValue()).isEqualTo(3);
+
+    retained.add(4, ATTRIBUTES);
+    dropped.add(6, ATTRIBUTES);
+    clock.advance(Duration.ofSeconds(60));
+    LongPointData second = sumPoint(collector.collect(), "retained");
+    assertThat(second.getValue()).isEqualTo(4);
+    assertThat(second.getStartEpochNanos()).isEqualTo(first.getEpochNanos());
+
+    // Another reader of the same meters still sees every measurement of the unread scope
+    assertThat(sumPoint(otherReader.collectAllMetrics(), "dropped").getValue()).isEqualTo(11);
+    assertThat(sumPoint(otherReader.collectAllMetrics(), "retained")).isNull();
+  }
+
+  @Test
+  public void testReusesListWithReusableData() {
+    CapturingReader reader =
+        new CapturingReader(AggregationTemporality.DELTA, MemoryMode.REUSABLE_DATA);
+    meterProvider = SdkMeterProvider.builder().setClock(clock).registerMetricReader(reader).build();
+    LongCounter retained = meterProvider.get(RETAINED).counterBuilder("retained").build();
+    meterProvider.get(DROPPED).counterBuilder("dropped").build().add(1, ATTRIBUTES);
+
+    for (ScopedMetricCollector collector :
+        Arrays.asList(
+            ScopedMetricCollector.createScoped(
+                reader.registration, SCOPE_NAMES, MemoryMode.REUSABLE_DATA),
+            ScopedMetricCollector.createFiltering(
+                reader.registration, SCOPE_NAMES, MemoryMode.REUSABLE_DATA))) {
+      retained.add(3, ATTRIBUTES);
+      Collection<MetricData> first = collector.collect();
+      assertThat(sumPoint(first, "retained").getValue()).isEqualTo(3);
+
+      retained.add(4, ATTRIBUTES);
+      Collection<MetricData> second = collector.collect();
+      assertThat(second).isSameAs(first).hasSize(1);
+      assertThat(sumPoint(second, "retained").getValue()).isEqualTo(4);
+    }
+  }
+
+  @Test
+  public void testMatchesFilteredCollection() {
+    CapturingReader reader = new CapturingReader(AggregationTemporality.CUMULATIVE);
+    meterProvider =
+        SdkMeterProvider.builder()
+            .setClock(clock)
+            .registerMetricReader(reader)
+            .registerMetricProducer(
+                unused ->
+                    Arrays.asList(gauge(RETAINED, "producedRetained"), gauge(DROPPED, "produced")))
+            .build();
+    for (String scope : new String[] {RETAINED, DROPPED, "io.test.other"}) {
+      Meter meter = meterProvider.get(scope);
+      meter.counterBuilder("counter").build().add(2, ATTRIBUTES);
+      meter.histogramBuilder("histogram").build().record(1.5, ATTRIBUTES);
+      meter.gaugeBuilder("gauge").buildWithCallback(gauge -> gauge.record(7, ATTRIBUTES));
+    }
+    Set<String> scopeNames = new HashSet<>(Arrays.asList(RETAINED, "io.test.other"));
+    ScopedMetricCollector scoped =
+        ScopedMetricCollector.createScoped(
+            reader.registration, scopeNames, MemoryMode.IMMUTABLE_DATA);
+    ScopedMetricCollector filtering =
+        ScopedMetricCollector.createFiltering(
+            reader.registration, scopeNames, MemoryMode.IMMUTABLE_DATA);
+    assertThat(scoped.isScoped()).isTrue();
+    assertThat(filtering.isScoped()).isFalse();
+
+    clock.advance(Duration.ofSeconds(60));
+    Map<String, String> expected = byScopeAndName(filtering.collect());
+    assertThat(expected).hasSize(7);
+    assertThat(byScopeAndName(scoped.collect())).isEqualTo(expected);
+  }
+
+  @Test
+  public void testCollectsByScopeOnlyIfEnabledAndCumulative() {
+    CapturingReader cumulative = new CapturingReader(AggregationTemporality.CUMULATIVE);
+    CapturingReader delta = new CapturingReader(AggregationTemporality.DELTA);
+    meterProvider =
+        SdkMeterProvider.builder()
+            .registerMetricReader(cumulative)
+            .registerMetricReader(delta)
+            .build();
+
+    assertThat(
+            ScopedMetricCollector.create(cumulative.registration, SCOPE_NAMES, cumulative, true)
+                .isScoped())
+        .isTrue();
+    assertThat(
+            ScopedMetricCollector.create(cumulative.registration, SCOPE_NAMES, cumulative, false)
+                .isScoped())
+        .isFalse();
+    assertThat(
+            ScopedMetricCollector.create(delta.registration, SCOPE_NAMES, delta, true).isScoped())
+        .isFalse();
+  }
+
+  @Test
+  public void testResetsUnregisteredScopesWithDeltaTemporality() {
+    CapturingReader reader = new CapturingReader(AggregationTemporality.DELTA);
+    meterProvider = SdkMeterProvider.builder().setClock(clock).registerMetricReader(reader).build();
+    LongCounter dropped = meterProvider.get(DROPPED).counterBuilder("dropped").build();
+    CapturingHandler warnings = new CapturingHandler();
+    Logger sdkLogger = Logger.getLogger("io.opentelemetry.sdk.metrics");
+    sdkLogger.addHandler(warnings);
+    try {
+      // 10 intervals of 500 series each, which exceed the default cardinality limit of 2000 in
+      // total, unless the storage of the unregistered scope is reset by every collection
+      ScopedMetricCollector collector =
+          ScopedMetricCollector.create(reader.registration, SCOPE_NAMES, reader, true);
+      for (int interval = 0; interval < 10; interval++) {
+        for (int i = 0; i < 500; i++) {
+          dropped.add(1, Attributes.of(AttributeKey.stringKey("key"), interval + "-" + i));
+        }
+        clock.advance(Duration.ofSeconds(60));
+        assertThat(collector.collect()).isEmpty();
+      }
+      assertThat(warnings.messages).noneMatch(message -> message.contains("cardinality"));
+
+      // A scoped collector would leave the storage to fill up
+      ScopedMetricCollector scoped =
+          ScopedMetricCollector.createScoped(
+              reader.registration, SCOPE_NAMES, MemoryMode.IMMUTABLE_DATA);
+      for (int interval = 0; interval < 10; interval++) {
+        for (int i = 0; i < 500; i++) {
+          dropped.add(1, Attributes.of(AttributeKey.stringKey("key"), interval + "-" + i));
+        }
+        scoped.collect();
+      }
+      assertThat(warnings.messages).anyMatch(message -> message.contains("cardinality"));
+    } finally {
+      sdkLogger.removeHandler(warnings);
+    }
+  }
+
+  @Test
+  public void testFallsBackForOtherRegistrations() {
+    CollectionRegistration registration =
+        new CollectionRegistration() {
+          @Override
+          public Collection<MetricData> collectAllMetrics() {
+            return Arrays.asList(gauge(RETAINED, "retained"), gauge(DROPPED, "dropped"));
+          }
+        };
+    ScopedMetricCollector collector =
+        ScopedMetricCollector.createScoped(registration, SCOPE_NAMES, MemoryMode.IMMUTABLE_DATA);
+
+    assertThat(collector.isScoped()).isFalse();
+    assertThat(collector.collect()).extracting(MetricData::getName).containsExactly("retained");
+  }
+
+  private static LongPointData sumPoint(Collection<MetricData> metrics, String name) {
+    return metrics.stream()
+        .filter(metric -> metric.getName().equals(name))
+        .flatMap(metric -> metric.getLongSumData().getPoints().stream())
+        .findFirst()
+        .orElse(null);
+  }
+
+  // Metrics of separate collections are compared by their string form, which covers all their data
+  private static Map<String, String> byScopeAndName(Collection<MetricData> metrics) {
+    Map<String, String> byScopeAndName = new HashMap<>();
+    for (MetricData metric : metrics) {
+      byScopeAndName.put(
+          metric.getInstrumentationScopeInfo().getName() + "/" + metric.getName(),
+          metric.toString());
+    }
+    assertThat(byScopeAndName).hasSize(metrics.size());
+    return byScopeAndName;
+  }
+
+  private static MetricData gauge(String scope, String name) {
+    return ImmutableMetricData.createDoubleGauge(
+        Resource.empty(),
+        InstrumentationScopeInfo.create(scope),
+        name,
+        "",
+        "1",
+        ImmutableGaugeData.empty());
+  }
+
+  private static final class CapturingHandler extends Handler {
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(LogRecord record) {
+      if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+        messages.add(record.getMessage());
+      }
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+
+  private static final class CapturingReader implements MetricReader {
+    private final AggregationTemporality temporality;
+    private final MemoryMode memoryMode;
+    private CollectionRegistration registration;
+
+    CapturingReader(AggregationTemporality temporality) {
+      this(temporality, MemoryMode.IMMUTABLE_DATA);
+    }
+
+    CapturingReader(AggregationTemporality temporality, MemoryMode memoryMode) {
+      this.temporality = temporality;
+      this.memoryMode = memoryMode;
+    }
+
+    @Override
+    public void register(CollectionRegistration registration) {
+      this.registration = registration;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return temporality;
+    }
+
+    @Override
+    public MemoryMode getMemoryMode() {
+      return memoryMode;
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
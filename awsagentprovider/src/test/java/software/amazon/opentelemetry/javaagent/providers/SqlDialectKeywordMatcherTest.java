@@ -0,0 +1,129 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.MAX_KEYWORD_LENGTH;
+import static software.amazon.opentelemetry.javaagent.providers.AwsSpanProcessingUtil.getDialectKeywords;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+public class SqlDialectKeywordMatcherTest {
+
+  private static final List<String> KEYWORDS = getDialectKeywords();
+  private static final Pattern SQL_DIALECT_PATTERN =
+      Pattern.compile("^(?:" + String.join("|", KEYWORDS) + ")\\b");
+  private static final SqlDialectKeywordMatcher MATCHER =
+      SqlDialectKeywordMatcher.create(KEYWORDS, MAX_KEYWORD_LENGTH);
+
+  private static final List<String> SUFFIXES =
+      Arrays.asList("", " ", " x", "\n", "(", ";", "_", "x", "X", "1", "-", "\u00e9", "\u017f");
+  private static final List<String> PREFIXES =
+      Arrays.asList("", " ", " \t\n\r\f\u000b", " ", "/* c */ ", "x");
+
+  @Test
+  public void testEveryKeywordMatchesLikeRegex() {
+    assertThat(KEYWORDS).isNotEmpty();
+    for (String keyword : KEYWORDS) {
+      for (String prefix : PREFIXES) {
+        for (String suffix : SUFFIXES) {
+          assertParity(prefix + keyword + suffix);
+          assertParity(prefix + keyword.toLowerCase(Locale.ROOT) + suffix);
+          assertParity(prefix + keyword.substring(0, keyword.length() - 1) + suffix);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMatchReturnsKeywordInstance() {
+    String statement = "select * from table";
+    assertThat(MATCHER.match(statement)).isSameAs(MATCHER.match(new String(statement)));
+    assertThat(KEYWORDS).contains(MATCHER.match(statement));
+  }
+
+  @Test
+  public void testStatements() {
+    assertThat(MATCHER.match("SELECT DB statement")).isEqualTo("SELECT");
+    assertThat(MATCHER.match("  drop view DB statement")).isEqualTo("DROP VIEW");
+    assertThat(MATCHER.match("insert into select x")).isEqualTo("INSERT INTO SELECT");
+    assertThat(MATCHER.match("invalid DB statement")).isNull();
+    assertThat(MATCHER.match("")).isNull();
+    // toUpperCase maps the long s to S
+    assertThat(MATCHER.match("\u017felect 1")).isEqualTo("SELECT");
+  }
+
+  @Test
+  public void testKeywordAtMaxLength() {
+    String keyword = "DATETIME_INTERVAL_PRECISION";
+    assertThat(keyword).hasSize(MAX_KEYWORD_LENGTH);
+    assertParity(keyword + "X");
+    assertParity("   " + keyword + "_SUFFIX");
+  }
+
+  @Test
+  public void testDottedCapitalILocale() {
+    Locale defaultLocale = Locale.getDefault();
+    try {
+      Locale.setDefault(new Locale("tr", "TR"));
+      assertParity("insert into t");
+      assertParity("INSERT INTO t");
+      assertParity("select 1");
+    } finally {
+      Locale.setDefault(defaultLocale);
+    }
+  }
+
+  @Test
+  public void testRandomizedParity() {
+    Random random = new Random(0);
+    String alphabet = "SELCTINRUPDAOWFGVKBsel ctinrupdaowf_-(;\t\n\u00e9\u017f\u0131\ufb01";
+    for (int i = 0; i < 50000; i++) {
+      StringBuilder sb = new StringBuilder();
+      if (random.nextBoolean()) {
+        sb.append(KEYWORDS.get(random.nextInt(KEYWORDS.size())));
+      }
+      int length = random.nextInt(12);
+      for (int j = 0; j < length; j++) {
+        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+      assertParity(sb.toString());
+    }
+  }
+
+  private static void assertParity(String statement) {
+    assertThat(MATCHER.match(statement)).as(statement).isEqualTo(matchWithRegex(statement));
+  }
+
+  // The db.statement remote operation derivation the matcher replaces
+  private static String matchWithRegex(String statement) {
+    String remoteOperation = statement.replaceFirst("^\\s+", "");
+    if (remoteOperation.length() > MAX_KEYWORD_LENGTH) {
+      remoteOperation = remoteOperation.substring(0, MAX_KEYWORD_LENGTH);
+    }
+    Matcher matcher = SQL_DIALECT_PATTERN.matcher(remoteOperation.toUpperCase());
+    if (matcher.find() && !matcher.group(0).isEmpty()) {
+      return matcher.group(0);
+    }
+    return null;
+  }
+}
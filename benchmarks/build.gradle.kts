@@ -0,0 +1,51 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+plugins {
+  java
+  id("me.champeau.jmh")
+}
+
+// Benchmarks live in the same packages as the classes under test, so that package-private
+// processors, exporters and generators can be measured directly. Run with:
+//   ./gradlew :benchmarks:jmh
+// or, for a subset of suites:
+//   ./gradlew :benchmarks:jmh -PjmhIncludes=AwsMetricAttributeGeneratorBenchmark
+dependencies {
+  jmh(project(":awsagentprovider"))
+  jmh(project(":awspropagator"))
+
+  // compileOnly dependencies of the providers, supplied by the agent at runtime
+  jmh("io.opentelemetry.javaagent:opentelemetry-javaagent-extension-api")
+  jmh("io.opentelemetry.semconv:opentelemetry-semconv:1.28.0-alpha")
+  jmh("io.opentelemetry:opentelemetry-sdk")
+  jmh("io.opentelemetry:opentelemetry-sdk-extension-autoconfigure-spi")
+  jmh("io.opentelemetry:opentelemetry-exporter-otlp-common")
+  jmh("io.opentelemetry:opentelemetry-sdk-testing")
+  jmh("com.google.code.findbugs:jsr305:3.0.2")
+}
+
+jmh {
+  jmhVersion.set("1.37")
+  fork.set(1)
+  warmupIterations.set(3)
+  iterations.set(5)
+  // Report allocation (B/op) alongside time (ns/op) for every benchmark
+  profilers.add("gc")
+  resultFormat.set("JSON")
+
+  findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
+  findProperty("jmhProfilers")?.let { profilers.add(it.toString()) }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.awspropagator;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapGetter;
+import io.opentelemetry.context.propagation.TextMapSetter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link AwsCompositePropagator} extracting each supported incoming format, and injecting
+ * into an outgoing request after that extraction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AwsCompositePropagatorBenchmark {
+
+  public enum Format {
+    XRAY,
+    W3C,
+    B3_MULTI
+  }
+
+  private static final String TRACE_ID = "5759e988bd862e3fe1be46a994272793";
+  private static final String SPAN_ID = "53995c3f42cd8ad8";
+
+  private static final TextMapGetter<Map<String, String>> GETTER =
+      new TextMapGetter<Map<String, String>>() {
+        @Override
+        public Iterable<String> keys(Map<String, String> carrier) {
+          return carrier.keySet();
+        }
+
+        @Override
+        public String get(Map<String, String> carrier, String key) {
+          return carrier == null ? null : carrier.get(key);
+        }
+      };
+
+  private static final TextMapSetter<Map<String, String>> SETTER = Map::put;
+
+  @Param public Format format;
+
+  @Param({"extracted", "aws"})
+  public String injecting;
+
+  private AwsCompositePropagator propagator;
+  private Map<String, String> incoming;
+  private Context extracted;
+  private Context outgoing;
+  private final Map<String, String> outgoingHeaders = new HashMap<>();
+
+  @Setup
+  public void setup() {
+    propagator =
+        "aws".equals(injecting)
+            ? AwsCompositePropagator.injectingAwsFormat()
+            : AwsCompositePropagator.injectingExtractedFormat();
+
+    incoming = new HashMap<>();
+    incoming.put("user-agent", "Mozilla/5.0 (X11; Linux x86_64) Chrome/120.0.0.0");
+    incoming.put("accept", "application/json");
+    switch (format) {
+      case XRAY:
+        incoming.put(
+            "X-Amzn-Trace-Id",
+            "Root=1-5759e988-bd862e3fe1be46a994272793;Parent=53995c3f42cd8ad8;Sampled=1");
+        break;
+      case W3C:
+        incoming.put("traceparent", "00-" + TRACE_ID + "-" + SPAN_ID + "-01");
+        incoming.put("tracestate", "rojo=00f067aa0ba902b7");
+        break;
+      case B3_MULTI:
+        incoming.put("X-B3-TraceId", TRACE_ID);
+        incoming.put("X-B3-SpanId", SPAN_ID);
+        incoming.put("X-B3-Sampled", "1");
+        break;
+    }
+    extracted = propagator.extract(Context.root(), incoming, GETTER);
+
+    // An outgoing request from a child span of the extracted context
+    outgoing =
+        extracted.with(
+            Span.wrap(
+                SpanContext.create(
+                    TRACE_ID,
+                    "0af7651916cd43dd",
+                    TraceFlags.getSampled(),
+                    TraceState.getDefault())));
+  }
+
+  @Benchmark
+  public Context extract() {
+    return propagator.extract(Context.root(), incoming, GETTER);
+  }
+
+  @Benchmark
+  public Map<String, String> inject() {
+    outgoingHeaders.clear();
+    propagator.inject(outgoing, outgoingHeaders, SETTER);
+    return outgoingHeaders;
+  }
+}
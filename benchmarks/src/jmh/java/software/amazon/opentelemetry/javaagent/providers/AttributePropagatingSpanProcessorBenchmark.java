@@ -0,0 +1,144 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import software.amazon.opentelemetry.javaagent.providers.SpanFixtures.AwsSdkResource;
+import software.amazon.opentelemetry.javaagent.providers.SpanFixtures.AwsSdkVersion;
+import software.amazon.opentelemetry.javaagent.providers.SpanFixtures.Shape;
+
+/**
+ * Measures {@link AttributePropagatingSpanProcessor#onStart} for the parent/child relationships it
+ * distinguishes. Spans are started once, without the processor, and onStart is then invoked on them
+ * directly so that only the processor's own work is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AttributePropagatingSpanProcessorBenchmark {
+
+  public enum Scenario {
+    // A server span continuing a remote trace
+    LOCAL_ROOT_SERVER,
+    // A client span directly under a server span
+    CHILD_OF_SERVER,
+    // A client span under an internal span, which propagates remote service and operation
+    CHILD_OF_INTERNAL,
+    // An HTTP client span under an AWS SDK span
+    CHILD_OF_AWS_SDK
+  }
+
+  @Param public Scenario scenario;
+
+  private final AttributePropagatingSpanProcessor processor =
+      AttributePropagatingSpanProcessorBuilder.create().build();
+
+  private SdkTracerProvider tracerProvider;
+  private Context parentContext;
+  private ReadWriteSpan span;
+
+  @Setup
+  public void setup() {
+    tracerProvider = SdkTracerProvider.builder().setResource(SpanFixtures.RESOURCE).build();
+    Tracer tracer = tracerProvider.get("benchmark");
+
+    Span server = SpanFixtures.shape(Shape.HTTP_SERVER).startSpan(tracer);
+    Span child;
+    switch (scenario) {
+      case LOCAL_ROOT_SERVER:
+        parentContext =
+            Context.root()
+                .with(
+                    Span.wrap(
+                        SpanContext.createFromRemoteParent(
+                            "67dd1a6f2e4b4c6d8e9f0a1b2c3d4e5f",
+                            "1a2b3c4d5e6f7a8b",
+                            TraceFlags.getSampled(),
+                            TraceState.getDefault())));
+        child = server;
+        break;
+      case CHILD_OF_SERVER:
+        parentContext = Context.root().with(server);
+        child = startClient(tracer, parentContext);
+        break;
+      case CHILD_OF_INTERNAL:
+        Span internal =
+            tracer
+                .spanBuilder("OwnerController.findOwner")
+                .setSpanKind(SpanKind.INTERNAL)
+                .setParent(Context.root().with(server))
+                .setAttribute(AwsAttributeKeys.AWS_REMOTE_SERVICE, "customers-service")
+                .setAttribute(AwsAttributeKeys.AWS_REMOTE_OPERATION, "GET /owners")
+                .startSpan();
+        parentContext = Context.root().with(internal);
+        child = startClient(tracer, parentContext);
+        break;
+      case CHILD_OF_AWS_SDK:
+        Span sdk =
+            tracer
+                .spanBuilder("S3.GetObject")
+                .setSpanKind(SpanKind.CLIENT)
+                .setParent(Context.root().with(server))
+                .setAllAttributes(
+                    SpanFixtures.awsSdk(AwsSdkVersion.V2, AwsSdkResource.S3_BUCKET).attributes)
+                .startSpan();
+        parentContext = Context.root().with(sdk);
+        child = startClient(tracer, parentContext);
+        break;
+      default:
+        throw new IllegalStateException(scenario.name());
+    }
+    span = (ReadWriteSpan) child;
+  }
+
+  private static Span startClient(Tracer tracer, Context parentContext) {
+    return tracer
+        .spanBuilder("GET")
+        .setSpanKind(SpanKind.CLIENT)
+        .setParent(parentContext)
+        .setAllAttributes(SpanFixtures.shape(Shape.HTTP_CLIENT).attributes)
+        .startSpan();
+  }
+
+  @TearDown
+  public void tearDown() {
+    tracerProvider.close();
+  }
+
+  @Benchmark
+  public ReadWriteSpan onStart() {
+    processor.onStart(parentContext, span);
+    return span;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import software.amazon.opentelemetry.javaagent.providers.SpanFixtures.AwsSdkResource;
+import software.amazon.opentelemetry.javaagent.providers.SpanFixtures.AwsSdkVersion;
+import software.amazon.opentelemetry.javaagent.providers.SpanFixtures.Shape;
+
+/**
+ * Measures {@link AwsMetricAttributeGenerator#generateMetricAttributeMapFromSpan} for each branch
+ * of the generator: the non-AWS span shapes, and AWS SDK v1 and v2 calls for every resource key.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class AwsMetricAttributeGeneratorBenchmark {
+
+  private final AwsMetricAttributeGenerator generator = new AwsMetricAttributeGenerator();
+
+  @State(Scope.Benchmark)
+  public static class ShapeSpan {
+    @Param public Shape shape;
+
+    SpanData span;
+
+    @Setup
+    public void setup() {
+      span = SpanFixtures.shape(shape).toSpanData(1);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class AwsSdkSpan {
+    @Param public AwsSdkVersion version;
+
+    @Param public AwsSdkResource resource;
+
+    SpanData span;
+
+    @Setup
+    public void setup() {
+      span = SpanFixtures.awsSdk(version, resource).toSpanData(1);
+    }
+  }
+
+  @Benchmark
+  public Map<String, Attributes> generate(ShapeSpan state) {
+    return generator.generateMetricAttributeMapFromSpan(state.span, SpanFixtures.RESOURCE);
+  }
+
+  @Benchmark
+  public Map<String, Attributes> generateAwsSdk(AwsSdkSpan state) {
+    return generator.generateMetricAttributeMapFromSpan(state.span, SpanFixtures.RESOURCE);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link AwsMetricAttributesSpanExporter#export} on a batch of 512 spans cycling through
+ * every span fixture. The delegate reads every attribute of every exported span, as a marshaling
+ * exporter would, so that the cost of the attribute views handed to it is included.
+ *
+ * <p>With {@code handoff} enabled, the attribute maps a {@link AwsSpanMetricsProcessor} would have
+ * generated are precomputed, and offered to a {@link MetricAttributesHandoff} before each export.
+ * Offering is part of the measurement, generating the maps is not.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class AwsMetricAttributesSpanExporterBenchmark {
+
+  private static final int BATCH_SIZE = 512;
+
+  @Param({"false", "true"})
+  public boolean handoff;
+
+  private final AwsMetricAttributeGenerator generator = new AwsMetricAttributeGenerator();
+  private final MetricAttributesHandoff attributesHandoff = MetricAttributesHandoff.create();
+  private List<SpanData> batch;
+  private List<Map<String, Attributes>> attributeMaps;
+  private AwsMetricAttributesSpanExporter exporter;
+  private Blackhole blackhole;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    this.blackhole = blackhole;
+    batch = SpanFixtures.batch(BATCH_SIZE);
+    AwsMetricAttributesSpanExporterBuilder builder =
+        AwsMetricAttributesSpanExporterBuilder.create(
+                new ReadingSpanExporter(), SpanFixtures.RESOURCE)
+            .setGenerator(generator);
+    if (handoff) {
+      builder.setAttributesHandoff(attributesHandoff);
+    }
+    exporter = builder.build();
+    attributeMaps = new ArrayList<>(batch.size());
+    for (SpanData span : batch) {
+      attributeMaps.add(generator.generateMetricAttributeMapFromSpan(span, SpanFixtures.RESOURCE));
+    }
+  }
+
+  @Benchmark
+  public CompletableResultCode export() {
+    if (handoff) {
+      // What AwsSpanMetricsProcessor would have offered when each span ended
+      for (int i = 0; i < batch.size(); i++) {
+        attributesHandoff.offer(batch.get(i).getSpanContext(), attributeMaps.get(i));
+      }
+    }
+    return exporter.export(batch);
+  }
+
+  private final class ReadingSpanExporter implements SpanExporter {
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      for (SpanData span : spans) {
+        blackhole.consume(span.getTotalAttributeCount());
+        span.getAttributes()
+            .forEach(
+                (key, value) -> {
+                  blackhole.consume(key);
+                  blackhole.consume(value);
+                });
+      }
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
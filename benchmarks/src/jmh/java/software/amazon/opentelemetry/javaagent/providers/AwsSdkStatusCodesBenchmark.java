@@ -0,0 +1,117 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Simulates sustained AWS SDK errors, e.g. a throttling storm, by reading status codes from the
+ * same kinds of service exceptions over and over. Compares {@link AwsSdkStatusCodes} with the
+ * per-call reflective lookup it replaced, which throws {@link NoSuchMethodException} for every
+ * accessor an exception class lacks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+@State(Scope.Benchmark)
+public class AwsSdkStatusCodesBenchmark {
+
+  public enum Error {
+    // AWS SDK V1 AmazonServiceException, e.g. 400 ThrottlingException
+    V1_CLIENT_ERROR,
+    // AWS SDK V2 AwsServiceException, e.g. 503 SlowDown, found after getStatusCode() is missed
+    V2_SERVER_ERROR,
+    // A client side failure without a status code, e.g. a timeout
+    NO_STATUS_CODE
+  }
+
+  @Param public Error error;
+
+  private Throwable throwable;
+
+  @Setup
+  public void setup() {
+    switch (error) {
+      case V1_CLIENT_ERROR:
+        throwable = new AmazonServiceException(400);
+        break;
+      case V2_SERVER_ERROR:
+        throwable = new AwsServiceException(503);
+        break;
+      case NO_STATUS_CODE:
+        throwable = new IllegalStateException("Unable to execute HTTP request");
+        break;
+    }
+  }
+
+  @Benchmark
+  public Long classValue() {
+    return AwsSdkStatusCodes.getStatusCode(throwable);
+  }
+
+  @Benchmark
+  public Long reflection() {
+    try {
+      Method method = throwable.getClass().getMethod("getStatusCode", new Class<?>[] {});
+      Object code = method.invoke(throwable, new Object[] {});
+      return Long.valueOf((Integer) code);
+    } catch (Exception e) {
+      // Take no action
+    }
+    try {
+      Method method = throwable.getClass().getMethod("statusCode", new Class<?>[] {});
+      Object code = method.invoke(throwable, new Object[] {});
+      return Long.valueOf((Integer) code);
+    } catch (Exception e) {
+      // Take no action
+    }
+    return null;
+  }
+
+  public static class AmazonServiceException extends RuntimeException {
+    private final int statusCode;
+
+    AmazonServiceException(int statusCode) {
+      this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+      return statusCode;
+    }
+  }
+
+  public static class AwsServiceException extends RuntimeException {
+    private final int statusCode;
+
+    AwsServiceException(int statusCode) {
+      this.statusCode = statusCode;
+    }
+
+    public int statusCode() {
+      return statusCode;
+    }
+  }
+}
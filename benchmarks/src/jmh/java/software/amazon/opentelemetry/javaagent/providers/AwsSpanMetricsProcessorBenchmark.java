@@ -0,0 +1,84 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures {@link AwsSpanMetricsProcessor#onEnd} on ended SDK spans, cycling through every span
+ * fixture, with metrics recorded either to histograms or to the fused {@link RedMetricsAggregator}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AwsSpanMetricsProcessorBenchmark {
+
+  @Param({"histograms", "fused"})
+  public String recording;
+
+  private SdkMeterProvider meterProvider;
+  private AwsSpanMetricsProcessor processor;
+  private List<ReadableSpan> spans;
+  private int next;
+
+  @Setup
+  public void setup() {
+    SdkMeterProviderBuilder meterProviderBuilder =
+        SdkMeterProvider.builder()
+            .setResource(SpanFixtures.RESOURCE)
+            .registerMetricReader(InMemoryMetricReader.createDelta());
+    RedMetricsAggregator aggregator = null;
+    if ("fused".equals(recording)) {
+      aggregator = RedMetricsAggregator.create(AwsSpanMetricsProcessorBuilder.DEFAULT_SCOPE_NAME);
+      meterProviderBuilder.registerMetricProducer(aggregator);
+    }
+    meterProvider = meterProviderBuilder.build();
+    AwsSpanMetricsProcessorBuilder builder =
+        AwsSpanMetricsProcessorBuilder.create(
+            meterProvider, SpanFixtures.RESOURCE, meterProvider::forceFlush);
+    if (aggregator != null) {
+      builder.setAggregator(aggregator);
+    }
+    processor = builder.build();
+    spans = SpanFixtures.endedSpans(SpanFixtures.all());
+  }
+
+  @TearDown
+  public void tearDown() {
+    processor.shutdown();
+    meterProvider.close();
+  }
+
+  @Benchmark
+  public void onEnd() {
+    processor.onEnd(spans.get(next));
+    next = next + 1 == spans.size() ? 0 : next + 1;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.opentelemetry.javaagent.providers.SpanFixtures.Shape;
+
+/**
+ * Measures the cost of the first span in a fresh JVM, i.e. metric attribute generation including
+ * the class loading and static initialization it triggers. Each fork measures a single invocation.
+ * Run with the class loader profiler to also report the number of classes loaded:
+ *
+ * <pre>
+ *   ./gradlew :benchmarks:jmh -PjmhIncludes=FirstSpanBenchmark -PjmhProfilers=cl
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@State(Scope.Benchmark)
+public class FirstSpanBenchmark {
+
+  private SpanData span;
+
+  @Setup
+  public void setup() {
+    span = SpanFixtures.shape(Shape.JDBC).toSpanData(1);
+  }
+
+  @Benchmark
+  public Map<String, Attributes> firstSpan() {
+    return new AwsMetricAttributeGenerator()
+        .generateMetricAttributeMapFromSpan(span, SpanFixtures.RESOURCE);
+  }
+}
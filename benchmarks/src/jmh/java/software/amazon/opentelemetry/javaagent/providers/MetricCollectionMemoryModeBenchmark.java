@@ -0,0 +1,149 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures one collect and export cycle of a {@link ScopeBasedPeriodicMetricReader} with 10k active
+ * series, for exporters in either memory mode. The exporter discards the metrics, so that the
+ * allocations measured with {@code -prof gc} are those of the collection. Every series is recorded
+ * to before each collection, as the Application Signals RED metrics of a busy service would be.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class MetricCollectionMemoryModeBenchmark {
+
+  private static final String SCOPE = "AwsSpanMetricsProcessor";
+
+  @Param({"IMMUTABLE_DATA", "REUSABLE_DATA"})
+  public MemoryMode memoryMode;
+
+  @Param({"10000"})
+  public int series;
+
+  private SdkMeterProvider meterProvider;
+  private ScopeBasedPeriodicMetricReader reader;
+  private LongCounter counter;
+  private DoubleHistogram histogram;
+  private Attributes[] attributes;
+
+  @Setup
+  public void setup() {
+    reader =
+        ScopeBasedPeriodicMetricReader.create(
+                new DiscardingExporter(memoryMode), Collections.singleton(SCOPE))
+            .setInterval(1, TimeUnit.DAYS)
+            .build();
+    meterProvider =
+        SdkMeterProvider.builder()
+            .setResource(SpanFixtures.RESOURCE)
+            // Above the default limit of 2000 series per instrument
+            .registerMetricReader(reader, unused -> series + 1)
+            .build();
+    Meter meter = meterProvider.get(SCOPE);
+    counter = meter.counterBuilder("Error").build();
+    histogram = meter.histogramBuilder("Latency").build();
+    attributes = new Attributes[series];
+    for (int i = 0; i < series; i++) {
+      attributes[i] =
+          Attributes.of(
+              AttributeKey.stringKey("Operation"),
+              "GET /api/" + (i % 100),
+              AttributeKey.stringKey("RemoteService"),
+              "service-" + (i / 100));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    meterProvider.close();
+  }
+
+  @Benchmark
+  public CompletableResultCode collectAndExport() {
+    for (Attributes attrs : attributes) {
+      counter.add(1, attrs);
+      histogram.record(1.5, attrs);
+    }
+    return reader.forceFlush();
+  }
+
+  private static final class DiscardingExporter implements MetricExporter {
+    private final MemoryMode memoryMode;
+
+    DiscardingExporter(MemoryMode memoryMode) {
+      this.memoryMode = memoryMode;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return AggregationTemporality.DELTA;
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+      return instrumentType == InstrumentType.HISTOGRAM
+          ? Aggregation.base2ExponentialBucketHistogram()
+          : Aggregation.defaultAggregation();
+    }
+
+    @Override
+    public MemoryMode getMemoryMode() {
+      return memoryMode;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link OtlpUdpSpanExporter#export}, i.e. OTLP marshaling and payload encoding. The
+ * datagram itself is discarded rather than sent, so results do not depend on the local network
+ * stack.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class OtlpUdpSpanExporterBenchmark {
+
+  // Lambda exports in batches of 10, see AwsApplicationSignalsCustomizerProvider
+  @Param({"10", "512"})
+  public int batchSize;
+
+  private List<SpanData> batch;
+  private OtlpUdpSpanExporter exporter;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    batch = SpanFixtures.batch(batchSize);
+    exporter = new OtlpUdpSpanExporterBuilder().setSender(new DiscardingSender(blackhole)).build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    exporter.shutdown();
+  }
+
+  @Benchmark
+  public CompletableResultCode export() {
+    return exporter.export(batch);
+  }
+
+  private static final class DiscardingSender extends UdpSender {
+    private final Blackhole blackhole;
+
+    DiscardingSender(Blackhole blackhole) {
+      super("127.0.0.1", 2000);
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void send(byte[] data) {
+      blackhole.consume(data);
+    }
+  }
+}
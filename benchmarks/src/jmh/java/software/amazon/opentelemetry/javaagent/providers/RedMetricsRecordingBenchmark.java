@@ -0,0 +1,130 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import software.amazon.opentelemetry.javaagent.providers.RedMetricsAggregator.Outcome;
+
+/**
+ * Measures how recording the RED metrics of one hot attribute set scales from 1 to 64 threads, with
+ * metrics recorded to histograms, to the fused {@link RedMetricsAggregator}, or to the fused
+ * aggregator through per-thread buffers. Metrics are not collected while measuring.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class RedMetricsRecordingBenchmark {
+
+  private static final Attributes ATTRIBUTES =
+      Attributes.of(
+          AttributeKey.stringKey("aws.local.service"),
+          "checkout",
+          AttributeKey.stringKey("aws.local.operation"),
+          "GET /cart",
+          AttributeKey.stringKey("aws.span.kind"),
+          "LOCAL_ROOT");
+
+  @Param({"histograms", "fused", "perThread"})
+  public String recording;
+
+  private SdkMeterProvider meterProvider;
+  private RedMetricsAggregator aggregator;
+  private LongHistogram errorHistogram;
+  private LongHistogram faultHistogram;
+  private DoubleHistogram latencyHistogram;
+
+  @Setup
+  public void setup() {
+    SdkMeterProviderBuilder meterProviderBuilder =
+        SdkMeterProvider.builder()
+            .setResource(SpanFixtures.RESOURCE)
+            .registerMetricReader(InMemoryMetricReader.createDelta());
+    if (!"histograms".equals(recording)) {
+      aggregator =
+          RedMetricsAggregator.create(
+              AwsSpanMetricsProcessorBuilder.DEFAULT_SCOPE_NAME, "perThread".equals(recording));
+      meterProviderBuilder.registerMetricProducer(aggregator);
+    }
+    meterProvider = meterProviderBuilder.build();
+    Meter meter = meterProvider.get(AwsSpanMetricsProcessorBuilder.DEFAULT_SCOPE_NAME);
+    errorHistogram = meter.histogramBuilder(AwsSpanMetricsProcessorBuilder.ERROR).ofLongs().build();
+    faultHistogram = meter.histogramBuilder(AwsSpanMetricsProcessorBuilder.FAULT).ofLongs().build();
+    latencyHistogram =
+        meter
+            .histogramBuilder(AwsSpanMetricsProcessorBuilder.LATENCY)
+            .setUnit(AwsSpanMetricsProcessorBuilder.LATENCY_UNITS)
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    meterProvider.close();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void record1Thread() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void record4Threads() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void record16Threads() {
+    record();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void record64Threads() {
+    record();
+  }
+
+  private void record() {
+    double latencyMillis = ThreadLocalRandom.current().nextInt(1, 1000);
+    if (aggregator != null) {
+      aggregator.record(ATTRIBUTES, Outcome.OK, latencyMillis);
+    } else {
+      errorHistogram.record(0, ATTRIBUTES);
+      faultHistogram.record(0, ATTRIBUTES);
+      latencyHistogram.record(latencyMillis, ATTRIBUTES);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.CollectionRegistration;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures one delta collection of {@link ScopedMetricCollector} in a process with many
+ * instrumentation meters, of which one scope is registered, either collecting all meters and
+ * filtering by scope or collecting the registered meters only. Every instrument is recorded to
+ * before each collection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class ScopedMetricCollectorBenchmark {
+
+  private static final String REGISTERED_SCOPE = "io.opentelemetry.jmx";
+  private static final int ATTRIBUTE_SETS = 10;
+
+  @Param({"filtering", "scoped"})
+  public String collection;
+
+  @Param({"100"})
+  public int meters;
+
+  private SdkMeterProvider meterProvider;
+  private ScopedMetricCollector collector;
+  private final List<LongCounter> counters = new ArrayList<>();
+  private final List<DoubleHistogram> histograms = new ArrayList<>();
+  private final Attributes[] attributes = new Attributes[ATTRIBUTE_SETS];
+
+  @Setup
+  public void setup() {
+    CapturingReader reader = new CapturingReader();
+    meterProvider =
+        SdkMeterProvider.builder()
+            .setResource(SpanFixtures.RESOURCE)
+            .registerMetricReader(reader)
+            .build();
+    for (int i = 0; i < meters; i++) {
+      Meter meter =
+          meterProvider.get(i == 0 ? REGISTERED_SCOPE : "io.opentelemetry.instrumentation-" + i);
+      for (int j = 0; j < 3; j++) {
+        counters.add(meter.counterBuilder("counter" + j).build());
+        histograms.add(meter.histogramBuilder("histogram" + j).build());
+      }
+    }
+    for (int i = 0; i < ATTRIBUTE_SETS; i++) {
+      attributes[i] = Attributes.of(AttributeKey.stringKey("key"), "value" + i);
+    }
+    collector =
+        "scoped".equals(collection)
+            ? ScopedMetricCollector.createScoped(
+                reader.registration,
+                Collections.singleton(REGISTERED_SCOPE),
+                MemoryMode.IMMUTABLE_DATA)
+            : ScopedMetricCollector.createFiltering(
+                reader.registration,
+                Collections.singleton(REGISTERED_SCOPE),
+                MemoryMode.IMMUTABLE_DATA);
+    if ("scoped".equals(collection) && !collector.isScoped()) {
+      throw new IllegalStateException("SDK meters are not accessible");
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    meterProvider.close();
+  }
+
+  @Benchmark
+  public Collection<MetricData> collect() {
+    for (Attributes attrs : attributes) {
+      for (LongCounter counter : counters) {
+        counter.add(1, attrs);
+      }
+      for (DoubleHistogram histogram : histograms) {
+        histogram.record(1.5, attrs);
+      }
+    }
+    return collector.collect();
+  }
+
+  private static final class CapturingReader implements MetricReader {
+    private CollectionRegistration registration = CollectionRegistration.noop();
+
+    @Override
+    public void register(CollectionRegistration registration) {
+      this.registration = registration;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+      return AggregationTemporality.DELTA;
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
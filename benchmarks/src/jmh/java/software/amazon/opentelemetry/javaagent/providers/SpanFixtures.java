@@ -0,0 +1,513 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import static io.opentelemetry.semconv.SemanticAttributes.DB_CONNECTION_STRING;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_NAME;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_OPERATION;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_SQL_TABLE;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_STATEMENT;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_SYSTEM;
+import static io.opentelemetry.semconv.SemanticAttributes.DB_USER;
+import static io.opentelemetry.semconv.SemanticAttributes.GRAPHQL_DOCUMENT;
+import static io.opentelemetry.semconv.SemanticAttributes.GRAPHQL_OPERATION_NAME;
+import static io.opentelemetry.semconv.SemanticAttributes.GRAPHQL_OPERATION_TYPE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_REQUEST_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_RESPONSE_STATUS_CODE;
+import static io.opentelemetry.semconv.SemanticAttributes.HTTP_ROUTE;
+import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_CLIENT_ID;
+import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_DESTINATION_NAME;
+import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_KAFKA_DESTINATION_PARTITION;
+import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_KAFKA_MESSAGE_OFFSET;
+import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_OPERATION;
+import static io.opentelemetry.semconv.SemanticAttributes.MESSAGING_SYSTEM;
+import static io.opentelemetry.semconv.SemanticAttributes.NETWORK_PEER_ADDRESS;
+import static io.opentelemetry.semconv.SemanticAttributes.NETWORK_PEER_PORT;
+import static io.opentelemetry.semconv.SemanticAttributes.NETWORK_PROTOCOL_VERSION;
+import static io.opentelemetry.semconv.SemanticAttributes.RPC_METHOD;
+import static io.opentelemetry.semconv.SemanticAttributes.RPC_SERVICE;
+import static io.opentelemetry.semconv.SemanticAttributes.RPC_SYSTEM;
+import static io.opentelemetry.semconv.SemanticAttributes.SERVER_ADDRESS;
+import static io.opentelemetry.semconv.SemanticAttributes.SERVER_PORT;
+import static io.opentelemetry.semconv.SemanticAttributes.THREAD_ID;
+import static io.opentelemetry.semconv.SemanticAttributes.THREAD_NAME;
+import static io.opentelemetry.semconv.SemanticAttributes.URL_FULL;
+import static io.opentelemetry.semconv.SemanticAttributes.URL_PATH;
+import static io.opentelemetry.semconv.SemanticAttributes.URL_QUERY;
+import static io.opentelemetry.semconv.SemanticAttributes.URL_SCHEME;
+import static io.opentelemetry.semconv.SemanticAttributes.USER_AGENT_ORIGINAL;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.InstrumentationScopeInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.testing.trace.TestSpanData;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.data.StatusData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Span fixtures for the benchmarks, modeled on the spans asserted by the application signals
+ * contract tests. Each fixture carries the attributes the upstream instrumentation records for that
+ * kind of call, not just the ones the metric attribute generator reads, so that attribute lookups
+ * and copies are measured against realistically sized attribute sets.
+ */
+public final class SpanFixtures {
+
+  static final Resource RESOURCE =
+      Resource.builder()
+          .put("service.name", "pet-clinic-frontend")
+          .put("deployment.environment", "eks:demo/default")
+          .put("telemetry.sdk.language", "java")
+          .put("telemetry.sdk.name", "opentelemetry")
+          .put("telemetry.sdk.version", "1.44.1")
+          .put("telemetry.distro.name", "opentelemetry-java-instrumentation")
+          .put("host.arch", "amd64")
+          .put("os.type", "linux")
+          .put("process.runtime.name", "OpenJDK Runtime Environment")
+          .put("process.runtime.version", "17.0.12+7-LTS")
+          .put("cloud.provider", "aws")
+          .put("cloud.platform", "aws_eks")
+          .put("cloud.region", "us-west-2")
+          .build();
+
+  private static final String TRACE_ID = "67dd1a6f2e4b4c6d8e9f0a1b2c3d4e5f";
+  private static final SpanContext REMOTE_PARENT =
+      SpanContext.createFromRemoteParent(
+          TRACE_ID, "1a2b3c4d5e6f7a8b", TraceFlags.getSampled(), TraceState.getDefault());
+  private static final SpanContext LOCAL_PARENT =
+      SpanContext.create(
+          TRACE_ID, "2b3c4d5e6f7a8b9c", TraceFlags.getSampled(), TraceState.getDefault());
+
+  private static final String DB_SELECT_STATEMENT =
+      "SELECT owner.id, owner.first_name, owner.last_name, owner.address, owner.city,"
+          + " owner.telephone, pet.id, pet.name, pet.birth_date, pet.type_id, visit.id,"
+          + " visit.visit_date, visit.description FROM owners owner LEFT OUTER JOIN pets pet ON"
+          + " owner.id = pet.owner_id LEFT OUTER JOIN visits visit ON pet.id = visit.pet_id"
+          + " WHERE owner.last_name LIKE ? ORDER BY owner.last_name, pet.name, visit.visit_date"
+          + " DESC LIMIT ?";
+
+  private static final String GRAPHQL_QUERY_DOCUMENT =
+      "query OwnerWithPets($id: Int!) { owner(id: $id) { id firstName lastName address city"
+          + " telephone pets { id name birthDate type { id name } visits { id date description"
+          + " } } } }";
+
+  /** Non-AWS SDK span shapes. */
+  public enum Shape {
+    HTTP_SERVER,
+    HTTP_CLIENT,
+    JDBC,
+    MESSAGING_PRODUCER,
+    MESSAGING_CONSUMER,
+    GRAPHQL
+  }
+
+  public enum AwsSdkVersion {
+    V1("io.opentelemetry.aws-sdk-1.11"),
+    V2("io.opentelemetry.aws-sdk-2.2");
+
+    final String scopeName;
+
+    AwsSdkVersion(String scopeName) {
+      this.scopeName = scopeName;
+    }
+  }
+
+  /** AWS SDK calls, one per resource key the metric attribute generator recognizes. */
+  public enum AwsSdkResource {
+    S3_BUCKET(
+        "Amazon S3", "S3", "GetObject", AwsAttributeKeys.AWS_BUCKET_NAME, "pet-clinic-images"),
+    DYNAMODB_TABLE(
+        "AmazonDynamoDBv2", "DynamoDb", "PutItem", AwsAttributeKeys.AWS_TABLE_NAME, "visits"),
+    KINESIS_STREAM(
+        "AmazonKinesis", "Kinesis", "PutRecord", AwsAttributeKeys.AWS_STREAM_NAME, "audit-events"),
+    SQS_QUEUE_NAME(
+        "AmazonSQS", "Sqs", "CreateQueue", AwsAttributeKeys.AWS_QUEUE_NAME, "appointments"),
+    SQS_QUEUE_URL(
+        "AmazonSQS",
+        "Sqs",
+        "SendMessage",
+        AwsAttributeKeys.AWS_QUEUE_URL,
+        "https://sqs.us-west-2.amazonaws.com/123456789012/appointments"),
+    BEDROCK_AGENT(
+        "AWSBedrockAgent", "BedrockAgent", "GetAgent", AwsAttributeKeys.AWS_AGENT_ID, "Q08WFRPHVL"),
+    BEDROCK_KNOWLEDGE_BASE(
+        "AWSBedrockAgent",
+        "BedrockAgent",
+        "GetKnowledgeBase",
+        AwsAttributeKeys.AWS_KNOWLEDGE_BASE_ID,
+        "KQ3ZDSB6BC"),
+    BEDROCK_DATA_SOURCE(
+        "AWSBedrockAgent",
+        "BedrockAgent",
+        "GetDataSource",
+        AwsAttributeKeys.AWS_DATA_SOURCE_ID,
+        "DS7YXZF5XL"),
+    BEDROCK_GUARDRAIL(
+        "AmazonBedrock",
+        "Bedrock",
+        "GetGuardrail",
+        AwsAttributeKeys.AWS_GUARDRAIL_ID,
+        "bt4o77i015cu",
+        AwsAttributeKeys.AWS_GUARDRAIL_ARN,
+        "arn:aws:bedrock:us-west-2:123456789012:guardrail/bt4o77i015cu"),
+    BEDROCK_MODEL(
+        "AmazonBedrockRuntime",
+        "BedrockRuntime",
+        "InvokeModel",
+        AwsSpanProcessingUtil.GEN_AI_REQUEST_MODEL,
+        "anthropic.claude-v2:1"),
+    SFN_STATE_MACHINE(
+        "AWSStepFunctions",
+        "Sfn",
+        "DescribeStateMachine",
+        AwsAttributeKeys.AWS_STATE_MACHINE_ARN,
+        "arn:aws:states:us-west-2:123456789012:stateMachine:visitWorkflow"),
+    SFN_ACTIVITY(
+        "AWSStepFunctions",
+        "Sfn",
+        "DescribeActivity",
+        AwsAttributeKeys.AWS_STEP_FUNCTIONS_ACTIVITY_ARN,
+        "arn:aws:states:us-west-2:123456789012:activity:scheduleVisit"),
+    SNS_TOPIC(
+        "AmazonSNS",
+        "Sns",
+        "Publish",
+        AwsAttributeKeys.AWS_SNS_TOPIC_ARN,
+        "arn:aws:sns:us-west-2:123456789012:visit-reminders"),
+    SECRETS_MANAGER_SECRET(
+        "AWSSecretsManager",
+        "SecretsManager",
+        "GetSecretValue",
+        AwsAttributeKeys.AWS_SECRET_ARN,
+        "arn:aws:secretsmanager:us-west-2:123456789012:secret:db-credentials-a1b2c3"),
+    LAMBDA_EVENT_SOURCE_MAPPING(
+        "AWSLambda",
+        "Lambda",
+        "GetEventSourceMapping",
+        AwsAttributeKeys.AWS_LAMBDA_RESOURCE_ID,
+        "14e6d3c2-95f5-4b19-b3bb-1e2f0a9c5d71");
+
+    final String v1Service;
+    final String v2Service;
+    final String method;
+    final Attributes resourceAttributes;
+
+    AwsSdkResource(
+        String v1Service, String v2Service, String method, AttributeKey<String> key, String value) {
+      this(v1Service, v2Service, method, Attributes.of(key, value));
+    }
+
+    AwsSdkResource(
+        String v1Service,
+        String v2Service,
+        String method,
+        AttributeKey<String> key,
+        String value,
+        AttributeKey<String> otherKey,
+        String otherValue) {
+      this(v1Service, v2Service, method, Attributes.of(key, value, otherKey, otherValue));
+    }
+
+    AwsSdkResource(
+        String v1Service, String v2Service, String method, Attributes resourceAttributes) {
+      this.v1Service = v1Service;
+      this.v2Service = v2Service;
+      this.method = method;
+      this.resourceAttributes = resourceAttributes;
+    }
+  }
+
+  /** An immutable description of a span, from which span data or live spans can be created. */
+  static final class Fixture {
+    final String name;
+    final SpanKind kind;
+    final boolean localRoot;
+    final InstrumentationScopeInfo scope;
+    final Attributes attributes;
+    final StatusCode statusCode;
+
+    private Fixture(
+        String name,
+        SpanKind kind,
+        boolean localRoot,
+        String scopeName,
+        Attributes attributes,
+        StatusCode statusCode) {
+      this.name = name;
+      this.kind = kind;
+      this.localRoot = localRoot;
+      this.scope = InstrumentationScopeInfo.builder(scopeName).setVersion("2.10.0-alpha").build();
+      this.attributes = attributes;
+      this.statusCode = statusCode;
+    }
+
+    SpanContext parentSpanContext() {
+      return localRoot ? REMOTE_PARENT : LOCAL_PARENT;
+    }
+
+    /** Returns span data as handed to span exporters, with the given span id. */
+    SpanData toSpanData(long spanId) {
+      long end = TimeUnit.MILLISECONDS.toNanos(1_700_000_000_000L);
+      return TestSpanData.builder()
+          .setName(name)
+          .setKind(kind)
+          .setSpanContext(
+              SpanContext.create(
+                  TRACE_ID,
+                  String.format("%016x", spanId),
+                  TraceFlags.getSampled(),
+                  TraceState.getDefault()))
+          .setParentSpanContext(parentSpanContext())
+          .setStartEpochNanos(end - TimeUnit.MILLISECONDS.toNanos(12))
+          .setEndEpochNanos(end)
+          .setHasEnded(true)
+          .setStatus(StatusData.create(statusCode, null))
+          .setAttributes(attributes)
+          .setTotalAttributeCount(attributes.size())
+          .setResource(RESOURCE)
+          .setInstrumentationScopeInfo(scope)
+          .build();
+    }
+
+    /** Starts a live span from this fixture, under a parent matching {@link #localRoot}. */
+    Span startSpan(Tracer tracer) {
+      return tracer
+          .spanBuilder(name)
+          .setSpanKind(kind)
+          .setParent(Context.root().with(Span.wrap(parentSpanContext())))
+          .setAllAttributes(attributes)
+          .startSpan();
+    }
+  }
+
+  static Fixture shape(Shape shape) {
+    switch (shape) {
+      case HTTP_SERVER:
+        return new Fixture(
+            "GET /owners/{ownerId}/pets",
+            SpanKind.SERVER,
+            true,
+            "io.opentelemetry.tomcat-10.0",
+            common()
+                .put(HTTP_REQUEST_METHOD, "GET")
+                .put(URL_SCHEME, "http")
+                .put(URL_PATH, "/owners/1234/pets")
+                .put(URL_QUERY, "page=2&size=25")
+                .put(HTTP_ROUTE, "/owners/{ownerId}/pets")
+                .put(HTTP_RESPONSE_STATUS_CODE, 200L)
+                .put(SERVER_ADDRESS, "pet-clinic-frontend")
+                .put(SERVER_PORT, 8080L)
+                .put("client.address", "10.0.12.31")
+                .put(USER_AGENT_ORIGINAL, "Mozilla/5.0 (X11; Linux x86_64) Chrome/120.0.0.0")
+                .build(),
+            StatusCode.UNSET);
+      case HTTP_CLIENT:
+        return new Fixture(
+            "GET",
+            SpanKind.CLIENT,
+            false,
+            "io.opentelemetry.http-url-connection",
+            common()
+                .put(HTTP_REQUEST_METHOD, "GET")
+                .put(URL_FULL, "http://customers-service:8081/owners/1234/pets?details=true")
+                .put(HTTP_RESPONSE_STATUS_CODE, 503L)
+                .put(SERVER_ADDRESS, "customers-service")
+                .put(SERVER_PORT, 8081L)
+                .build(),
+            StatusCode.ERROR);
+      case JDBC:
+        return new Fixture(
+            "SELECT petclinic.owners",
+            SpanKind.CLIENT,
+            false,
+            "io.opentelemetry.jdbc",
+            common()
+                .put(DB_SYSTEM, "postgresql")
+                .put(DB_NAME, "petclinic")
+                .put(DB_USER, "petclinic_app")
+                .put(DB_CONNECTION_STRING, "postgresql://petclinic-db.cluster.local:5432")
+                .put(DB_STATEMENT, DB_SELECT_STATEMENT)
+                .put(DB_OPERATION, "SELECT")
+                .put(DB_SQL_TABLE, "owners")
+                .put(SERVER_ADDRESS, "petclinic-db.cluster.local")
+                .put(SERVER_PORT, 5432L)
+                .build(),
+            StatusCode.UNSET);
+      case MESSAGING_PRODUCER:
+        return new Fixture(
+            "visit-events publish",
+            SpanKind.PRODUCER,
+            false,
+            "io.opentelemetry.kafka-clients-0.11",
+            common()
+                .put(MESSAGING_SYSTEM, "kafka")
+                .put(MESSAGING_DESTINATION_NAME, "visit-events")
+                .put(MESSAGING_OPERATION, "publish")
+                .put(MESSAGING_CLIENT_ID, "producer-1")
+                .put(MESSAGING_KAFKA_DESTINATION_PARTITION, 3L)
+                .put(MESSAGING_KAFKA_MESSAGE_OFFSET, 182734L)
+                .build(),
+            StatusCode.UNSET);
+      case MESSAGING_CONSUMER:
+        return new Fixture(
+            "visit-events process",
+            SpanKind.CONSUMER,
+            true,
+            "io.opentelemetry.kafka-clients-0.11",
+            common()
+                .put(MESSAGING_SYSTEM, "kafka")
+                .put(MESSAGING_DESTINATION_NAME, "visit-events")
+                .put(MESSAGING_OPERATION, "process")
+                .put(MESSAGING_CLIENT_ID, "consumer-visits-1")
+                .put(MESSAGING_KAFKA_DESTINATION_PARTITION, 3L)
+                .put(MESSAGING_KAFKA_MESSAGE_OFFSET, 182734L)
+                .put("messaging.kafka.consumer.group", "visits")
+                .build(),
+            StatusCode.UNSET);
+      case GRAPHQL:
+        // Modeled as a client call so that the generator's GraphQL remote service branch is taken
+        return new Fixture(
+            "query OwnerWithPets",
+            SpanKind.CLIENT,
+            false,
+            "io.opentelemetry.graphql-java-20.0",
+            common()
+                .put(GRAPHQL_OPERATION_TYPE, "query")
+                .put(GRAPHQL_OPERATION_NAME, "OwnerWithPets")
+                .put(GRAPHQL_DOCUMENT, GRAPHQL_QUERY_DOCUMENT)
+                .build(),
+            StatusCode.UNSET);
+    }
+    throw new IllegalArgumentException(shape.name());
+  }
+
+  static Fixture awsSdk(AwsSdkVersion version, AwsSdkResource resource) {
+    String service = version == AwsSdkVersion.V1 ? resource.v1Service : resource.v2Service;
+    return new Fixture(
+        service.replace(" ", "") + "." + resource.method,
+        SpanKind.CLIENT,
+        false,
+        version.scopeName,
+        common()
+            .put(RPC_SYSTEM, "aws-api")
+            .put(RPC_SERVICE, service)
+            .put(RPC_METHOD, resource.method)
+            .put(HTTP_REQUEST_METHOD, "POST")
+            .put(URL_FULL, "https://" + resource.method.toLowerCase() + ".us-west-2.amazonaws.com")
+            .put(HTTP_RESPONSE_STATUS_CODE, 200L)
+            .put(SERVER_ADDRESS, resource.method.toLowerCase() + ".us-west-2.amazonaws.com")
+            .put("aws.agent", "java-aws-sdk")
+            .put("aws.request_id", "0f8d3c1e-6a2b-4f9e-9d7c-5b4a3e2d1c0b")
+            .putAll(resource.resourceAttributes)
+            .build(),
+        StatusCode.UNSET);
+  }
+
+  /** Returns fixtures for every shape and AWS SDK call, in a fixed order. */
+  static List<Fixture> all() {
+    List<Fixture> fixtures = new ArrayList<>();
+    for (Shape shape : Shape.values()) {
+      fixtures.add(shape(shape));
+    }
+    for (AwsSdkVersion version : AwsSdkVersion.values()) {
+      for (AwsSdkResource resource : AwsSdkResource.values()) {
+        fixtures.add(awsSdk(version, resource));
+      }
+    }
+    return fixtures;
+  }
+
+  /** Returns {@code count} spans, cycling through {@link #all()}, with distinct span ids. */
+  static List<SpanData> batch(int count) {
+    List<Fixture> fixtures = all();
+    List<SpanData> spans = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      spans.add(fixtures.get(i % fixtures.size()).toSpanData(i + 1));
+    }
+    return spans;
+  }
+
+  /** Starts and ends a real SDK span for each fixture, returning them as seen by onEnd. */
+  static List<ReadableSpan> endedSpans(List<Fixture> fixtures) {
+    List<ReadableSpan> ended = new ArrayList<>(fixtures.size());
+    SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder()
+            .setResource(RESOURCE)
+            .addSpanProcessor(new CapturingSpanProcessor(ended))
+            .build();
+    Tracer tracer = tracerProvider.get("benchmark");
+    for (Fixture fixture : fixtures) {
+      Span span = fixture.startSpan(tracer);
+      span.end();
+    }
+    tracerProvider.close();
+    return ended;
+  }
+
+  // Attributes recorded on nearly every span by the agent, regardless of instrumentation
+  private static AttributesBuilder common() {
+    return Attributes.builder()
+        .put(THREAD_ID, 57L)
+        .put(THREAD_NAME, "http-nio-8080-exec-7")
+        .put(NETWORK_PROTOCOL_VERSION, "1.1")
+        .put(NETWORK_PEER_ADDRESS, "10.0.12.31")
+        .put(NETWORK_PEER_PORT, 51234L);
+  }
+
+  private static final class CapturingSpanProcessor implements SpanProcessor {
+    private final List<ReadableSpan> ended;
+
+    CapturingSpanProcessor(List<ReadableSpan> ended) {
+      this.ended = ended;
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {}
+
+    @Override
+    public boolean isStartRequired() {
+      return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+      ended.add(span);
+    }
+
+    @Override
+    public boolean isEndRequired() {
+      return true;
+    }
+  }
+
+  private SpanFixtures() {}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the trie of {@link SqlDialectKeywordMatcher} with the regular expression it replaces,
+ * over statements as ORMs typically issue them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SqlDialectKeywordMatcherBenchmark {
+
+  private static final String[] STATEMENTS = {
+    "select o1_0.id,o1_0.customer_id from orders o1_0 where o1_0.id=?",
+    "insert into orders (customer_id,total,id) values (?,?,?)",
+    "UPDATE orders SET total = ? WHERE id = ?",
+    "\n  DELETE FROM orders WHERE id = ?",
+    "call refresh_views()"
+  };
+
+  private final SqlDialectKeywordMatcher matcher = AwsSpanProcessingUtil.SQL_DIALECT_KEYWORDS;
+
+  @Benchmark
+  public void trie(Blackhole blackhole) {
+    for (String statement : STATEMENTS) {
+      blackhole.consume(matcher.match(statement));
+    }
+  }
+
+  @Benchmark
+  public void regex(Blackhole blackhole) {
+    for (String statement : STATEMENTS) {
+      blackhole.consume(matcher.matchWithPattern(statement));
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package software.amazon.opentelemetry.javaagent.providers;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link UrlScanner} with the {@link java.net.URL} and {@link java.net.URI} based
+ * derivations it replaces, over a small set of typical inputs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class UrlScannerBenchmark {
+
+  private static final String[] URLS = {
+    "https://www.example.com/payment/1234?currency=EUR",
+    "http://localhost:8080/api/v1/users",
+    "https://s3.us-west-2.amazonaws.com/bucket/key",
+    "http://10.0.0.12:9200/index/_search"
+  };
+
+  private static final String[] CONNECTION_STRINGS = {
+    "mysql://test-apple-cluster.cluster-cnrw3s3ddo7n.us-east-1.rds.amazonaws.com:3306/db",
+    "postgresql://localhost:5432/orders"
+  };
+
+  @Benchmark
+  public void remoteServiceScanner(Blackhole blackhole) {
+    for (String url : URLS) {
+      blackhole.consume(UrlScanner.getRemoteService(url));
+    }
+  }
+
+  @Benchmark
+  public void remoteServiceUrl(Blackhole blackhole) {
+    for (String url : URLS) {
+      blackhole.consume(UrlScanner.getRemoteServiceWithUrl(url));
+    }
+  }
+
+  @Benchmark
+  public void remoteOperationScanner(Blackhole blackhole) {
+    for (String url : URLS) {
+      blackhole.consume(UrlScanner.getRemoteOperationPath(url));
+    }
+  }
+
+  @Benchmark
+  public void remoteOperationUrl(Blackhole blackhole) {
+    for (String url : URLS) {
+      blackhole.consume(UrlScanner.getRemoteOperationPathWithUrl(url));
+    }
+  }
+
+  @Benchmark
+  public void dbConnectionScanner(Blackhole blackhole) {
+    for (String connectionString : CONNECTION_STRINGS) {
+      blackhole.consume(UrlScanner.getDbConnection(connectionString));
+    }
+  }
+
+  @Benchmark
+  public void dbConnectionUri(Blackhole blackhole) {
+    for (String connectionString : CONNECTION_STRINGS) {
+      blackhole.consume(UrlScanner.getDbConnectionWithUri(connectionString));
+    }
+  }
+}
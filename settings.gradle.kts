@@ -19,6 +19,7 @@ pluginManagement {
     id("com.github.ben-manes.versions") version "0.50.0"
     id("com.github.jk1.dependency-license-report") version "2.5"
     id("com.gradleup.shadow") version "8.3.5"
+    id("me.champeau.jmh") version "0.7.2"
     id("com.google.cloud.tools.jib") version "3.4.4"
     id("io.github.gradle-nexus.publish-plugin") version "2.0.0"
     id("nebula.release") version "18.0.6"
@@ -40,6 +41,7 @@ dependencyResolutionManagement {
 
 include(":awsagentprovider")
 include(":awspropagator")
+include(":benchmarks")
 include(":dependencyManagement")
 include(":instrumentation:logback-1.0")
 include(":instrumentation:log4j-2.13.2")